@@ -0,0 +1,150 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.benchmark;
+
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import com.codingrodent.microprocessor.z80.Z80Core;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Throughput of each opcode prefix family, and of the block instructions, using a short loop made mostly of
+ * instructions from that family. Every loop runs at {@link #ORIGIN} and jumps back to the start, working on data
+ * between 0xD000 and 0xE0FF, so nothing is ever written over the code.
+ */
+public class InstructionMixBenchmark extends Z80Benchmark {
+    final static int ORIGIN = 0xC000;
+    final static int STACK = 0xF000;
+
+    final static int[] UNPREFIXED = { //
+            0x21, 0x00, 0xD0, // C000 LD HL,0xD000
+            0x06, 0x10, // C003 LD B,16
+            0x7E, // C005 LD A,(HL)
+            0x80, // C006 ADD A,B
+            0x77, // C007 LD (HL),A
+            0x23, // C008 INC HL
+            0xA9, // C009 XOR C
+            0x4F, // C00A LD C,A
+            0xC5, // C00B PUSH BC
+            0xD1, // C00C POP DE
+            0x10, 0xF6, // C00D DJNZ 0xC005
+            0xC3, 0x00, 0xC0}; // C00F JP 0xC000
+
+    final static int[] CB = { //
+            0x21, 0x00, 0xD0, // C000 LD HL,0xD000
+            0x06, 0x10, // C003 LD B,16
+            0xCB, 0x01, // C005 RLC C
+            0xCB, 0x3A, // C007 SRL D
+            0xCB, 0x46, // C009 BIT 0,(HL)
+            0xCB, 0xDE, // C00B SET 3,(HL)
+            0xCB, 0x9E, // C00D RES 3,(HL)
+            0xCB, 0x13, // C00F RL E
+            0x10, 0xF2, // C011 DJNZ 0xC005
+            0xC3, 0x00, 0xC0}; // C013 JP 0xC000
+
+    final static int[] ED = { //
+            0xED, 0x5F, // C000 LD A,R
+            0xED, 0x44, // C002 NEG
+            0x21, 0x34, 0x12, // C004 LD HL,0x1234
+            0x11, 0x11, 0x11, // C007 LD DE,0x1111
+            0xED, 0x52, // C00A SBC HL,DE
+            0xED, 0x5A, // C00C ADC HL,DE
+            0xED, 0x53, 0x00, 0xD0, // C00E LD (0xD000),DE
+            0xED, 0x4B, 0x00, 0xD0, // C012 LD BC,(0xD000)
+            0x21, 0x00, 0xD0, // C016 LD HL,0xD000
+            0xED, 0x67, // C019 RRD
+            0xED, 0x6F, // C01B RLD
+            0xC3, 0x00, 0xC0}; // C01D JP 0xC000
+
+    final static int[] DDFD = { //
+            0xDD, 0x21, 0x00, 0xD0, // C000 LD IX,0xD000
+            0xFD, 0x21, 0x80, 0xD0, // C004 LD IY,0xD080
+            0x06, 0x10, // C008 LD B,16
+            0xDD, 0x7E, 0x00, // C00A LD A,(IX+0)
+            0xFD, 0x86, 0x01, // C00D ADD A,(IY+1)
+            0xDD, 0x77, 0x02, // C010 LD (IX+2),A
+            0xDD, 0x23, // C013 INC IX
+            0xFD, 0x23, // C015 INC IY
+            0xDD, 0x7C, // C017 LD A,IXH
+            0xFD, 0x34, 0x05, // C019 INC (IY+5)
+            0xDD, 0xE5, // C01C PUSH IX
+            0xFD, 0xE1, // C01E POP IY
+            0x10, 0xE8, // C020 DJNZ 0xC00A
+            0xC3, 0x00, 0xC0}; // C022 JP 0xC000
+
+    final static int[] DDCB = { //
+            0xDD, 0x21, 0x00, 0xD0, // C000 LD IX,0xD000
+            0xFD, 0x21, 0x40, 0xD0, // C004 LD IY,0xD040
+            0x06, 0x10, // C008 LD B,16
+            0xDD, 0xCB, 0x00, 0x06, // C00A RLC (IX+0)
+            0xFD, 0xCB, 0x01, 0x1E, // C00E RR (IY+1)
+            0xDD, 0xCB, 0x02, 0x46, // C012 BIT 0,(IX+2)
+            0xFD, 0xCB, 0x03, 0xC6, // C016 SET 0,(IY+3)
+            0xDD, 0xCB, 0x04, 0xBE, // C01A RES 7,(IX+4)
+            0xFD, 0xCB, 0x05, 0x2E, // C01E SRA (IY+5)
+            0x10, 0xE6, // C022 DJNZ 0xC00A
+            0xC3, 0x00, 0xC0}; // C024 JP 0xC000
+
+    final static int[] BLOCK = { //
+            0x21, 0x00, 0xD0, // C000 LD HL,0xD000
+            0x11, 0x00, 0xE0, // C003 LD DE,0xE000
+            0x01, 0x00, 0x01, // C006 LD BC,256
+            0xED, 0xB0, // C009 LDIR
+            0x2B, // C00B DEC HL
+            0x1B, // C00C DEC DE
+            0x01, 0x00, 0x01, // C00D LD BC,256
+            0xED, 0xB8, // C010 LDDR
+            0x21, 0x00, 0xD0, // C012 LD HL,0xD000
+            0x01, 0x00, 0x01, // C015 LD BC,256
+            0x3E, 0xFF, // C018 LD A,0xFF (not in the data, so a full search)
+            0xED, 0xB1, // C01A CPIR
+            0xC3, 0x00, 0xC0}; // C01C JP 0xC000
+
+    @Param({"UNPREFIXED", "CB", "ED", "DDFD", "DDCB", "BLOCK"})
+    public String family;
+
+    @Override
+    public void setUp() {
+        int[] code = switch (family) {
+            case "CB" -> CB;
+            case "ED" -> ED;
+            case "DDFD" -> DDFD;
+            case "DDCB" -> DDCB;
+            case "BLOCK" -> BLOCK;
+            default -> UNPREFIXED;
+        };
+        var memory = new Z80Memory("NAS_Test.nas");
+        load(memory, ORIGIN, code);
+        z80 = new Z80Core(memory, new Z80IOEcho());
+        restart();
+    }
+
+    @Override
+    void restart() {
+        z80.reset();
+        z80.setRegisterValue(RegisterNames.SP, STACK);
+        z80.setProgramCounter(ORIGIN);
+    }
+
+    /*
+     * Place code in memory
+     */
+    static void load(Z80Memory memory, int address, int[] code) {
+        for (int b : code) {
+            memory.writeByte(address++, b);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.benchmark;
+
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import com.codingrodent.microprocessor.z80.Z80Core;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+
+import static com.codingrodent.microprocessor.benchmark.InstructionMixBenchmark.*;
+
+/**
+ * Interrupt heavy execution. The unprefixed loop is run with an NMI raised every {@link #NMI_INTERVAL} T states (or
+ * every {@link #NMI_INSTRUCTIONS} instructions), each one entering a short handler at 0x0066 which returns with RETN.
+ * As the core hands back control whenever an NMI is accepted, this also measures the cost of leaving and re-entering
+ * the run loop.
+ */
+public class InterruptBenchmark extends Z80Benchmark {
+    private final static int NMI_INTERVAL = 256;
+    private final static int NMI_INSTRUCTIONS = 64;
+    private final static int NMI_ADDRESS = 0x0066;
+
+    private final static int[] NMI_HANDLER = { //
+            0xF5, // PUSH AF
+            0x3C, // INC A
+            0xF1, // POP AF
+            0xED, 0x45}; // RETN
+
+    @Override
+    public void setUp() {
+        var memory = new Z80Memory("NAS_Test.nas");
+        load(memory, ORIGIN, UNPREFIXED);
+        load(memory, NMI_ADDRESS, NMI_HANDLER);
+        z80 = new Z80Core(memory, new Z80IOEcho());
+        restart();
+    }
+
+    @Override
+    void restart() {
+        z80.reset();
+        z80.setRegisterValue(RegisterNames.SP, STACK);
+        z80.setProgramCounter(ORIGIN);
+    }
+
+    @Override
+    RunResult run(long tStates) {
+        final long limit = z80.getTStates() + tStates;
+        while (z80.getTStates() < limit) {
+            RunResult result = z80.run(Math.min(NMI_INTERVAL, limit - z80.getTStates()));
+            if (RunResult.HALT == result) {
+                return result;
+            }
+            if (RunResult.BUDGET_EXHAUSTED == result) {
+                z80.setNMI();
+            }
+        }
+        return RunResult.BUDGET_EXHAUSTED;
+    }
+
+    @Override
+    RunResult runInstructions(int count) {
+        int executed = 0;
+        while (executed < count) {
+            int slice = Math.min(NMI_INSTRUCTIONS, count - executed);
+            RunResult result = z80.runInstructions(slice);
+            switch (result) {
+                case HALT -> {
+                    return result;
+                }
+                case NMI -> executed++; // returns straight after the NMI is taken
+                default -> {
+                    executed = executed + slice;
+                    z80.setNMI();
+                }
+            }
+        }
+        return RunResult.BUDGET_EXHAUSTED;
+    }
+}
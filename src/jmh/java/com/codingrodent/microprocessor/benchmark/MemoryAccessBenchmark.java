@@ -0,0 +1,111 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.benchmark;
+
+import com.codingrodent.microprocessor.IMemory;
+import com.codingrodent.microprocessor.memory.BankedMemory;
+import com.codingrodent.microprocessor.memory.SegmentMemory;
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.Z80Core;
+import com.codingrodent.microprocessor.z80.Z80CoreFactory;
+import org.openjdk.jmh.annotations.Param;
+
+import java.lang.foreign.Arena;
+
+/**
+ * Memory access through the {@link IMemory} interface against direct access to the page tables offered by
+ * {@link BankedMemory}. The same memory is used for both, hidden behind a plain delegating wrapper for the interface
+ * case.
+ * <p>
+ * With a megamorphic profile, several other memory types are run through the core before measuring, as happens when
+ * one host runs machines with different memories, so the interface calls in the core can no longer be inlined. The
+ * specialised case measures interface access from a core made by {@link Z80CoreFactory}, which keeps a profile of its
+ * own.
+ */
+public class MemoryAccessBenchmark extends Z80Benchmark {
+
+    @Param({"INTERFACE", "DIRECT", "SPECIALISED"})
+    public String access;
+
+    @Param({"MONOMORPHIC", "MEGAMORPHIC"})
+    public String profile;
+
+    @Override
+    public void setUp() {
+        var source = new Z80Memory("NAS_Test.nas");
+        var memory = new BankedMemory(0x4000);
+        copy(source, memory);
+        if ("MEGAMORPHIC".equals(profile)) {
+            var segment = new SegmentMemory(Arena.ofAuto());
+            copy(source, segment);
+            for (IMemory other : new IMemory[]{source, segment, new Wrapper(source), memory}) {
+                var core = new Z80Core(other, new Z80IOEcho());
+                core.setProgramCounter(0x1000);
+                core.run(20_000_000);
+            }
+            copy(source, memory);
+        }
+        z80 = switch (access) {
+            case "DIRECT" -> new Z80Core(memory, new Z80IOEcho());
+            case "SPECIALISED" -> Z80CoreFactory.create(new Wrapper(memory), new Z80IOEcho());
+            default -> new Z80Core(new Wrapper(memory), new Z80IOEcho());
+        };
+        restart();
+    }
+
+    @Override
+    void restart() {
+        z80.reset();
+        z80.setProgramCounter(0x1000);
+    }
+
+    private static void copy(IMemory from, IMemory to) {
+        for (int address = 0; address < 0x10000; address++) {
+            to.writeByte(address, from.readByte(address));
+        }
+    }
+
+    /*
+     * hides any direct access offered by the memory it wraps
+     */
+    private static class Wrapper implements IMemory {
+        private final IMemory memory;
+
+        Wrapper(IMemory memory) {
+            this.memory = memory;
+        }
+
+        @Override
+        public int readByte(int address) {
+            return memory.readByte(address);
+        }
+
+        @Override
+        public int readWord(int address) {
+            return memory.readWord(address);
+        }
+
+        @Override
+        public void writeByte(int address, int data) {
+            memory.writeByte(address, data);
+        }
+
+        @Override
+        public void writeWord(int address, int data) {
+            memory.writeWord(address, data);
+        }
+    }
+}
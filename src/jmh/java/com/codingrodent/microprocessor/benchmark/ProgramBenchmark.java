@@ -0,0 +1,51 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.benchmark;
+
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.Z80Core;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Full program throughput, running the instruction exercisers shipped with the project. These take far longer than one
+ * benchmark iteration to finish, so each invocation runs a slice and the program is restarted if it completes.
+ */
+public class ProgramBenchmark extends Z80Benchmark {
+
+    @Param({"NAS_Test.nas", "8080EX1.nas"})
+    public String program;
+
+    @Param({"INTERPRETER", "DECODE_CACHE", "BLOCK_COMPILER"})
+    public String engine;
+
+    @Override
+    public void setUp() {
+        z80 = new Z80Core(new Z80Memory(program), new Z80IOEcho());
+        switch (engine) {
+            case "DECODE_CACHE" -> z80.enableDecodeCache();
+            case "BLOCK_COMPILER" -> z80.enableBlockCompiler(16);
+            default -> {
+            }
+        }
+        restart();
+    }
+
+    @Override
+    void restart() {
+        z80.reset();
+        z80.setProgramCounter("8080EX1.nas".equals(program) ? 0x0100 : 0x1000);
+    }
+}
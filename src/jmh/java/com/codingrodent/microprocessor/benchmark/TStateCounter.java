@@ -0,0 +1,32 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Secondary benchmark result. T states are accumulated here and JMH reports them per unit of time, so with a time unit
+ * of microseconds the figure is the emulated clock rate in MHz.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class TStateCounter {
+    public long emulatedMHz;
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        emulatedMHz = 0;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.benchmark;
+
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.Z80Core;
+import com.codingrodent.microprocessor.z80.Z80Trace;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Cost of recording the last million instructions into a {@link Z80Trace}, running the NAS instruction exerciser
+ */
+public class TraceBenchmark extends Z80Benchmark {
+
+    @Param({"OFF", "ON"})
+    public String trace;
+
+    @Override
+    public void setUp() {
+        z80 = new Z80Core(new Z80Memory("NAS_Test.nas"), new Z80IOEcho());
+        if ("ON".equals(trace)) {
+            z80.enableTrace(new Z80Trace(1 << 20));
+        }
+        restart();
+    }
+
+    @Override
+    void restart() {
+        z80.reset();
+        z80.setProgramCounter(0x1000);
+    }
+}
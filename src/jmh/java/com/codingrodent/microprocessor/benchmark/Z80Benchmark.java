@@ -0,0 +1,92 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.benchmark;
+
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import com.codingrodent.microprocessor.z80.Z80Core;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Common measurements for all Z80 benchmarks. Each benchmark reports
+ * <ul>
+ * <li>emulatedMHz - the T state rate of {@link Z80Core#run(long)}, from the emulatedMHz counter</li>
+ * <li>nsPerInstruction - the average time taken by one instruction under {@link Z80Core#runInstructions(int)}</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@Fork(2)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public abstract class Z80Benchmark {
+    // work done per benchmark invocation
+    final static long T_STATES = 1_000_000;
+    final static int INSTRUCTIONS = 100_000;
+
+    Z80Core z80;
+
+    /**
+     * Build the machine, load the code to be measured and set the program counter to its start
+     */
+    @Setup(Level.Trial)
+    public abstract void setUp();
+
+    /**
+     * Restart the code under test after it halts
+     */
+    abstract void restart();
+
+    /**
+     * Run for a fixed number of T states, restarting if the code halts
+     *
+     * @param counter Emulated T states, reported by JMH per microsecond, i.e. in MHz
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void emulatedMHz(TStateCounter counter) {
+        long start = z80.getTStates();
+        RunResult result = run(T_STATES);
+        counter.emulatedMHz = counter.emulatedMHz + z80.getTStates() - start;
+        if (RunResult.HALT == result) {
+            restart();
+        }
+    }
+
+    /**
+     * Run a fixed number of instructions, restarting if the code halts
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void nsPerInstruction() {
+        if (RunResult.HALT == runInstructions(INSTRUCTIONS)) {
+            restart();
+        }
+    }
+
+    /*
+     * hooks for benchmarks which need to drive the processor between instructions
+     */
+    RunResult run(long tStates) {
+        return z80.run(tStates);
+    }
+
+    RunResult runInstructions(int count) {
+        return z80.runInstructions(count);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Direct access to the storage behind an {@link IMemory}, letting the processor read and write plain memory without
+ * calling through the interface.
+ * <p>
+ * The address space is split into equal pages, each described by an entry in a read table and a write table. An entry
+ * is the byte array holding that page, or null if the page must be accessed through the interface, for example memory
+ * mapped I/O. The tables are held by reference, so a memory may change entries at any time, such as when switching
+ * banks, and the processor sees the change on its next access. A memory which changes entries must call
+ * {@link #remapped()} so the processor also discards anything it has decoded or compiled from the old pages.
+ */
+public final class DirectMemory {
+    private final int pageShift;
+    private final byte[][] readPages;
+    private final byte[][] writePages;
+    private int generation;
+
+    /**
+     * Describe the page tables of a memory
+     *
+     * @param pageSize   Size of each page, a power of two no larger than 64K. Each non null entry is at least this long.
+     * @param readPages  Pages read by the processor, 64K / page size entries
+     * @param writePages Pages written by the processor, 64K / page size entries
+     */
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "The tables are shared with the memory by design")
+    public DirectMemory(int pageSize, byte[][] readPages, byte[][] writePages) {
+        if ((pageSize <= 0) || (pageSize > 0x10000) || (Integer.bitCount(pageSize) != 1)) {
+            throw new IllegalArgumentException("Page size must be a power of two no larger than 0x10000, found " + pageSize);
+        }
+        if ((readPages.length != 0x10000 / pageSize) || (writePages.length != 0x10000 / pageSize)) {
+            throw new IllegalArgumentException("Page tables must have one entry per page");
+        }
+        this.pageShift = Integer.numberOfTrailingZeros(pageSize);
+        this.readPages = readPages;
+        this.writePages = writePages;
+    }
+
+    /**
+     * @return log2 of the page size
+     */
+    public int getPageShift() {
+        return pageShift;
+    }
+
+    /**
+     * @return The read page table
+     */
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The tables are shared with the memory by design")
+    public byte[][] getReadPages() {
+        return readPages;
+    }
+
+    /**
+     * @return The write page table
+     */
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The tables are shared with the memory by design")
+    public byte[][] getWritePages() {
+        return writePages;
+    }
+
+    /**
+     * Note that entries in the page tables have changed
+     */
+    public void remapped() {
+        generation++;
+    }
+
+    /**
+     * @return Count of the changes made to the page tables, which the processor compares against the count it last saw
+     */
+    public int getGeneration() {
+        return generation;
+    }
+}
@@ -40,4 +40,34 @@ public interface IBaseDevice {
     default void IOWrite(int address, int data) {
         // do nothing
     }
+
+    /**
+     * Read a sequence of values from an I/O port, as INIR / INDR would. The B register, held in bits 8 to 15 of the
+     * address, is decremented after each read.
+     *
+     * @param address The full 16-bit address of the first read
+     * @param data    Array to receive the values read
+     * @param length  The number of reads
+     */
+    default void readBlock(int address, int[] data, int length) {
+        for (int i = 0; i < length; i++) {
+            data[i] = IORead(address);
+            address = (address - 0x0100) & 0xFFFF;
+        }
+    }
+
+    /**
+     * Write a sequence of values to an I/O port, as OTIR / OTDR would. The B register, held in bits 8 to 15 of the
+     * address, is decremented after each write.
+     *
+     * @param address The full 16-bit address of the first write
+     * @param data    The values to be written
+     * @param length  The number of writes
+     */
+    default void writeBlock(int address, int[] data, int length) {
+        for (int i = 0; i < length; i++) {
+            IOWrite(address, data[i]);
+            address = (address - 0x0100) & 0xFFFF;
+        }
+    }
 }
@@ -0,0 +1,30 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor;
+
+/**
+ * Interface to the condition on a conditional breakpoint
+ */
+@FunctionalInterface
+public interface IBreakpointCondition {
+
+    /**
+     * Called when the processor reaches the breakpoint, before the instruction there is executed
+     *
+     * @param address The address of the breakpoint
+     * @return True to stop, false to carry on
+     */
+    boolean test(int address);
+}
@@ -0,0 +1,30 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor;
+
+/**
+ * Interface to a device event scheduled against the processor T state count
+ */
+@FunctionalInterface
+public interface IEvent {
+
+    /**
+     * Called at the start of the first instruction at or after the time the event was scheduled for
+     *
+     * @param tStates The T state count the event was scheduled for. The processor may be a few T states further on,
+     *                so periodic events should schedule their next occurrence from this value to avoid drift.
+     */
+    void fire(long tStates);
+}
@@ -0,0 +1,83 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor;
+
+/**
+ * Interface to instrumentation such as tracing, profiling or coverage, told about the processor's activity as it
+ * happens. Only the methods needed have to be implemented. While no listener is attached the processor runs exactly as
+ * it would without this interface.
+ */
+public interface IExecutionListener {
+
+    /**
+     * Called after each instruction has executed
+     *
+     * @param address The address of the instruction
+     * @param tStates The T state count once the instruction has completed
+     */
+    default void instructionRetired(int address, long tStates) {
+        // do nothing
+    }
+
+    /**
+     * Called for each byte of memory read as data by an instruction. Instruction fetches are not included.
+     *
+     * @param address The address read
+     * @param value   The 8 bit value read
+     */
+    default void memoryRead(int address, int value) {
+        // do nothing
+    }
+
+    /**
+     * Called for each byte of memory written by an instruction or an interrupt
+     *
+     * @param address The address written
+     * @param value   The 8 bit value written
+     */
+    default void memoryWrite(int address, int value) {
+        // do nothing
+    }
+
+    /**
+     * Called for each read from an I/O port
+     *
+     * @param address The full 16-bit address
+     * @param value   The 8 bit value read
+     */
+    default void ioRead(int address, int value) {
+        // do nothing
+    }
+
+    /**
+     * Called for each write to an I/O port
+     *
+     * @param address The full 16-bit address
+     * @param value   The 8 bit value written
+     */
+    default void ioWrite(int address, int value) {
+        // do nothing
+    }
+
+    /**
+     * Called when an interrupt is accepted, before the first instruction of the interrupt routine
+     *
+     * @param nmi     True for a non-maskable interrupt
+     * @param address The address of the interrupt routine
+     */
+    default void interruptAccepted(boolean nmi, int address) {
+        // do nothing
+    }
+}
@@ -58,4 +58,67 @@ public interface IMemory {
     default void writeWord(int address, int data) {
         // do nothing
     }
-}
\ No newline at end of file
+
+    /**
+     * Copy a block of memory one byte at a time, in the same order as LDIR (upwards) or LDDR (downwards). Overlapping
+     * source and destination must give the same result as the byte by byte copy. Neither block passes the top or
+     * bottom of memory.
+     *
+     * @param source      The first address to be read from
+     * @param destination The first address to be written to
+     * @param length      The number of bytes to copy
+     * @param increment   True to work upwards through memory, false to work downwards
+     */
+    default void copyBlock(int source, int destination, int length, boolean increment) {
+        int step = increment ? 1 : -1;
+        for (int i = 0; i < length; i++) {
+            writeByte(destination, readByte(source));
+            source = source + step;
+            destination = destination + step;
+        }
+    }
+
+    /**
+     * Fill a block of memory with one value. The block does not pass the top of memory.
+     *
+     * @param address The lowest address to be written to
+     * @param length  The number of bytes to write
+     * @param data    The byte to be written
+     */
+    default void fill(int address, int length, int data) {
+        for (int i = 0; i < length; i++) {
+            writeByte(address + i, data);
+        }
+    }
+
+    /**
+     * Search a block of memory for a value, in the same order as CPIR (upwards) or CPDR (downwards). The block does not
+     * pass the top or bottom of memory.
+     *
+     * @param address   The first address to be searched
+     * @param length    The number of bytes to search
+     * @param data      The byte to look for
+     * @param increment True to work upwards through memory, false to work downwards
+     * @return The number of bytes before the first match, or -1 if not found
+     */
+    default int indexOf(int address, int length, int data, boolean increment) {
+        int step = increment ? 1 : -1;
+        for (int i = 0; i < length; i++) {
+            if (readByte(address) == data) {
+                return i;
+            }
+            address = address + step;
+        }
+        return -1;
+    }
+
+    /**
+     * Offer the processor direct access to the storage behind this memory. Every access made through the returned
+     * tables must have the same effect as the equivalent interface call.
+     *
+     * @return The page tables, or null if all access must go through this interface
+     */
+    default DirectMemory getDirectMemory() {
+        return null;
+    }
+}
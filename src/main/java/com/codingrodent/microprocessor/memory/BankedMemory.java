@@ -0,0 +1,172 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.memory;
+
+import com.codingrodent.microprocessor.DirectMemory;
+import com.codingrodent.microprocessor.IMemory;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.util.Arrays;
+
+/**
+ * Bank switched memory. The 64K address space is split into equal pages, each of which shows one bank of memory
+ * selected through a page table. Banks are registered once, as RAM or ROM, and given a number. Selecting a bank for a
+ * page is a store into the page table, so a device can switch banks from {@link com.codingrodent.microprocessor.IBaseDevice#IOWrite(int, int)}
+ * as often as it needs to.
+ * <p>
+ * Separate tables are kept for reading and writing. A ROM page reads from its bank and writes to a scratch bank, so
+ * neither path needs to test whether a page is writable.
+ * <p>
+ * When created, banks 0 upwards are RAM and selected in address order, giving a flat 64K.
+ * <p>
+ * The page tables are offered to the processor through {@link #getDirectMemory()}, so it reads and writes banks
+ * without calling this class at all.
+ */
+public class BankedMemory implements IMemory {
+    private final static int MAX_ADDRESS = 0xFFFF;
+
+    private final int pageSize;
+    private final int shift;
+    private final int mask;
+    private final byte[] scratch;
+    private final byte[][] readPages;
+    private final byte[][] writePages;
+    private final int[] selected;
+    private final DirectMemory direct;
+    private byte[][] banks = new byte[0][];
+    private boolean[] readOnly = new boolean[0];
+
+    /**
+     * Create memory with RAM selected into every page
+     *
+     * @param pageSize Size of a page and of every bank, a power of two from 0x0100 to 0x10000 (e.g. 0x4000 for 16K banks)
+     */
+    public BankedMemory(int pageSize) {
+        if ((pageSize < 0x0100) || (pageSize > MAX_ADDRESS + 1) || (Integer.bitCount(pageSize) != 1)) {
+            throw new IllegalArgumentException("Page size must be a power of two between 0x0100 and 0x10000, found " + pageSize);
+        }
+        this.pageSize = pageSize;
+        shift = Integer.numberOfTrailingZeros(pageSize);
+        mask = pageSize - 1;
+        scratch = new byte[pageSize];
+        int pages = (MAX_ADDRESS + 1) / pageSize;
+        readPages = new byte[pages][];
+        writePages = new byte[pages][];
+        selected = new int[pages];
+        direct = new DirectMemory(pageSize, readPages, writePages);
+        for (int page = 0; page < pages; page++) {
+            select(page, addBank(new byte[pageSize], false));
+        }
+    }
+
+    /**
+     * Register a bank of memory
+     *
+     * @param data     Contents of the bank, exactly one page long. Held by reference, not copied.
+     * @param readOnly True for ROM, where writes are ignored
+     * @return The bank number used to select it
+     */
+    public int addBank(byte[] data, boolean readOnly) {
+        if (data.length != pageSize) {
+            throw new IllegalArgumentException("Bank must be one page, " + pageSize + " bytes, found " + data.length);
+        }
+        int bank = banks.length;
+        banks = Arrays.copyOf(banks, bank + 1);
+        this.readOnly = Arrays.copyOf(this.readOnly, bank + 1);
+        banks[bank] = data;
+        this.readOnly[bank] = readOnly;
+        return bank;
+    }
+
+    /**
+     * Show a bank in a page of the address space. A processor using this memory discards any instructions it has
+     * decoded or compiled from the page when the bank changes.
+     *
+     * @param page Page number, address / page size
+     * @param bank Bank number returned by {@link #addBank(byte[], boolean)}
+     */
+    public void select(int page, int bank) {
+        byte[] data = banks[bank];
+        if (readPages[page] != data) {
+            direct.remapped();
+        }
+        readPages[page] = data;
+        writePages[page] = readOnly[bank] ? scratch : data;
+        selected[page] = bank;
+    }
+
+    /**
+     * Get the bank shown in a page
+     *
+     * @param page Page number, address / page size
+     * @return Bank number
+     */
+    public int getSelected(int page) {
+        return selected[page];
+    }
+
+    /**
+     * Get the contents of a bank
+     *
+     * @param bank Bank number
+     * @return The bank's memory, by reference
+     */
+    public byte[] getBank(int bank) {
+        return banks[bank];
+    }
+
+    /**
+     * @return Size of each page and bank in bytes
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return Number of pages in the address space
+     */
+    public int getPageCount() {
+        return readPages.length;
+    }
+
+    @Override
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "The tables are shared with the processor by design")
+    public DirectMemory getDirectMemory() {
+        return direct;
+    }
+
+    @Override
+    public int readByte(int address) {
+        address = address & MAX_ADDRESS;
+        return readPages[address >>> shift][address & mask] & 0xFF;
+    }
+
+    @Override
+    public int readWord(int address) {
+        return readByte(address) | (readByte(address + 1) << 8);
+    }
+
+    @Override
+    public void writeByte(int address, int data) {
+        address = address & MAX_ADDRESS;
+        writePages[address >>> shift][address & mask] = (byte) data;
+    }
+
+    @Override
+    public void writeWord(int address, int data) {
+        writeByte(address, data);
+        writeByte(address + 1, data >>> 8);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.memory;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 64K of memory mapped from a file. The image is paged in by the operating system on demand rather than being read and
+ * copied, and the mode chosen when the file is opened decides what happens to writes.
+ * <ul>
+ * <li>{@link MapMode#READ_WRITE} - writes go back to the file, so the memory persists between runs</li>
+ * <li>{@link MapMode#PRIVATE} - writes are private to this memory, unchanged pages are shared with every other mapping of the file</li>
+ * <li>{@link MapMode#READ_ONLY} - writes are ignored, as for ROM, and all pages are shared</li>
+ * </ul>
+ * The mapping is released by {@link #close()}, after which the memory must not be used.
+ */
+public class MappedMemory extends SegmentMemory implements AutoCloseable {
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final boolean readOnly;
+
+    private MappedMemory(Arena arena, MemorySegment segment, boolean readOnly) {
+        super(segment);
+        this.arena = arena;
+        this.segment = segment;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Map a memory image file. In {@link MapMode#READ_WRITE} mode a missing or short file is created or extended to 64K,
+     * in other modes the file must already be at least 64K long.
+     *
+     * @param file The memory image, one byte per address starting at 0x0000
+     * @param mode How writes to memory are handled
+     * @return The mapped memory
+     * @throws IOException Thrown if the file cannot be opened or mapped
+     */
+    public static MappedMemory open(Path file, MapMode mode) throws IOException {
+        boolean readWrite = MapMode.READ_WRITE == mode;
+        OpenOption[] options;
+        if (readWrite) {
+            options = new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE};
+        } else if (MapMode.PRIVATE == mode) {
+            // a private mapping needs a writable channel even though the file itself is never changed
+            options = new OpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        } else {
+            options = new OpenOption[]{StandardOpenOption.READ};
+        }
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            if (!readWrite && (channel.size() < SIZE)) {
+                throw new IllegalArgumentException("Memory image must be at least 64K, found " + channel.size());
+            }
+            Arena arena = Arena.ofShared();
+            try {
+                return new MappedMemory(arena, channel.map(mode, 0, SIZE, arena), MapMode.READ_ONLY == mode);
+            } catch (IOException | RuntimeException e) {
+                arena.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Write any changes back to the file now rather than when the operating system chooses. Only has an effect in
+     * {@link MapMode#READ_WRITE} mode.
+     */
+    public void force() {
+        if (!readOnly) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Release the mapping
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    @Override
+    public void load(int address, byte[] data) {
+        if (!readOnly) {
+            super.load(address, data);
+        }
+    }
+
+    @Override
+    public void writeByte(int address, int data) {
+        if (!readOnly) {
+            super.writeByte(address, data);
+        }
+    }
+
+    @Override
+    public void writeWord(int address, int data) {
+        if (!readOnly) {
+            super.writeWord(address, data);
+        }
+    }
+
+    @Override
+    public void copyBlock(int source, int destination, int length, boolean increment) {
+        if (!readOnly) {
+            super.copyBlock(source, destination, length, increment);
+        }
+    }
+
+    @Override
+    public void fill(int address, int length, int data) {
+        if (!readOnly) {
+            super.fill(address, length, data);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.memory;
+
+import com.codingrodent.microprocessor.IMemory;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * 64K of RAM held off the Java heap in a {@link MemorySegment}, one byte per address. Addresses are masked to 16 bits,
+ * so every access is in range. Many machines can share one large allocation, see {@link #allocate(Arena, int)}.
+ */
+public class SegmentMemory implements IMemory {
+    /**
+     * Bytes of memory per machine
+     */
+    public final static int SIZE = 0x10000;
+    private final static int MAX_ADDRESS = 0xFFFF;
+    private final static ValueLayout.OfShort WORD = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private final MemorySegment memory;
+
+    /**
+     * Allocate 64K of memory, cleared to zero
+     *
+     * @param arena The arena controlling the lifetime of the memory
+     */
+    public SegmentMemory(Arena arena) {
+        this(arena.allocate(SIZE));
+    }
+
+    /**
+     * Use the first 64K of an existing segment as memory
+     *
+     * @param segment The segment, at least 64K long
+     */
+    public SegmentMemory(MemorySegment segment) {
+        if (segment.byteSize() < SIZE) {
+            throw new IllegalArgumentException("Memory segment must be at least 64K, found " + segment.byteSize());
+        }
+        memory = segment.asSlice(0, SIZE);
+    }
+
+    /**
+     * Allocate memory for many machines from one block
+     *
+     * @param arena    The arena controlling the lifetime of the memory
+     * @param machines Number of 64K memories required
+     * @return The memories, each a separate 64K slice of the block
+     */
+    public static SegmentMemory[] allocate(Arena arena, int machines) {
+        MemorySegment block = arena.allocate((long) SIZE * machines);
+        var memories = new SegmentMemory[machines];
+        for (int i = 0; i < machines; i++) {
+            memories[i] = new SegmentMemory(block.asSlice((long) SIZE * i, SIZE));
+        }
+        return memories;
+    }
+
+    /**
+     * Copy data into memory, for example a ROM image or program
+     *
+     * @param address The address to load at
+     * @param data    The bytes to load. Must not run past the top of memory.
+     */
+    public void load(int address, byte[] data) {
+        MemorySegment.copy(data, 0, memory, ValueLayout.JAVA_BYTE, address & MAX_ADDRESS, data.length);
+    }
+
+    @Override
+    public int readByte(int address) {
+        return Byte.toUnsignedInt(memory.get(ValueLayout.JAVA_BYTE, address & MAX_ADDRESS));
+    }
+
+    @Override
+    public int readWord(int address) {
+        address = address & MAX_ADDRESS;
+        if (MAX_ADDRESS == address) {
+            return readByte(MAX_ADDRESS) | (readByte(0) << 8);
+        }
+        return Short.toUnsignedInt(memory.get(WORD, address));
+    }
+
+    @Override
+    public void writeByte(int address, int data) {
+        memory.set(ValueLayout.JAVA_BYTE, address & MAX_ADDRESS, (byte) data);
+    }
+
+    @Override
+    public void writeWord(int address, int data) {
+        address = address & MAX_ADDRESS;
+        if (MAX_ADDRESS == address) {
+            writeByte(MAX_ADDRESS, data);
+            writeByte(0, data >>> 8);
+        } else {
+            memory.set(WORD, address, (short) data);
+        }
+    }
+
+    @Override
+    public void copyBlock(int source, int destination, int length, boolean increment) {
+        // a straight copy only matches the byte by byte copy if no byte is read after it has been written
+        if (increment ? ((destination <= source) || (destination >= source + length)) : ((destination >= source) || (destination <= source - length))) {
+            int offset = increment ? 0 : length - 1;
+            MemorySegment.copy(memory, source - offset, memory, destination - offset, length);
+        } else {
+            IMemory.super.copyBlock(source, destination, length, increment);
+        }
+    }
+
+    @Override
+    public void fill(int address, int length, int data) {
+        memory.asSlice(address, length).fill((byte) data);
+    }
+
+    @Override
+    public int indexOf(int address, int length, int data, boolean increment) {
+        byte value = (byte) data;
+        int step = increment ? 1 : -1;
+        for (int i = 0; i < length; i++) {
+            if (memory.get(ValueLayout.JAVA_BYTE, address + step * i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
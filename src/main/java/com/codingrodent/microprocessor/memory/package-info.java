@@ -0,0 +1,6 @@
+/**
+ * <p>
+ * Ready made memory implementations
+ * </p>
+ */
+package com.codingrodent.microprocessor.memory;
@@ -21,6 +21,16 @@ public class CPUConstants {
 
     // Pre-calculate parity table
     static final boolean[] PARITY_TABLE = new boolean[256];
+    // S, Z, 5, 3 and P/V flags for each 8 bit result
+    static final int[] SZ53P_TABLE = new int[256];
+    // Flags after INC / DEC of each value, C excluded
+    static final int[] INC_FLAGS_TABLE = new int[256];
+    static final int[] DEC_FLAGS_TABLE = new int[256];
+    // Flags after ADD / ADC and SUB / SBC, indexed by (carry << 16) | (a << 8) | b
+    static final byte[] ADD_FLAGS_TABLE = new byte[0x20000];
+    static final byte[] SUB_FLAGS_TABLE = new byte[0x20000];
+    // A and F after DAA, indexed by (N << 10) | (H << 9) | (C << 8) | A. The result is (A << 8) | F.
+    static final int[] DAA_TABLE = new int[2048];
     //
     // T States for all instructions (Where fixed) - If variable, handled locally
     final static byte[] OPCODE_T_STATES = new byte[]{4, 16, 7, 6, 4, 4, 7, 4, 4, 11, 7, 6, 4, 4, 7, 4,        // 0
@@ -175,6 +185,64 @@ public class CPUConstants {
             }
             position = position * 2;
         }
+        //
+        for (int value = 0; value < 256; value++) {
+            int flags = value & (flag_S | flag_5 | flag_3);
+            if (value == 0) flags = flags | flag_Z;
+            if (PARITY_TABLE[value]) flags = flags | flag_PV;
+            SZ53P_TABLE[value] = flags;
+        }
+        for (int value = 0; value < 256; value++) {
+            int inc = SZ53P_TABLE[(value + 1) & lsb] & flag_PV_N;
+            if ((value & 0x0F) == 0x0F) inc = inc | flag_H;
+            if (value == 0x7F) inc = inc | flag_PV;
+            INC_FLAGS_TABLE[value] = inc;
+            //
+            //
+            int dec = (SZ53P_TABLE[(value - 1) & lsb] & flag_PV_N) | flag_N;
+            if ((value & 0x0F) == 0x00) dec = dec | flag_H;
+            if (value == 0x80) dec = dec | flag_PV;
+            DEC_FLAGS_TABLE[value] = dec;
+        }
+        //
+        for (int carry = 0; carry < 2; carry++) {
+            for (int a = 0; a < 256; a++) {
+                for (int b = 0; b < 256; b++) {
+                    int index = (carry << 16) | (a << 8) | b;
+                    //
+                    int result = a + b + carry;
+                    int flags = SZ53P_TABLE[result & lsb] & flag_PV_N;
+                    if (((a & 0x0F) + (b & 0x0F) + carry) > 0x0F) flags = flags | flag_H;
+                    int signed = (byte) a + (byte) b + carry;
+                    if ((signed < -128) || (signed > 127)) flags = flags | flag_PV;
+                    if ((result & msb) != 0) flags = flags | flag_C;
+                    ADD_FLAGS_TABLE[index] = (byte) flags;
+                    //
+                    result = a - b - carry;
+                    flags = (SZ53P_TABLE[result & lsb] & flag_PV_N) | flag_N;
+                    if ((a & 0x0F) < ((b & 0x0F) + carry)) flags = flags | flag_H;
+                    signed = (byte) a - (byte) b - carry;
+                    if ((signed < -128) || (signed > 127)) flags = flags | flag_PV;
+                    if ((result & msb) != 0) flags = flags | flag_C;
+                    SUB_FLAGS_TABLE[index] = (byte) flags;
+                }
+            }
+        }
+        //
+        for (int index = 0; index < 2048; index++) {
+            int a = index & lsb;
+            boolean carry = (index & 0x100) != 0;
+            boolean halfCarry = (index & 0x200) != 0;
+            boolean subtract = (index & 0x400) != 0;
+            int correction = 0;
+            if (halfCarry || ((a & 0x0F) > 0x09)) correction = 0x06;
+            if (carry || (a > 0x9F) || ((a > 0x8F) && ((a & 0x0F) > 0x09))) correction = correction | 0x60;
+            if (a > 0x99) carry = true;
+            int result = (subtract ? a - correction : a + correction) & lsb;
+            int flags = (subtract ? SUB_FLAGS_TABLE : ADD_FLAGS_TABLE)[(a << 8) | correction];
+            flags = (flags & flag_H) | (subtract ? flag_N : 0) | SZ53P_TABLE[result] | (carry ? flag_C : 0);
+            DAA_TABLE[index] = (result << 8) | flags;
+        }
     }
 
     /**
@@ -247,6 +315,58 @@ public class CPUConstants {
         R
     }
 
+    /**
+     * Reasons for the batch execution methods of the core to return control to the caller
+     */
+    public enum RunResult {
+        /**
+         * The T state budget or instruction count given to the call has been used up
+         */
+        BUDGET_EXHAUSTED,
+        /**
+         * The processor has executed a HALT instruction
+         */
+        HALT,
+        /**
+         * A non-maskable interrupt has been accepted
+         */
+        NMI,
+        /**
+         * An instruction has accessed a watched address
+         */
+        WATCHPOINT,
+        /**
+         * The program counter has reached a breakpoint. The instruction there has not been executed.
+         */
+        BREAKPOINT
+    }
+
+    /**
+     * Instruction decode tables, each with its own T state table above
+     */
+    public enum OpcodeTable {
+        /**
+         * Unprefixed opcodes, OPCODE_T_STATES
+         */
+        MAIN,
+        /**
+         * CB prefixed opcodes, OPCODE_CB_STATES
+         */
+        CB,
+        /**
+         * ED prefixed opcodes, OPCODE_ED_STATES
+         */
+        ED,
+        /**
+         * DD or FD prefixed opcodes, OPCODE_DD_FD_STATES
+         */
+        DD_FD,
+        /**
+         * DD CB or FD CB prefixed opcodes, following the displacement, OPCODE_INDEXED_CB_STATES
+         */
+        DDCB
+    }
+
     /*
     Constructor - don't!
    */
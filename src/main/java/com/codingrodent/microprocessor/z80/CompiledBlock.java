@@ -0,0 +1,29 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+/**
+ * A basic block of Z80 code translated into JVM bytecode by the block compiler
+ */
+interface CompiledBlock {
+
+    /**
+     * Execute the block, leaving the program counter on the next instruction to be executed and the T state count
+     * updated
+     *
+     * @param core The processor core to operate on
+     */
+    void execute(Z80Core core);
+}
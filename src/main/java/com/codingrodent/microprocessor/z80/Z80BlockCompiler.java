@@ -0,0 +1,723 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.IMemory;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+
+import static com.codingrodent.microprocessor.z80.CPUConstants.OPCODE_T_STATES;
+import static java.lang.constant.ConstantDescs.*;
+
+/**
+ * Dynamic recompiler for the Z80 core.
+ * <p>
+ * Straight line runs of unprefixed instructions are translated into hidden classes using the ClassFile API. The hidden
+ * classes are nestmates of the core, so work directly on its registers and call its own ALU methods. Operands are
+ * folded into the generated code, removing the fetch and decode work. A block ends on a jump, call, return or any
+ * instruction the compiler does not handle (prefixed, I/O, EI, DI and HALT), which are left to the interpreter.
+ * <p>
+ * Blocks are discarded when the processor writes into them, and the addresses can then be compiled again once hot.
+ */
+final class Z80BlockCompiler {
+
+    // longest block in bytes, which also bounds the search when invalidating
+    private final static int MAX_BLOCK_BYTES = 64;
+    private final static int MAX_ADDRESS = 0xFFFF;
+    // blocks discarded more often than this are left to the interpreter
+    private final static int MAX_RECOMPILES = 4;
+    // hit count of an address never to be compiled, which is no longer counted
+    private final static int NEVER = -1;
+    //
+    private final static ClassDesc CD_CORE = Z80Core.class.describeConstable().orElseThrow();
+    private final static ClassDesc CD_BLOCK = CompiledBlock.class.describeConstable().orElseThrow();
+    private final static ClassDesc CD_HIDDEN = ClassDesc.of(Z80BlockCompiler.class.getPackageName(), "Z80Block");
+    private final static MethodTypeDesc MTD_V = MethodTypeDesc.of(CD_void);
+    private final static MethodTypeDesc MTD_I = MethodTypeDesc.of(CD_int);
+    private final static MethodTypeDesc MTD_Z = MethodTypeDesc.of(CD_boolean);
+    private final static MethodTypeDesc MTD_V_I = MethodTypeDesc.of(CD_void, CD_int);
+    private final static MethodTypeDesc MTD_I_I = MethodTypeDesc.of(CD_int, CD_int);
+    private final static MethodTypeDesc MTD_V_II = MethodTypeDesc.of(CD_void, CD_int, CD_int);
+    private final static MethodTypeDesc MTD_EXECUTE = MethodTypeDesc.of(CD_void, CD_CORE);
+    // generated code local holding the core
+    private final static int CORE = 1;
+    //
+    private final static String[] REG_8 = {"reg_B", "reg_C", "reg_D", "reg_E", "reg_H", "reg_L", null, "reg_A"};
+    // register pairs as used by push and pop, with AF in place of SP
+    private final static String[] GET_16 = {"getBC", "getDE", "getHL", "getAF"};
+    private final static String[] SET_16 = {"setBC", "setDE", "setHL", "setAF"};
+    private final static String[] ALU_8 = {"ALU8BitAdd", "ALU8BitAdc", "ALU8BitSub", "ALU8BitSbc", "ALU8BitAnd", "ALU8BitXor", "ALU8BitOr", "ALU8BitCp"};
+    private final static String[] FLAG_TEST = {"getZ", "getC", "getPV", "getS"};
+    //
+    // per opcode: instruction length (0 = not compiled), terminator and worst case T states
+    private final static int[] LENGTH = new int[256];
+    private final static boolean[] TERMINATOR = new boolean[256];
+    private final static int[] MAX_T_STATES = new int[256];
+
+    private final IMemory ram;
+    private final MethodHandles.Lookup lookup;
+    private final int hotThreshold;
+    //
+    private final CompiledBlock[] blocks = new CompiledBlock[MAX_ADDRESS + 1];
+    private final int[] blockBytes = new int[MAX_ADDRESS + 1];
+    private final int[] blockTStates = new int[MAX_ADDRESS + 1];
+    private final int[] hits = new int[MAX_ADDRESS + 1];
+    // number of compiled blocks covering each address
+    private final byte[] coverage = new byte[MAX_ADDRESS + 1];
+    private final byte[] recompiles = new byte[MAX_ADDRESS + 1];
+    private int blockCount;
+
+    static {
+        for (int opcode = 0; opcode < 256; opcode++) {
+            LENGTH[opcode] = 1;
+            MAX_T_STATES[opcode] = OPCODE_T_STATES[opcode];
+        }
+        // not compiled, left to the interpreter
+        for (int opcode : new int[]{0x76, 0xCB, 0xD3, 0xDB, 0xDD, 0xED, 0xF3, 0xFB, 0xFD}) {
+            LENGTH[opcode] = 0;
+        }
+        for (int opcode : new int[]{0x06, 0x0E, 0x16, 0x1E, 0x26, 0x2E, 0x36, 0x3E, 0xC6, 0xCE, 0xD6, 0xDE, 0xE6, 0xEE, 0xF6, 0xFE}) {
+            LENGTH[opcode] = 2;
+        }
+        for (int opcode : new int[]{0x01, 0x11, 0x21, 0x31, 0x22, 0x2A, 0x32, 0x3A}) {
+            LENGTH[opcode] = 3;
+        }
+        // jumps, calls and returns end a block
+        terminator(0x10, 2, 13); // djnz
+        terminator(0x18, 2, 12); // jr
+        for (int opcode = 0x20; opcode <= 0x38; opcode = opcode + 8) {
+            terminator(opcode, 2, 12); // jr cc
+        }
+        terminator(0xC3, 3, 10); // jp
+        terminator(0xCD, 3, 17); // call
+        terminator(0xC9, 1, 10); // ret
+        terminator(0xE9, 1, 4); // jp (hl)
+        for (int opcode = 0xC0; opcode <= 0xF8; opcode = opcode + 8) {
+            terminator(opcode, 1, 11); // ret cc
+            terminator(opcode + 2, 3, 10); // jp cc
+            terminator(opcode + 4, 3, 17); // call cc
+            terminator(opcode + 7, 1, 11); // rst
+        }
+    }
+
+    /**
+     * Create a block compiler for a core
+     *
+     * @param ram          The memory the core executes from
+     * @param lookup       Full privilege lookup on the core, used to define blocks as its nestmates
+     * @param hotThreshold Number of times an address is reached before it is compiled
+     */
+    Z80BlockCompiler(IMemory ram, MethodHandles.Lookup lookup, int hotThreshold) {
+        this.ram = ram;
+        this.lookup = lookup;
+        this.hotThreshold = hotThreshold;
+    }
+
+    private static void terminator(int opcode, int length, int tStates) {
+        LENGTH[opcode] = length;
+        TERMINATOR[opcode] = true;
+        MAX_T_STATES[opcode] = tStates;
+    }
+
+    /**
+     * Find the compiled block starting at an address, compiling it if it has just become hot
+     *
+     * @param pc Block address
+     * @return The block, or null if the address is to be interpreted
+     */
+    CompiledBlock lookup(int pc) {
+        CompiledBlock block = blocks[pc];
+        if ((null == block) && (NEVER != hits[pc]) && (++hits[pc] == hotThreshold)) {
+            block = compile(pc);
+        }
+        return block;
+    }
+
+    /**
+     * Worst case number of T states taken by the block at an address
+     *
+     * @param pc Block address
+     * @return T states
+     */
+    int maxTStates(int pc) {
+        return blockTStates[pc];
+    }
+
+    /**
+     * Number of blocks presently compiled
+     *
+     * @return Block count
+     */
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Called on every memory write made by the processor. Discard any blocks covering the address.
+     *
+     * @param address Address written to
+     * @return true if one or more blocks have been discarded
+     */
+    boolean written(int address) {
+        address = address & MAX_ADDRESS;
+        if (0 == coverage[address]) {
+            return false;
+        }
+        for (int offset = MAX_BLOCK_BYTES - 1; offset >= 0; offset--) {
+            int start = (address - offset) & MAX_ADDRESS;
+            if ((null != blocks[start]) && (offset < blockBytes[start])) {
+                discard(start);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Discard all compiled blocks and hit counts
+     */
+    void flush() {
+        Arrays.fill(blocks, null);
+        Arrays.fill(blockBytes, 0);
+        Arrays.fill(blockTStates, 0);
+        Arrays.fill(hits, 0);
+        Arrays.fill(coverage, (byte) 0);
+        Arrays.fill(recompiles, (byte) 0);
+        blockCount = 0;
+    }
+
+    private void discard(int pc) {
+        for (int i = 0; i < blockBytes[pc]; i++) {
+            coverage[(pc + i) & MAX_ADDRESS]--;
+        }
+        blocks[pc] = null;
+        blockBytes[pc] = 0;
+        blockTStates[pc] = 0;
+        hits[pc] = (++recompiles[pc] > MAX_RECOMPILES) ? NEVER : 0;
+        blockCount--;
+    }
+
+    /*
+     * Scan forward from pc to find the extent of the block, then generate and load it
+     */
+    private CompiledBlock compile(int pc) {
+        int bytes = 0;
+        int tStates = 0;
+        int instructions = 0;
+        while (true) {
+            int opcode = ram.readByte((pc + bytes) & MAX_ADDRESS);
+            int length = LENGTH[opcode];
+            if ((0 == length) || (bytes + length > MAX_BLOCK_BYTES)) {
+                break;
+            }
+            bytes = bytes + length;
+            tStates = tStates + MAX_T_STATES[opcode];
+            instructions++;
+            if (TERMINATOR[opcode]) {
+                break;
+            }
+        }
+        if (0 == instructions) {
+            hits[pc] = NEVER; // never worth trying again
+            return null;
+        }
+        final int count = instructions;
+        CompiledBlock block;
+        try {
+            byte[] classBytes = ClassFile.of().build(CD_HIDDEN, clb -> clb
+                    .withFlags(ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC)
+                    .withSuperclass(CD_Object)
+                    .withInterfaceSymbols(CD_BLOCK)
+                    .withMethodBody(INIT_NAME, MTD_V, ClassFile.ACC_PUBLIC, cob -> cob
+                            .aload(0)
+                            .invokespecial(CD_Object, INIT_NAME, MTD_V)
+                            .return_())
+                    .withMethodBody("execute", MTD_EXECUTE, ClassFile.ACC_PUBLIC, cob -> generate(cob, pc, count)));
+            Class<?> blockClass = lookup.defineHiddenClass(classBytes, true, MethodHandles.Lookup.ClassOption.NESTMATE).lookupClass();
+            block = (CompiledBlock) blockClass.getDeclaredConstructor().newInstance();
+        } catch (IllegalArgumentException | ReflectiveOperationException | LinkageError e) {
+            hits[pc] = NEVER; // leave it to the interpreter
+            return null;
+        }
+        blocks[pc] = block;
+        blockBytes[pc] = bytes;
+        blockTStates[pc] = tStates;
+        for (int i = 0; i < bytes; i++) {
+            coverage[(pc + i) & MAX_ADDRESS]++;
+        }
+        blockCount++;
+        return block;
+    }
+
+    /*
+     * Generate the body of execute() for the block at pc
+     */
+    private void generate(CodeBuilder cob, int pc, int count) {
+        var address = pc;
+        var tStates = 0;
+        for (int i = 0; i < count; i++) {
+            int opcode = ram.readByte(address);
+            int next = (address + LENGTH[opcode]) & MAX_ADDRESS;
+            int n = ram.readByte((address + 1) & MAX_ADDRESS);
+            int nn = n + (ram.readByte((address + 2) & MAX_ADDRESS) << 8);
+            if (TERMINATOR[opcode]) {
+                terminate(cob, opcode, address, next, n, nn, tStates);
+                return;
+            }
+            tStates = tStates + OPCODE_T_STATES[opcode];
+            if (instruction(cob, opcode, n, nn)) {
+                exitIfModified(cob, next, tStates);
+            }
+            address = next;
+        }
+        commit(cob, address, tStates);
+        cob.return_();
+    }
+
+    /*
+     * Generate a straight line instruction. Returns true if it writes to memory.
+     */
+    private boolean instruction(CodeBuilder cob, int opcode, int n, int nn) {
+        int r = (opcode >>> 3) & 0x07;
+        int rr = (opcode >>> 4) & 0x03;
+        if ((opcode >= 0x40) && (opcode <= 0x7F)) {
+            // ld r,r'
+            int source = opcode & 0x07;
+            if (6 == r) {
+                cob.aload(CORE);
+                getHL(cob);
+                get8Bit(cob, source);
+                call(cob, "writeByte", MTD_V_II);
+                return true;
+            }
+            if (r != source) {
+                cob.aload(CORE);
+                get8Bit(cob, source);
+                cob.putfield(CD_CORE, REG_8[r], CD_int);
+            }
+            return false;
+        }
+        if ((opcode >= 0x80) && (opcode <= 0xBF)) {
+            // alu a,r
+            cob.aload(CORE);
+            get8Bit(cob, opcode & 0x07);
+            call(cob, ALU_8[r], MTD_V_I);
+            return false;
+        }
+        switch (opcode & 0xC7) {
+            case 0x04, 0x05 -> {
+                // inc r / dec r
+                String alu = (0x04 == (opcode & 0xC7)) ? "ALU8BitInc" : "ALU8BitDec";
+                if (6 == r) {
+                    cob.aload(CORE);
+                    getHL(cob);
+                    cob.aload(CORE);
+                    get8Bit(cob, 6);
+                    call(cob, alu, MTD_I_I);
+                    call(cob, "writeByte", MTD_V_II);
+                    return true;
+                }
+                cob.aload(CORE);
+                cob.aload(CORE);
+                get8Bit(cob, r);
+                call(cob, alu, MTD_I_I);
+                cob.putfield(CD_CORE, REG_8[r], CD_int);
+                return false;
+            }
+            case 0x06 -> {
+                // ld r,n
+                if (6 == r) {
+                    cob.aload(CORE);
+                    getHL(cob);
+                    cob.loadConstant(n);
+                    call(cob, "writeByte", MTD_V_II);
+                    return true;
+                }
+                cob.aload(CORE);
+                cob.loadConstant(n);
+                cob.putfield(CD_CORE, REG_8[r], CD_int);
+                return false;
+            }
+            case 0xC6 -> {
+                // alu a,n
+                cob.aload(CORE);
+                cob.loadConstant(n);
+                call(cob, ALU_8[r], MTD_V_I);
+                return false;
+            }
+            default -> {
+            }
+        }
+        switch (opcode & 0xCF) {
+            case 0x01 -> {
+                // ld rr,nn
+                cob.aload(CORE);
+                cob.loadConstant(nn);
+                set16Bit(cob, rr);
+                return false;
+            }
+            case 0x03, 0x0B -> {
+                // inc rr / dec rr
+                cob.aload(CORE);
+                cob.aload(CORE);
+                get16Bit(cob, rr);
+                call(cob, (0x03 == (opcode & 0xCF)) ? "ALU16BitInc" : "ALU16BitDec", MTD_I_I);
+                set16Bit(cob, rr);
+                return false;
+            }
+            case 0x09 -> {
+                // add hl,rr
+                cob.aload(CORE);
+                cob.aload(CORE);
+                get16Bit(cob, rr);
+                call(cob, "ALU16BitAdd", MTD_I_I);
+                call(cob, "setHL", MTD_V_I);
+                return false;
+            }
+            case 0xC1 -> {
+                // pop rr
+                cob.aload(CORE);
+                readWord(cob, () -> getSP(cob));
+                call(cob, SET_16[rr], MTD_V_I);
+                cob.aload(CORE);
+                call(cob, "inc2SP", MTD_V);
+                return false;
+            }
+            case 0xC5 -> {
+                // push rr
+                cob.aload(CORE);
+                call(cob, "dec2SP", MTD_V);
+                cob.aload(CORE);
+                getSP(cob);
+                cob.aload(CORE);
+                call(cob, GET_16[rr], MTD_I);
+                call(cob, "writeWord", MTD_V_II);
+                return true;
+            }
+            default -> {
+            }
+        }
+        switch (opcode) {
+            case 0x00 -> {
+            } // nop
+            case 0x02, 0x12 -> {
+                // ld (bc),a / ld (de),a
+                cob.aload(CORE);
+                cob.aload(CORE);
+                call(cob, GET_16[rr], MTD_I);
+                cob.aload(CORE);
+                cob.getfield(CD_CORE, "reg_A", CD_int);
+                call(cob, "writeByte", MTD_V_II);
+                return true;
+            }
+            case 0x0A, 0x1A -> {
+                // ld a,(bc) / ld a,(de)
+                cob.aload(CORE);
+                readByte(cob, () -> {
+                    cob.aload(CORE);
+                    call(cob, GET_16[rr], MTD_I);
+                });
+                cob.putfield(CD_CORE, "reg_A", CD_int);
+            }
+            case 0x22 -> {
+                // ld (nn),hl
+                cob.aload(CORE);
+                cob.loadConstant(nn);
+                getHL(cob);
+                call(cob, "writeWord", MTD_V_II);
+                return true;
+            }
+            case 0x2A -> {
+                // ld hl,(nn)
+                cob.aload(CORE);
+                readWord(cob, () -> cob.loadConstant(nn));
+                call(cob, "setHL", MTD_V_I);
+            }
+            case 0x32 -> {
+                // ld (nn),a
+                cob.aload(CORE);
+                cob.loadConstant(nn);
+                cob.aload(CORE);
+                cob.getfield(CD_CORE, "reg_A", CD_int);
+                call(cob, "writeByte", MTD_V_II);
+                return true;
+            }
+            case 0x3A -> {
+                // ld a,(nn)
+                cob.aload(CORE);
+                readByte(cob, () -> cob.loadConstant(nn));
+                cob.putfield(CD_CORE, "reg_A", CD_int);
+            }
+            case 0x07 -> simple(cob, "RLCA");
+            case 0x08 -> simple(cob, "EXAFAF");
+            case 0x0F -> simple(cob, "RRCA");
+            case 0x17 -> simple(cob, "RLA");
+            case 0x1F -> simple(cob, "RRA");
+            case 0x27 -> simple(cob, "DAA");
+            case 0x2F -> simple(cob, "CPL");
+            case 0x37 -> simple(cob, "SCF");
+            case 0x3F -> simple(cob, "CCF");
+            case 0xD9 -> simple(cob, "EXX");
+            case 0xEB -> simple(cob, "EXDEHL");
+            case 0xE3 -> {
+                simple(cob, "EXSPHL");
+                return true;
+            }
+            case 0xF9 -> {
+                // ld sp,hl
+                cob.aload(CORE);
+                getHL(cob);
+                cob.putfield(CD_CORE, "reg_SP", CD_int);
+            }
+            default -> throw new IllegalStateException("Opcode not compilable " + opcode);
+        }
+        return false;
+    }
+
+    /*
+     * Generate a block ending jump, call or return. Every path stores PC and T states then returns.
+     */
+    private void terminate(CodeBuilder cob, int opcode, int address, int next, int n, int nn, int tStates) {
+        int relative = (address + 2 + (byte) n) & MAX_ADDRESS;
+        switch (opcode) {
+            case 0x10 -> {
+                // djnz
+                cob.aload(CORE);
+                cob.aload(CORE);
+                cob.getfield(CD_CORE, "reg_B", CD_int);
+                cob.iconst_1();
+                cob.isub();
+                cob.loadConstant(0x00FF);
+                cob.iand();
+                cob.putfield(CD_CORE, "reg_B", CD_int);
+                cob.aload(CORE);
+                cob.getfield(CD_CORE, "reg_B", CD_int);
+                Label notTaken = cob.newLabel();
+                cob.ifeq(notTaken);
+                incR(cob);
+                commitAndReturn(cob, relative, tStates + 13);
+                cob.labelBinding(notTaken);
+                commitAndReturn(cob, next, tStates + 8);
+            }
+            case 0x18 -> {
+                // jr
+                incR(cob);
+                commitAndReturn(cob, relative, tStates + 12);
+            }
+            case 0x20, 0x28, 0x30, 0x38 -> {
+                // jr cc
+                Label notTaken = cob.newLabel();
+                condition(cob, (opcode >>> 3) & 0x03, notTaken);
+                incR(cob);
+                commitAndReturn(cob, relative, tStates + 12);
+                cob.labelBinding(notTaken);
+                commitAndReturn(cob, next, tStates + 7);
+            }
+            case 0xC3 -> commitAndReturn(cob, nn, tStates + 10); // jp
+            case 0xCD -> {
+                // call
+                push(cob, next);
+                commitAndReturn(cob, nn, tStates + 17);
+            }
+            case 0xC9 -> {
+                // ret
+                pop(cob);
+                tStates(cob, tStates + 10);
+                cob.return_();
+            }
+            case 0xE9 -> {
+                // jp (hl)
+                cob.aload(CORE);
+                getHL(cob);
+                cob.putfield(CD_CORE, "reg_PC", CD_int);
+                tStates(cob, tStates + OPCODE_T_STATES[opcode]);
+                cob.return_();
+            }
+            default -> {
+                if (0x07 == (opcode & 0x07)) {
+                    // rst
+                    push(cob, next);
+                    commitAndReturn(cob, opcode & 0x38, tStates + 11);
+                    return;
+                }
+                Label notTaken = cob.newLabel();
+                condition(cob, (opcode >>> 3) & 0x07, notTaken);
+                switch (opcode & 0x07) {
+                    case 0x00 -> {
+                        // ret cc
+                        pop(cob);
+                        tStates(cob, tStates + 11);
+                        cob.return_();
+                        cob.labelBinding(notTaken);
+                        commitAndReturn(cob, next, tStates + 5);
+                    }
+                    case 0x02 -> {
+                        // jp cc
+                        commitAndReturn(cob, nn, tStates + 10);
+                        cob.labelBinding(notTaken);
+                        commitAndReturn(cob, next, tStates + 10);
+                    }
+                    default -> {
+                        // call cc
+                        push(cob, next);
+                        commitAndReturn(cob, nn, tStates + 17);
+                        cob.labelBinding(notTaken);
+                        commitAndReturn(cob, next, tStates + 10);
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Branch to notTaken unless condition code cc (NZ, Z, NC, C, PO, PE, P, M) holds
+     */
+    private void condition(CodeBuilder cob, int cc, Label notTaken) {
+        cob.aload(CORE);
+        call(cob, FLAG_TEST[cc >>> 1], MTD_Z);
+        if (0 == (cc & 0x01)) {
+            cob.ifne(notTaken);
+        } else {
+            cob.ifeq(notTaken);
+        }
+    }
+
+    private void push(CodeBuilder cob, int value) {
+        cob.aload(CORE);
+        call(cob, "dec2SP", MTD_V);
+        cob.aload(CORE);
+        getSP(cob);
+        cob.loadConstant(value);
+        call(cob, "writeWord", MTD_V_II);
+    }
+
+    private void pop(CodeBuilder cob) {
+        cob.aload(CORE);
+        readWord(cob, () -> getSP(cob));
+        cob.putfield(CD_CORE, "reg_PC", CD_int);
+        cob.aload(CORE);
+        call(cob, "inc2SP", MTD_V);
+    }
+
+    private void incR(CodeBuilder cob) {
+        cob.aload(CORE);
+        cob.dup();
+        cob.getfield(CD_CORE, "reg_R", CD_int);
+        cob.iconst_1();
+        cob.iadd();
+        cob.putfield(CD_CORE, "reg_R", CD_int);
+    }
+
+    /*
+     * If the last write hit compiled code, leave the block so the interpreter sees the new code
+     */
+    private void exitIfModified(CodeBuilder cob, int next, int tStates) {
+        Label carryOn = cob.newLabel();
+        cob.aload(CORE);
+        cob.getfield(CD_CORE, "codeModified", CD_boolean);
+        cob.ifeq(carryOn);
+        commitAndReturn(cob, next, tStates);
+        cob.labelBinding(carryOn);
+    }
+
+    private void commitAndReturn(CodeBuilder cob, int pc, int tStates) {
+        commit(cob, pc, tStates);
+        cob.return_();
+    }
+
+    private void commit(CodeBuilder cob, int pc, int tStates) {
+        cob.aload(CORE);
+        cob.loadConstant(pc);
+        cob.putfield(CD_CORE, "reg_PC", CD_int);
+        tStates(cob, tStates);
+    }
+
+    private void tStates(CodeBuilder cob, int tStates) {
+        cob.aload(CORE);
+        cob.dup();
+        cob.getfield(CD_CORE, "tStates", CD_long);
+        cob.loadConstant((long) tStates);
+        cob.ladd();
+        cob.putfield(CD_CORE, "tStates", CD_long);
+    }
+
+    private void simple(CodeBuilder cob, String method) {
+        cob.aload(CORE);
+        call(cob, method, MTD_V);
+    }
+
+    private void call(CodeBuilder cob, String method, MethodTypeDesc type) {
+        cob.invokevirtual(CD_CORE, method, type);
+    }
+
+    /*
+     * push an 8 bit register, or (hl), onto the stack
+     */
+    private void get8Bit(CodeBuilder cob, int r) {
+        if (6 == r) {
+            readByte(cob, () -> getHL(cob));
+        } else {
+            cob.aload(CORE);
+            cob.getfield(CD_CORE, REG_8[r], CD_int);
+        }
+    }
+
+    private void get16Bit(CodeBuilder cob, int rr) {
+        if (3 == rr) {
+            getSP(cob);
+        } else {
+            cob.aload(CORE);
+            call(cob, GET_16[rr], MTD_I);
+        }
+    }
+
+    /*
+     * store the value on the stack, with the core beneath it, into a register pair
+     */
+    private void set16Bit(CodeBuilder cob, int rr) {
+        if (3 == rr) {
+            cob.putfield(CD_CORE, "reg_SP", CD_int);
+        } else {
+            call(cob, SET_16[rr], MTD_V_I);
+        }
+    }
+
+    private void getHL(CodeBuilder cob) {
+        cob.aload(CORE);
+        call(cob, "getHL", MTD_I);
+    }
+
+    private void getSP(CodeBuilder cob) {
+        cob.aload(CORE);
+        cob.getfield(CD_CORE, "reg_SP", CD_int);
+    }
+
+    private void readByte(CodeBuilder cob, Runnable address) {
+        cob.aload(CORE);
+        address.run();
+        call(cob, "readByte", MTD_I_I);
+    }
+
+    private void readWord(CodeBuilder cob, Runnable address) {
+        cob.aload(CORE);
+        address.run();
+        call(cob, "readWord", MTD_I_I);
+    }
+}
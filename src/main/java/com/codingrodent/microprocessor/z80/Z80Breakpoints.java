@@ -0,0 +1,134 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.IBreakpointCondition;
+
+/**
+ * Program counter breakpoints for the Z80 core, held as a 64K bit bitmap so the check before each instruction is a
+ * single bit test. Conditions are only looked up for addresses with their bit set. One further temporary breakpoint
+ * may be set, for running to an address.
+ */
+final class Z80Breakpoints {
+    private final static int MAX_ADDRESS = 0xFFFF;
+    private final static int NONE = -1;
+
+    // every address to stop at, including the temporary breakpoint
+    private final long[] active = new long[(MAX_ADDRESS + 1) >>> 6];
+    private final long[] permanent = new long[(MAX_ADDRESS + 1) >>> 6];
+    private IBreakpointCondition[] conditions;
+    private int count;
+    private int temporary = NONE;
+
+    /**
+     * Add a breakpoint, replacing any already at the address
+     *
+     * @param address   The address
+     * @param condition Condition to test when reached, or null to always stop
+     */
+    void add(int address, IBreakpointCondition condition) {
+        address = address & MAX_ADDRESS;
+        if (!isSet(permanent, address)) {
+            count++;
+        }
+        set(permanent, address);
+        set(active, address);
+        if (null != condition) {
+            if (null == conditions) {
+                conditions = new IBreakpointCondition[MAX_ADDRESS + 1];
+            }
+            conditions[address] = condition;
+        } else if (null != conditions) {
+            conditions[address] = null;
+        }
+    }
+
+    /**
+     * Remove a breakpoint
+     *
+     * @param address The address
+     */
+    void remove(int address) {
+        address = address & MAX_ADDRESS;
+        if (isSet(permanent, address)) {
+            count--;
+            clear(permanent, address);
+            if (address != temporary) {
+                clear(active, address);
+            }
+            if (null != conditions) {
+                conditions[address] = null;
+            }
+        }
+    }
+
+    /**
+     * Set the temporary breakpoint, which always stops
+     *
+     * @param address The address
+     */
+    void setTemporary(int address) {
+        clearTemporary();
+        temporary = address & MAX_ADDRESS;
+        set(active, temporary);
+    }
+
+    /**
+     * Remove the temporary breakpoint
+     */
+    void clearTemporary() {
+        if (NONE != temporary) {
+            if (!isSet(permanent, temporary)) {
+                clear(active, temporary);
+            }
+            temporary = NONE;
+        }
+    }
+
+    /**
+     * @return True if no breakpoints are set
+     */
+    boolean isEmpty() {
+        return (0 == count) && (NONE == temporary);
+    }
+
+    /**
+     * Test whether to stop at an address
+     *
+     * @param address Program counter, 0x0000 to 0xFFFF
+     * @return True if a breakpoint is set there and its condition, if any, is met
+     */
+    boolean isHit(int address) {
+        if (!isSet(active, address)) {
+            return false;
+        }
+        if ((address == temporary) || (null == conditions) || (null == conditions[address])) {
+            return true;
+        }
+        return conditions[address].test(address);
+    }
+
+    private static boolean isSet(long[] bits, int address) {
+        return 0 != (bits[address >>> 6] & (1L << address));
+    }
+
+    private static void set(long[] bits, int address) {
+        bits[address >>> 6] = bits[address >>> 6] | (1L << address);
+    }
+
+    private static void clear(long[] bits, int address) {
+        bits[address >>> 6] = bits[address >>> 6] & ~(1L << address);
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Call graph of the T states taken by each routine, split by the chain of calls which reached it. Calls are taken from
+ * CALL and RST instructions which push a return address, and from interrupts being accepted, each starting a routine
+ * at the address jumped to. A shadow stack holds a frame for each call, along with the stack pointer just after its
+ * return address was pushed.
+ * <p>
+ * A frame ends once the stack pointer rises above its return address, whether by RET, RETI or RETN, by the return
+ * address being popped, or by the stack being reset. Frames cannot be left behind by code which discards return
+ * addresses. A tail call through JP (HL) or similar pushes nothing, so its T states count to the routine which made
+ * it.
+ * <p>
+ * The graph is held as a tree of call paths in arrays of primitives. Objects are only created for a path the first
+ * time it is seen. {@link #writeCollapsed(Appendable)} writes the collapsed stack format read by flame graph tools.
+ * <p>
+ * Enable profiling with {@link Z80Core#enableCallProfiler(Z80CallProfiler)}.
+ */
+public final class Z80CallProfiler {
+    private final static String ROOT = "root";
+    private final static int INITIAL_SIZE = 256;
+
+    // tree of call paths, node 0 being the root
+    private int[] parents = new int[INITIAL_SIZE];
+    private int[] addresses = new int[INITIAL_SIZE];
+    private long[] exclusive = new long[INITIAL_SIZE];
+    private long[] calls = new long[INITIAL_SIZE];
+    private int nodes = 1;
+    // children of each node by address, open addressing
+    private long[] keys = new long[INITIAL_SIZE * 2];
+    private int[] children = new int[INITIAL_SIZE * 2];
+    // shadow stack
+    private int[] stackNodes = new int[INITIAL_SIZE];
+    private int[] stackPointers = new int[INITIAL_SIZE];
+    private int depth;
+    private int current;
+    //
+    private final Z80Symbols symbols = new Z80Symbols();
+
+    /*
+     * Account for an instruction, given its first four bytes, first byte lowest, and the stack pointer and program
+     * counter before and after it executed
+     */
+    void record(int bytes, int oldSP, int sp, int pc, long taken) {
+        exclusive[current] = exclusive[current] + taken;
+        if (isCall(bytes & 0xFF) && (((oldSP - 2) & 0xFFFF) == sp)) {
+            enter(pc, sp);
+        } else if (oldSP != sp) {
+            unwind(sp);
+        }
+    }
+
+    /*
+     * Account for an interrupt being accepted, given the stack pointer before and after
+     */
+    void interrupt(int oldSP, int sp, int pc, long taken) {
+        exclusive[current] = exclusive[current] + taken;
+        if (((oldSP - 2) & 0xFFFF) == sp) {
+            enter(pc, sp);
+        }
+    }
+
+    /*
+     * CALL nn, CALL cc,nn or RST n
+     */
+    private static boolean isCall(int opcode) {
+        return (0xCD == opcode) || (0xC4 == (opcode & 0xC7)) || (0xC7 == (opcode & 0xC7));
+    }
+
+    /*
+     * Start a routine
+     */
+    private void enter(int address, int sp) {
+        if (depth == stackNodes.length) {
+            stackNodes = Arrays.copyOf(stackNodes, depth * 2);
+            stackPointers = Arrays.copyOf(stackPointers, depth * 2);
+        }
+        stackNodes[depth] = current;
+        stackPointers[depth] = sp;
+        depth++;
+        current = getChild(current, address);
+        calls[current]++;
+    }
+
+    /*
+     * End every routine whose return address is below the stack pointer. Addresses up to 32K below count, so a stack
+     * may wrap around the top of memory, and moving the stack down leaves the frames alone.
+     */
+    private void unwind(int sp) {
+        while (depth > 0) {
+            int distance = (sp - stackPointers[depth - 1]) & 0xFFFF;
+            if ((0 == distance) || (distance > 0x7FFF)) {
+                return;
+            }
+            depth--;
+            current = stackNodes[depth];
+        }
+    }
+
+    /*
+     * Node for a call to an address from a node, added if not yet seen
+     */
+    private int getChild(int parent, int address) {
+        long key = getKey(parent, address);
+        int mask = keys.length - 1;
+        int slot = getSlot(key, mask);
+        while (0 != keys[slot]) {
+            if (key == keys[slot]) {
+                return children[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (nodes == parents.length) {
+            parents = Arrays.copyOf(parents, nodes * 2);
+            addresses = Arrays.copyOf(addresses, nodes * 2);
+            exclusive = Arrays.copyOf(exclusive, nodes * 2);
+            calls = Arrays.copyOf(calls, nodes * 2);
+        }
+        int node = nodes++;
+        parents[node] = parent;
+        addresses[node] = address;
+        keys[slot] = key;
+        children[slot] = node;
+        if (nodes * 2 > keys.length) {
+            rehash();
+        }
+        return node;
+    }
+
+    /*
+     * Child lookup key of a call to an address from a node, never zero
+     */
+    private static long getKey(int parent, int address) {
+        return (((long) parent) << 16) | address | (1L << 63);
+    }
+
+    /*
+     * First slot to try for a key
+     */
+    private static int getSlot(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /*
+     * Double the child lookup table
+     */
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldChildren = children;
+        keys = new long[oldKeys.length * 2];
+        children = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (0 != oldKeys[i]) {
+                long key = oldKeys[i];
+                int slot = getSlot(key, mask);
+                while (0 != keys[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                children[slot] = oldChildren[i];
+            }
+        }
+    }
+
+    /**
+     * Name an address, for the collapsed stack output. Replaces any symbol already at the address.
+     *
+     * @param name    Symbol
+     * @param address Address
+     */
+    public void addSymbol(String name, int address) {
+        symbols.add(name, address);
+    }
+
+    /**
+     * Read symbols from a map or symbol file, in the same forms as {@link Z80HotspotProfiler#loadSymbols(Path)}
+     *
+     * @param path File to read
+     * @throws IOException Thrown if the file cannot be read
+     */
+    public void loadSymbols(Path path) throws IOException {
+        symbols.load(path);
+    }
+
+    /**
+     * @return Number of routines on the shadow stack
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get the T states taken by a routine itself, not counting the routines it called
+     *
+     * @param path Addresses of the routines called, outermost first, or none for code outside any call
+     * @return T states, zero if the path was never taken
+     */
+    public long getExclusiveTStates(int... path) {
+        int node = find(path);
+        return (node < 0) ? 0 : exclusive[node];
+    }
+
+    /**
+     * Get the T states taken by a routine and the routines it called
+     *
+     * @param path Addresses of the routines called, outermost first, or none for everything
+     * @return T states, zero if the path was never taken
+     */
+    public long getInclusiveTStates(int... path) {
+        int node = find(path);
+        if (node < 0) {
+            return 0;
+        }
+        long[] inclusive = getInclusive();
+        return inclusive[node];
+    }
+
+    /**
+     * Get the number of times a routine was called by a path
+     *
+     * @param path Addresses of the routines called, outermost first
+     * @return Calls, zero if the path was never taken
+     */
+    public long getCalls(int... path) {
+        int node = find(path);
+        return (node < 0) ? 0 : calls[node];
+    }
+
+    /**
+     * Discard the graph and the shadow stack, keeping the symbols
+     */
+    public void clear() {
+        Arrays.fill(exclusive, 0, nodes, 0);
+        Arrays.fill(calls, 0, nodes, 0);
+        Arrays.fill(keys, 0);
+        nodes = 1;
+        depth = 0;
+        current = 0;
+    }
+
+    /**
+     * Write the graph in collapsed stack format, one line for each call path with T states of its own. Each line holds
+     * the routines on the path, outermost first after "root", separated by ';', then a space and the exclusive T states.
+     * Routines are named by symbol, or by address in hex.
+     *
+     * @param out Destination
+     * @throws IOException Thrown if the destination cannot be written to
+     */
+    public void writeCollapsed(Appendable out) throws IOException {
+        var line = new StringBuilder();
+        for (int node = 0; node < nodes; node++) {
+            if (0 != exclusive[node]) {
+                line.setLength(0);
+                for (int frame = node; 0 != frame; frame = parents[frame]) {
+                    line.insert(0, ';' + symbols.getName(addresses[frame]));
+                }
+                out.append(ROOT).append(line).append(' ').append(Long.toString(exclusive[node])).append(System.lineSeparator());
+            }
+        }
+    }
+
+    /*
+     * Node for a path from the root, or -1 if never taken
+     */
+    private int find(int... path) {
+        int node = 0;
+        for (int address : path) {
+            long key = getKey(node, address & 0xFFFF);
+            int mask = keys.length - 1;
+            int slot = getSlot(key, mask);
+            while ((0 != keys[slot]) && (key != keys[slot])) {
+                slot = (slot + 1) & mask;
+            }
+            if (0 == keys[slot]) {
+                return -1;
+            }
+            node = children[slot];
+        }
+        return node;
+    }
+
+    /*
+     * Inclusive T states of every node. A child is always added after its parent, so working back from the last node
+     * adds each child into its parent after its own children.
+     */
+    private long[] getInclusive() {
+        long[] inclusive = Arrays.copyOf(exclusive, nodes);
+        for (int node = nodes - 1; node > 0; node--) {
+            inclusive[parents[node]] = inclusive[parents[node]] + inclusive[node];
+        }
+        return inclusive;
+    }
+}
@@ -15,11 +15,18 @@
 
 package com.codingrodent.microprocessor.z80;
 
+import com.codingrodent.microprocessor.DirectMemory;
 import com.codingrodent.microprocessor.IBaseDevice;
+import com.codingrodent.microprocessor.IBreakpointCondition;
+import com.codingrodent.microprocessor.IEvent;
 import com.codingrodent.microprocessor.ICPUData;
+import com.codingrodent.microprocessor.IExecutionListener;
 import com.codingrodent.microprocessor.IMemory;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+
 import static com.codingrodent.microprocessor.z80.CPUConstants.*;
 
 /**
@@ -30,8 +37,26 @@ public class Z80Core implements ICPUData {
     //
     // maximum address size
     private final static int MAX_ADDRESS = 0xFFFF;
+    // interrupt requests waiting to be accepted
+    private final static int PENDING_NMI = 1;
+    private final static int PENDING_INT = 2;
+    // operation whose flags are still to be evaluated into reg_F
+    private final static int FLAGS_VALID = 0;
+    private final static int FLAGS_ADD = 1;
+    private final static int FLAGS_SUB = 2;
+    private final static int FLAGS_CP = 3;
+    private final static int FLAGS_AND = 4;
+    private final static int FLAGS_OR = 5;
+    private final static int FLAGS_INC = 6;
+    private final static int FLAGS_DEC = 7;
     private final IMemory ram;
     private final IBaseDevice io;
+    /* direct memory access, null entries go through the memory interface */
+    private final byte[][] readPages, writePages;
+    private final int pageShift, pageMask;
+    // page table changes last seen, so banks switched under decoded or compiled code are noticed
+    private final DirectMemory direct;
+    private int mapping;
     //
     private int instruction;
     private boolean halt;
@@ -42,12 +67,45 @@ public class Z80Core implements ICPUData {
     private int reg_IX, reg_IY, reg_PC, reg_SP;
     private int reg_A, reg_A_ALT, reg_F, reg_F_ALT, reg_I, reg_R, reg_R8;
     private int reg_index;
+    /* deferred flag evaluation */
+    private int flagOp, flagLeft, flagRight, flagCarry, flagResult;
     private boolean EIDIFlag;
     private boolean IFF1, IFF2;
-    private boolean NMI_FF;
+    private int pending;
+    private int intDataBus;
+    private boolean intLevel;
     private boolean blockMove;
+    private int moveResume = -1;
+    // breakpoint reached by an NMI, reported by the next call
+    private int nmiBreakpoint = -1;
+    private long tStateLimit = Long.MAX_VALUE;
+    private boolean haltFastForward;
+    //
+    private final Z80EventScheduler scheduler = new Z80EventScheduler();
+    private long nextEvent = Long.MAX_VALUE;
     private int resetAddress;
     private int interruptMode;
+    //
+    private Z80BlockCompiler blockCompiler;
+    private boolean codeModified;
+    //
+    private Z80DecodeCache decodeCache;
+    private int instructionStart, instructionBytes, instructionLength;
+    //
+    private Z80Watchpoints watchpoints;
+    private Z80Breakpoints breakpoints;
+    private Z80TraceSink trace;
+    private Z80OpcodeProfiler opcodeProfiler;
+    private Z80HotspotProfiler hotspotProfiler;
+    private Z80CallProfiler callProfiler;
+    private IExecutionListener[] listeners;
+    // true while watchpoints are set or listeners attached, so data accesses carry a single test
+    private boolean monitoring;
+    private boolean stopPending;
+    private int watchAddress, watchValue, watchPC;
+    private boolean watchWrite;
+    //
+    private final int[] ioBuffer = new int[256];
 
     /**
      * Standard constructor. Set the processor up with a memory and I/O interface.
@@ -59,10 +117,30 @@ public class Z80Core implements ICPUData {
     public Z80Core(IMemory ram, IBaseDevice io) {
         this.ram = ram;
         this.io = io;
+        direct = ram.getDirectMemory();
+        if (null == direct) {
+            readPages = writePages = null;
+            pageShift = pageMask = 0;
+        } else {
+            readPages = direct.getReadPages();
+            writePages = direct.getWritePages();
+            pageShift = direct.getPageShift();
+            pageMask = (1 << pageShift) - 1;
+            mapping = direct.getGeneration();
+        }
         tStates = 0;
         //
         blockMove = false;
+        moveResume = -1;
         resetAddress = 0x0000;
+        nmiBreakpoint = -1;
+    }
+
+    /*
+     * full privilege lookup on the core, used to define specialised copies of it as nestmates
+     */
+    static MethodHandles.Lookup lookup() {
+        return MethodHandles.lookup();
     }
 
     /*
@@ -71,7 +149,7 @@ public class Z80Core implements ICPUData {
 
     /**
      * Indicate when a block move instruction is in progress, LDIR, CPDR etc. May be sampled during repetitive cycles of
-     * the instruction
+     * the instruction, or after {@link #run(long)} returns part way through one when its budget ran out
      *
      * @return true represents a block move, else false if not executing
      */
@@ -89,13 +167,15 @@ public class Z80Core implements ICPUData {
         reg_B_ALT = reg_C_ALT = reg_D_ALT = reg_E_ALT = reg_H_ALT = reg_L_ALT = 0;
         reg_IX = reg_IY = reg_SP = 0;
         reg_A = reg_A_ALT = reg_F = reg_F_ALT = reg_I = reg_R = reg_R8 = 0;
+        flagOp = FLAGS_VALID;
         IFF1 = IFF2 = false;
         EIDIFlag = false;
-        NMI_FF = false;
+        pending = 0;
+        intLevel = false;
         //
         reg_PC = resetAddress;
         //
-        tStates = 0;
+        resetTStates();
         interruptMode = 0;
     }
 
@@ -110,7 +190,40 @@ public class Z80Core implements ICPUData {
      * Initiate an NMI request
      */
     public void setNMI() {
-        NMI_FF = true;
+        pending = pending | PENDING_NMI;
+    }
+
+    /**
+     * Initiate a maskable interrupt request (edge triggered). The request is held until interrupts are enabled and it
+     * is accepted, and is then cleared.
+     *
+     * @param dataBus Value the interrupting device places on the data bus. In IM 0 a one byte instruction, normally an
+     *                RST. In IM 2 the low byte of the vector table address. Not used in IM 1.
+     */
+    public void setINT(int dataBus) {
+        intDataBus = dataBus & 0xFF;
+        intLevel = false;
+        pending = pending | PENDING_INT;
+    }
+
+    /**
+     * Hold the maskable interrupt line active (level triggered). An interrupt is accepted each time interrupts are
+     * enabled until {@link #clearINT()} is called.
+     *
+     * @param dataBus Value the interrupting device places on the data bus, as for {@link #setINT(int)}
+     */
+    public void setINTLevel(int dataBus) {
+        intDataBus = dataBus & 0xFF;
+        intLevel = true;
+        pending = pending | PENDING_INT;
+    }
+
+    /**
+     * Withdraw any maskable interrupt request, edge or level triggered
+     */
+    public void clearINT() {
+        intLevel = false;
+        pending = pending & ~PENDING_INT;
     }
 
     /**
@@ -147,6 +260,8 @@ public class Z80Core implements ICPUData {
      */
     public void setProgramCounter(int pc) {
         reg_PC = pc & 0xFFFF;
+        moveResume = -1;
+        nmiBreakpoint = -1;
     }
 
     /**
@@ -178,7 +293,7 @@ public class Z80Core implements ICPUData {
             case SP -> getSP();
             case PC -> reg_PC;
             case A -> reg_A;
-            case F -> reg_F;
+            case F -> flags();
             case A_ALT -> reg_A_ALT;
             case F_ALT -> reg_F_ALT;
             case I -> reg_I;
@@ -205,7 +320,7 @@ public class Z80Core implements ICPUData {
             case SP -> reg_SP = value & 0xFFFF;
             case PC -> setProgramCounter(value);
             case A -> reg_A = value & 0xFF;
-            case F -> reg_F = value & 0xFF;
+            case F -> setAF((reg_A << 8) | (value & 0xFF));
             case A_ALT -> reg_A_ALT = value & 0xFF;
             case F_ALT -> reg_F_ALT = value & 0xFF;
             case I -> reg_I = value & 0xFF;
@@ -227,344 +342,1201 @@ public class Z80Core implements ICPUData {
      * is updated along with the T state count.
      */
     public void executeOneInstruction() {
+        tStateLimit = Long.MAX_VALUE;
+        if (tStates >= nextEvent) {
+            fireEvents();
+        }
         //
-        // NMI check first
-        if (NMI_FF) {
-            // can't interrupt straight after an EI or DI
-            if (!EIDIFlag) {
-                NMI_FF = false; // interrupt accepted
-                IFF2 = IFF1; // store IFF state
-                dec2SP();
-                if (halt) {
-                    incPC(); // Was a bug ! - point to instruction after(!) interrupt location. HALT decrements PC !!!
+        // interrupt check first
+        if (0 != pending) {
+            acceptInterruptDebug();
+        }
+        fetchAndDecodeDebug();
+    }
+
+    /**
+     * Execute instructions until at least the given number of T states have elapsed, a HALT instruction is executed,
+     * an NMI is accepted, or a breakpoint or watchpoint is hit. The final instruction is always completed, so the
+     * budget may be overrun by up to one instruction. Repeating block instructions (LDIR, CPIR etc.) stop once the
+     * budget is used and carry on from the same point on the next call.
+     *
+     * @param tStateBudget Number of T states to run for
+     * @return The reason for returning
+     */
+    public RunResult run(long tStateBudget) {
+        final long limit = (tStateBudget > Long.MAX_VALUE - tStates) ? Long.MAX_VALUE : tStates + tStateBudget;
+        tStateLimit = limit;
+        if (isDebugging()) {
+            return runDebug(limit, Long.MAX_VALUE);
+        }
+        if (null != blockCompiler) {
+            return runCompiled(limit);
+        }
+        while (tStates < limit) {
+            if ((tStates >= nextEvent) && fireEvents()) {
+                return RunResult.WATCHPOINT;
+            }
+            boolean nmiTaken = (0 != pending) && acceptInterrupt();
+            fetchAndDecode();
+            if (nmiTaken) {
+                return RunResult.NMI;
+            }
+            if (halt) {
+                if (skipHalt(limit)) {
+                    continue;
                 }
-                ram.writeWord(reg_SP, reg_PC);
-                reg_PC = 0x0066; // NMI routine location
+                return RunResult.HALT;
             }
         }
-        halt = false;
-        instruction = ram.readByte(reg_PC);
-        incPC();
-        EIDIFlag = false; // clear prior to decoding next instruction
-        decodeOneByteInstruction(instruction);
+        return budgetExhausted();
+    }
+
+    /*
+     * True while breakpoints are set, or a trace or profiler is enabled
+     */
+    private boolean isDebugging() {
+        return (null != breakpoints) || (null != trace) || (null != opcodeProfiler) || (null != hotspotProfiler) || (null != callProfiler) || (null != listeners);
+    }
+
+    /*
+     * run() and runInstructions() while breakpoints are set, or a trace or profiler is enabled, so the other run loops
+     * carry no test for any of them. The program counter is checked before each instruction, after any interrupt has been
+     * accepted. A breakpoint at the address the call starts from is passed over, so a stopped program can be
+     * continued, unless an NMI accepted at the end of the last call reached it. That call returned NMI, leaving the
+     * breakpoint to be reported now. Compiled blocks are not used, as they could run past a breakpoint and would leave
+     * gaps in the trace.
+     */
+    private RunResult runDebug(final long limit, final long count) {
+        final int start = reg_PC;
+        final boolean passOver = (start != nmiBreakpoint);
+        nmiBreakpoint = -1;
+        for (long i = 0; (i < count) && (tStates < limit); i++) {
+            if ((tStates >= nextEvent) && fireEvents()) {
+                return RunResult.WATCHPOINT;
+            }
+            boolean nmiTaken = (0 != pending) && acceptInterruptDebug();
+            if (((0 != i) || (start != reg_PC) || !passOver) && (null != breakpoints) && breakpoints.isHit(reg_PC)) {
+                if (nmiTaken) {
+                    nmiBreakpoint = reg_PC;
+                    return RunResult.NMI;
+                }
+                return RunResult.BREAKPOINT;
+            }
+            fetchAndDecodeDebug();
+            if (nmiTaken) {
+                return RunResult.NMI;
+            }
+            if (halt) {
+                if ((Long.MAX_VALUE == count) && skipHalt(limit)) {
+                    continue;
+                }
+                return RunResult.HALT;
+            }
+        }
+        return budgetExhausted();
     }
 
     /**
-     * Return the number of T states since last reset
+     * Stop {@link #run(long)} and {@link #runInstructions(int)} with {@link RunResult#BREAKPOINT} when the program
+     * counter reaches an address, before the instruction there is executed. Any breakpoint already at the address is
+     * replaced. While no breakpoints are set the run loops make no breakpoint test at all.
+     * <p>
+     * If an NMI is accepted straight onto a breakpoint, the call returns {@link RunResult#NMI} without executing the
+     * handler, and the next call returns {@link RunResult#BREAKPOINT} before executing it.
      *
-     * @return Processor T states
+     * @param address The address
      */
-    public long getTStates() {
-        return tStates;
+    public void addBreakpoint(int address) {
+        addBreakpoint(address, null);
     }
 
     /**
-     * Reset the T state counter to zero
+     * Add a conditional breakpoint, only stopping if the condition is met when the address is reached
+     *
+     * @param address   The address
+     * @param condition The condition, or null to always stop
      */
-    public void resetTStates() {
-        tStates = 0;
+    public void addBreakpoint(int address, IBreakpointCondition condition) {
+        if (null == breakpoints) {
+            breakpoints = new Z80Breakpoints();
+        }
+        breakpoints.add(address, condition);
     }
 
     /**
-     * Execute all one byte instructions and pass multibyte instructions on for further processing
+     * Remove a breakpoint
      *
-     * @param opcode Instruction byte
+     * @param address The address
      */
-    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Bytes can only be 0..255")
-    private void decodeOneByteInstruction(int opcode) {
-        tStates = tStates + OPCODE_T_STATES[opcode];
-        switch (opcode) {
-            case 0x00 -> {
-            } // null
-            case 0x01 -> {
-                setBC(ram.readWord(reg_PC));
-                inc2PC();
-            } // LD bc, nnnn
-            case 0x02 -> ram.writeByte(getBC(), reg_A); // LD (BC), A
-            case 0x03 -> setBC(ALU16BitInc(getBC())); // inc BC
-            case 0x04 -> reg_B = ALU8BitInc(reg_B); // inc b
-            case 0x05 -> reg_B = ALU8BitDec(reg_B); // dec b
-            case 0x06 -> {
-                reg_B = ram.readByte(reg_PC);
-                incPC();
-            } // ld b,nn
-            case 0x07 -> RLCA(); // rlca
-            case 0x08 -> EXAFAF(); // ex af,af'
-            case 0x09 -> setHL(ALU16BitAdd(getBC())); // add hl,bc
-            case 0x0A -> reg_A = ram.readByte(getBC()); // LD a, (bc)
-            case 0x0B -> setBC(ALU16BitDec(getBC())); // dec bc
-            case 0x0C -> reg_C = ALU8BitInc(reg_C); // inc c
-            case 0x0D -> reg_C = ALU8BitDec(reg_C); // dec c
-            case 0x0E -> {
-                reg_C = ram.readByte(reg_PC);
-                incPC();
-            } // ld c,n
-            case 0x0F -> RRCA(); // rrca
-            case 0x10 -> djnz(); // djnz
-            case 0x11 -> {
-                setDE(ram.readWord(reg_PC));
-                inc2PC();
-            } // LD de, nnnn
-            case 0x12 -> ram.writeByte(getDE(), reg_A); // LD (de), A
-            case 0x13 -> setDE(ALU16BitInc(getDE())); // inc de
-            case 0x14 -> reg_D = ALU8BitInc(reg_D); // inc d
-            case 0x15 -> reg_D = ALU8BitDec(reg_D); // dec d
-            case 0x16 -> {
-                reg_D = ram.readByte(reg_PC);
-                incPC();
-            } // ld d,nn
-            case 0x17 -> RLA(); // rla
-            case 0x18 -> relativeJump(); // jr
-            case 0x19 -> setHL(ALU16BitAdd(getDE())); // add hl,de
-            case 0x1A -> reg_A = ram.readByte(getDE()); // LD a, (de)
-            case 0x1B -> setDE(ALU16BitDec(getDE())); // dec de
-            case 0x1C -> reg_E = ALU8BitInc(reg_E); // inc e
-            case 0x1D -> reg_E = ALU8BitDec(reg_E); // dec e
-            case 0x1E -> {
-                reg_E = ram.readByte(reg_PC);
-                incPC();
-            } // ld e,n
-            case 0x1F -> RRA(); // rra
-            case 0x20 -> {
-                if (!getZ()) {
-                    tStates = tStates + 12;
-                    relativeJump();
-                } else {
-                    incPC();
-                    tStates = tStates + 7;
-                }
-            } // jr nz
-            case 0x21 -> {
-                setHL(ram.readWord(reg_PC));
-                inc2PC();
-            } // LD hl, nnnn
-            case 0x22 -> {
-                ram.writeWord(ram.readWord(reg_PC), getHL());
-                inc2PC();
-            } // LD (nnnn), hl
-            case 0x23 -> setHL(ALU16BitInc(getHL())); // inc hl
-            case 0x24 -> reg_H = ALU8BitInc(reg_H); // inc h
-            case 0x25 -> reg_H = ALU8BitDec(reg_H); // dec h
-            case 0x26 -> {
-                reg_H = ram.readByte(reg_PC);
-                incPC();
-            } // ld h,nn
-            case 0x27 -> DAA(); // daa
-            case 0x28 -> {
-                if (getZ()) {
-                    tStates = tStates + 12;
-                    relativeJump();
-                } else {
-                    incPC();
-                    tStates = tStates + 7;
+    public void removeBreakpoint(int address) {
+        if (null != breakpoints) {
+            breakpoints.remove(address);
+            if (breakpoints.isEmpty()) {
+                breakpoints = null;
+            }
+        }
+    }
+
+    /**
+     * Remove all breakpoints
+     */
+    public void clearBreakpoints() {
+        breakpoints = null;
+    }
+
+    /**
+     * Run until the program counter reaches an address, as {@link #run(long)} with a breakpoint at the address which
+     * is removed again on return. Other breakpoints still apply.
+     *
+     * @param address      The address to stop at
+     * @param tStateBudget Number of T states to run for
+     * @return {@link RunResult#BREAKPOINT} if a breakpoint, including the address, was reached, otherwise the reason
+     * for returning
+     */
+    public RunResult runTo(int address, long tStateBudget) {
+        if (null == breakpoints) {
+            breakpoints = new Z80Breakpoints();
+        }
+        breakpoints.setTemporary(address);
+        try {
+            return run(tStateBudget);
+        } finally {
+            if (null != breakpoints) {
+                breakpoints.clearTemporary();
+                if (breakpoints.isEmpty()) {
+                    breakpoints = null;
                 }
-            } // jr z
-            case 0x29 -> setHL(ALU16BitAdd(getHL())); // add hl,hl
-            case 0x2A -> {
-                setHL(ram.readWord(ram.readWord(reg_PC)));
-                inc2PC();
-            } // LD hl, (nnnn)
-            case 0x2B -> setHL(ALU16BitDec(getHL())); // dec hl
-            case 0x2C -> reg_L = ALU8BitInc(reg_L); // inc l
-            case 0x2D -> reg_L = ALU8BitDec(reg_L); // dec l
-            case 0x2E -> {
-                reg_L = ram.readByte(reg_PC);
-                incPC();
+            }
+        }
+    }
 
-            } // ld l,n
-            case 0x2F -> CPL(); // rra
-            case 0x30 -> {
-                if (!getC()) {
-                    tStates = tStates + 12;
-                    relativeJump();
-                } else {
-                    incPC();
-                    tStates = tStates + 7;
+    /*
+     * run() with the block compiler enabled. A compiled block is only entered when no interrupt is waiting and the whole
+     * block fits before the end of the budget and the next event, so the call stops, and events fire, on the same
+     * instruction as the interpreter would.
+     */
+    private RunResult runCompiled(final long limit) {
+        final Z80BlockCompiler compiler = blockCompiler;
+        while (tStates < limit) {
+            if ((tStates >= nextEvent) && fireEvents()) {
+                return RunResult.WATCHPOINT;
+            }
+            if (isRemapped()) {
+                remapped();
+            }
+            if ((null == watchpoints) && !interruptWaiting()) {
+                final int pc = reg_PC;
+                final CompiledBlock block = compiler.lookup(pc);
+                if ((null != block) && (tStates + compiler.maxTStates(pc) <= Math.min(limit, nextEvent))) {
+                    halt = false;
+                    EIDIFlag = false;
+                    codeModified = false;
+                    moveResume = -1;
+                    block.execute(this);
+                    continue;
                 }
-            } // jr nc
-            case 0x31 -> {
-                reg_SP = ram.readWord(reg_PC);
-                inc2PC();
-            } // LD sp, nnnn
-            case 0x32 -> {
-                ram.writeByte(ram.readWord(reg_PC), reg_A);
-                inc2PC();
-            } // LD (nnnn), A
-            case 0x33 -> reg_SP = ALU16BitInc(reg_SP); // inc SP
-            case 0x34 -> ram.writeByte(getHL(), ALU8BitInc(ram.readByte(getHL()))); // inc (hl)
-            case 0x35 -> ram.writeByte(getHL(), ALU8BitDec(ram.readByte(getHL()))); // dec (hl)
-            case 0x36 -> {
-                ram.writeByte(getHL(), ram.readByte(reg_PC));
-                incPC();
-            } // ld (hl), nn
-            case 0x37 -> SCF(); // scf
-            case 0x38 -> {
-                if (getC()) {
-                    tStates = tStates + 12;
-                    relativeJump();
-                } else {
-                    incPC();
-                    tStates = tStates + 7;
+            }
+            boolean nmiTaken = (0 != pending) && acceptInterrupt();
+            fetchAndDecode();
+            if (nmiTaken) {
+                return RunResult.NMI;
+            }
+            if (halt) {
+                if (skipHalt(limit)) {
+                    continue;
                 }
-            } // jr c
-            case 0x39 -> setHL(ALU16BitAdd(reg_SP)); // add hl,sp
-            case 0x3A -> {
-                reg_A = ram.readByte(ram.readWord(reg_PC));
-                inc2PC();
-            } // LD a, (nnnn)
-            case 0x3B -> reg_SP = ALU16BitDec(reg_SP); // dec sp
-            case 0x3C -> reg_A = ALU8BitInc(reg_A); // inc a
-            case 0x3D -> reg_A = ALU8BitDec(reg_A); // dec a
-            case 0x3E -> {
-                reg_A = ram.readByte(reg_PC);
-                incPC();
-            } // ld a,n
-            case 0x3F -> CCF(); // ccf
-            // LD B,*
-            case 0x40 -> {
-            } /* reg_B = reg_B; */ // ld b,b
-            case 0x41 -> reg_B = reg_C; // ld b,c
-            case 0x42 -> reg_B = reg_D; // ld b,d
-            case 0x43 -> reg_B = reg_E; // ld b,e
-            case 0x44 -> reg_B = reg_H; // ld b,h
-            case 0x45 -> reg_B = reg_L; // ld b,l
-            case 0x46 -> reg_B = ram.readByte(getHL()); // ld b,(hl)
-            case 0x47 -> reg_B = reg_A; // ld b,a
-            // LD C,*
-            case 0x48 -> reg_C = reg_B; // ld c,b
-            case 0x49 -> {
-            } /* reg_C = reg_C; */ // ld c,c
-            case 0x4A -> reg_C = reg_D; // ld c,d
-            case 0x4B -> reg_C = reg_E; // ld c,e
-            case 0x4C -> reg_C = reg_H; // ld c,h
-            case 0x4D -> reg_C = reg_L; // ld c,l
-            case 0x4E -> reg_C = ram.readByte(getHL()); // ld c,(hl)
-            case 0x4F -> reg_C = reg_A; // ld c,a
-            // LD D,*
-            case 0x50 -> reg_D = reg_B; // ld d,b
-            case 0x51 -> reg_D = reg_C; // ld d,c
-            case 0x52 -> {
-            }  /* reg_D = reg_D; */ // ld d,d
-            case 0x53 -> reg_D = reg_E; // ld d,e
-            case 0x54 -> reg_D = reg_H; // ld d,h
-            case 0x55 -> reg_D = reg_L; // ld d,l
-            case 0x56 -> reg_D = ram.readByte(getHL()); // ld d,(hl)
-            case 0x57 -> reg_D = reg_A; // ld d,a
-            // LD E,*
-            case 0x58 -> reg_E = reg_B; // ld e,b
-            case 0x59 -> reg_E = reg_C; // ld e,c
-            case 0x5A -> reg_E = reg_D; // ld e,d
-            case 0x5B -> {
-            }  /* reg_E = reg_E; */ // ld e,e
-            case 0x5C -> reg_E = reg_H; // ld e,h
-            case 0x5D -> reg_E = reg_L; // ld e,l
-            case 0x5E -> reg_E = ram.readByte(getHL()); // ld e,(hl)
-            case 0x5F -> reg_E = reg_A; // ld e,a
-            // LD H,*
-            case 0x60 -> reg_H = reg_B; // ld h,b
-            case 0x61 -> reg_H = reg_C; // ld h,c
-            case 0x62 -> reg_H = reg_D; // ld h,d
-            case 0x63 -> reg_H = reg_E; // ld h,e
-            case 0x64 -> {
-            }  /* reg_H = reg_H; */ // ld h,h
-            case 0x65 -> reg_H = reg_L; // ld h,l
-            case 0x66 -> reg_H = ram.readByte(getHL()); // ld h,(hl)
-            case 0x67 -> reg_H = reg_A; // ld h,a
-            // LD L,*
-            case 0x68 -> reg_L = reg_B; // ld l,b
-            case 0x69 -> reg_L = reg_C; // ld l,c
-            case 0x6A -> reg_L = reg_D; // ld l,d
-            case 0x6B -> reg_L = reg_E; // ld l,e
-            case 0x6C -> reg_L = reg_H; // ld l,h
-            case 0x6D -> {
-            }  /* reg_L = reg_L; */ // ld l,l
-            case 0x6E -> reg_L = ram.readByte(getHL()); // ld l,(hl)
-            case 0x6F -> reg_L = reg_A; // ld l,a
-            // LD (HL),*
-            case 0x70 -> ram.writeByte(getHL(), reg_B); // ld (hl),b
-            case 0x71 -> ram.writeByte(getHL(), reg_C); // ld (hl),c
-            case 0x72 -> ram.writeByte(getHL(), reg_D); // ld (hl),d
-            case 0x73 -> ram.writeByte(getHL(), reg_E); // ld (hl),e
-            case 0x74 -> ram.writeByte(getHL(), reg_H); // ld (hl),h
-            case 0x75 -> ram.writeByte(getHL(), reg_L); // ld (hl),l
-            // HALT
-            case 0x76 -> {
-                decPC(); // execute it forever !
-                halt = true;
+                return RunResult.HALT;
             }
-            case 0x77 -> ram.writeByte(getHL(), reg_A); // ld (hl),a
-            // LD A,*
-            case 0x78 -> reg_A = reg_B; // ld a,b
-            case 0x79 -> reg_A = reg_C; // ld a,c
-            case 0x7A -> reg_A = reg_D; // ld a,d
-            case 0x7B -> reg_A = reg_E; // ld a,e
-            case 0x7C -> reg_A = reg_H; // ld a,h
-            case 0x7D -> reg_A = reg_L; // ld a,l
-            case 0x7E -> reg_A = ram.readByte(getHL()); // ld a,(hl)
-            case 0x7F -> {
-            }  /* reg_A = reg_A; */ // ld a,a
-            // add
-            case 0x80 -> ALU8BitAdd(reg_B);
-            case 0x81 -> ALU8BitAdd(reg_C);
-            case 0x82 -> ALU8BitAdd(reg_D);
-            case 0x83 -> ALU8BitAdd(reg_E);
-            case 0x84 -> ALU8BitAdd(reg_H);
-            case 0x85 -> ALU8BitAdd(reg_L);
-            case 0x86 -> ALU8BitAdd(ram.readByte(getHL()));
-            case 0x87 -> ALU8BitAdd(reg_A);
-            // adc
-            case 0x88 -> ALU8BitAdc(reg_B);
-            case 0x89 -> ALU8BitAdc(reg_C);
-            case 0x8A -> ALU8BitAdc(reg_D);
-            case 0x8B -> ALU8BitAdc(reg_E);
-            case 0x8C -> ALU8BitAdc(reg_H);
-            case 0x8D -> ALU8BitAdc(reg_L);
-            case 0x8E -> ALU8BitAdc(ram.readByte(getHL()));
-            case 0x8F -> ALU8BitAdc(reg_A);
-            // sub
-            case 0x90 -> ALU8BitSub(reg_B);
-            case 0x91 -> ALU8BitSub(reg_C);
-            case 0x92 -> ALU8BitSub(reg_D);
-            case 0x93 -> ALU8BitSub(reg_E);
-            case 0x94 -> ALU8BitSub(reg_H);
-            case 0x95 -> ALU8BitSub(reg_L);
-            case 0x96 -> ALU8BitSub(ram.readByte(getHL()));
-            case 0x97 -> ALU8BitSub(reg_A);
-            // sbc
-            case 0x98 -> ALU8BitSbc(reg_B);
-            case 0x99 -> ALU8BitSbc(reg_C);
-            case 0x9A -> ALU8BitSbc(reg_D);
-            case 0x9B -> ALU8BitSbc(reg_E);
-            case 0x9C -> ALU8BitSbc(reg_H);
-            case 0x9D -> ALU8BitSbc(reg_L);
-            case 0x9E -> ALU8BitSbc(ram.readByte(getHL()));
-            case 0x9F -> ALU8BitSbc(reg_A);
-            // and
-            case 0xA0 -> ALU8BitAnd(reg_B);
-            case 0xA1 -> ALU8BitAnd(reg_C);
-            case 0xA2 -> ALU8BitAnd(reg_D);
-            case 0xA3 -> ALU8BitAnd(reg_E);
-            case 0xA4 -> ALU8BitAnd(reg_H);
-            case 0xA5 -> ALU8BitAnd(reg_L);
-            case 0xA6 -> ALU8BitAnd(ram.readByte(getHL()));
-            case 0xA7 -> ALU8BitAnd(reg_A);
-            // xor
-            case 0xA8 -> ALU8BitXor(reg_B);
-            case 0xA9 -> ALU8BitXor(reg_C);
-            case 0xAA -> ALU8BitXor(reg_D);
-            case 0xAB -> ALU8BitXor(reg_E);
-            case 0xAC -> ALU8BitXor(reg_H);
-            case 0xAD -> ALU8BitXor(reg_L);
-            case 0xAE -> ALU8BitXor(ram.readByte(getHL()));
-            case 0xAF -> ALU8BitXor(reg_A);
-            // or
-            case 0xB0 -> ALU8BitOr(reg_B);
-            case 0xB1 -> ALU8BitOr(reg_C);
+        }
+        return budgetExhausted();
+    }
+
+    /**
+     * Enable the block compiler used by {@link #run(long)}. Straight line code starting at an address which has been
+     * reached the given number of times is translated into JVM bytecode and from then on executed directly. Writes made
+     * by the processor into compiled code discard the affected blocks. If memory is changed from outside the processor,
+     * {@link #flushCompiledCode()} must be called.
+     *
+     * @param hotThreshold Number of times an address must be reached before the code at that address is compiled
+     */
+    public void enableBlockCompiler(int hotThreshold) {
+        blockCompiler = new Z80BlockCompiler(ram, MethodHandles.lookup(), Math.max(1, hotThreshold));
+    }
+
+    /**
+     * Disable the block compiler and discard all compiled code
+     */
+    public void disableBlockCompiler() {
+        blockCompiler = null;
+    }
+
+    /**
+     * Discard all compiled code, for example after memory has been loaded or changed outside the processor
+     */
+    public void flushCompiledCode() {
+        if (null != blockCompiler) {
+            blockCompiler.flush();
+        }
+    }
+
+    /**
+     * Enable HALT fast forward. When a HALT is reached, {@link #run(long)} and {@link #runInstructions(int)} move the
+     * T state count straight on to the next scheduled event, exactly as if the HALT had been executed repeatedly until
+     * then. Once the end of the budget is reached they return {@link RunResult#HALT}. A halted machine then costs almost
+     * nothing to run. Has no effect when run() is given an unlimited budget and nothing is scheduled, or while an
+     * interrupt is waiting to be accepted.
+     */
+    public void enableHaltFastForward() {
+        haltFastForward = true;
+    }
+
+    /**
+     * Disable HALT fast forward, so run() returns as soon as a HALT is executed
+     */
+    public void disableHaltFastForward() {
+        haltFastForward = false;
+    }
+
+    /*
+     * With fast forward enabled, account for HALT being executed over and over until the T state limit or the next event
+     * is reached. Returns true if stopped by an event, with the limit still to come.
+     */
+    private boolean skipHalt(long limit) {
+        long target = Math.min(limit, nextEvent);
+        if (!haltFastForward || (Long.MAX_VALUE == target) || interruptWaiting()) {
+            return false;
+        }
+        tStates = tStates + OPCODE_T_STATES[0x76] * getHaltsBefore(target);
+        return target < limit;
+    }
+
+    /*
+     * Number of times HALT executes before the T state count reaches a target
+     */
+    private long getHaltsBefore(long target) {
+        long haltTStates = OPCODE_T_STATES[0x76];
+        return (tStates >= target) ? 0 : (target - tStates + haltTStates - 1) / haltTStates;
+    }
+
+    /**
+     * Schedule an event for when the T state count reaches a given value. It fires at the start of the first
+     * instruction at or after that time, from {@link #run(long)}, {@link #runInstructions(int)} or
+     * {@link #executeOneInstruction()}. run() executes straight up to the next event, so devices such as timers cost
+     * nothing between events. An event may schedule further events, including itself.
+     *
+     * @param tState T state count at which the event fires
+     * @param event  The event
+     */
+    public void scheduleEvent(long tState, IEvent event) {
+        scheduler.schedule(tState, event);
+        nextEvent = getNextEvent();
+    }
+
+    /**
+     * Remove every scheduled occurrence of an event
+     *
+     * @param event The event
+     * @return True if the event was scheduled
+     */
+    public boolean cancelEvent(IEvent event) {
+        boolean removed = scheduler.cancel(event);
+        nextEvent = getNextEvent();
+        return removed;
+    }
+
+    /*
+     * Fire every event which is due, returning false. If the last instruction hit a watchpoint, returns true instead
+     * and leaves any due events to fire before the next instruction.
+     */
+    private boolean fireEvents() {
+        if (stopPending) {
+            stopPending = false;
+            nextEvent = scheduler.nextDeadline();
+            return true;
+        }
+        scheduler.fire(tStates);
+        nextEvent = scheduler.nextDeadline();
+        return false;
+    }
+
+    /*
+     * Time of the next event. A watchpoint hit is made to look like an event which is already due, so the run loops
+     * stop for it without any test of their own.
+     */
+    private long getNextEvent() {
+        return stopPending ? Long.MIN_VALUE : scheduler.nextDeadline();
+    }
+
+    /*
+     * Result of a run which has used its budget, unless the last instruction hit a watchpoint
+     */
+    private RunResult budgetExhausted() {
+        if (stopPending) {
+            fireEvents();
+            return RunResult.WATCHPOINT;
+        }
+        return RunResult.BUDGET_EXHAUSTED;
+    }
+
+    /**
+     * Record each instruction executed by {@link #run(long)}, {@link #runInstructions(int)} and
+     * {@link #executeOneInstruction()} into a trace, along with the registers and T state count before it executed.
+     * While tracing, compiled blocks are not used. A repeating block instruction is recorded once each time it is
+     * executed, so the instructions executed, and their timing, are the same as without a trace. Replaces any trace
+     * already enabled.
+     *
+     * @param trace The trace to record into
+     */
+    public void enableTrace(Z80Trace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Stream each instruction executed to a trace file, in the same way as {@link #enableTrace(Z80Trace)}. Replaces any
+     * trace already enabled.
+     *
+     * @param writer The trace file to write to
+     */
+    public void enableTrace(Z80TraceWriter writer) {
+        this.trace = writer;
+    }
+
+    /**
+     * Stop recording instructions. The trace keeps what it has recorded, a trace file is left open.
+     */
+    public void disableTrace() {
+        trace = null;
+    }
+
+    /**
+     * Count the instructions executed by {@link #run(long)}, {@link #runInstructions(int)} and
+     * {@link #executeOneInstruction()}, and the T states they take, for each opcode. As with a trace, compiled blocks are
+     * not used while profiling. Replaces any opcode profiler already enabled.
+     *
+     * @param profiler The profiler to count into
+     */
+    public void enableOpcodeProfiler(Z80OpcodeProfiler profiler) {
+        opcodeProfiler = profiler;
+    }
+
+    /**
+     * Stop counting opcodes. The profiler keeps its counts.
+     */
+    public void disableOpcodeProfiler() {
+        opcodeProfiler = null;
+    }
+
+    /**
+     * Count the instructions executed by {@link #run(long)}, {@link #runInstructions(int)} and
+     * {@link #executeOneInstruction()}, and the T states they take, at each address. As with a trace, compiled blocks
+     * are not used while profiling. Replaces any hotspot profiler already enabled.
+     *
+     * @param profiler The profiler to count into
+     */
+    public void enableHotspotProfiler(Z80HotspotProfiler profiler) {
+        hotspotProfiler = profiler;
+    }
+
+    /**
+     * Stop counting addresses. The profiler keeps its counts.
+     */
+    public void disableHotspotProfiler() {
+        hotspotProfiler = null;
+    }
+
+    /**
+     * Attach a listener, to be told of the instructions executed, data read from and written to memory, I/O and
+     * interrupts accepted. Listeners are called from {@link #run(long)}, {@link #runInstructions(int)} and
+     * {@link #executeOneInstruction()}, in the order attached. As with a trace, compiled blocks are not used while any
+     * are attached. Repeating block instructions still run as they would otherwise, reporting each byte they transfer.
+     * <p>
+     * While none are attached, the run loops and memory accesses make no test for them beyond the one already made for
+     * watchpoints, so the processor runs as fast as it would without this interface.
+     *
+     * @param listener The listener
+     */
+    public void addListener(IExecutionListener listener) {
+        if (null == listeners) {
+            listeners = new IExecutionListener[]{listener};
+        } else {
+            listeners = Arrays.copyOf(listeners, listeners.length + 1);
+            listeners[listeners.length - 1] = listener;
+        }
+        updateMonitoring();
+    }
+
+    /**
+     * Detach a listener
+     *
+     * @param listener The listener
+     */
+    public void removeListener(IExecutionListener listener) {
+        if (null != listeners) {
+            for (int i = 0; i < listeners.length; i++) {
+                if (listeners[i] == listener) {
+                    var remaining = new IExecutionListener[listeners.length - 1];
+                    System.arraycopy(listeners, 0, remaining, 0, i);
+                    System.arraycopy(listeners, i + 1, remaining, i, remaining.length - i);
+                    listeners = (0 == remaining.length) ? null : remaining;
+                    break;
+                }
+            }
+            updateMonitoring();
+        }
+    }
+
+    /**
+     * Build a call graph of the routines called by {@link #run(long)}, {@link #runInstructions(int)} and
+     * {@link #executeOneInstruction()}, and the T states they take. As with a trace, compiled blocks are not used while
+     * profiling. Replaces any call profiler already enabled.
+     *
+     * @param profiler The profiler to build the graph in
+     */
+    public void enableCallProfiler(Z80CallProfiler profiler) {
+        callProfiler = profiler;
+    }
+
+    /**
+     * Stop building the call graph. The profiler keeps the graph.
+     */
+    public void disableCallProfiler() {
+        callProfiler = null;
+    }
+
+    /*
+     * acceptInterrupt(), passing any interrupt accepted to the call profiler and listeners
+     */
+    private boolean acceptInterruptDebug() {
+        if ((null == callProfiler) && (null == listeners)) {
+            return acceptInterrupt();
+        }
+        final int sp = reg_SP;
+        final boolean enabled = IFF1;
+        final long start = tStates;
+        boolean nmiTaken = acceptInterrupt();
+        if (null != callProfiler) {
+            callProfiler.interrupt(sp, reg_SP, reg_PC, tStates - start);
+        }
+        if ((null != listeners) && (nmiTaken || (enabled && !IFF1))) {
+            for (IExecutionListener listener : listeners) {
+                listener.interruptAccepted(nmiTaken, reg_PC);
+            }
+        }
+        return nmiTaken;
+    }
+
+    /*
+     * fetchAndDecode(), passing the instruction to any trace or profiler
+     */
+    private void fetchAndDecodeDebug() {
+        if ((null == trace) && (null == opcodeProfiler) && (null == hotspotProfiler) && (null == callProfiler) && (null == listeners)) {
+            fetchAndDecode();
+            return;
+        }
+        final int pc = reg_PC;
+        final int sp = reg_SP;
+        final long start = tStates;
+        final int bytes = ((null == trace) && (null == opcodeProfiler) && (null == callProfiler)) ? 0 : getInstructionBytes(pc);
+        if (null != trace) {
+            recordTrace(bytes);
+        }
+        fetchAndDecode();
+        if (null != opcodeProfiler) {
+            opcodeProfiler.record(bytes, tStates - start);
+        }
+        if (null != hotspotProfiler) {
+            hotspotProfiler.record(pc, tStates - start);
+        }
+        if (null != callProfiler) {
+            callProfiler.record(bytes, sp, reg_SP, reg_PC, tStates - start);
+        }
+        if (null != listeners) {
+            for (IExecutionListener listener : listeners) {
+                listener.instructionRetired(pc, tStates);
+            }
+        }
+    }
+
+    /*
+     * The four bytes from an address, first byte lowest, without checking watchpoints
+     */
+    private int getInstructionBytes(int address) {
+        int bytes = 0;
+        for (int i = 0; i < 4; i++) {
+            bytes = bytes | (loadByte((address + i) & MAX_ADDRESS) << (i * 8));
+        }
+        return bytes;
+    }
+
+    /*
+     * Add the instruction about to execute to the trace
+     */
+    private void recordTrace(int bytes) {
+        long instruction = ((bytes & 0xFFFFFFFFL) << 16) | reg_PC;
+        long registers = ((long) getAF() << 48) | ((long) getBC() << 32) | ((long) getDE() << 16) | getHL();
+        long index = ((long) reg_IX << 32) | ((long) reg_IY << 16) | reg_SP;
+        trace.record(instruction, registers, index, tStates);
+    }
+
+    /**
+     * Watch an address. {@link #run(long)} and {@link #runInstructions(int)} return {@link RunResult#WATCHPOINT} once
+     * an instruction has read or written it, as chosen, after completing that instruction. Addresses read as
+     * instructions are not checked. If the same instruction halts or follows an NMI, the watchpoint is reported by
+     * the next call, before any instruction is executed.
+     * <p>
+     * Each access is first checked against a bitmap of pages holding watchpoints, so while none are set the check is
+     * a single null test. While any are set, compiled blocks are not used. Repeating block instructions still move,
+     * search and transfer in bulk, stopping just before the first access to a watched address so that the step making
+     * it is the last one carried out.
+     *
+     * @param address The address to watch
+     * @param read    True to stop when the address is read
+     * @param write   True to stop when the address is written
+     * @throws IllegalArgumentException if neither read nor write is chosen
+     */
+    public void addWatchpoint(int address, boolean read, boolean write) {
+        if (!read && !write) {
+            throw new IllegalArgumentException("A watchpoint must watch reads, writes or both");
+        }
+        if (null == watchpoints) {
+            watchpoints = new Z80Watchpoints();
+        }
+        watchpoints.add(address, (read ? Z80Watchpoints.READ : 0) | (write ? Z80Watchpoints.WRITE : 0));
+        updateMonitoring();
+    }
+
+    /**
+     * Stop watching an address
+     *
+     * @param address The address
+     */
+    public void removeWatchpoint(int address) {
+        if (null != watchpoints) {
+            watchpoints.remove(address);
+            if (watchpoints.isEmpty()) {
+                watchpoints = null;
+                updateMonitoring();
+            }
+        }
+    }
+
+    /**
+     * Remove all watchpoints
+     */
+    public void clearWatchpoints() {
+        watchpoints = null;
+        updateMonitoring();
+    }
+
+    /**
+     * @return The address accessed by the last watchpoint hit
+     */
+    public int getWatchpointAddress() {
+        return watchAddress;
+    }
+
+    /**
+     * @return The byte read or written by the last watchpoint hit
+     */
+    public int getWatchpointValue() {
+        return watchValue;
+    }
+
+    /**
+     * @return The address of the instruction which caused the last watchpoint hit
+     */
+    public int getWatchpointPC() {
+        return watchPC;
+    }
+
+    /**
+     * @return True if the last watchpoint hit was a write, false for a read
+     */
+    public boolean isWatchpointWrite() {
+        return watchWrite;
+    }
+
+    /*
+     * Check a data access against any watchpoints and pass it to any listeners
+     */
+    private void monitor(int address, int value, int type) {
+        if (null != watchpoints) {
+            watch(address, value, type);
+        }
+        if (null != listeners) {
+            for (IExecutionListener listener : listeners) {
+                if (Z80Watchpoints.READ == type) {
+                    listener.memoryRead(address & MAX_ADDRESS, value & 0xFF);
+                } else {
+                    listener.memoryWrite(address & MAX_ADDRESS, value & 0xFF);
+                }
+            }
+        }
+    }
+
+    private void updateMonitoring() {
+        monitoring = (null != watchpoints) || (null != listeners);
+    }
+
+    /*
+     * Check an access made by the processor against the watchpoints, keeping the first hit of an instruction
+     */
+    private void watch(int address, int value, int type) {
+        address = address & MAX_ADDRESS;
+        if (!stopPending && watchpoints.isWatched(address, type)) {
+            watchAddress = address;
+            watchValue = value & 0xFF;
+            watchPC = instructionStart;
+            watchWrite = (Z80Watchpoints.WRITE == type);
+            stopPending = true;
+            nextEvent = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Enable the pre-decoded instruction cache. Each instruction is decoded once and its bytes are then taken from the
+     * cache rather than memory until the processor writes over it. If memory is changed from outside the processor,
+     * {@link #flushDecodeCache()} must be called.
+     */
+    public void enableDecodeCache() {
+        decodeCache = new Z80DecodeCache(ram);
+    }
+
+    /**
+     * Disable the pre-decoded instruction cache
+     */
+    public void disableDecodeCache() {
+        decodeCache = null;
+        instructionLength = 0;
+    }
+
+    /**
+     * Discard all pre-decoded instructions, for example after memory has been loaded or changed outside the processor
+     */
+    public void flushDecodeCache() {
+        if (null != decodeCache) {
+            decodeCache.flush();
+        }
+    }
+
+    /*
+     * True if the memory has switched banks since decoded and compiled code was last checked
+     */
+    private boolean isRemapped() {
+        return (null != direct) && (direct.getGeneration() != mapping);
+    }
+
+    /*
+     * Discard decoded and compiled code taken from pages which may since have been switched, stopping any compiled
+     * block which made the switch
+     */
+    private void remapped() {
+        mapping = direct.getGeneration();
+        flushDecodeCache();
+        flushCompiledCode();
+        codeModified = true;
+    }
+
+    /*
+     * Number of blocks presently compiled, for test support
+     */
+    int getCompiledBlockCount() {
+        return (null == blockCompiler) ? 0 : blockCompiler.getBlockCount();
+    }
+
+    /**
+     * Execute up to the given number of instructions, stopping early if a HALT instruction is executed, an NMI is
+     * accepted, or a breakpoint or watchpoint is hit
+     *
+     * @param count Number of instructions to execute
+     * @return The reason for returning
+     */
+    public RunResult runInstructions(int count) {
+        tStateLimit = Long.MAX_VALUE;
+        if (isDebugging()) {
+            return runDebug(Long.MAX_VALUE, count);
+        }
+        for (int i = 0; i < count; i++) {
+            if ((tStates >= nextEvent) && fireEvents()) {
+                return RunResult.WATCHPOINT;
+            }
+            boolean nmiTaken = (0 != pending) && acceptInterrupt();
+            fetchAndDecode();
+            if (nmiTaken) {
+                return RunResult.NMI;
+            }
+            if (halt) {
+                if (haltFastForward && !interruptWaiting()) {
+                    // skip the remaining instructions, or up to the next event
+                    int skip = (int) Math.min(count - i - 1, getHaltsBefore(nextEvent));
+                    tStates = tStates + (long) OPCODE_T_STATES[0x76] * skip;
+                    i = i + skip;
+                    if (i + 1 < count) {
+                        continue;
+                    }
+                }
+                return RunResult.HALT;
+            }
+        }
+        return budgetExhausted();
+    }
+
+    /*
+     * True if an NMI, or a maskable interrupt with interrupts enabled, is waiting
+     */
+    private boolean interruptWaiting() {
+        return (0 != (pending & PENDING_NMI)) || ((0 != (pending & PENDING_INT)) && IFF1);
+    }
+
+    /*
+     * Accept a pending interrupt, NMI first, returning true if an NMI was taken. Not possible straight after an EI or
+     * DI.
+     */
+    private boolean acceptInterrupt() {
+        // can't interrupt straight after an EI or DI
+        if (EIDIFlag) {
+            return false;
+        }
+        if (0 != (pending & PENDING_NMI)) {
+            moveResume = -1;
+            acceptNMI();
+            return true;
+        }
+        if (IFF1) {
+            moveResume = -1;
+            acceptINT();
+        }
+        return false;
+    }
+
+    private void acceptNMI() {
+        pending = pending & ~PENDING_NMI; // interrupt accepted
+        IFF2 = IFF1; // store IFF state
+        IFF1 = false;
+        dec2SP();
+        if (halt) {
+            incPC(); // Was a bug ! - point to instruction after(!) interrupt location. HALT decrements PC !!!
+        }
+        writeWord(reg_SP, reg_PC);
+        reg_PC = 0x0066; // NMI routine location
+    }
+
+    /*
+     * Accept a maskable interrupt in the present interrupt mode
+     */
+    private void acceptINT() {
+        if (!intLevel) {
+            pending = pending & ~PENDING_INT;
+        }
+        IFF1 = IFF2 = false;
+        if (halt) {
+            incPC(); // continue after the HALT on return
+        }
+        switch (interruptMode) {
+            case 0 -> {
+                // execute the instruction on the data bus
+                tStates = tStates + 2;
+                instructionLength = 0;
+                decodeOneByteInstruction(intDataBus);
+            }
+            case 1 -> {
+                tStates = tStates + 2;
+                rst(7);
+            }
+            default -> {
+                tStates = tStates + 19;
+                dec2SP();
+                writeWord(reg_SP, reg_PC);
+                reg_PC = readWord((reg_I << 8) | intDataBus);
+            }
+        }
+    }
+
+    /*
+     * Fetch the instruction at the present program counter and execute it
+     */
+    private void fetchAndDecode() {
+        halt = false;
+        instructionStart = reg_PC;
+        if (reg_PC != moveResume) {
+            moveResume = -1; // only the very next instruction can resume a move
+        }
+        if (null != decodeCache) {
+            if (isRemapped()) {
+                remapped();
+            }
+            long entry = decodeCache.lookup(reg_PC);
+            instructionBytes = (int) entry;
+            instructionLength = (int) (entry >>> 32) & 0x07;
+        }
+        instruction = fetchByte(reg_PC);
+        incPC();
+        EIDIFlag = false; // clear prior to decoding next instruction
+        decodeOneByteInstruction(instruction);
+    }
+
+    /**
+     * Return the number of T states since last reset
+     *
+     * @return Processor T states
+     */
+    public long getTStates() {
+        return tStates;
+    }
+
+    /**
+     * Reset the T state counter to zero
+     */
+    public void resetTStates() {
+        scheduler.rebase(tStates);
+        nextEvent = getNextEvent();
+        tStates = 0;
+    }
+
+    /**
+     * Execute all one byte instructions and pass multibyte instructions on for further processing. Decoding is split
+     * by the high nibble of the opcode so that no single method is too large for the JIT to compile and inline.
+     *
+     * @param opcode Instruction byte
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Bytes can only be 0..255")
+    private void decodeOneByteInstruction(int opcode) {
+        tStates = tStates + OPCODE_T_STATES[opcode];
+        switch (opcode >>> 4) {
+            case 0x0 -> decode0x(opcode);
+            case 0x1 -> decode1x(opcode);
+            case 0x2 -> decode2x(opcode);
+            case 0x3 -> decode3x(opcode);
+            case 0x4 -> decode4x(opcode);
+            case 0x5 -> decode5x(opcode);
+            case 0x6 -> decode6x(opcode);
+            case 0x7 -> decode7x(opcode);
+            case 0x8 -> decode8x(opcode);
+            case 0x9 -> decode9x(opcode);
+            case 0xA -> decodeAx(opcode);
+            case 0xB -> decodeBx(opcode);
+            case 0xC -> decodeCx(opcode);
+            case 0xD -> decodeDx(opcode);
+            case 0xE -> decodeEx(opcode);
+            case 0xF -> decodeFx(opcode);
+        }
+    }
+
+    /*
+     * One byte instructions 0x00 to 0x0F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decode0x(int opcode) {
+        switch (opcode) {
+            case 0x00 -> {
+            } // null
+            case 0x01 -> setBC(fetchOperandWord()); // LD bc, nnnn
+            case 0x02 -> writeByte(getBC(), reg_A); // LD (BC), A
+            case 0x03 -> setBC(ALU16BitInc(getBC())); // inc BC
+            case 0x04 -> reg_B = ALU8BitInc(reg_B); // inc b
+            case 0x05 -> reg_B = ALU8BitDec(reg_B); // dec b
+            case 0x06 -> reg_B = fetchOperandByte(); // ld b,nn
+            case 0x07 -> RLCA(); // rlca
+            case 0x08 -> EXAFAF(); // ex af,af'
+            case 0x09 -> setHL(ALU16BitAdd(getBC())); // add hl,bc
+            case 0x0A -> reg_A = readByte(getBC()); // LD a, (bc)
+            case 0x0B -> setBC(ALU16BitDec(getBC())); // dec bc
+            case 0x0C -> reg_C = ALU8BitInc(reg_C); // inc c
+            case 0x0D -> reg_C = ALU8BitDec(reg_C); // dec c
+            case 0x0E -> reg_C = fetchOperandByte(); // ld c,n
+            case 0x0F -> RRCA(); // rrca
+        }
+    }
+
+    /*
+     * One byte instructions 0x10 to 0x1F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decode1x(int opcode) {
+        switch (opcode) {
+            case 0x10 -> djnz(); // djnz
+            case 0x11 -> setDE(fetchOperandWord()); // LD de, nnnn
+            case 0x12 -> writeByte(getDE(), reg_A); // LD (de), A
+            case 0x13 -> setDE(ALU16BitInc(getDE())); // inc de
+            case 0x14 -> reg_D = ALU8BitInc(reg_D); // inc d
+            case 0x15 -> reg_D = ALU8BitDec(reg_D); // dec d
+            case 0x16 -> reg_D = fetchOperandByte(); // ld d,nn
+            case 0x17 -> RLA(); // rla
+            case 0x18 -> relativeJump(); // jr
+            case 0x19 -> setHL(ALU16BitAdd(getDE())); // add hl,de
+            case 0x1A -> reg_A = readByte(getDE()); // LD a, (de)
+            case 0x1B -> setDE(ALU16BitDec(getDE())); // dec de
+            case 0x1C -> reg_E = ALU8BitInc(reg_E); // inc e
+            case 0x1D -> reg_E = ALU8BitDec(reg_E); // dec e
+            case 0x1E -> reg_E = fetchOperandByte(); // ld e,n
+            case 0x1F -> RRA(); // rra
+        }
+    }
+
+    /*
+     * One byte instructions 0x20 to 0x2F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decode2x(int opcode) {
+        switch (opcode) {
+            case 0x20 -> relativeJump(!getZ()); // jr nz
+            case 0x21 -> setHL(fetchOperandWord()); // LD hl, nnnn
+            case 0x22 -> writeWord(fetchOperandWord(), getHL()); // LD (nnnn), hl
+            case 0x23 -> setHL(ALU16BitInc(getHL())); // inc hl
+            case 0x24 -> reg_H = ALU8BitInc(reg_H); // inc h
+            case 0x25 -> reg_H = ALU8BitDec(reg_H); // dec h
+            case 0x26 -> reg_H = fetchOperandByte(); // ld h,nn
+            case 0x27 -> DAA(); // daa
+            case 0x28 -> relativeJump(getZ()); // jr z
+            case 0x29 -> setHL(ALU16BitAdd(getHL())); // add hl,hl
+            case 0x2A -> setHL(readWord(fetchOperandWord())); // LD hl, (nnnn)
+            case 0x2B -> setHL(ALU16BitDec(getHL())); // dec hl
+            case 0x2C -> reg_L = ALU8BitInc(reg_L); // inc l
+            case 0x2D -> reg_L = ALU8BitDec(reg_L); // dec l
+            case 0x2E -> reg_L = fetchOperandByte(); // ld l,n
+            case 0x2F -> CPL(); // rra
+        }
+    }
+
+    /*
+     * One byte instructions 0x30 to 0x3F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decode3x(int opcode) {
+        switch (opcode) {
+            case 0x30 -> relativeJump(!getC()); // jr nc
+            case 0x31 -> reg_SP = fetchOperandWord(); // LD sp, nnnn
+            case 0x32 -> writeByte(fetchOperandWord(), reg_A); // LD (nnnn), A
+            case 0x33 -> reg_SP = ALU16BitInc(reg_SP); // inc SP
+            case 0x34 -> incHLIndirect(); // inc (hl)
+            case 0x35 -> decHLIndirect(); // dec (hl)
+            case 0x36 -> writeByte(getHL(), fetchOperandByte()); // ld (hl), nn
+            case 0x37 -> SCF(); // scf
+            case 0x38 -> relativeJump(getC()); // jr c
+            case 0x39 -> setHL(ALU16BitAdd(reg_SP)); // add hl,sp
+            case 0x3A -> reg_A = readByte(fetchOperandWord()); // LD a, (nnnn)
+            case 0x3B -> reg_SP = ALU16BitDec(reg_SP); // dec sp
+            case 0x3C -> reg_A = ALU8BitInc(reg_A); // inc a
+            case 0x3D -> reg_A = ALU8BitDec(reg_A); // dec a
+            case 0x3E -> reg_A = fetchOperandByte(); // ld a,n
+            case 0x3F -> CCF(); // ccf
+        }
+    }
+
+    /*
+     * One byte instructions 0x40 to 0x4F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decode4x(int opcode) {
+        switch (opcode) {
+            // LD B,*
+            case 0x40 -> {
+            } /* reg_B = reg_B; */ // ld b,b
+            case 0x41 -> reg_B = reg_C; // ld b,c
+            case 0x42 -> reg_B = reg_D; // ld b,d
+            case 0x43 -> reg_B = reg_E; // ld b,e
+            case 0x44 -> reg_B = reg_H; // ld b,h
+            case 0x45 -> reg_B = reg_L; // ld b,l
+            case 0x46 -> reg_B = readByte(getHL()); // ld b,(hl)
+            case 0x47 -> reg_B = reg_A; // ld b,a
+            // LD C,*
+            case 0x48 -> reg_C = reg_B; // ld c,b
+            case 0x49 -> {
+            } /* reg_C = reg_C; */ // ld c,c
+            case 0x4A -> reg_C = reg_D; // ld c,d
+            case 0x4B -> reg_C = reg_E; // ld c,e
+            case 0x4C -> reg_C = reg_H; // ld c,h
+            case 0x4D -> reg_C = reg_L; // ld c,l
+            case 0x4E -> reg_C = readByte(getHL()); // ld c,(hl)
+            case 0x4F -> reg_C = reg_A; // ld c,a
+        }
+    }
+
+    /*
+     * One byte instructions 0x50 to 0x5F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decode5x(int opcode) {
+        switch (opcode) {
+            // LD D,*
+            case 0x50 -> reg_D = reg_B; // ld d,b
+            case 0x51 -> reg_D = reg_C; // ld d,c
+            case 0x52 -> {
+            }  /* reg_D = reg_D; */ // ld d,d
+            case 0x53 -> reg_D = reg_E; // ld d,e
+            case 0x54 -> reg_D = reg_H; // ld d,h
+            case 0x55 -> reg_D = reg_L; // ld d,l
+            case 0x56 -> reg_D = readByte(getHL()); // ld d,(hl)
+            case 0x57 -> reg_D = reg_A; // ld d,a
+            // LD E,*
+            case 0x58 -> reg_E = reg_B; // ld e,b
+            case 0x59 -> reg_E = reg_C; // ld e,c
+            case 0x5A -> reg_E = reg_D; // ld e,d
+            case 0x5B -> {
+            }  /* reg_E = reg_E; */ // ld e,e
+            case 0x5C -> reg_E = reg_H; // ld e,h
+            case 0x5D -> reg_E = reg_L; // ld e,l
+            case 0x5E -> reg_E = readByte(getHL()); // ld e,(hl)
+            case 0x5F -> reg_E = reg_A; // ld e,a
+        }
+    }
+
+    /*
+     * One byte instructions 0x60 to 0x6F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decode6x(int opcode) {
+        switch (opcode) {
+            // LD H,*
+            case 0x60 -> reg_H = reg_B; // ld h,b
+            case 0x61 -> reg_H = reg_C; // ld h,c
+            case 0x62 -> reg_H = reg_D; // ld h,d
+            case 0x63 -> reg_H = reg_E; // ld h,e
+            case 0x64 -> {
+            }  /* reg_H = reg_H; */ // ld h,h
+            case 0x65 -> reg_H = reg_L; // ld h,l
+            case 0x66 -> reg_H = readByte(getHL()); // ld h,(hl)
+            case 0x67 -> reg_H = reg_A; // ld h,a
+            // LD L,*
+            case 0x68 -> reg_L = reg_B; // ld l,b
+            case 0x69 -> reg_L = reg_C; // ld l,c
+            case 0x6A -> reg_L = reg_D; // ld l,d
+            case 0x6B -> reg_L = reg_E; // ld l,e
+            case 0x6C -> reg_L = reg_H; // ld l,h
+            case 0x6D -> {
+            }  /* reg_L = reg_L; */ // ld l,l
+            case 0x6E -> reg_L = readByte(getHL()); // ld l,(hl)
+            case 0x6F -> reg_L = reg_A; // ld l,a
+        }
+    }
+
+    /*
+     * One byte instructions 0x70 to 0x7F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decode7x(int opcode) {
+        switch (opcode) {
+            // LD (HL),*
+            case 0x70 -> writeByte(getHL(), reg_B); // ld (hl),b
+            case 0x71 -> writeByte(getHL(), reg_C); // ld (hl),c
+            case 0x72 -> writeByte(getHL(), reg_D); // ld (hl),d
+            case 0x73 -> writeByte(getHL(), reg_E); // ld (hl),e
+            case 0x74 -> writeByte(getHL(), reg_H); // ld (hl),h
+            case 0x75 -> writeByte(getHL(), reg_L); // ld (hl),l
+            // HALT
+            case 0x76 -> {
+                decPC(); // execute it forever !
+                halt = true;
+            }
+            case 0x77 -> writeByte(getHL(), reg_A); // ld (hl),a
+            // LD A,*
+            case 0x78 -> reg_A = reg_B; // ld a,b
+            case 0x79 -> reg_A = reg_C; // ld a,c
+            case 0x7A -> reg_A = reg_D; // ld a,d
+            case 0x7B -> reg_A = reg_E; // ld a,e
+            case 0x7C -> reg_A = reg_H; // ld a,h
+            case 0x7D -> reg_A = reg_L; // ld a,l
+            case 0x7E -> reg_A = readByte(getHL()); // ld a,(hl)
+            case 0x7F -> {
+            }  /* reg_A = reg_A; */ // ld a,a
+        }
+    }
+
+    /*
+     * One byte instructions 0x80 to 0x8F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decode8x(int opcode) {
+        switch (opcode) {
+            // add
+            case 0x80 -> ALU8BitAdd(reg_B);
+            case 0x81 -> ALU8BitAdd(reg_C);
+            case 0x82 -> ALU8BitAdd(reg_D);
+            case 0x83 -> ALU8BitAdd(reg_E);
+            case 0x84 -> ALU8BitAdd(reg_H);
+            case 0x85 -> ALU8BitAdd(reg_L);
+            case 0x86 -> ALU8BitAdd(readByte(getHL()));
+            case 0x87 -> ALU8BitAdd(reg_A);
+            // adc
+            case 0x88 -> ALU8BitAdc(reg_B);
+            case 0x89 -> ALU8BitAdc(reg_C);
+            case 0x8A -> ALU8BitAdc(reg_D);
+            case 0x8B -> ALU8BitAdc(reg_E);
+            case 0x8C -> ALU8BitAdc(reg_H);
+            case 0x8D -> ALU8BitAdc(reg_L);
+            case 0x8E -> ALU8BitAdc(readByte(getHL()));
+            case 0x8F -> ALU8BitAdc(reg_A);
+        }
+    }
+
+    /*
+     * One byte instructions 0x90 to 0x9F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decode9x(int opcode) {
+        switch (opcode) {
+            // sub
+            case 0x90 -> ALU8BitSub(reg_B);
+            case 0x91 -> ALU8BitSub(reg_C);
+            case 0x92 -> ALU8BitSub(reg_D);
+            case 0x93 -> ALU8BitSub(reg_E);
+            case 0x94 -> ALU8BitSub(reg_H);
+            case 0x95 -> ALU8BitSub(reg_L);
+            case 0x96 -> ALU8BitSub(readByte(getHL()));
+            case 0x97 -> ALU8BitSub(reg_A);
+            // sbc
+            case 0x98 -> ALU8BitSbc(reg_B);
+            case 0x99 -> ALU8BitSbc(reg_C);
+            case 0x9A -> ALU8BitSbc(reg_D);
+            case 0x9B -> ALU8BitSbc(reg_E);
+            case 0x9C -> ALU8BitSbc(reg_H);
+            case 0x9D -> ALU8BitSbc(reg_L);
+            case 0x9E -> ALU8BitSbc(readByte(getHL()));
+            case 0x9F -> ALU8BitSbc(reg_A);
+        }
+    }
+
+    /*
+     * One byte instructions 0xA0 to 0xAF
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decodeAx(int opcode) {
+        switch (opcode) {
+            // and
+            case 0xA0 -> ALU8BitAnd(reg_B);
+            case 0xA1 -> ALU8BitAnd(reg_C);
+            case 0xA2 -> ALU8BitAnd(reg_D);
+            case 0xA3 -> ALU8BitAnd(reg_E);
+            case 0xA4 -> ALU8BitAnd(reg_H);
+            case 0xA5 -> ALU8BitAnd(reg_L);
+            case 0xA6 -> ALU8BitAnd(readByte(getHL()));
+            case 0xA7 -> ALU8BitAnd(reg_A);
+            // xor
+            case 0xA8 -> ALU8BitXor(reg_B);
+            case 0xA9 -> ALU8BitXor(reg_C);
+            case 0xAA -> ALU8BitXor(reg_D);
+            case 0xAB -> ALU8BitXor(reg_E);
+            case 0xAC -> ALU8BitXor(reg_H);
+            case 0xAD -> ALU8BitXor(reg_L);
+            case 0xAE -> ALU8BitXor(readByte(getHL()));
+            case 0xAF -> ALU8BitXor(reg_A);
+        }
+    }
+
+    /*
+     * One byte instructions 0xB0 to 0xBF
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decodeBx(int opcode) {
+        switch (opcode) {
+            // or
+            case 0xB0 -> ALU8BitOr(reg_B);
+            case 0xB1 -> ALU8BitOr(reg_C);
             case 0xB2 -> ALU8BitOr(reg_D);
             case 0xB3 -> ALU8BitOr(reg_E);
             case 0xB4 -> ALU8BitOr(reg_H);
             case 0xB5 -> ALU8BitOr(reg_L);
-            case 0xB6 -> ALU8BitOr(ram.readByte(getHL()));
+            case 0xB6 -> ALU8BitOr(readByte(getHL()));
             case 0xB7 -> ALU8BitOr(reg_A);
             // cp
             case 0xB8 -> ALU8BitCp(reg_B);
@@ -573,12 +1545,21 @@ public class Z80Core implements ICPUData {
             case 0xBB -> ALU8BitCp(reg_E);
             case 0xBC -> ALU8BitCp(reg_H);
             case 0xBD -> ALU8BitCp(reg_L);
-            case 0xBE -> ALU8BitCp(ram.readByte(getHL()));
+            case 0xBE -> ALU8BitCp(readByte(getHL()));
             case 0xBF -> ALU8BitCp(reg_A);
             //
+        }
+    }
+
+    /*
+     * One byte instructions 0xC0 to 0xCF
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decodeCx(int opcode) {
+        switch (opcode) {
             case 0xC0 -> ret(!getZ());
             case 0xC1 -> {
-                setBC(ram.readWord(reg_SP));
+                setBC(readWord(reg_SP));
                 inc2SP();
             }
             case 0xC2 -> jp(!getZ());
@@ -586,12 +1567,9 @@ public class Z80Core implements ICPUData {
             case 0xC4 -> call(!getZ());
             case 0xC5 -> {
                 dec2SP();
-                ram.writeWord(reg_SP, getBC());
-            }
-            case 0xC6 -> {
-                ALU8BitAdd(ram.readByte(reg_PC));
-                incPC();
+                writeWord(reg_SP, getBC());
             }
+            case 0xC6 -> ALU8BitAdd(fetchOperandByte());
             case 0xc7 -> rst(0);
             case 0xC8 -> ret(getZ());
             case 0xC9 -> ret();
@@ -599,15 +1577,21 @@ public class Z80Core implements ICPUData {
             case 0xCB -> extendedCB();
             case 0xCC -> call(getZ());
             case 0xCD -> call();
-            case 0xCE -> {
-                ALU8BitAdc(ram.readByte(reg_PC));
-                incPC();
-            }
+            case 0xCE -> ALU8BitAdc(fetchOperandByte());
             case 0xCF -> rst(1);
             //
+        }
+    }
+
+    /*
+     * One byte instructions 0xD0 to 0xDF
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decodeDx(int opcode) {
+        switch (opcode) {
             case 0xD0 -> ret(!getC());
             case 0xD1 -> {
-                setDE(ram.readWord(reg_SP));
+                setDE(readWord(reg_SP));
                 inc2SP();
             }
             case 0xD2 -> jp(!getC());
@@ -615,12 +1599,9 @@ public class Z80Core implements ICPUData {
             case 0xD4 -> call(!getC());
             case 0xD5 -> {
                 dec2SP();
-                ram.writeWord(reg_SP, getDE());
-            }
-            case 0xD6 -> {
-                ALU8BitSub(ram.readByte(reg_PC));
-                incPC();
+                writeWord(reg_SP, getDE());
             }
+            case 0xD6 -> ALU8BitSub(fetchOperandByte());
             case 0xD7 -> rst(2);
             case 0xD8 -> ret(getC());
             case 0xD9 -> EXX();
@@ -628,15 +1609,21 @@ public class Z80Core implements ICPUData {
             case 0xDB -> inAN();
             case 0xDC -> call(getC());
             case 0xDD -> extendedDD();
-            case 0xDE -> {
-                ALU8BitSbc(ram.readByte(reg_PC));
-                incPC();
-            }
+            case 0xDE -> ALU8BitSbc(fetchOperandByte());
             case 0xDF -> rst(3);
             //
+        }
+    }
+
+    /*
+     * One byte instructions 0xE0 to 0xEF
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decodeEx(int opcode) {
+        switch (opcode) {
             case 0xE0 -> ret(!getPV());
             case 0xE1 -> {
-                setHL(ram.readWord(reg_SP));
+                setHL(readWord(reg_SP));
                 inc2SP();
             }
             case 0xE2 -> jp(!getPV());
@@ -644,12 +1631,9 @@ public class Z80Core implements ICPUData {
             case 0xE4 -> call(!getPV());
             case 0xE5 -> {
                 dec2SP();
-                ram.writeWord(reg_SP, getHL());
-            }
-            case 0xE6 -> {
-                ALU8BitAnd(ram.readByte(reg_PC));
-                incPC();
+                writeWord(reg_SP, getHL());
             }
+            case 0xE6 -> ALU8BitAnd(fetchOperandByte());
             case 0xE7 -> rst(4);
             case 0xE8 -> ret(getPV());
             case 0xE9 -> reg_PC = getHL();
@@ -657,30 +1641,31 @@ public class Z80Core implements ICPUData {
             case 0xEB -> EXDEHL();
             case 0xEC -> call(getPV());
             case 0xED -> extendedED();
-            case 0xEE -> {
-                ALU8BitXor(ram.readByte(reg_PC));
-                incPC();
-            }
+            case 0xEE -> ALU8BitXor(fetchOperandByte());
             case 0xEF -> rst(5);
             //
+        }
+    }
+
+    /*
+     * One byte instructions 0xF0 to 0xFF
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decodeFx(int opcode) {
+        switch (opcode) {
             case 0xF0 -> ret(!getS());
             case 0xF1 -> {
-                int temp = ram.readWord(reg_SP);
+                setAF(readWord(reg_SP));
                 inc2SP();
-                reg_F = (temp & lsb);
-                reg_A = ((temp & msb) >> 8);
             }
             case 0xF2 -> jp(!getS());
             case 0xF3 -> DI();
             case 0xF4 -> call(!getS());
             case 0xF5 -> {
                 dec2SP();
-                ram.writeWord(reg_SP, (reg_A << 8) | reg_F);
-            }
-            case 0xF6 -> {
-                ALU8BitOr(ram.readByte(reg_PC));
-                incPC();
+                writeWord(reg_SP, getAF());
             }
+            case 0xF6 -> ALU8BitOr(fetchOperandByte());
             case 0xF7 -> rst(6);
             case 0xF8 -> ret(getS());
             case 0xF9 -> reg_SP = getHL();
@@ -688,10 +1673,7 @@ public class Z80Core implements ICPUData {
             case 0xFB -> EI();
             case 0xFC -> call(getS());
             case 0xFD -> extendedFD();
-            case 0xFE -> {
-                ALU8BitCp(ram.readByte(reg_PC));
-                incPC();
-            }
+            case 0xFE -> ALU8BitCp(fetchOperandByte());
             case 0xFF -> rst(7);
         }
     }
@@ -710,289 +1692,55 @@ public class Z80Core implements ICPUData {
      *
      * *****************************************************************************
      */
-    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Bytes can only be 0..255")
     private void extendedCB() {
-        instruction = ram.readByte(reg_PC);
+        instruction = fetchByte(reg_PC);
         incPC();
         tStates = tStates + OPCODE_CB_STATES[instruction];
         // decode stage
-        switch (instruction) {
-            case 0x00 -> reg_B = shiftGenericRLC(reg_B);
-            case 0x01 -> reg_C = shiftGenericRLC(reg_C);
-            case 0x02 -> reg_D = shiftGenericRLC(reg_D);
-            case 0x03 -> reg_E = shiftGenericRLC(reg_E);
-            case 0x04 -> reg_H = shiftGenericRLC(reg_H);
-            case 0x05 -> reg_L = shiftGenericRLC(reg_L);
-            case 0x06 -> ram.writeByte(getHL(), shiftGenericRLC(ram.readByte(getHL())));
-            case 0x07 -> reg_A = shiftGenericRLC(reg_A);
-            case 0x08 -> reg_B = shiftGenericRRC(reg_B);
-            case 0x09 -> reg_C = shiftGenericRRC(reg_C);
-            case 0x0A -> reg_D = shiftGenericRRC(reg_D);
-            case 0x0B -> reg_E = shiftGenericRRC(reg_E);
-            case 0x0C -> reg_H = shiftGenericRRC(reg_H);
-            case 0x0D -> reg_L = shiftGenericRRC(reg_L);
-            case 0x0E -> ram.writeByte(getHL(), shiftGenericRRC(ram.readByte(getHL())));
-            case 0x0F -> reg_A = shiftGenericRRC(reg_A);
-            //
-            case 0x10 -> reg_B = shiftGenericRL(reg_B);
-            case 0x11 -> reg_C = shiftGenericRL(reg_C);
-            case 0x12 -> reg_D = shiftGenericRL(reg_D);
-            case 0x13 -> reg_E = shiftGenericRL(reg_E);
-            case 0x14 -> reg_H = shiftGenericRL(reg_H);
-            case 0x15 -> reg_L = shiftGenericRL(reg_L);
-            case 0x16 -> ram.writeByte(getHL(), shiftGenericRL(ram.readByte(getHL())));
-            case 0x17 -> reg_A = shiftGenericRL(reg_A);
-            case 0x18 -> reg_B = shiftGenericRR(reg_B);
-            case 0x19 -> reg_C = shiftGenericRR(reg_C);
-            case 0x1A -> reg_D = shiftGenericRR(reg_D);
-            case 0x1B -> reg_E = shiftGenericRR(reg_E);
-            case 0x1C -> reg_H = shiftGenericRR(reg_H);
-            case 0x1D -> reg_L = shiftGenericRR(reg_L);
-            case 0x1E -> ram.writeByte(getHL(), shiftGenericRR(ram.readByte(getHL())));
-            case 0x1F -> reg_A = shiftGenericRR(reg_A);
-            //
-            case 0x20 -> reg_B = shiftGenericSLA(reg_B);
-            case 0x21 -> reg_C = shiftGenericSLA(reg_C);
-            case 0x22 -> reg_D = shiftGenericSLA(reg_D);
-            case 0x23 -> reg_E = shiftGenericSLA(reg_E);
-            case 0x24 -> reg_H = shiftGenericSLA(reg_H);
-            case 0x25 -> reg_L = shiftGenericSLA(reg_L);
-            case 0x26 -> ram.writeByte(getHL(), shiftGenericSLA(ram.readByte(getHL())));
-            case 0x27 -> reg_A = shiftGenericSLA(reg_A);
-            case 0x28 -> reg_B = shiftGenericSRA(reg_B);
-            case 0x29 -> reg_C = shiftGenericSRA(reg_C);
-            case 0x2A -> reg_D = shiftGenericSRA(reg_D);
-            case 0x2B -> reg_E = shiftGenericSRA(reg_E);
-            case 0x2C -> reg_H = shiftGenericSRA(reg_H);
-            case 0x2D -> reg_L = shiftGenericSRA(reg_L);
-            case 0x2E -> ram.writeByte(getHL(), shiftGenericSRA(ram.readByte(getHL())));
-            case 0x2F -> reg_A = shiftGenericSRA(reg_A);
-            //
-            // Undocumented SLL [0x30 to 0x37]. Instruction faulty, feeds in 1 to bit 0
-            case 0x30 -> reg_B = shiftGenericSLL(reg_B);
-            case 0x31 -> reg_C = shiftGenericSLL(reg_C);
-            case 0x32 -> reg_D = shiftGenericSLL(reg_D);
-            case 0x33 -> reg_E = shiftGenericSLL(reg_E);
-            case 0x34 -> reg_H = shiftGenericSLL(reg_H);
-            case 0x35 -> reg_L = shiftGenericSLL(reg_L);
-            case 0x36 -> ram.writeByte(getHL(), shiftGenericSLL(ram.readByte(getHL())));
-            case 0x37 -> reg_A = shiftGenericSLL(reg_A);
-            //
-            case 0x38 -> reg_B = shiftGenericSRL(reg_B);
-            case 0x39 -> reg_C = shiftGenericSRL(reg_C);
-            case 0x3A -> reg_D = shiftGenericSRL(reg_D);
-            case 0x3B -> reg_E = shiftGenericSRL(reg_E);
-            case 0x3C -> reg_H = shiftGenericSRL(reg_H);
-            case 0x3D -> reg_L = shiftGenericSRL(reg_L);
-            case 0x3E -> ram.writeByte(getHL(), shiftGenericSRL(ram.readByte(getHL())));
-            case 0x3F -> reg_A = shiftGenericSRL(reg_A);
-            //
-            case 0x40 -> testBit(reg_B, 0);
-            case 0x41 -> testBit(reg_C, 0);
-            case 0x42 -> testBit(reg_D, 0);
-            case 0x43 -> testBit(reg_E, 0);
-            case 0x44 -> testBit(reg_H, 0);
-            case 0x45 -> testBit(reg_L, 0);
-            case 0x46 -> testBitInMemory(0);
-            case 0x47 -> testBit(reg_A, 0);
-            case 0x48 -> testBit(reg_B, 1);
-            case 0x49 -> testBit(reg_C, 1);
-            case 0x4A -> testBit(reg_D, 1);
-            case 0x4B -> testBit(reg_E, 1);
-            case 0x4C -> testBit(reg_H, 1);
-            case 0x4D -> testBit(reg_L, 1);
-            case 0x4E -> testBitInMemory(1);
-            case 0x4F -> testBit(reg_A, 1);
-            //
-            case 0x50 -> testBit(reg_B, 2);
-            case 0x51 -> testBit(reg_C, 2);
-            case 0x52 -> testBit(reg_D, 2);
-            case 0x53 -> testBit(reg_E, 2);
-            case 0x54 -> testBit(reg_H, 2);
-            case 0x55 -> testBit(reg_L, 2);
-            case 0x56 -> testBitInMemory(2);
-            case 0x57 -> testBit(reg_A, 2);
-            case 0x58 -> testBit(reg_B, 3);
-            case 0x59 -> testBit(reg_C, 3);
-            case 0x5A -> testBit(reg_D, 3);
-            case 0x5B -> testBit(reg_E, 3);
-            case 0x5C -> testBit(reg_H, 3);
-            case 0x5D -> testBit(reg_L, 3);
-            case 0x5E -> testBitInMemory(3);
-            case 0x5F -> testBit(reg_A, 3);
-            //
-            case 0x60 -> testBit(reg_B, 4);
-            case 0x61 -> testBit(reg_C, 4);
-            case 0x62 -> testBit(reg_D, 4);
-            case 0x63 -> testBit(reg_E, 4);
-            case 0x64 -> testBit(reg_H, 4);
-            case 0x65 -> testBit(reg_L, 4);
-            case 0x66 -> testBitInMemory(4);
-            case 0x67 -> testBit(reg_A, 4);
-            case 0x68 -> testBit(reg_B, 5);
-            case 0x69 -> testBit(reg_C, 5);
-            case 0x6A -> testBit(reg_D, 5);
-            case 0x6B -> testBit(reg_E, 5);
-            case 0x6C -> testBit(reg_H, 5);
-            case 0x6D -> testBit(reg_L, 5);
-            case 0x6E -> testBitInMemory(5);
-            case 0x6F -> testBit(reg_A, 5);
-            //
-            case 0x70 -> testBit(reg_B, 6);
-            case 0x71 -> testBit(reg_C, 6);
-            case 0x72 -> testBit(reg_D, 6);
-            case 0x73 -> testBit(reg_E, 6);
-            case 0x74 -> testBit(reg_H, 6);
-            case 0x75 -> testBit(reg_L, 6);
-            case 0x76 -> testBitInMemory(6);
-            case 0x77 -> testBit(reg_A, 6);
-            case 0x78 -> testBit(reg_B, 7);
-            case 0x79 -> testBit(reg_C, 7);
-            case 0x7A -> testBit(reg_D, 7);
-            case 0x7B -> testBit(reg_E, 7);
-            case 0x7C -> testBit(reg_H, 7);
-            case 0x7D -> testBit(reg_L, 7);
-            case 0x7E -> testBitInMemory(7);
-            case 0x7F -> testBit(reg_A, 7);
-            //
-            case 0x80 -> reg_B = reg_B & resetBit0;
-            case 0x81 -> reg_C = reg_C & resetBit0;
-            case 0x82 -> reg_D = reg_D & resetBit0;
-            case 0x83 -> reg_E = reg_E & resetBit0;
-            case 0x84 -> reg_H = reg_H & resetBit0;
-            case 0x85 -> reg_L = reg_L & resetBit0;
-            case 0x86 -> ram.writeByte(getHL(), ram.readByte(getHL()) & resetBit0);
-            case 0x87 -> reg_A = reg_A & resetBit0;
-            case 0x88 -> reg_B = reg_B & resetBit1;
-            case 0x89 -> reg_C = reg_C & resetBit1;
-            case 0x8A -> reg_D = reg_D & resetBit1;
-            case 0x8B -> reg_E = reg_E & resetBit1;
-            case 0x8C -> reg_H = reg_H & resetBit1;
-            case 0x8D -> reg_L = reg_L & resetBit1;
-            case 0x8E -> ram.writeByte(getHL(), ram.readByte(getHL()) & resetBit1);
-            case 0x8F -> reg_A = reg_A & resetBit1;
-            //
-            case 0x90 -> reg_B = reg_B & resetBit2;
-            case 0x91 -> reg_C = reg_C & resetBit2;
-            case 0x92 -> reg_D = reg_D & resetBit2;
-            case 0x93 -> reg_E = reg_E & resetBit2;
-            case 0x94 -> reg_H = reg_H & resetBit2;
-            case 0x95 -> reg_L = reg_L & resetBit2;
-            case 0x96 -> ram.writeByte(getHL(), ram.readByte(getHL()) & resetBit2);
-            case 0x97 -> reg_A = reg_A & resetBit2;
-            case 0x98 -> reg_B = reg_B & resetBit3;
-            case 0x99 -> reg_C = reg_C & resetBit3;
-            case 0x9A -> reg_D = reg_D & resetBit3;
-            case 0x9B -> reg_E = reg_E & resetBit3;
-            case 0x9C -> reg_H = reg_H & resetBit3;
-            case 0x9D -> reg_L = reg_L & resetBit3;
-            case 0x9E -> ram.writeByte(getHL(), ram.readByte(getHL()) & resetBit3);
-            case 0x9F -> reg_A = reg_A & resetBit3;
-            //
-            case 0xA0 -> reg_B = reg_B & resetBit4;
-            case 0xA1 -> reg_C = reg_C & resetBit4;
-            case 0xA2 -> reg_D = reg_D & resetBit4;
-            case 0xA3 -> reg_E = reg_E & resetBit4;
-            case 0xA4 -> reg_H = reg_H & resetBit4;
-            case 0xA5 -> reg_L = reg_L & resetBit4;
-            case 0xA6 -> ram.writeByte(getHL(), ram.readByte(getHL()) & resetBit4);
-            case 0xA7 -> reg_A = reg_A & resetBit4;
-            case 0xA8 -> reg_B = reg_B & resetBit5;
-            case 0xA9 -> reg_C = reg_C & resetBit5;
-            case 0xAA -> reg_D = reg_D & resetBit5;
-            case 0xAB -> reg_E = reg_E & resetBit5;
-            case 0xAC -> reg_H = reg_H & resetBit5;
-            case 0xAD -> reg_L = reg_L & resetBit5;
-            case 0xAE -> ram.writeByte(getHL(), ram.readByte(getHL()) & resetBit5);
-            case 0xAF -> reg_A = reg_A & resetBit5;
-            //
-            case 0xB0 -> reg_B = reg_B & resetBit6;
-            case 0xB1 -> reg_C = reg_C & resetBit6;
-            case 0xB2 -> reg_D = reg_D & resetBit6;
-            case 0xB3 -> reg_E = reg_E & resetBit6;
-            case 0xB4 -> reg_H = reg_H & resetBit6;
-            case 0xB5 -> reg_L = reg_L & resetBit6;
-            case 0xB6 -> ram.writeByte(getHL(), ram.readByte(getHL()) & resetBit6);
-            case 0xB7 -> reg_A = reg_A & resetBit6;
-            case 0xB8 -> reg_B = reg_B & resetBit7;
-            case 0xB9 -> reg_C = reg_C & resetBit7;
-            case 0xBA -> reg_D = reg_D & resetBit7;
-            case 0xBB -> reg_E = reg_E & resetBit7;
-            case 0xBC -> reg_H = reg_H & resetBit7;
-            case 0xBD -> reg_L = reg_L & resetBit7;
-            case 0xBE -> ram.writeByte(getHL(), ram.readByte(getHL()) & resetBit7);
-            case 0xBF -> reg_A = reg_A & resetBit7;
-            //
-            case 0xC0 -> reg_B = reg_B | setBit0;
-            case 0xC1 -> reg_C = reg_C | setBit0;
-            case 0xC2 -> reg_D = reg_D | setBit0;
-            case 0xC3 -> reg_E = reg_E | setBit0;
-            case 0xC4 -> reg_H = reg_H | setBit0;
-            case 0xC5 -> reg_L = reg_L | setBit0;
-            case 0xC6 -> ram.writeByte(getHL(), ram.readByte(getHL()) | setBit0);
-            case 0xC7 -> reg_A = reg_A | setBit0;
-            case 0xC8 -> reg_B = reg_B | setBit1;
-            case 0xC9 -> reg_C = reg_C | setBit1;
-            case 0xCA -> reg_D = reg_D | setBit1;
-            case 0xCB -> reg_E = reg_E | setBit1;
-            case 0xCC -> reg_H = reg_H | setBit1;
-            case 0xCD -> reg_L = reg_L | setBit1;
-            case 0xCE -> ram.writeByte(getHL(), ram.readByte(getHL()) | setBit1);
-            case 0xCF -> reg_A = reg_A | setBit1;
-            //
-            case 0xD0 -> reg_B = reg_B | setBit2;
-            case 0xD1 -> reg_C = reg_C | setBit2;
-            case 0xD2 -> reg_D = reg_D | setBit2;
-            case 0xD3 -> reg_E = reg_E | setBit2;
-            case 0xD4 -> reg_H = reg_H | setBit2;
-            case 0xD5 -> reg_L = reg_L | setBit2;
-            case 0xD6 -> ram.writeByte(getHL(), ram.readByte(getHL()) | setBit2);
-            case 0xD7 -> reg_A = reg_A | setBit2;
-            case 0xD8 -> reg_B = reg_B | setBit3;
-            case 0xD9 -> reg_C = reg_C | setBit3;
-            case 0xDA -> reg_D = reg_D | setBit3;
-            case 0xDB -> reg_E = reg_E | setBit3;
-            case 0xDC -> reg_H = reg_H | setBit3;
-            case 0xDD -> reg_L = reg_L | setBit3;
-            case 0xDE -> ram.writeByte(getHL(), ram.readByte(getHL()) | setBit3);
-            case 0xDF -> reg_A = reg_A | setBit3;
-            //
-            case 0xE0 -> reg_B = reg_B | setBit4;
-            case 0xE1 -> reg_C = reg_C | setBit4;
-            case 0xE2 -> reg_D = reg_D | setBit4;
-            case 0xE3 -> reg_E = reg_E | setBit4;
-            case 0xE4 -> reg_H = reg_H | setBit4;
-            case 0xE5 -> reg_L = reg_L | setBit4;
-            case 0xE6 -> ram.writeByte(getHL(), ram.readByte(getHL()) | setBit4);
-            case 0xE7 -> reg_A = reg_A | setBit4;
-            case 0xE8 -> reg_B = reg_B | setBit5;
-            case 0xE9 -> reg_C = reg_C | setBit5;
-            case 0xEA -> reg_D = reg_D | setBit5;
-            case 0xEB -> reg_E = reg_E | setBit5;
-            case 0xEC -> reg_H = reg_H | setBit5;
-            case 0xED -> reg_L = reg_L | setBit5;
-            case 0xEE -> ram.writeByte(getHL(), ram.readByte(getHL()) | setBit5);
-            case 0xEF -> reg_A = reg_A | setBit5;
-            //
-            case 0xF0 -> reg_B = reg_B | setBit6;
-            case 0xF1 -> reg_C = reg_C | setBit6;
-            case 0xF2 -> reg_D = reg_D | setBit6;
-            case 0xF3 -> reg_E = reg_E | setBit6;
-            case 0xF4 -> reg_H = reg_H | setBit6;
-            case 0xF5 -> reg_L = reg_L | setBit6;
-            case 0xF6 -> ram.writeByte(getHL(), ram.readByte(getHL()) | setBit6);
-            case 0xF7 -> reg_A = reg_A | setBit6;
-            case 0xF8 -> reg_B = reg_B | setBit7;
-            case 0xF9 -> reg_C = reg_C | setBit7;
-            case 0xFA -> reg_D = reg_D | setBit7;
-            case 0xFB -> reg_E = reg_E | setBit7;
-            case 0xFC -> reg_H = reg_H | setBit7;
-            case 0xFD -> reg_L = reg_L | setBit7;
-            case 0xFE -> ram.writeByte(getHL(), ram.readByte(getHL()) | setBit7);
-            case 0xFF -> reg_A = reg_A | setBit7;
+        final int r = instruction & 0x07;
+        final int bit = (instruction >>> 3) & 0x07;
+        switch (instruction >>> 6) {
+            case 0 -> setCBOperand(r, shiftGeneric(bit, getCBOperand(r)));
+            case 1 -> {
+                if (regCodeM == r) testBitInMemory(bit);
+                else testBit(get8BitRegister(r), bit);
+            }
+            case 2 -> setCBOperand(r, getCBOperand(r) & ~(1 << bit));
+            default -> setCBOperand(r, getCBOperand(r) | (1 << bit));
         }
     }
 
+    /*
+     * return the register or (hl) operand of a CB instruction
+     */
+    private int getCBOperand(int reg) {
+        return (regCodeM == reg) ? readByte(getHL()) : get8BitRegister(reg);
+    }
+
+    /*
+     * set the register or (hl) operand of a CB instruction
+     */
+    private void setCBOperand(int reg, int value) {
+        if (regCodeM == reg) writeByte(getHL(), value);
+        else set8BitRegister(reg, value);
+    }
+
+    /*
+     * shift or rotate selected by bits 3 - 5 of a CB instruction. Code 6 is the undocumented SLL.
+     */
+    private int shiftGeneric(int shift, int value) {
+        return switch (shift) {
+            case 0 -> shiftGenericRLC(value);
+            case 1 -> shiftGenericRRC(value);
+            case 2 -> shiftGenericRL(value);
+            case 3 -> shiftGenericRR(value);
+            case 4 -> shiftGenericSLA(value);
+            case 5 -> shiftGenericSRA(value);
+            case 6 -> shiftGenericSLL(value);
+            default -> shiftGenericSRL(value);
+        };
+    }
+
     /*
      * *****************************************************************************
      *
@@ -1002,14 +1750,27 @@ public class Z80Core implements ICPUData {
      */
 
     private void extendedED() {
-        instruction = ram.readByte(reg_PC);
+        instruction = fetchByte(reg_PC);
         incPC();
         tStates = tStates + OPCODE_ED_STATES[instruction];
-        if ((instruction < 0x40) || (instruction >= 0xC0)) {
-            // A does nothing operation, similar to NOP but not interrupt capable
-            return;
+        switch (instruction >>> 4) {
+            case 0x4 -> decodeED4x(instruction);
+            case 0x5 -> decodeED5x(instruction);
+            case 0x6 -> decodeED6x(instruction);
+            case 0x7 -> decodeED7x(instruction);
+            case 0xA -> decodeEDAx(instruction);
+            case 0xB -> decodeEDBx(instruction);
+            default -> {
+            } // A does nothing operation, similar to NOP but not interrupt capable
         }
-        switch (instruction) {
+    }
+
+    /*
+     * ED instructions 0x40 to 0x4F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decodeED4x(int opcode) {
+        switch (opcode) {
             case 0x40 -> inC(regCodeB);
             case 0x41 -> outC(regCodeB);
             case 0x42 -> ALU16BitSBC(regCodeBC);
@@ -1027,6 +1788,15 @@ public class Z80Core implements ICPUData {
             case 0x4E -> IM(0);
             case 0x4F -> LDRA();
             //
+        }
+    }
+
+    /*
+     * ED instructions 0x50 to 0x5F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decodeED5x(int opcode) {
+        switch (opcode) {
             case 0x50 -> inC(regCodeD);
             case 0x51 -> outC(regCodeD);
             case 0x52 -> ALU16BitSBC(regCodeDE);
@@ -1044,6 +1814,15 @@ public class Z80Core implements ICPUData {
             case 0x5E -> IM(2);
             case 0x5F -> LDAR();
             //
+        }
+    }
+
+    /*
+     * ED instructions 0x60 to 0x6F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decodeED6x(int opcode) {
+        switch (opcode) {
             case 0x60 -> inC(regCodeH);
             case 0x61 -> outC(regCodeH);
             case 0x62 -> ALU16BitSBC(regCodeHL);
@@ -1061,6 +1840,15 @@ public class Z80Core implements ICPUData {
             case 0x6E -> IM(1);
             case 0x6F -> RLD();
             //
+        }
+    }
+
+    /*
+     * ED instructions 0x70 to 0x7F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decodeED7x(int opcode) {
+        switch (opcode) {
             case 0x70 -> inC(regCodeF);
             case 0x71 -> outC(regCodeF);
             case 0x72 -> ALU16BitSBC(regCodeSP);
@@ -1079,10 +1867,15 @@ public class Z80Core implements ICPUData {
             case 0x7E -> IM(2);
             case 0x7F -> {
             } // NOP
-            case 0x80, 0x81, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89, 0x8A, 0x8B, 0x8C, 0x8D, 0x8E, 0x8F -> {
-            } // NOP
-            case 0x90, 0x91, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9A, 0x9B, 0x9C, 0x9D, 0x9E, 0x9F -> {
-            } // NOP
+        }
+    }
+
+    /*
+     * ED instructions 0xA0 to 0xAF
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decodeEDAx(int opcode) {
+        switch (opcode) {
             case 0xA0 -> LDI();
             case 0xA1 -> CPI();
             case 0xA2 -> INI();
@@ -1095,6 +1888,15 @@ public class Z80Core implements ICPUData {
             case 0xAB -> OUTD();
             case 0xAC, 0xAD, 0xAE, 0xAF -> {
             } // NOP
+        }
+    }
+
+    /*
+     * ED instructions 0xB0 to 0xBF
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decodeEDBx(int opcode) {
+        switch (opcode) {
             case 0xB0 -> LDIR();
             case 0xB1 -> CPIR();
             case 0xB2 -> INIR();
@@ -1135,214 +1937,120 @@ public class Z80Core implements ICPUData {
     /* generic index register processing */
     @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Bytes can only be 0..255")
     private void extendedDDFD() {
-        instruction = ram.readByte(reg_PC);
+        instruction = fetchByte(reg_PC);
         incPC();
         tStates = tStates + OPCODE_DD_FD_STATES[instruction];
+        // only instructions using HL, H, L or (HL) differ from their unprefixed versions
+        switch (instruction >>> 4) {
+            case 0x0 -> decodeIndexed0x(instruction);
+            case 0x1 -> decodeIndexed1x(instruction);
+            case 0x2 -> decodeIndexed2x(instruction);
+            case 0x3 -> decodeIndexed3x(instruction);
+            case 0x4 -> decodeIndexed4x(instruction);
+            case 0x5 -> decodeIndexed5x(instruction);
+            case 0x6 -> decodeIndexed6x(instruction);
+            case 0x7 -> decodeIndexed7x(instruction);
+            case 0x8 -> decodeIndexed8x(instruction);
+            case 0x9 -> decodeIndexed9x(instruction);
+            case 0xA -> decodeIndexedAx(instruction);
+            case 0xB -> decodeIndexedBx(instruction);
+            case 0xC -> decodeIndexedCx(instruction);
+            case 0xD -> decodeDx(instruction);
+            case 0xE -> decodeIndexedEx(instruction);
+            case 0xF -> decodeIndexedFx(instruction);
+        }
+    }
 
-        // primary decode stage
-        switch (instruction) {
-            case 0x00 -> {
-            } // null
-            case 0x01 -> {
-                setBC(ram.readWord(reg_PC));
-                inc2PC();
-            } // LD bc, nnnn
-            case 0x02 -> ram.writeByte(getBC(), reg_A); // LD (BC), A
-            case 0x03 -> setBC(ALU16BitInc(getBC())); // inc BC
-            case 0x04 -> reg_B = ALU8BitInc(reg_B); // inc b
-            case 0x05 -> reg_B = ALU8BitDec(reg_B); // dec b
-            case 0x06 -> {
-                reg_B = ram.readByte(reg_PC);
-                incPC();
-            } // ld b,nn
-            case 0x07 -> RLCA(); // rlca
-            case 0x08 -> EXAFAF(); // ex af,af'
+    /*
+     * Index register instructions 0x00 to 0x0F
+     */
+    private void decodeIndexed0x(int opcode) {
+        switch (opcode) {
             case 0x09 -> reg_index = ALU16BitAddIndexed(getBC());
-            case 0x0A -> reg_A = ram.readByte(getBC()); // LD a, (bc)
-            case 0x0B -> setBC(ALU16BitDec(getBC())); // dec bc
-            case 0x0C -> reg_C = ALU8BitInc(reg_C); // inc c
-            case 0x0D -> reg_C = ALU8BitDec(reg_C); // dec c
-            case 0x0E -> {
-                reg_C = ram.readByte(reg_PC);
-                incPC();
-            } // ld c,n
-            case 0x0F -> RRCA(); // rrca
-            case 0x10 -> djnz(); // djnz
-            //
-            case 0x11 -> {
-                setDE(ram.readWord(reg_PC));
-                inc2PC();
-            } // LD de, nnnn
-            case 0x12 -> ram.writeByte(getDE(), reg_A); // LD (de), A
-            case 0x13 -> setDE(ALU16BitInc(getDE())); // inc de
-            case 0x14 -> reg_D = ALU8BitInc(reg_D); // inc d
-            case 0x15 -> reg_D = ALU8BitDec(reg_D); // dec d
-            case 0x16 -> {
-                reg_D = ram.readByte(reg_PC);
-                incPC();
-            } // ld d,nn
-            case 0x17 -> RLA(); // rla
-            case 0x18 -> relativeJump(); // jr
+            default -> decode0x(opcode);
+        }
+    }
+
+    /*
+     * Index register instructions 0x10 to 0x1F
+     */
+    private void decodeIndexed1x(int opcode) {
+        switch (opcode) {
             case 0x19 -> reg_index = ALU16BitAddIndexed(getDE());
-            case 0x1A -> reg_A = ram.readByte(getDE()); // LD a, (de)
-            case 0x1B -> setDE(ALU16BitDec(getDE())); // dec de
-            case 0x1C -> reg_E = ALU8BitInc(reg_E); // inc e
-            case 0x1D -> reg_E = ALU8BitDec(reg_E); // dec e
-            case 0x1E -> {
-                reg_E = ram.readByte(reg_PC);
-                incPC();
-            } // ld e,n
-            case 0x1F -> RRA(); // rra
-            //
-            case 0x20 -> {
-                if (!getZ()) {
-                    tStates = tStates + 12;
-                    relativeJump();
-                } else {
-                    incPC();
-                    tStates = tStates + 7;
-                }
-            } // jr nz
-            case 0x21 -> {
-                reg_index = ram.readWord(reg_PC);
-                inc2PC();
-            }
-            case 0x22 -> {
-                ram.writeWord(ram.readWord(reg_PC), reg_index);
-                inc2PC();
-            }
+            default -> decode1x(opcode);
+        }
+    }
+
+    /*
+     * Index register instructions 0x20 to 0x2F
+     */
+    private void decodeIndexed2x(int opcode) {
+        switch (opcode) {
+            case 0x21 -> reg_index = fetchOperandWord();
+            case 0x22 -> writeWord(fetchOperandWord(), reg_index);
             case 0x23 -> reg_index = ALU16BitInc(reg_index);
-            case 0x24 -> {
-                int temp = reg_index >>> 8;
-                temp = ALU8BitInc(temp);
-                reg_index = (reg_index & 0x00FF) | (temp << 8);
-            } // inc IXh
-            case 0x25 -> {
-                int temp = reg_index >>> 8;
-                temp = ALU8BitDec(temp);
-                reg_index = (reg_index & 0x00FF) | (temp << 8);
-            } // dec IXh
-            case 0x26 -> {
-                int temp = ram.readByte(reg_PC) << 8;
-                reg_index = (reg_index & 0x00FF) | temp;
-                incPC();
-            } // ld IXh, nn
-            case 0x27 -> DAA(); // daa
-            case 0x28 -> {
-                if (getZ()) {
-                    tStates = tStates + 12;
-                    relativeJump();
-                } else {
-                    incPC();
-                    tStates = tStates + 7;
-                }
-            } // jr z
+            case 0x24 -> setIndexAddressUndocumented(ALU8BitInc(getIndexAddressUndocumented(regCodeIXH)), regCodeIXH); // inc IXh
+            case 0x25 -> setIndexAddressUndocumented(ALU8BitDec(getIndexAddressUndocumented(regCodeIXH)), regCodeIXH); // dec IXh
+            case 0x26 -> setIndexAddressUndocumented(fetchOperandByte(), regCodeIXH); // ld IXh, nn
             case 0x29 -> reg_index = ALU16BitAddIndexed(reg_index);
-            case 0x2A -> {
-                reg_index = ram.readWord(ram.readWord(reg_PC));
-                inc2PC();
-            }
+            case 0x2A -> reg_index = readWord(fetchOperandWord());
             case 0x2B -> reg_index = ALU16BitDec(reg_index);
-            case 0x2C -> {
-                int temp = reg_index & 0x00FF;
-                temp = ALU8BitInc(temp);
-                reg_index = (reg_index & 0xFF00) | temp;
-            } // inc IXl
-            case 0x2D -> {
-                int temp = reg_index & 0x00FF;
-                temp = ALU8BitDec(temp);
-                reg_index = (reg_index & 0xFF00) | temp;
-            } // dec IXl
-            case 0x2E -> {
-                int temp = ram.readByte(reg_PC);
-                reg_index = (reg_index & 0xFF00) | temp;
-                incPC();
-            } // ld IXl, nn
-            case 0x2F -> CPL(); // rra
-            //
-            case 0x30 -> {
-                if (!getC()) {
-                    tStates = tStates + 12;
-                    relativeJump();
-                } else {
-                    incPC();
-                    tStates = tStates + 7;
-                }
-            } // jr nc
-            case 0x31 -> {
-                reg_SP = ram.readWord(reg_PC);
-                inc2PC();
-            } // LD sp, nnnn
-            case 0x32 -> {
-                ram.writeByte(ram.readWord(reg_PC), reg_A);
-                inc2PC();
-            } // LD (nnnn), A
-            case 0x33 -> reg_SP = ALU16BitInc(reg_SP); // inc SP
+            case 0x2C -> setIndexAddressUndocumented(ALU8BitInc(getIndexAddressUndocumented(regCodeIXL)), regCodeIXL); // inc IXl
+            case 0x2D -> setIndexAddressUndocumented(ALU8BitDec(getIndexAddressUndocumented(regCodeIXL)), regCodeIXL); // dec IXl
+            case 0x2E -> setIndexAddressUndocumented(fetchOperandByte(), regCodeIXL); // ld IXl, nn
+            default -> decode2x(opcode);
+        }
+    }
+
+    /*
+     * Index register instructions 0x30 to 0x3F
+     */
+    private void decodeIndexed3x(int opcode) {
+        switch (opcode) {
             case 0x34 -> incIndex();
             case 0x35 -> decIndex();
             case 0x36 -> loadIndex8BitImmediate();
-            case 0x37 -> SCF(); // scf
-            case 0x38 -> {
-                if (getC()) {
-                    tStates = tStates + 12;
-                    relativeJump();
-                } else {
-                    incPC();
-                    tStates = tStates + 7;
-                }
-            } // jr c
             case 0x39 -> reg_index = ALU16BitAddIndexed(reg_SP);
-            case 0x3A -> {
-                reg_A = ram.readByte(ram.readWord(reg_PC));
-                inc2PC();
-            } // LD a, (nnnn)
-            case 0x3B -> reg_SP = ALU16BitDec(reg_SP); // dec sp
-            case 0x3C -> reg_A = ALU8BitInc(reg_A); // inc a
-            case 0x3D -> reg_A = ALU8BitDec(reg_A); // dec a
-            case 0x3E -> {
-                reg_A = ram.readByte(reg_PC);
-                incPC();
-            } // ld a,n
-            case 0x3F -> CCF(); // ccf
-            //
-            case 0x40 -> { /* reg_B = reg_B; */
-            } // ld b, b
-            case 0x41 -> reg_B = reg_C; // ld b, c
-            case 0x42 -> reg_B = reg_D; // ld b, d
-            case 0x43 -> reg_B = reg_E; // ld b, e
+            default -> decode3x(opcode);
+        }
+    }
+
+    /*
+     * Index register instructions 0x40 to 0x4F
+     */
+    private void decodeIndexed4x(int opcode) {
+        switch (opcode) {
             case 0x44 -> reg_B = getIndexAddressUndocumented(regCodeIXH); // ld b, IXh
             case 0x45 -> reg_B = getIndexAddressUndocumented(regCodeIXL); // ld b, IXl
             case 0x46 -> reg_B = get8BitRegisterIndexed(regCodeM); // ld b, (ix+dd)
-            case 0x47 -> reg_B = reg_A; // ld b, a
-            case 0x48 -> reg_C = reg_B; // ld c, b
-            case 0x49 -> { /* reg_C = reg_C; */
-            } // ld c, c
-            case 0x4A -> reg_C = reg_D; // ld c, d
-            case 0x4B -> reg_C = reg_E; // ld c, e
             case 0x4C -> reg_C = getIndexAddressUndocumented(regCodeIXH); // ld c, IXh
             case 0x4D -> reg_C = getIndexAddressUndocumented(regCodeIXL); // ld c, IXl
             case 0x4E -> reg_C = get8BitRegisterIndexed(regCodeM); // ld c, (ix+dd)
-            case 0x4F -> reg_C = reg_A; // ld c a
-            //
-            case 0x50 -> reg_D = reg_B; // ld d, b
-            case 0x51 -> reg_D = reg_C; // ld d, c
-            case 0x52 -> { /* reg_D = reg_D; */
-            } // ld d, d
-            case 0x53 -> reg_D = reg_E; // ld d, e
+            default -> decode4x(opcode);
+        }
+    }
+
+    /*
+     * Index register instructions 0x50 to 0x5F
+     */
+    private void decodeIndexed5x(int opcode) {
+        switch (opcode) {
             case 0x54 -> reg_D = getIndexAddressUndocumented(regCodeIXH); // ld d, IXh
             case 0x55 -> reg_D = getIndexAddressUndocumented(regCodeIXL); // ld d, IXl
             case 0x56 -> reg_D = get8BitRegisterIndexed(regCodeM); // ld d, (ix+dd)
-            case 0x57 -> reg_D = reg_A; // ld d, a
-            case 0x58 -> reg_E = reg_B; // ld e, b
-            case 0x59 -> reg_E = reg_C; // ld e, c
-            case 0x5A -> reg_E = reg_D; // ld e, d
-            case 0x5B -> { /* reg_E = reg_E; */
-            } // ld e, e
             case 0x5C -> reg_E = getIndexAddressUndocumented(regCodeIXH); // ld e, IXh
             case 0x5D -> reg_E = getIndexAddressUndocumented(regCodeIXL); // ld e, IXl
             case 0x5E -> reg_E = get8BitRegisterIndexed(regCodeM); // ld e, (ix+dd)
-            case 0x5F -> reg_E = reg_A; // ld e a
-            //
+            default -> decode5x(opcode);
+        }
+    }
+
+    /*
+     * Index register instructions 0x60 to 0x6F
+     */
+    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Only opcodes from one row are passed in")
+    private void decodeIndexed6x(int opcode) {
+        switch (opcode) {
             case 0x60 -> setIndexAddressUndocumented(reg_B, regCodeIXH); // ld ixh, b
             case 0x61 -> setIndexAddressUndocumented(reg_C, regCodeIXH); // ld ixh, c
             case 0x62 -> setIndexAddressUndocumented(reg_D, regCodeIXH); // ld ixh, d
@@ -1364,216 +2072,124 @@ public class Z80Core implements ICPUData {
             case 0x6E -> reg_L = get8BitRegisterIndexed(regCodeM); // ld l, (ix+dd)
             case 0x6F -> setIndexAddressUndocumented(reg_A, regCodeIXL); // ld ixl, a
             //
+        }
+    }
+
+    /*
+     * Index register instructions 0x70 to 0x7F
+     */
+    private void decodeIndexed7x(int opcode) {
+        switch (opcode) {
             case 0x70 -> setIndexAddressUndocumented(reg_B, regCodeM); // ld (ix+d), b
             case 0x71 -> setIndexAddressUndocumented(reg_C, regCodeM); // ld (ix+d), c
             case 0x72 -> setIndexAddressUndocumented(reg_D, regCodeM); // ld (ix+d), d
             case 0x73 -> setIndexAddressUndocumented(reg_E, regCodeM); // ld (ix+d), e
             case 0x74 -> setIndexAddressUndocumented(get8BitRegisterIndexed(regCodeH), regCodeM); // ld (ix+d), IXh
             case 0x75 -> setIndexAddressUndocumented(get8BitRegisterIndexed(regCodeL), regCodeM); // ld (ix+d), IXl
-            case 0x76 -> {
-                decPC(); // execute it forever !
-                halt = true;
-            }
             case 0x77 -> setIndexAddressUndocumented(get8BitRegisterIndexed(regCodeA), regCodeM); // ld (ix+d), a
-            case 0x78 -> reg_A = reg_B; // ld a, b
-            case 0x79 -> reg_A = reg_C; // ld a, c
-            case 0x7A -> reg_A = reg_D; // ld a, d
-            case 0x7B -> reg_A = reg_E; // ld a, e
             case 0x7C -> reg_A = getIndexAddressUndocumented(regCodeIXH); // ld a, IXh
             case 0x7D -> reg_A = getIndexAddressUndocumented(regCodeIXL); // ld a, IXl
             case 0x7E -> reg_A = get8BitRegisterIndexed(regCodeM); // ld a, (ix+dd)
-            case 0x7F -> { /* reg_A = reg_A; */
-            } // ld a,a
-            // add
-            case 0x80 -> ALU8BitAdd(reg_B);
-            case 0x81 -> ALU8BitAdd(reg_C);
-            case 0x82 -> ALU8BitAdd(reg_D);
-            case 0x83 -> ALU8BitAdd(reg_E);
+            default -> decode7x(opcode);
+        }
+    }
+
+    /*
+     * Index register instructions 0x80 to 0x8F
+     */
+    private void decodeIndexed8x(int opcode) {
+        switch (opcode) {
             case 0x84 -> ALU8BitAdd((reg_index & 0xFF00) >>> 8); // IXh
             case 0x85 -> ALU8BitAdd(reg_index & 0x00FF); // IXy
             case 0x86 -> ALU8BitAdd(getIndexAddressUndocumented(regCodeM)); // CP (IX+dd)
-            case 0x87 -> ALU8BitAdd(reg_A);
-            // adc
-            case 0x88 -> ALU8BitAdc(reg_B);
-            case 0x89 -> ALU8BitAdc(reg_C);
-            case 0x8A -> ALU8BitAdc(reg_D);
-            case 0x8B -> ALU8BitAdc(reg_E);
             case 0x8C -> ALU8BitAdc((reg_index & 0xFF00) >>> 8); // IXh
             case 0x8D -> ALU8BitAdc(reg_index & 0x00FF); // IXy
             case 0x8E -> ALU8BitAdc(getIndexAddressUndocumented(regCodeM)); // CP (IX+dd)
-            case 0x8F -> ALU8BitAdc(reg_A);
-            // sub
-            case 0x90 -> ALU8BitSub(reg_B);
-            case 0x91 -> ALU8BitSub(reg_C);
-            case 0x92 -> ALU8BitSub(reg_D);
-            case 0x93 -> ALU8BitSub(reg_E);
+            default -> decode8x(opcode);
+        }
+    }
+
+    /*
+     * Index register instructions 0x90 to 0x9F
+     */
+    private void decodeIndexed9x(int opcode) {
+        switch (opcode) {
             case 0x94 -> ALU8BitSub((reg_index & 0xFF00) >>> 8); // IXh
             case 0x95 -> ALU8BitSub(reg_index & 0x00FF); // IXy
             case 0x96 -> ALU8BitSub(getIndexAddressUndocumented(regCodeM)); // CP (IX+dd)
-            case 0x97 -> ALU8BitSub(reg_A);
-            // sbc
-            case 0x98 -> ALU8BitSbc(reg_B);
-            case 0x99 -> ALU8BitSbc(reg_C);
-            case 0x9A -> ALU8BitSbc(reg_D);
-            case 0x9B -> ALU8BitSbc(reg_E);
             case 0x9C -> ALU8BitSbc((reg_index & 0xFF00) >>> 8); // IXh
             case 0x9D -> ALU8BitSbc(reg_index & 0x00FF); // IXy
             case 0x9E -> ALU8BitSbc(getIndexAddressUndocumented(regCodeM)); // CP (IX+dd)
-            case 0x9F -> ALU8BitSbc(reg_A);
-            // and
-            case 0xA0 -> ALU8BitAnd(reg_B);
-            case 0xA1 -> ALU8BitAnd(reg_C);
-            case 0xA2 -> ALU8BitAnd(reg_D);
-            case 0xA3 -> ALU8BitAnd(reg_E);
+            default -> decode9x(opcode);
+        }
+    }
+
+    /*
+     * Index register instructions 0xA0 to 0xAF
+     */
+    private void decodeIndexedAx(int opcode) {
+        switch (opcode) {
             case 0xA4 -> ALU8BitAnd((reg_index & 0xFF00) >>> 8); // IXh
             case 0xA5 -> ALU8BitAnd(reg_index & 0x00FF); // IXy
             case 0xA6 -> ALU8BitAnd(getIndexAddressUndocumented(regCodeM)); // CP (IX+dd)
-            case 0xA7 -> ALU8BitAnd(reg_A);
-            // xor
-            case 0xA8 -> ALU8BitXor(reg_B);
-            case 0xA9 -> ALU8BitXor(reg_C);
-            case 0xAA -> ALU8BitXor(reg_D);
-            case 0xAB -> ALU8BitXor(reg_E);
             case 0xAC -> ALU8BitXor((reg_index & 0xFF00) >>> 8); // IXh
             case 0xAD -> ALU8BitXor(reg_index & 0x00FF); // IXy
             case 0xAE -> ALU8BitXor(getIndexAddressUndocumented(regCodeM)); // CP (IX+dd)
-            case 0xAF -> ALU8BitXor(reg_A);
-            // or
-            case 0xB0 -> ALU8BitOr(reg_B);
-            case 0xB1 -> ALU8BitOr(reg_C);
-            case 0xB2 -> ALU8BitOr(reg_D);
-            case 0xB3 -> ALU8BitOr(reg_E);
+            default -> decodeAx(opcode);
+        }
+    }
+
+    /*
+     * Index register instructions 0xB0 to 0xBF
+     */
+    private void decodeIndexedBx(int opcode) {
+        switch (opcode) {
             case 0xB4 -> ALU8BitOr((reg_index & 0xFF00) >>> 8); // IXh
             case 0xB5 -> ALU8BitOr(reg_index & 0x00FF); // IXy
             case 0xB6 -> ALU8BitOr(getIndexAddressUndocumented(regCodeM)); // CP (IX+dd)
-            case 0xB7 -> ALU8BitOr(reg_A);
-            // cp
-            case 0xB8 -> ALU8BitCp(reg_B);
-            case 0xB9 -> ALU8BitCp(reg_C);
-            case 0xBA -> ALU8BitCp(reg_D);
-            case 0xBB -> ALU8BitCp(reg_E);
             case 0xBC -> ALU8BitCp((reg_index & 0xFF00) >>> 8); // IXh
             case 0xBD -> ALU8BitCp(reg_index & 0x00FF); // IXy
             case 0xBE -> ALU8BitCp(getIndexAddressUndocumented(regCodeM)); // CP (IX+dd)
-            case 0xBF -> ALU8BitCp(reg_A);
-            //
-            case 0xC0 -> ret(!getZ());
-            case 0xC1 -> {
-                setBC(ram.readWord(reg_SP));
-                inc2SP();
-            }
-            case 0xC2 -> jp(!getZ());
-            case 0xC3 -> jp();
-            case 0xC4 -> call(!getZ());
-            case 0xC5 -> {
-                dec2SP();
-                ram.writeWord(reg_SP, getBC());
-            }
-            case 0xC6 -> {
-                ALU8BitAdd(ram.readByte(reg_PC));
-                incPC();
-            }
-            case 0xc7 -> rst(0);
-            case 0xC8 -> ret(getZ());
-            case 0xC9 -> ret();
-            case 0xCA -> jp(getZ());
+            default -> decodeBx(opcode);
+        }
+    }
+
+    /*
+     * Index register instructions 0xC0 to 0xCF
+     */
+    private void decodeIndexedCx(int opcode) {
+        switch (opcode) {
             case 0xCB -> extendedIndexCB();
-            case 0xCC -> call(getZ());
-            case 0xCD -> call();
-            case 0xCE -> {
-                ALU8BitAdc(ram.readByte(reg_PC));
-                incPC();
-            }
-            case 0xCF -> rst(1);
-            //
-            case 0xD0 -> ret(!getC());
-            case 0xD1 -> {
-                setDE(ram.readWord(reg_SP));
-                inc2SP();
-            }
-            case 0xD2 -> jp(!getC());
-            case 0xD3 -> outNA();
-            case 0xD4 -> call(!getC());
-            case 0xD5 -> {
-                dec2SP();
-                ram.writeWord(reg_SP, getDE());
-            }
-            case 0xD6 -> {
-                ALU8BitSub(ram.readByte(reg_PC));
-                incPC();
-            }
-            case 0xD7 -> rst(2);
-            case 0xD8 -> ret(getC());
-            case 0xD9 -> EXX();
-            case 0xDA -> jp(getC());
-            case 0xDB -> inAN();
-            case 0xDC -> call(getC());
-            case 0xDD -> extendedDD();
-            case 0xDE -> {
-                ALU8BitSbc(ram.readByte(reg_PC));
-                incPC();
-            }
-            case 0xDF -> rst(3);
-            //
-            case 0xE0 -> ret(!getPV());
+            default -> decodeCx(opcode);
+        }
+    }
+
+    /*
+     * Index register instructions 0xE0 to 0xEF
+     */
+    private void decodeIndexedEx(int opcode) {
+        switch (opcode) {
             case 0xE1 -> {
-                reg_index = ram.readWord(reg_SP);
+                reg_index = readWord(reg_SP);
                 inc2SP();
             } // pop ix
-            case 0xE2 -> jp(!getPV());
             case 0xE3 -> EXSPIndex(); // ex (sp),ix
-            case 0xE4 -> call(!getPV());
             case 0xE5 -> {
                 dec2SP();
-                ram.writeWord(reg_SP, reg_index);
+                writeWord(reg_SP, reg_index);
             } // push ix
-            case 0xE6 -> {
-                ALU8BitAnd(ram.readByte(reg_PC));
-                incPC();
-            }
-            case 0xE7 -> rst(4);
-            case 0xE8 -> ret(getPV());
             case 0xE9 -> reg_PC = reg_index; // jp (ix)
-            case 0xEA -> jp(getPV());
-            case 0xEB -> EXDEHL();
-            case 0xEC -> call(getPV());
-            case 0xED -> extendedED();
-            case 0xEE -> {
-                ALU8BitXor(ram.readByte(reg_PC));
-                incPC();
-            }
-            case 0xEF -> rst(5);
-            //
-            case 0xF0 -> ret(!getS());
-            case 0xF1 -> {
-                int temp = ram.readWord(reg_SP);
-                inc2SP();
-                reg_F = (temp & lsb);
-                reg_A = ((temp & msb) >> 8);
-            }
-            case 0xF2 -> jp(!getS());
-            case 0xF3 -> DI();
-            case 0xF4 -> call(!getS());
-            case 0xF5 -> {
-                dec2SP();
-                ram.writeWord(reg_SP, (reg_A << 8) | reg_F);
-            }
-            case 0xF6 -> {
-                ALU8BitOr(ram.readByte(reg_PC));
-                incPC();
-            }
-            case 0xF7 -> rst(6);
-            case 0xF8 -> ret(getS());
+            default -> decodeEx(opcode);
+        }
+    }
+
+    /*
+     * Index register instructions 0xF0 to 0xFF
+     */
+    private void decodeIndexedFx(int opcode) {
+        switch (opcode) {
             case 0xF9 -> reg_SP = reg_index; // ld sp,ix
-            case 0xFA -> jp(getS());
-            case 0xFB -> EI();
-            case 0xFC -> call(getS());
-            case 0xFD -> extendedFD();
-            case 0xFE -> {
-                ALU8BitCp(ram.readByte(reg_PC));
-                incPC();
-            }
-            case 0xFF -> rst(7);
+            default -> decodeFx(opcode);
         }
     }
 
@@ -1584,52 +2200,37 @@ public class Z80Core implements ICPUData {
      *
      * *****************************************************************************
      */
-    @SuppressFBWarnings(value = "SF_SWITCH_NO_DEFAULT", justification = "Bytes can only be 0..255")
     private void extendedIndexCB() {
-        instruction = ram.readByte(reg_PC + 1); // fudge for DD CB dd ii
+        instruction = fetchByte(reg_PC + 1); // fudge for DD CB dd ii
         tStates = tStates + OPCODE_INDEXED_CB_STATES[instruction];
         //
         var r = instruction & 0x07;
-        switch (instruction) {
-            case 0x00, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07 -> shiftRLCIndexed(r);
-            case 0x08, 0x09, 0x0A, 0x0B, 0x0C, 0x0D, 0x0E, 0x0F -> shiftRRCIndexed(r);
-            case 0x10, 0x11, 0x12, 0x13, 0x14, 0x15, 0x16, 0x17 -> shiftRLIndexed(r);
-            case 0x18, 0x19, 0x1A, 0x1B, 0x1C, 0x1D, 0x1E, 0x1F -> shiftRRIndexed(r);
-            case 0x20, 0x21, 0x22, 0x23, 0x24, 0x25, 0x26, 0x27 -> shiftSLAIndexed(r);
-            case 0x28, 0x29, 0x2A, 0x2B, 0x2C, 0x2D, 0x2E, 0x2F -> shiftSRAIndexed(r);
-            case 0x30, 0x31, 0x32, 0x33, 0x34, 0x35, 0x36, 0x37 -> shiftSLLIndexed(r);
-            case 0x38, 0x39, 0x3A, 0x3B, 0x3C, 0x3D, 0x3E, 0x3F -> shiftSRLIndexed(r);
-            //
-            case 0x40, 0x41, 0x42, 0x43, 0x44, 0x45, 0x46, 0x47 -> testIndexBit(0);
-            case 0x48, 0x49, 0x4A, 0x4B, 0x4C, 0x4D, 0x4E, 0x4F -> testIndexBit(1);
-            case 0x50, 0x51, 0x52, 0x53, 0x54, 0x55, 0x56, 0x57 -> testIndexBit(2);
-            case 0x58, 0x59, 0x5A, 0x5B, 0x5C, 0x5D, 0x5E, 0x5F -> testIndexBit(3);
-            case 0x60, 0x61, 0x62, 0x63, 0x64, 0x65, 0x66, 0x67 -> testIndexBit(4);
-            case 0x68, 0x69, 0x6A, 0x6B, 0x6C, 0x6D, 0x6E, 0x6F -> testIndexBit(5);
-            case 0x70, 0x71, 0x72, 0x73, 0x74, 0x75, 0x76, 0x77 -> testIndexBit(6);
-            case 0x78, 0x79, 0x7A, 0x7B, 0x7C, 0x7D, 0x7E, 0x7F -> testIndexBit(7);
-            //
-            case 0x80, 0x81, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87 -> bitIndexReset(0, r);
-            case 0x88, 0x89, 0x8A, 0x8B, 0x8C, 0x8D, 0x8E, 0x8F -> bitIndexReset(1, r);
-            case 0x90, 0x91, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97 -> bitIndexReset(2, r);
-            case 0x98, 0x99, 0x9A, 0x9B, 0x9C, 0x9D, 0x9E, 0x9F -> bitIndexReset(3, r);
-            case 0xA0, 0xA1, 0xA2, 0xA3, 0xA4, 0xA5, 0xA6, 0xA7 -> bitIndexReset(4, r);
-            case 0xA8, 0xA9, 0xAA, 0xAB, 0xAC, 0xAD, 0xAE, 0xAF -> bitIndexReset(5, r);
-            case 0xB0, 0xB1, 0xB2, 0xB3, 0xB4, 0xB5, 0xB6, 0xB7 -> bitIndexReset(6, r);
-            case 0xB8, 0xB9, 0xBA, 0xBB, 0xBC, 0xBD, 0xBE, 0xBF -> bitIndexReset(7, r);
-            //
-            case 0xC0, 0xC1, 0xC2, 0xC3, 0xC4, 0xC5, 0xC6, 0xC7 -> bitIndexSet(0, r);
-            case 0xC8, 0xC9, 0xCA, 0xCB, 0xCC, 0xCD, 0xCE, 0xCF -> bitIndexSet(1, r);
-            case 0xD0, 0xD1, 0xD2, 0xD3, 0xD4, 0xD5, 0xD6, 0xD7 -> bitIndexSet(2, r);
-            case 0xD8, 0xD9, 0xDA, 0xDB, 0xDC, 0xDD, 0xDE, 0xDF -> bitIndexSet(3, r);
-            case 0xE0, 0xE1, 0xE2, 0xE3, 0xE4, 0xE5, 0xE6, 0xE7 -> bitIndexSet(4, r);
-            case 0xE8, 0xE9, 0xEA, 0xEB, 0xEC, 0xED, 0xEE, 0xEF -> bitIndexSet(5, r);
-            case 0xF0, 0xF1, 0xF2, 0xF3, 0xF4, 0xF5, 0xF6, 0xF7 -> bitIndexSet(6, r);
-            case 0xF8, 0xF9, 0xFA, 0xFB, 0xFC, 0xFD, 0xFE, 0xFF -> bitIndexSet(7, r);
+        var bit = (instruction >>> 3) & 0x07;
+        switch (instruction >>> 6) {
+            case 0 -> shiftIndexed(bit, r);
+            case 1 -> testIndexBit(bit);
+            case 2 -> bitIndexReset(bit, r);
+            default -> bitIndexSet(bit, r);
         }
         incPC();
     }
 
+    /*
+     * indexed shift or rotate selected by bits 3 - 5 of a DD CB / FD CB instruction
+     */
+    private void shiftIndexed(int shift, int reg) {
+        switch (shift) {
+            case 0 -> shiftRLCIndexed(reg);
+            case 1 -> shiftRRCIndexed(reg);
+            case 2 -> shiftRLIndexed(reg);
+            case 3 -> shiftRRIndexed(reg);
+            case 4 -> shiftSLAIndexed(reg);
+            case 5 -> shiftSRAIndexed(reg);
+            case 6 -> shiftSLLIndexed(reg);
+            default -> shiftSRLIndexed(reg);
+        }
+    }
+
     /*
      * return an 8 bit register based on its code 000 -> 111
      */
@@ -1725,36 +2326,163 @@ public class Z80Core implements ICPUData {
     }
 
     /*
-     * increment / decrement (and wrap) the stack pointer
+     * increment / decrement (and wrap) the stack pointer
+     */
+    private void inc2SP() {
+        reg_SP = reg_SP + 2;
+        reg_SP = reg_SP & MAX_ADDRESS;
+    }
+
+    private void dec2SP() {
+        reg_SP = reg_SP - 2;
+        reg_SP = reg_SP & MAX_ADDRESS;
+    }
+
+    /*
+     * data reads, checked against any watchpoints
+     */
+    private int readByte(int address) {
+        int value = loadByte(address);
+        if (monitoring) {
+            monitor(address, value, Z80Watchpoints.READ);
+        }
+        return value;
+    }
+
+    private int readWord(int address) {
+        int value = loadWord(address);
+        if (monitoring) {
+            monitor(address, value, Z80Watchpoints.READ);
+            monitor(address + 1, value >>> 8, Z80Watchpoints.READ);
+        }
+        return value;
+    }
+
+    /*
+     * memory reads, straight from the page tables where the memory offers them
+     */
+    private int loadByte(int address) {
+        if (null != readPages) {
+            address = address & MAX_ADDRESS;
+            byte[] page = readPages[address >>> pageShift];
+            if (null != page) {
+                return page[address & pageMask] & 0xFF;
+            }
+        }
+        return ram.readByte(address);
+    }
+
+    private int loadWord(int address) {
+        if (null != readPages) {
+            return loadByte(address) | (loadByte(address + 1) << 8);
+        }
+        return ram.readWord(address);
+    }
+
+    /*
+     * instruction stream reads, taken from the decode cache when it holds the current instruction
+     */
+    private int fetchByte(int address) {
+        int offset = (address - instructionStart) & MAX_ADDRESS;
+        if (offset < instructionLength) {
+            return (instructionBytes >>> (offset << 3)) & 0xFF;
+        }
+        return loadByte(address);
+    }
+
+    /*
+     * fetch the operand at the program counter and step over it
+     */
+    private int fetchOperandByte() {
+        int value = fetchByte(reg_PC);
+        incPC();
+        return value;
+    }
+
+    private int fetchOperandWord() {
+        int value = fetchWord(reg_PC);
+        inc2PC();
+        return value;
+    }
+
+    private int fetchWord(int address) {
+        int offset = (address - instructionStart) & MAX_ADDRESS;
+        if (offset + 1 < instructionLength) {
+            return (instructionBytes >>> (offset << 3)) & 0xFFFF;
+        }
+        return loadWord(address);
+    }
+
+    /*
+     * memory writes, checked against any compiled code, decoded instructions and watchpoints
      */
-    private void inc2SP() {
-        reg_SP = reg_SP + 2;
-        reg_SP = reg_SP & MAX_ADDRESS;
+    private void writeByte(int address, int data) {
+        storeByte(address, data);
+        if (monitoring) {
+            monitor(address, data, Z80Watchpoints.WRITE);
+        }
+        if (null != blockCompiler) {
+            codeModified |= blockCompiler.written(address);
+        }
+        if (null != decodeCache) {
+            decodeCache.written(address);
+        }
     }
 
-    private void dec2SP() {
-        reg_SP = reg_SP - 2;
-        reg_SP = reg_SP & MAX_ADDRESS;
+    private void storeByte(int address, int data) {
+        if (null != writePages) {
+            int masked = address & MAX_ADDRESS;
+            byte[] page = writePages[masked >>> pageShift];
+            if (null != page) {
+                page[masked & pageMask] = (byte) data;
+                return;
+            }
+        }
+        ram.writeByte(address, data);
+        codeModified |= isRemapped();
     }
 
     /*
-     * ALU Operations
+     * a block of memory has been written directly through the memory interface
      */
-
-    /* half carry flag control */
-    private void setHalfCarryFlagAdd(int left, int right, int carry) {
-        left = left & 0x000F;
-        right = right & 0x000F;
-        setH((right + left + carry) > 0x0F);
+    private void written(int address, int length) {
+        if (null != blockCompiler) {
+            for (int i = 0; i < length; i++) {
+                codeModified |= blockCompiler.written(address + i);
+            }
+        }
+        if (null != decodeCache) {
+            for (int i = 0; i < length; i++) {
+                decodeCache.written(address + i);
+            }
+        }
     }
 
-    /* half carry flag control */
-    private void setHalfCarryFlagAdd(int left, int right) {
-        left = left & 0x000F;
-        right = right & 0x000F;
-        setH((right + left) > 0x0F);
+    private void writeWord(int address, int data) {
+        if (null != writePages) {
+            storeByte(address, data);
+            storeByte(address + 1, data >>> 8);
+        } else {
+            ram.writeWord(address, data);
+        }
+        if (monitoring) {
+            monitor(address, data, Z80Watchpoints.WRITE);
+            monitor(address + 1, data >>> 8, Z80Watchpoints.WRITE);
+        }
+        if (null != blockCompiler) {
+            codeModified |= blockCompiler.written(address);
+            codeModified |= blockCompiler.written((address + 1) & MAX_ADDRESS);
+        }
+        if (null != decodeCache) {
+            decodeCache.written(address);
+            decodeCache.written((address + 1) & MAX_ADDRESS);
+        }
     }
 
+    /*
+     * ALU Operations
+     */
+
     /* half carry flag control */
     private void setHalfCarryFlagSub(int left, int right) {
         left = left & 0x000F;
@@ -1771,19 +2499,6 @@ public class Z80Core implements ICPUData {
 
     /* half carry flag control */
 
-    /* 2's compliment overflow flag control */
-    private void setOverflowFlagAdd(int left, int right, int carry) {
-        if (left > 127) left = left - 256;
-        if (right > 127) right = right - 256;
-        left = left + right + carry;
-        setPV((left < -128) || (left > 127));
-    }
-
-    /* 2's compliment overflow flag control */
-    private void setOverflowFlagAdd(int left, int right) {
-        setOverflowFlagAdd(left, right, 0);
-    }
-
     /* 2's compliment overflow flag control */
     private void setOverflowFlagAdd16(int left, int right, int carry) {
         if (left > 32767) left = left - 65536;
@@ -1800,11 +2515,6 @@ public class Z80Core implements ICPUData {
         setPV((left < -128) || (left > 127));
     }
 
-    /* 2's compliment overflow flag control */
-    private void setOverflowFlagSub(int left, int right) {
-        setOverflowFlagSub(left, right, 0);
-    }
-
     /* 2's compliment overflow flag control */
     private void setOverflowFlagSub16(int left, int right, int carry) {
         if (left > 32767) left = left - 65536;
@@ -1813,143 +2523,111 @@ public class Z80Core implements ICPUData {
         setPV((left < -32768) || (left > 32767));
     }
 
+    /*
+     * The 8 bit arithmetic and logic operations only record their operands and result. The flags are evaluated into
+     * reg_F when something needs them, which is usually never as the next operation overwrites them.
+     */
+    private void deferFlags(int op, int left, int right, int carry, int result) {
+        flagOp = op;
+        flagLeft = left;
+        flagRight = right;
+        flagCarry = carry;
+        flagResult = result;
+    }
+
     /* 8 bit ADD */
     private void ALU8BitAdd(int value) {
-        int local_reg_A = reg_A;
-        setHalfCarryFlagAdd(local_reg_A, value);
-        setOverflowFlagAdd(local_reg_A, value);
-        local_reg_A = local_reg_A + value;
-        setS((local_reg_A & 0x0080) != 0);
-        setC((local_reg_A & 0xFF00) != 0);
-        local_reg_A = local_reg_A & 0x00FF;
-        setZ(local_reg_A == 0);
-        resetN();
-        reg_A = local_reg_A;
-        setUnusedFlags(reg_A);
+        final int result = reg_A + value;
+        deferFlags(FLAGS_ADD, reg_A, value, 0, result);
+        reg_A = result & 0x00FF;
     }
 
     /* 8 bit ADC */
     private void ALU8BitAdc(int value) {
-        int local_reg_A = reg_A;
-        int carry;
-        if (getC()) carry = 1;
-        else carry = 0;
-        setHalfCarryFlagAdd(local_reg_A, value, carry);
-        setOverflowFlagAdd(local_reg_A, value, carry);
-        local_reg_A = local_reg_A + value + carry;
-        setS((local_reg_A & 0x0080) != 0);
-        setC((local_reg_A & 0xFF00) != 0);
-        local_reg_A = local_reg_A & 0x00FF;
-        setZ(local_reg_A == 0);
-        resetN();
-        reg_A = local_reg_A;
-        setUnusedFlags(reg_A);
+        final int carry = getC() ? 1 : 0;
+        final int result = reg_A + value + carry;
+        deferFlags(FLAGS_ADD, reg_A, value, carry, result);
+        reg_A = result & 0x00FF;
     }
 
     /* 8 bit SUB */
     private void ALU8BitSub(int value) {
-        int local_reg_A = reg_A;
-        setHalfCarryFlagSub(local_reg_A, value);
-        setOverflowFlagSub(local_reg_A, value);
-        local_reg_A = local_reg_A - value;
-        setS((local_reg_A & 0x0080) != 0);
-        setC((local_reg_A & 0xFF00) != 0);
-        local_reg_A = local_reg_A & 0x00FF;
-        setZ(local_reg_A == 0);
-        setN();
-        reg_A = local_reg_A;
-        setUnusedFlags(reg_A);
+        final int result = reg_A - value;
+        deferFlags(FLAGS_SUB, reg_A, value, 0, result);
+        reg_A = result & 0x00FF;
     }
 
     /* 8 bit SBC */
     private void ALU8BitSbc(int value) {
-        int local_reg_A = reg_A;
-        int carry;
-        if (getC()) carry = 1;
-        else carry = 0;
-        setHalfCarryFlagSub(local_reg_A, value, carry);
-        setOverflowFlagSub(local_reg_A, value, carry);
-        local_reg_A = local_reg_A - value - carry;
-        setS((local_reg_A & 0x0080) != 0);
-        setC((local_reg_A & 0xFF00) != 0);
-        local_reg_A = local_reg_A & 0x00FF;
-        setZ(local_reg_A == 0);
-        setN();
-        reg_A = local_reg_A;
-        setUnusedFlags(reg_A);
+        final int carry = getC() ? 1 : 0;
+        final int result = reg_A - value - carry;
+        deferFlags(FLAGS_SUB, reg_A, value, carry, result);
+        reg_A = result & 0x00FF;
     }
 
     /* 8 bit AND (version II) */
     private void ALU8BitAnd(int value) {
-        reg_F = 0x10; // set the H flag
         reg_A = reg_A & value;
-        setS((reg_A & 0x0080) != 0);
-        setZ(reg_A == 0);
-        setPV(PARITY_TABLE[reg_A]);
-        setUnusedFlags(reg_A);
+        deferFlags(FLAGS_AND, 0, 0, 0, reg_A);
     }
 
     /* 8 bit OR (Version II) */
     private void ALU8BitOr(int value) {
-        reg_F = 0;
         reg_A = reg_A | value;
-        setS((reg_A & 0x0080) != 0);
-        setZ(reg_A == 0);
-        setPV(PARITY_TABLE[reg_A]);
-        setUnusedFlags(reg_A);
+        deferFlags(FLAGS_OR, 0, 0, 0, reg_A);
     }
 
     /* 8 bit XOR (Version II) */
     private void ALU8BitXor(int value) {
-        reg_F = 0;
         reg_A = reg_A ^ value;
-        setS((reg_A & 0x0080) != 0);
-        setZ(reg_A == 0);
-        setPV(PARITY_TABLE[reg_A]);
-        setUnusedFlags(reg_A);
+        deferFlags(FLAGS_OR, 0, 0, 0, reg_A);
     }
 
     /* 8 bit CP */
     private void ALU8BitCp(int b) {
-        final int a = reg_A;
-        final int wans = a - b;
-        final int ans = wans & 0xff;
-        reg_F = 0x02;
-        setS((ans & flag_S) != 0);
-        set3((b & flag_3) != 0);
-        set5((b & flag_5) != 0);
-        setZ(ans == 0);
-        setC((wans & 0x100) != 0);
-        setH((((a & 0x0F) - (b & 0x0F)) & flag_H) != 0);
-        setPV(((a ^ b) & (a ^ ans) & 0x80) != 0);
+        deferFlags(FLAGS_CP, reg_A, b, 0, reg_A - b);
     }
 
     /* 8 bit INC */
     private int ALU8BitInc(int value) {
-        setHalfCarryFlagAdd(value, 1);
-        // setOverflowFlagAdd(value, 1);
-        setPV(value == 0x7F);
-        value++;
-        setS((value & 0x0080) != 0);
-        value = value & 0x00FF;
-        setZ(value == 0);
-        resetN();
-        setUnusedFlags(value);
-        return (value);
+        final int result = (value + 1) & 0x00FF;
+        deferFlags(FLAGS_INC, value, 1, getC() ? 1 : 0, result);
+        return result;
     }
 
     /* 8 bit DEC */
     private int ALU8BitDec(int value) {
-        setHalfCarryFlagSub(value, 1);
-        // setOverflowFlagSub(value, 1);
-        setPV(value == 0x80);
-        value--;
-        setS((value & 0x0080) != 0);
-        value = value & 0x00FF;
-        setZ(value == 0);
-        setN();
-        setUnusedFlags(value);
-        return (value);
+        final int result = (value - 1) & 0x00FF;
+        deferFlags(FLAGS_DEC, value, 1, getC() ? 1 : 0, result);
+        return result;
+    }
+
+    /* the flags register, evaluating any deferred flags first */
+    private int flags() {
+        if (FLAGS_VALID != flagOp) {
+            evaluateFlags();
+        }
+        return reg_F;
+    }
+
+    /* build reg_F from the last deferred operation, exactly as the operation would have set it */
+    private void evaluateFlags() {
+        reg_F = switch (flagOp) {
+            case FLAGS_ADD -> ADD_FLAGS_TABLE[(flagCarry << 16) | (flagLeft << 8) | flagRight] & lsb;
+            case FLAGS_SUB -> SUB_FLAGS_TABLE[(flagCarry << 16) | (flagLeft << 8) | flagRight] & lsb;
+            case FLAGS_CP -> (SUB_FLAGS_TABLE[(flagLeft << 8) | flagRight] & 0xD7) | (flagRight & 0x28);
+            case FLAGS_AND -> SZ53P_TABLE[flagResult] | flag_H;
+            case FLAGS_OR -> SZ53P_TABLE[flagResult];
+            case FLAGS_INC -> INC_FLAGS_TABLE[flagLeft] | flagCarry;
+            default -> DEC_FLAGS_TABLE[flagLeft] | flagCarry;
+        };
+        flagOp = FLAGS_VALID;
+    }
+
+    /* replace all flags */
+    private void setFlags(int flags) {
+        reg_F = flags;
+        flagOp = FLAGS_VALID;
     }
 
     /* 16 bit INC */
@@ -2059,7 +2737,7 @@ public class Z80Core implements ICPUData {
         temp = reg_A;
         reg_A = reg_A_ALT;
         reg_A_ALT = temp;
-        temp = reg_F;
+        temp = flags();
         reg_F = reg_F_ALT;
         reg_F_ALT = temp;
     }
@@ -2072,10 +2750,10 @@ public class Z80Core implements ICPUData {
 
     private void EXSPHL() {
         int temp = getHL();
-        setHL(ram.readWord(reg_SP));
+        setHL(readWord(reg_SP));
         inc2SP();
         dec2SP();
-        ram.writeWord(reg_SP, temp);
+        writeWord(reg_SP, temp);
     }
 
     private void EXX() {
@@ -2095,7 +2773,7 @@ public class Z80Core implements ICPUData {
      * test & set flag states
      */
     private boolean getS() {
-        return ((reg_F & flag_S) != 0);
+        return ((flags() & flag_S) != 0);
     }
 
     private void setS(boolean b) {
@@ -2104,7 +2782,10 @@ public class Z80Core implements ICPUData {
     }
 
     private boolean getZ() {
-        return ((reg_F & flag_Z) != 0);
+        if (FLAGS_VALID == flagOp) {
+            return ((reg_F & flag_Z) != 0);
+        }
+        return ((flagResult & 0xFF) == 0);
     }
 
     private void setZ(boolean b) {
@@ -2113,7 +2794,7 @@ public class Z80Core implements ICPUData {
     }
 
     private boolean getH() {
-        return ((reg_F & flag_H) != 0);
+        return ((flags() & flag_H) != 0);
     }
 
     private void setH(boolean b) {
@@ -2122,7 +2803,7 @@ public class Z80Core implements ICPUData {
     }
 
     private boolean getPV() {
-        return ((reg_F & flag_PV) != 0);
+        return ((flags() & flag_PV) != 0);
     }
 
     private void setPV(boolean b) {
@@ -2131,11 +2812,18 @@ public class Z80Core implements ICPUData {
     }
 
     private boolean getN() {
-        return ((reg_F & flag_N) != 0);
+        return ((flags() & flag_N) != 0);
     }
 
     private boolean getC() {
-        return ((reg_F & flag_C) != 0);
+        if (FLAGS_VALID == flagOp) {
+            return ((reg_F & flag_C) != 0);
+        }
+        return switch (flagOp) {
+            case FLAGS_ADD, FLAGS_SUB, FLAGS_CP -> (flagResult & 0xFF00) != 0;
+            case FLAGS_INC, FLAGS_DEC -> flagCarry != 0;
+            default -> false;
+        };
     }
 
     // private void setN(boolean b) { if (b) setN(); else resetN(); }
@@ -2145,35 +2833,35 @@ public class Z80Core implements ICPUData {
     }
 
     private void setS() {
-        reg_F = reg_F | flag_S;
+        reg_F = flags() | flag_S;
     }
 
     private void setZ() {
-        reg_F = reg_F | flag_Z;
+        reg_F = flags() | flag_Z;
     }
 
     private void set5() {
-        reg_F = reg_F | flag_5;
+        reg_F = flags() | flag_5;
     }
 
     private void setH() {
-        reg_F = reg_F | flag_H;
+        reg_F = flags() | flag_H;
     }
 
     private void set3() {
-        reg_F = reg_F | flag_3;
+        reg_F = flags() | flag_3;
     }
 
     private void setPV() {
-        reg_F = reg_F | flag_PV;
+        reg_F = flags() | flag_PV;
     }
 
     private void setN() {
-        reg_F = reg_F | flag_N;
+        reg_F = flags() | flag_N;
     }
 
     private void setC() {
-        reg_F = reg_F | flag_C;
+        reg_F = flags() | flag_C;
     }
 
     private void set5(boolean b) {
@@ -2187,45 +2875,43 @@ public class Z80Core implements ICPUData {
     }
 
     private void setUnusedFlags(int value) {
-        value = value & 0x28;
-        reg_F = reg_F & 0xD7;
-        reg_F = reg_F | value;
+        reg_F = (flags() & 0xD7) | (value & 0x28);
     }
 
     private void flipC() {
-        reg_F = reg_F ^ flag_C;
+        reg_F = flags() ^ flag_C;
     }
 
     private void resetS() {
-        reg_F = reg_F & flag_S_N;
+        reg_F = flags() & flag_S_N;
     }
 
     private void resetZ() {
-        reg_F = reg_F & flag_Z_N;
+        reg_F = flags() & flag_Z_N;
     }
 
     private void reset5() {
-        reg_F = reg_F & flag_5_N;
+        reg_F = flags() & flag_5_N;
     }
 
     private void resetH() {
-        reg_F = reg_F & flag_H_N;
+        reg_F = flags() & flag_H_N;
     }
 
     private void reset3() {
-        reg_F = reg_F & flag_3_N;
+        reg_F = flags() & flag_3_N;
     }
 
     private void resetPV() {
-        reg_F = reg_F & flag_PV_N;
+        reg_F = flags() & flag_PV_N;
     }
 
     private void resetN() {
-        reg_F = reg_F & flag_N_N;
+        reg_F = flags() & flag_N_N;
     }
 
     private void resetC() {
-        reg_F = reg_F & flag_C_N;
+        reg_F = flags() & flag_C_N;
     }
 
     private int getR() {
@@ -2237,6 +2923,15 @@ public class Z80Core implements ICPUData {
         reg_R8 = r & 0x80;
     }
 
+    private int getAF() {
+        return (reg_A << 8) + flags();
+    }
+
+    private void setAF(int af) {
+        reg_A = (af & msb) >> 8;
+        setFlags(af & lsb);
+    }
+
     private int getBC() {
         return (reg_B << 8) + reg_C;
     }
@@ -2296,49 +2991,27 @@ public class Z80Core implements ICPUData {
      */
 
     private void RLCA() {
-        boolean carry = (reg_A & 0x0080) != 0;
-        reg_A = ((reg_A << 1) & 0x00FF);
-        if (carry) {
-            setC();
-            reg_A = (reg_A | 0x0001);
-        } else resetC();
-        resetH();
-        resetN();
-        setUnusedFlags(reg_A);
+        reg_A = (reg_A << 1) | (reg_A >>> 7);
+        setFlags((flags() & (flag_S | flag_Z | flag_PV)) | (reg_A & (flag_5 | flag_3 | flag_C)));
+        reg_A = reg_A & lsb;
     }
 
     private void RLA() {
-        boolean carry = (reg_A & 0x0080) != 0;
-        reg_A = ((reg_A << 1) & 0x00FF);
-        if (getC()) reg_A = reg_A | 0x01;
-        if (carry) setC();
-        else resetC();
-        resetH();
-        resetN();
-        setUnusedFlags(reg_A);
+        reg_A = (reg_A << 1) | (getC() ? 1 : 0);
+        setFlags((flags() & (flag_S | flag_Z | flag_PV)) | (reg_A & (flag_5 | flag_3)) | (reg_A >>> 8));
+        reg_A = reg_A & lsb;
     }
 
     private void RRCA() {
-        boolean carry = (reg_A & 0x0001) != 0;
-        reg_A = (reg_A >> 1);
-        if (carry) {
-            setC();
-            reg_A = (reg_A | 0x0080);
-        } else resetC();
-        resetH();
-        resetN();
-        setUnusedFlags(reg_A);
+        final int carry = reg_A & flag_C;
+        reg_A = (reg_A >> 1) | (carry << 7);
+        setFlags((flags() & (flag_S | flag_Z | flag_PV)) | (reg_A & (flag_5 | flag_3)) | carry);
     }
 
     private void RRA() {
-        boolean carry = (reg_A & 0x01) != 0;
-        reg_A = (reg_A >> 1);
-        if (getC()) reg_A = (reg_A | 0x0080);
-        if (carry) setC();
-        else resetC();
-        resetH();
-        resetN();
-        setUnusedFlags(reg_A);
+        final int carry = reg_A & flag_C;
+        reg_A = (reg_A >> 1) | (getC() ? 0x80 : 0);
+        setFlags((flags() & (flag_S | flag_Z | flag_PV)) | (reg_A & (flag_5 | flag_3)) | carry);
     }
 
     private void CPL() {
@@ -2384,46 +3057,14 @@ public class Z80Core implements ICPUData {
      * DAA is weird, can't find Zilog algorithm so using +0110 if Nibble>9 algorithm.
      */
     private void DAA() {
-        int ans = reg_A;
-        int incr = 0;
-        boolean carry = getC();
-        if ((getH()) || ((ans & 0x0F) > 0x09)) {
-            incr = 0x06;
-        }
-        if (carry || (ans > 0x9f) || ((ans > 0x8f) && ((ans & 0x0F) > 0x09))) {
-            incr |= 0x60;
-        }
-        if (ans > 0x99) {
-            carry = true;
-        }
-        if (getN()) {
-            ALU8BitSub(incr); // sub_a(incr);
-        } else {
-            ALU8BitAdd(incr); // add_a(incr);
-        }
-        if (carry) setC();
-        else resetC();
-        setPV(PARITY_TABLE[reg_A]);
+        final int flags = flags();
+        setAF(DAA_TABLE[((flags & flag_N) << 9) | ((flags & flag_H) << 5) | ((flags & flag_C) << 8) | reg_A]);
     }
 
     private int shiftGenericRLC(int temp) {
-        temp = temp << 1;
-        if ((temp & 0x0FF00) != 0) {
-            setC();
-            temp = temp | 0x01;
-        } else resetC();
-        // standard flag updates
-        if ((temp & flag_S) == 0) resetS();
-        else setS();
-        if ((temp & 0x00FF) == 0) setZ();
-        else resetZ();
-        resetH();
-        resetN();
-        // put value back
-        temp = temp & 0x00FF;
-        setPV(PARITY_TABLE[temp]);
-        setUnusedFlags(temp);
-        return temp;
+        temp = (temp << 1) | (temp >>> 7);
+        setFlags(SZ53P_TABLE[temp & lsb] | (temp >>> 8));
+        return temp & lsb;
     }
 
     /**
@@ -2432,8 +3073,8 @@ public class Z80Core implements ICPUData {
      */
     private void shiftRLCIndexed(int reg) {
         int address = getIndexAddress();
-        int regValue = shiftGenericRLC(ram.readByte(address));
-        ram.writeByte(address, regValue);
+        int regValue = shiftGenericRLC(readByte(address));
+        writeByte(address, regValue);
         //
         if (reg != 6) { // (rr)
             set8BitRegister(reg, regValue);
@@ -2443,28 +3084,15 @@ public class Z80Core implements ICPUData {
     }
 
     private int shiftGenericRL(int temp) {
-        // do shift operation
-        temp = temp << 1;
-        if (getC()) temp = temp | 0x01;
-        // standard flag updates
-        setS((temp & 0x0080) != 0);
-        if ((temp & 0x0FF00) == 0) resetC();
-        else setC();
-        temp = temp & lsb;
-        if ((temp & 0x00FF) == 0) setZ();
-        else resetZ();
-        setPV(PARITY_TABLE[temp]);
-        resetH();
-        resetN();
-        // put value back
-        setUnusedFlags(temp);
-        return temp;
+        temp = (temp << 1) | (getC() ? 1 : 0);
+        setFlags(SZ53P_TABLE[temp & lsb] | (temp >>> 8));
+        return temp & lsb;
     }
 
     private void shiftRLIndexed(int reg) {
         int address = getIndexAddress();
-        var regValue = shiftGenericRL(ram.readByte(address));
-        ram.writeByte(address, regValue);
+        var regValue = shiftGenericRL(readByte(address));
+        writeByte(address, regValue);
         //
         if (reg != 6) { // (rr)
             set8BitRegister(reg, regValue);
@@ -2474,26 +3102,16 @@ public class Z80Core implements ICPUData {
     }
 
     private int shiftGenericRRC(int temp) {
-        // do shift operation
-        setC((temp & 0x0001) != 0);
-        temp = temp >> 1;
-        if (getC()) temp = temp | 0x80;
-        // standard flag updates
-        setS((temp & 0x0080) != 0);
-        if (temp == 0) setZ();
-        else resetZ();
-        resetH();
-        setPV(PARITY_TABLE[temp]);
-        resetN();
-        // put value back
-        setUnusedFlags(temp);
+        final int carry = temp & flag_C;
+        temp = (temp >> 1) | (carry << 7);
+        setFlags(SZ53P_TABLE[temp] | carry);
         return temp;
     }
 
     private void shiftRRCIndexed(int reg) {
         int address = getIndexAddress();
-        int regValue = shiftGenericRRC(ram.readByte(address));
-        ram.writeByte(address, regValue);
+        int regValue = shiftGenericRRC(readByte(address));
+        writeByte(address, regValue);
         //
         if (reg != 6) { // (rr)
             set8BitRegister(reg, regValue);
@@ -2503,28 +3121,16 @@ public class Z80Core implements ICPUData {
     }
 
     private int shiftGenericRR(int temp) {
-        boolean tempC;
-        // do shift operation
-        tempC = getC();
-        setC((temp & 0x0001) != 0);
-        temp = temp >> 1;
-        if (tempC) temp = temp | 0x80;
-        // standard flag updates
-        setS((temp & 0x0080) != 0);
-        if (temp == 0) setZ();
-        else resetZ();
-        resetH();
-        setPV(PARITY_TABLE[temp]);
-        resetN();
-        // put value back
-        setUnusedFlags(temp);
+        final int carry = temp & flag_C;
+        temp = (temp >> 1) | (getC() ? 0x80 : 0);
+        setFlags(SZ53P_TABLE[temp] | carry);
         return temp;
     }
 
     private void shiftRRIndexed(int reg) {
         int address = getIndexAddress();
-        int regValue = shiftGenericRR(ram.readByte(address));
-        ram.writeByte(address, regValue);
+        int regValue = shiftGenericRR(readByte(address));
+        writeByte(address, regValue);
         //
         if (reg != 6) { // (rr)
             set8BitRegister(reg, regValue);
@@ -2534,27 +3140,15 @@ public class Z80Core implements ICPUData {
     }
 
     private int shiftGenericSLA(int temp) {
-        // do shift operation
         temp = temp << 1;
-        // standard flag updates
-        setS((temp & 0x0080) != 0);
-        if ((temp & 0x00FF) == 0) setZ();
-        else resetZ();
-        resetH();
-        if ((temp & 0x0FF00) != 0) setC();
-        else resetC();
-        temp = temp & 0x00FF;
-        setPV(PARITY_TABLE[temp]);
-        resetN();
-        // put value back
-        setUnusedFlags(temp);
-        return temp;
+        setFlags(SZ53P_TABLE[temp & lsb] | (temp >>> 8));
+        return temp & lsb;
     }
 
     private void shiftSLAIndexed(int reg) {
         int address = getIndexAddress();
-        var regValue = shiftGenericSLA(ram.readByte(address));
-        ram.writeByte(address, regValue);
+        var regValue = shiftGenericSLA(readByte(address));
+        writeByte(address, regValue);
         //
         if (reg != 6) { // (rr)
             set8BitRegister(reg, regValue);
@@ -2570,26 +3164,15 @@ public class Z80Core implements ICPUData {
      * @return Incorrect SLL value
      */
     private int shiftGenericSLL(int temp) {
-        // do shift operation
         temp = (temp << 1) | 0x01; // the fault
-        // standard flag updates
-        setS((temp & 0x0080) != 0);
-        resetZ();
-        resetH();
-        if ((temp & 0x0FF00) != 0) setC();
-        else resetC();
-        temp = temp & 0x00FF;
-        setPV(PARITY_TABLE[temp]);
-        resetN();
-        // put value back
-        setUnusedFlags(temp);
-        return temp;
+        setFlags(SZ53P_TABLE[temp & lsb] | (temp >>> 8));
+        return temp & lsb;
     }
 
     private void shiftSLLIndexed(int reg) {
         int address = getIndexAddress();
-        var regValue = shiftGenericSLL(ram.readByte(address));
-        ram.writeByte(address, regValue);
+        var regValue = shiftGenericSLL(readByte(address));
+        writeByte(address, regValue);
         //
         if (reg != 6) { // (rr)
             set8BitRegister(reg, regValue);
@@ -2599,29 +3182,16 @@ public class Z80Core implements ICPUData {
     }
 
     private int shiftGenericSRA(int temp) {
-        // do shift operation
-        setC((temp & 0x0001) != 0);
-        if ((temp & 0x0080) == 0) {
-            temp = temp >> 1;
-            resetS();
-        } else {
-            temp = (temp >> 1) | 0x0080;
-            setS();
-        }
-        // standard flag updates
-        if (temp == 0) setZ();
-        else resetZ();
-        resetH();
-        setPV(PARITY_TABLE[temp]);
-        resetN();
-        setUnusedFlags(temp);
+        final int carry = temp & flag_C;
+        temp = (temp >> 1) | (temp & 0x80);
+        setFlags(SZ53P_TABLE[temp] | carry);
         return temp;
     }
 
     private void shiftSRAIndexed(int reg) {
         int address = getIndexAddress();
-        var regValue = shiftGenericSRA(ram.readByte(address));
-        ram.writeByte(address, regValue);
+        var regValue = shiftGenericSRA(readByte(address));
+        writeByte(address, regValue);
         //
         if (reg != 6) { // (rr)
             set8BitRegister(reg, regValue);
@@ -2631,24 +3201,16 @@ public class Z80Core implements ICPUData {
     }
 
     private int shiftGenericSRL(int temp) {
-        // do shift operation
-        setC((temp & 0x0001) != 0);
+        final int carry = temp & flag_C;
         temp = temp >> 1;
-        // standard flag updates
-        resetS();
-        setZ(temp == 0);
-        resetH();
-        setPV(PARITY_TABLE[temp]);
-        resetN();
-        // put value back
-        setUnusedFlags(temp);
+        setFlags(SZ53P_TABLE[temp] | carry);
         return temp;
     }
 
     private void shiftSRLIndexed(int reg) {
         int address = getIndexAddress();
-        var regValue = shiftGenericSRL(ram.readByte(address));
-        ram.writeByte(address, regValue);
+        var regValue = shiftGenericSRL(readByte(address));
+        writeByte(address, regValue);
         //
         if (reg != 6) { // (rr)
             set8BitRegister(reg, regValue);
@@ -2659,7 +3221,7 @@ public class Z80Core implements ICPUData {
 
     private void RRD() {
         reg_R++;
-        int temp = ram.readByte(getHL());
+        int temp = readByte(getHL());
         int nibble1 = (reg_A & 0x00F0) >> 4;
         int nibble2 = reg_A & 0x000F;
         int nibble3 = (temp & 0x00F0) >> 4;
@@ -2668,7 +3230,7 @@ public class Z80Core implements ICPUData {
         reg_A = (nibble1 << 4) | nibble4;
         temp = (nibble2 << 4) | nibble3;
         //
-        ram.writeByte(getHL(), temp);
+        writeByte(getHL(), temp);
         // standard flag updates
         if ((reg_A & 0x80) == 0) resetS();
         else setS();
@@ -2681,7 +3243,7 @@ public class Z80Core implements ICPUData {
 
     private void RLD() {
         reg_R++;
-        int temp = ram.readByte(getHL());
+        int temp = readByte(getHL());
         int nibble1 = (reg_A & 0x00F0) >> 4;
         int nibble2 = reg_A & 0x000F;
         int nibble3 = (temp & 0x00F0) >> 4;
@@ -2690,7 +3252,7 @@ public class Z80Core implements ICPUData {
         reg_A = (nibble1 << 4) | nibble3;
         temp = (nibble4 << 4) | nibble2;
         //
-        ram.writeByte(getHL(), temp);
+        writeByte(getHL(), temp);
         // standard flag updates
         if ((reg_A & 0x80) == 0) resetS();
         else setS();
@@ -2707,12 +3269,22 @@ public class Z80Core implements ICPUData {
      */
     private void relativeJump() {
         reg_R++;
-        int offset = ram.readByte(reg_PC);
+        int offset = fetchByte(reg_PC);
         if (offset > 0x007F) offset = offset - 0x0100;
         reg_PC++;
         reg_PC = (reg_PC + offset) & MAX_ADDRESS;
     }
 
+    private void relativeJump(boolean cc) {
+        if (cc) {
+            tStates = tStates + 12;
+            relativeJump();
+        } else {
+            incPC();
+            tStates = tStates + 7;
+        }
+    }
+
     private void djnz() {
         int local_B = getBC() & msb;
         local_B = local_B - 256; // ( 1 * 2**8) - saves a shift >> 8
@@ -2728,18 +3300,18 @@ public class Z80Core implements ICPUData {
 
     private void jp(boolean cc) {
         tStates = tStates + 10;
-        if (cc) reg_PC = ram.readWord(reg_PC);
+        if (cc) reg_PC = fetchWord(reg_PC);
         else inc2PC();
     }
 
     private void jp() {
         tStates = tStates + 10;
-        reg_PC = ram.readWord(reg_PC);
+        reg_PC = fetchWord(reg_PC);
     }
 
     private void ret(boolean cc) {
         if (cc) {
-            reg_PC = ram.readWord(reg_SP);
+            reg_PC = readWord(reg_SP);
             inc2SP();
             tStates = tStates + 11;
         } else {
@@ -2749,18 +3321,18 @@ public class Z80Core implements ICPUData {
 
     private void ret() {
         tStates = tStates + 10;
-        reg_PC = ram.readWord(reg_SP);
+        reg_PC = readWord(reg_SP);
         inc2SP();
     }
 
     private void retn() {
-        reg_PC = ram.readWord(reg_SP);
+        reg_PC = readWord(reg_SP);
         inc2SP();
         IFF1 = IFF2;
     }
 
     private void reti() {
-        reg_PC = ram.readWord(reg_SP);
+        reg_PC = readWord(reg_SP);
         inc2SP();
     }
 
@@ -2775,17 +3347,17 @@ public class Z80Core implements ICPUData {
 
     private void call() {
         tStates = tStates + 17;
-        int destination = ram.readWord(reg_PC);
+        int destination = fetchWord(reg_PC);
         inc2PC();
         dec2SP();
-        ram.writeWord(reg_SP, reg_PC);
+        writeWord(reg_SP, reg_PC);
         reg_PC = destination;
     }
 
     private void rst(int code) {
         tStates = tStates + 11;
         dec2SP();
-        ram.writeWord(reg_SP, reg_PC);
+        writeWord(reg_SP, reg_PC);
         switch (code) {
             case 0 -> reg_PC = 0x0000;
             case 1 -> reg_PC = 0x0008;
@@ -2819,26 +3391,66 @@ public class Z80Core implements ICPUData {
 
     /* IN A,(NN) */
     private void inAN() {
-        reg_A = io.IORead(getInOutAddressRegA());
+        reg_A = ioRead(getInOutAddressRegA());
         incPC();
         reg_R++;
     }
 
     /* OUT (NN),A */
     private void outNA() {
-        io.IOWrite(getInOutAddressRegA(), reg_A);
+        ioWrite(getInOutAddressRegA(), reg_A);
         incPC();
         reg_R++;
     }
 
+    /*
+     * I/O through the device, passed to any listeners
+     */
+    private int ioRead(int address) {
+        int value = io.IORead(address);
+        if (null != listeners) {
+            for (IExecutionListener listener : listeners) {
+                listener.ioRead(address, value);
+            }
+        }
+        return value;
+    }
+
+    private void ioWrite(int address, int data) {
+        io.IOWrite(address, data);
+        if (null != listeners) {
+            for (IExecutionListener listener : listeners) {
+                listener.ioWrite(address, data);
+            }
+        }
+    }
+
+    /*
+     * Pass the ports and values of a block transfer to any listeners, the B register counting down from the address
+     */
+    private void ioBlock(int address, int count, boolean write) {
+        if (null != listeners) {
+            for (int i = 0; i < count; i++) {
+                for (IExecutionListener listener : listeners) {
+                    if (write) {
+                        listener.ioWrite(address, ioBuffer[i]);
+                    } else {
+                        listener.ioRead(address, ioBuffer[i]);
+                    }
+                }
+                address = (address - 0x0100) & MAX_ADDRESS;
+            }
+        }
+    }
+
     private int getInOutAddressRegA() {
         // high order address bits from A reg - for IN,OUT A
-        return (reg_A << 8) + ram.readByte(reg_PC);
+        return (reg_A << 8) + fetchByte(reg_PC);
     }
 
     /* IN rr,(c) */
     private void inC(int reg) {
-        int temp = io.IORead(getBC());
+        int temp = ioRead(getBC());
         // set8BitRegister( temp, reg );
         switch (reg) {
             case 0 -> reg_B = temp; // B
@@ -2864,7 +3476,7 @@ public class Z80Core implements ICPUData {
 
     /* OUT (rr),c */
     private void outC(int reg) {
-        io.IOWrite(getBC(), get8BitRegister(reg));
+        ioWrite(getBC(), get8BitRegister(reg));
     }
 
     /*
@@ -2898,7 +3510,7 @@ public class Z80Core implements ICPUData {
     }
 
     private void testBitInMemory(int bit) {
-        testBitGeneric(bit, ram.readByte(getHL()));
+        testBitGeneric(bit, readByte(getHL()));
     }
 
     private void testBitGeneric(int bit, int v) {
@@ -2929,8 +3541,8 @@ public class Z80Core implements ICPUData {
     /* loads */
     private void LDI() {
         reg_R++;
-        int value = ram.readByte(getHL());
-        ram.writeByte(getDE(), value);
+        int value = readByte(getHL());
+        writeByte(getDE(), value);
         setDE(ALU16BitInc(getDE()));
         setHL(ALU16BitInc(getHL()));
         setBC(ALU16BitDec(getBC()));
@@ -2945,18 +3557,17 @@ public class Z80Core implements ICPUData {
     }
 
     private void LDIR() {
-        blockMove = true;
-        while (blockMove) {
-            tStates = tStates + 21;
-            LDI();
-            blockMove = getBC() != 0;
-        }
+        int count = getMoveSteps(true);
+        tStates = tStates + 21L * count - getResumeTStates();
+        moveBlock(count - 1, true);
+        LDI();
+        endBlockMove();
     }
 
     private void LDD() {
         reg_R++;
-        int value = ram.readByte(getHL());
-        ram.writeByte(getDE(), value);
+        int value = readByte(getHL());
+        writeByte(getDE(), value);
         //
         setDE(ALU16BitDec(getDE()));
         setHL(ALU16BitDec(getHL()));
@@ -2972,12 +3583,116 @@ public class Z80Core implements ICPUData {
     }
 
     private void LDDR() {
-        blockMove = true;
-        while (blockMove) {
-            tStates = tStates + 21;
-            LDD();
-            blockMove = getBC() != 0;
+        int count = getMoveSteps(false);
+        tStates = tStates + 21L * count - getResumeTStates();
+        moveBlock(count - 1, false);
+        LDD();
+        endBlockMove();
+    }
+
+    /*
+     * Decode T states to give back when a LDIR or LDDR left part way through is fetched again, so that a move costs the
+     * same however many times it is resumed
+     */
+    private int getResumeTStates() {
+        return (instructionStart == moveResume) ? OPCODE_T_STATES[0xED] + OPCODE_ED_STATES[instruction] : 0;
+    }
+
+    /*
+     * Leave a LDIR or LDDR to be executed again if there is more to move, remembering where it is to be resumed from
+     */
+    private void endBlockMove() {
+        blockMove = getBC() != 0;
+        if (blockMove) {
+            dec2PC();
+            moveResume = instructionStart;
+        } else {
+            moveResume = -1;
+        }
+    }
+
+    /*
+     * Number of bytes a repeating block instruction will process, a BC of zero giving 64K
+     */
+    private int getBlockCount() {
+        int count = getBC();
+        return (0 == count) ? MAX_ADDRESS + 1 : count;
+    }
+
+    /*
+     * Number of steps of a repeating block instruction to carry out before returning, at least one. All of them unless
+     * an interrupt is waiting, or the run() budget or the next event would be overrun, in which case the instruction is
+     * left to be executed again for the remainder.
+     */
+    private int getBlockSteps(int count, int stepTStates) {
+        if (interruptWaiting()) {
+            return 1;
+        }
+        long remaining = Math.min(tStateLimit, nextEvent) - tStates;
+        if (remaining < (long) count * stepTStates) {
+            return (int) Math.max(1, (remaining + stepTStates - 1) / stepTStates);
+        }
+        return count;
+    }
+
+    /*
+     * Cut the steps of a block instruction short of the first to access a watched address, which is then left to be
+     * made as a single step, so the instruction stops where it would if it ran one step at a time
+     */
+    private int getUnwatchedSteps(int count, int address, boolean increment, int type) {
+        return (null == watchpoints) ? count : watchpoints.getUnwatched(address, count, increment, type);
+    }
+
+    /*
+     * Number of steps of LDIR / LDDR to carry out this time, the last stopping at any watched source or destination
+     */
+    private int getMoveSteps(boolean increment) {
+        int count = getBlockSteps(getBlockCount(), 21) - 1;
+        count = getUnwatchedSteps(count, getHL(), increment, Z80Watchpoints.READ);
+        return getUnwatchedSteps(count, getDE(), increment, Z80Watchpoints.WRITE) + 1;
+    }
+
+    /*
+     * Number of T states taken by each repeat of a CPIR, INIR etc. which is executed again rather than looping
+     */
+    private int getRepeatTStates() {
+        return OPCODE_T_STATES[0xED] + OPCODE_ED_STATES[instruction] + 21;
+    }
+
+    /*
+     * True if a block of the given size starting at an address stays inside memory
+     */
+    private static boolean inMemory(int address, int count, boolean increment) {
+        return increment ? (address + count <= MAX_ADDRESS + 1) : (address - count >= -1);
+    }
+
+    /*
+     * Perform count steps of LDIR / LDDR as one memory operation, leaving registers as the single steps would except
+     * for the flags, which are always set by the final step. Falls back to single steps if a block wraps around memory.
+     */
+    private void moveBlock(int count, boolean increment) {
+        int source = getHL();
+        int destination = getDE();
+        if ((count <= 0) || (null != listeners) || !inMemory(source, count, increment) || !inMemory(destination, count, increment)) {
+            for (int i = 0; i < count; i++) {
+                if (increment) LDI();
+                else LDD();
+            }
+            return;
+        }
+        int step = increment ? 1 : -1;
+        int lowest = increment ? destination : destination - count + 1;
+        if (destination == source + step) {
+            // the usual way of filling memory, copying each byte on to the next
+            ram.fill(lowest, count, readByte(source));
+        } else {
+            ram.copyBlock(source, destination, count, increment);
         }
+        written(lowest, count);
+        setHL((source + step * count) & lsw);
+        setDE((destination + step * count) & lsw);
+        setBC((getBC() - count) & lsw);
+        reg_R = reg_R + count;
     }
 
     /*
@@ -2985,7 +3700,7 @@ public class Z80Core implements ICPUData {
      */
     private void CPI() {
         reg_R++;
-        int value = ram.readByte(getHL());
+        int value = readByte(getHL());
         int result = (reg_A - value) & lsb;
         setHL(ALU16BitInc(getHL()));
         setBC(ALU16BitDec(getBC()));
@@ -3005,13 +3720,15 @@ public class Z80Core implements ICPUData {
 
     private void CPIR() {
         tStates = tStates + 21;
+        searchBlock(true);
         CPI();
-        if (!getZ() && (getBC() != 0)) dec2PC();
+        blockMove = !getZ() && (getBC() != 0);
+        if (blockMove) dec2PC();
     }
 
     private void CPD() {
         reg_R++;
-        int value = ram.readByte(getHL());
+        int value = readByte(getHL());
         int result = (reg_A - value) & lsb;
         setHL(ALU16BitDec(getHL()));
         setBC(ALU16BitDec(getBC()));
@@ -3031,13 +3748,42 @@ public class Z80Core implements ICPUData {
 
     private void CPDR() {
         tStates = tStates + 21;
+        searchBlock(false);
         CPD();
-        if (!getZ() && (getBC() != 0)) dec2PC();
+        blockMove = !getZ() && (getBC() != 0);
+        if (blockMove) dec2PC();
+    }
+
+    /*
+     * Skip over the bytes which CPIR / CPDR would pass without a match, leaving the final compare, which sets the flags,
+     * to be done as a single step. If the block wraps around memory the instruction repeats one byte at a time.
+     */
+    private void searchBlock(boolean increment) {
+        int address = getHL();
+        int count = getBlockSteps(getBlockCount(), getRepeatTStates()) - 1;
+        count = getUnwatchedSteps(count, address, increment, Z80Watchpoints.READ);
+        if ((count <= 0) || !inMemory(address, count, increment)) {
+            return;
+        }
+        int skip = ram.indexOf(address, count, reg_A, increment);
+        if (skip < 0) {
+            skip = count;
+        }
+        if (null != listeners) {
+            for (int i = 0; i < skip; i++) {
+                int skipped = (increment ? address + i : address - i) & lsw;
+                monitor(skipped, loadByte(skipped), Z80Watchpoints.READ);
+            }
+        }
+        setHL((increment ? address + skip : address - skip) & lsw);
+        setBC((getBC() - skip) & lsw);
+        reg_R = reg_R + skip;
+        tStates = tStates + (long) getRepeatTStates() * skip;
     }
 
     /* block IO */
     private void INI() {
-        ram.writeByte(getHL(), io.IORead(getBC()));
+        writeByte(getHL(), ioRead(getBC()));
         reg_B = (reg_B - 1) & lsb;
         setHL(ALU16BitInc(getHL()));
         setZ(reg_B == 0);
@@ -3046,12 +3792,14 @@ public class Z80Core implements ICPUData {
 
     private void INIR() {
         tStates = tStates + 21;
+        inputBlock(true);
         INI();
-        if (!getZ()) dec2PC();
+        blockMove = !getZ();
+        if (blockMove) dec2PC();
     }
 
     private void IND() {
-        ram.writeByte(getHL(), io.IORead(getBC()));
+        writeByte(getHL(), ioRead(getBC()));
         reg_B = (reg_B - 1) & lsb;
         setHL(ALU16BitDec(getHL()));
         setZ(reg_B == 0);
@@ -3060,12 +3808,14 @@ public class Z80Core implements ICPUData {
 
     private void INDR() {
         tStates = tStates + 21;
+        inputBlock(false);
         IND();
-        if (!getZ()) dec2PC();
+        blockMove = !getZ();
+        if (blockMove) dec2PC();
     }
 
     private void OUTI() {
-        io.IOWrite(getBC(), ram.readByte(getHL()));
+        ioWrite(getBC(), readByte(getHL()));
         reg_R++;
         reg_B = (reg_B - 1) & lsb;
         setHL(ALU16BitInc(getHL()));
@@ -3075,12 +3825,14 @@ public class Z80Core implements ICPUData {
 
     private void OTIR() {
         tStates = tStates + 21;
+        outputBlock(true);
         OUTI();
-        if (!getZ()) dec2PC();
+        blockMove = !getZ();
+        if (blockMove) dec2PC();
     }
 
     private void OUTD() {
-        io.IOWrite(getBC(), ram.readByte(getHL()));
+        ioWrite(getBC(), readByte(getHL()));
         reg_R++;
         reg_B = (reg_B - 1) & lsb;
         setHL(ALU16BitDec(getHL()));
@@ -3090,23 +3842,68 @@ public class Z80Core implements ICPUData {
 
     private void OTDR() {
         tStates = tStates + 21;
+        outputBlock(false);
         OUTD();
-        if (!getZ()) dec2PC();
+        blockMove = !getZ();
+        if (blockMove) dec2PC();
+    }
+
+    /*
+     * Read all but the last of the bytes an INIR / INDR is to transfer this time in one I/O operation. The last is read
+     * as a single step to set the flags.
+     */
+    private void inputBlock(boolean increment) {
+        int count = getBlockSteps((0 == reg_B) ? 256 : reg_B, getRepeatTStates()) - 1;
+        count = getUnwatchedSteps(count, getHL(), increment, Z80Watchpoints.WRITE);
+        if (count > 0) {
+            io.readBlock(getBC(), ioBuffer, count);
+            ioBlock(getBC(), count, false);
+            int address = getHL();
+            for (int i = 0; i < count; i++) {
+                writeByte(address, ioBuffer[i]);
+                address = increment ? ALU16BitInc(address) : ALU16BitDec(address);
+            }
+            setHL(address);
+            reg_B = (reg_B - count) & lsb;
+            tStates = tStates + (long) getRepeatTStates() * count;
+        }
+    }
+
+    /*
+     * Write all but the last of the bytes an OTIR / OTDR is to transfer this time in one I/O operation. The last is
+     * written as a single step to set the flags.
+     */
+    private void outputBlock(boolean increment) {
+        int count = getBlockSteps((0 == reg_B) ? 256 : reg_B, getRepeatTStates()) - 1;
+        count = getUnwatchedSteps(count, getHL(), increment, Z80Watchpoints.READ);
+        if (count > 0) {
+            int address = getHL();
+            for (int i = 0; i < count; i++) {
+                ioBuffer[i] = readByte(address);
+                address = increment ? ALU16BitInc(address) : ALU16BitDec(address);
+            }
+            io.writeBlock(getBC(), ioBuffer, count);
+            ioBlock(getBC(), count, true);
+            setHL(address);
+            reg_B = (reg_B - count) & lsb;
+            reg_R = reg_R + count;
+            tStates = tStates + (long) getRepeatTStates() * count;
+        }
     }
 
     /*
      * extended 16 bit loads for ED instructions
      */
     private void LDRegnnnnInd16Bit(int regCode) {
-        int address = ram.readWord(reg_PC);
-        int data = ram.readWord(address);
+        int address = fetchWord(reg_PC);
+        int data = readWord(address);
         set16BitRegister(data, regCode);
         inc2PC();
     }
 
     private void LDnnnnRegInd16Bit(int regCode) {
-        int address = ram.readWord(reg_PC);
-        ram.writeWord(address, get16BitRegister(regCode));
+        int address = fetchWord(reg_PC);
+        writeWord(address, get16BitRegister(regCode));
         inc2PC();
     }
 
@@ -3166,7 +3963,7 @@ public class Z80Core implements ICPUData {
      */
     private int getIndexOffset() {
         reg_R++;
-        int index = ram.readByte(reg_PC);
+        int index = fetchByte(reg_PC);
         incPC();
         if (index > 0x007F) return (index - 256);
         else return index;
@@ -3189,7 +3986,7 @@ public class Z80Core implements ICPUData {
             } // IXL
             default -> {
                 reg_R++;
-                return ram.readByte((reg_index + getIndexOffset()) & lsw);
+                return readByte((reg_index + getIndexOffset()) & lsw);
             } // (index+dd)
         }
     }
@@ -3207,7 +4004,7 @@ public class Z80Core implements ICPUData {
                 reg_index = reg_index & msb;
                 reg_index = reg_index | value;
             } // IXL
-            default -> ram.writeByte((getIndexAddress()), value); // (index+dd)
+            default -> writeByte((getIndexAddress()), value); // (index+dd)
         }
     }
 
@@ -3227,40 +4024,51 @@ public class Z80Core implements ICPUData {
             } // A
             default -> {
                 reg_R++;
-                return ram.readByte(getIndexAddress());
+                return readByte(getIndexAddress());
             } // (index+dd)
         }
     }
 
+    /* inc / dec (hl) */
+    private void incHLIndirect() {
+        int address = getHL();
+        writeByte(address, ALU8BitInc(readByte(address)));
+    }
+
+    private void decHLIndirect() {
+        int address = getHL();
+        writeByte(address, ALU8BitDec(readByte(address)));
+    }
+
     /* inc / dec (index+dd) */
     private void incIndex() {
         int address = getIndexAddress();
-        int data = ALU8BitInc(ram.readByte(address));
+        int data = ALU8BitInc(readByte(address));
         reg_R++;
-        ram.writeByte(address, data);
+        writeByte(address, data);
     }
 
     private void decIndex() {
         int address = getIndexAddress();
-        int data = ALU8BitDec(ram.readByte(address));
+        int data = ALU8BitDec(readByte(address));
         reg_R++;
-        ram.writeByte(address, data);
+        writeByte(address, data);
     }
 
     /* index register swap */
     private void EXSPIndex() {
         int temp = reg_index;
-        reg_index = ram.readWord(reg_SP);
+        reg_index = readWord(reg_SP);
         inc2SP();
         dec2SP();
-        ram.writeWord(reg_SP, temp);
+        writeWord(reg_SP, temp);
     }
 
     /* indexed CB bit twiddling */
     private void testIndexBit(int bit) {
         reg_R++;
         int address = getIndexAddress();
-        int temp = ram.readByte(address);
+        int temp = readByte(address);
 
         // check the bit position
         testBitGeneric(bit, temp);
@@ -3269,7 +4077,7 @@ public class Z80Core implements ICPUData {
     private void bitIndexSet(int bit, int reg) {
         reg_R++;
         int address = getIndexAddress();
-        int v = ram.readByte(address);
+        int v = readByte(address);
         v = switch (bit) {
             case 0 -> v | setBit0;
             case 1 -> v | setBit1;
@@ -3283,13 +4091,13 @@ public class Z80Core implements ICPUData {
         if (reg != 6) { // (rr)
             set8BitRegister(reg, v);
         }
-        ram.writeByte(address, v);
+        writeByte(address, v);
     }
 
     private void bitIndexReset(int bit, int reg) {
         reg_R++;
         int address = getIndexAddress();
-        int v = ram.readByte(address);
+        int v = readByte(address);
         v = switch (bit) {
             case 0 -> v & resetBit0;
             case 1 -> v & resetBit1;
@@ -3303,16 +4111,16 @@ public class Z80Core implements ICPUData {
         if (reg != 6) { // (rr)
             set8BitRegister(reg, v);
         }
-        ram.writeByte(address, v);
+        writeByte(address, v);
     }
 
     /* LD (ix+dd),nn */
     private void loadIndex8BitImmediate() {
         reg_R++;
         int address = getIndexAddress();
-        int data = ram.readByte(reg_PC);
+        int data = fetchByte(reg_PC);
         incPC();
-        ram.writeByte(address, data);
+        writeByte(address, data);
     }
 
     /**
@@ -0,0 +1,155 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.IBaseDevice;
+import com.codingrodent.microprocessor.IMemory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.classfile.*;
+import java.lang.classfile.instruction.InvokeInstruction;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessFlag;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.constant.ConstantDescs.CD_void;
+import static java.lang.constant.ConstantDescs.INIT_NAME;
+
+/**
+ * Creates Z80 cores specialised for one combination of memory and I/O classes.
+ * <p>
+ * The JVM profiles calls per method, so when machines with several different memory or I/O classes share one JVM,
+ * every call from the core to its memory and I/O sees all of them and can no longer be inlined. Each core made here is
+ * an instance of a hidden subclass of {@link Z80Core} holding its own copy of every core method, so it builds its own
+ * profile from the one memory class and one I/O class it is used with.
+ * <p>
+ * One subclass is created for each pair of classes and then reused. If a subclass cannot be created, a plain
+ * {@link Z80Core} is returned instead.
+ */
+public final class Z80CoreFactory {
+    private final static ClassDesc CD_CORE = Z80Core.class.describeConstable().orElseThrow();
+    private final static ClassDesc CD_SPECIALISED = ClassDesc.of(Z80CoreFactory.class.getPackageName(), "Z80CoreSpecialised");
+    private final static MethodTypeDesc MTD_INIT = MethodTypeDesc.of(CD_void, IMemory.class.describeConstable().orElseThrow(),
+            IBaseDevice.class.describeConstable().orElseThrow());
+    private final static MethodType MT_INIT = MethodType.methodType(void.class, IMemory.class, IBaseDevice.class);
+    private final static MethodType MT_CREATE = MethodType.methodType(Z80Core.class, IMemory.class, IBaseDevice.class);
+    //
+    // constructors by memory class then I/O class, held by the classes themselves so none is kept from unloading
+    private final static ClassValue<ClassValue<MethodHandle>> CONSTRUCTORS = new ClassValue<>() {
+        @Override
+        protected ClassValue<MethodHandle> computeValue(Class<?> memoryClass) {
+            return new ClassValue<>() {
+                @Override
+                protected MethodHandle computeValue(Class<?> ioClass) {
+                    return specialise();
+                }
+            };
+        }
+    };
+    private static byte[] coreBytes;
+
+    private Z80CoreFactory() {
+    }
+
+    /**
+     * Create a core specialised for the classes of its memory and I/O
+     *
+     * @param ram Interface to the memory architecture
+     * @param io  Interface to the i/o port architecture
+     * @return The processor
+     */
+    public static Z80Core create(IMemory ram, IBaseDevice io) {
+        MethodHandle constructor = CONSTRUCTORS.get(ram.getClass()).get(io.getClass());
+        if (null == constructor) {
+            return new Z80Core(ram, io);
+        }
+        try {
+            return (Z80Core) constructor.invokeExact(ram, io);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // the constructor declares no checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Define a new subclass of the core with a copy of each instance method, returning its constructor or null on failure
+     */
+    private static MethodHandle specialise() {
+        try {
+            MethodHandles.Lookup lookup = Z80Core.lookup();
+            ClassHierarchyResolver resolver = ClassHierarchyResolver.of(List.of(), Map.of(CD_SPECIALISED, CD_CORE)).orElse(ClassHierarchyResolver.ofClassLoading(lookup));
+            ClassFile classFile = ClassFile.of(ClassFile.ClassHierarchyResolverOption.of(resolver));
+            ClassModel core = classFile.parse(getCoreBytes());
+            byte[] classBytes = classFile.build(CD_SPECIALISED, clb -> {
+                clb.withFlags(ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC);
+                clb.withSuperclass(CD_CORE);
+                clb.withMethodBody(INIT_NAME, MTD_INIT, ClassFile.ACC_PUBLIC, cob -> cob
+                        .aload(0)
+                        .aload(1)
+                        .aload(2)
+                        .invokespecial(CD_CORE, INIT_NAME, MTD_INIT)
+                        .return_());
+                for (MethodModel method : core.methods()) {
+                    if (copied(method)) {
+                        clb.transformMethod(method, MethodTransform.transformingCode(Z80CoreFactory::retarget));
+                    }
+                }
+            });
+            Class<?> specialised = lookup.defineHiddenClass(classBytes, true, MethodHandles.Lookup.ClassOption.NESTMATE).lookupClass();
+            return lookup.findConstructor(specialised, MT_INIT).asType(MT_CREATE);
+        } catch (IOException | IllegalArgumentException | ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /*
+     * Instance methods are copied. Constructors and static methods stay with the core.
+     */
+    private static boolean copied(MethodModel method) {
+        return !method.flags().has(AccessFlag.STATIC) && !method.methodName().equalsString(INIT_NAME);
+    }
+
+    /*
+     * Calls from one core method to another are sent to the copy, so the whole interpreter runs in the subclass
+     */
+    private static void retarget(CodeBuilder cob, CodeElement element) {
+        if ((element instanceof InvokeInstruction invoke) && (Opcode.INVOKESTATIC != invoke.opcode()) && invoke.owner().asSymbol().equals(CD_CORE) &&
+                !invoke.name().equalsString(INIT_NAME)) {
+            cob.invoke(invoke.opcode(), CD_SPECIALISED, invoke.name().stringValue(), invoke.typeSymbol(), false);
+        } else {
+            cob.with(element);
+        }
+    }
+
+    private static synchronized byte[] getCoreBytes() throws IOException {
+        if (null == coreBytes) {
+            try (InputStream in = Z80Core.class.getResourceAsStream(Z80Core.class.getSimpleName() + ".class")) {
+                if (null == in) {
+                    throw new IOException("Z80Core class file not found");
+                }
+                coreBytes = in.readAllBytes();
+            }
+        }
+        return coreBytes;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.IMemory;
+
+import java.util.Arrays;
+
+/**
+ * Pre-decoded instruction cache for the Z80 core.
+ * <p>
+ * The first time an address is executed the instruction there is decoded for length, and its prefix, opcode and
+ * operand bytes are held in a single entry. While the entry is valid the core takes all of the instruction's bytes
+ * from it instead of going back to memory. A write to any byte of a cached instruction discards its entry.
+ * <p>
+ * Each entry holds the instruction bytes, first byte lowest, in bits 0-31 and the length in bits 32-34. A length of
+ * zero marks an instruction which is always read from memory (chained prefixes or wrapping past the top of memory).
+ */
+final class Z80DecodeCache {
+
+    // longest cached instruction, which is also the reach of a write when invalidating
+    private final static int MAX_LENGTH = 4;
+    private final static int MAX_ADDRESS = 0xFFFF;
+    private final static long NOT_CACHED = 1L << 35;
+    //
+    private final static byte[] LENGTH = new byte[256];
+    private final static byte[] LENGTH_ED = new byte[256];
+    private final static byte[] LENGTH_DD_FD = new byte[256];
+
+    private final IMemory ram;
+    private final long[] entries = new long[MAX_ADDRESS + 1];
+
+    static {
+        Arrays.fill(LENGTH, (byte) 1);
+        for (int opcode : new int[]{0x06, 0x0E, 0x16, 0x1E, 0x26, 0x2E, 0x36, 0x3E, 0x10, 0x18, 0x20, 0x28, 0x30, 0x38, 0xC6, 0xCE, 0xD6, 0xDE, 0xE6, 0xEE, 0xF6, 0xFE, 0xCB, 0xD3, 0xDB}) {
+            LENGTH[opcode] = 2;
+        }
+        for (int opcode : new int[]{0x01, 0x11, 0x21, 0x31, 0x22, 0x2A, 0x32, 0x3A, 0xC3, 0xCD}) {
+            LENGTH[opcode] = 3;
+        }
+        for (int opcode = 0xC2; opcode <= 0xFA; opcode = opcode + 8) {
+            LENGTH[opcode] = 3; // jp cc
+            LENGTH[opcode + 2] = 3; // call cc
+        }
+        //
+        Arrays.fill(LENGTH_ED, (byte) 2);
+        for (int opcode = 0x43; opcode <= 0x7B; opcode = opcode + 8) {
+            LENGTH_ED[opcode] = 4; // ld (nn),rr / ld rr,(nn)
+        }
+        //
+        for (int opcode = 0; opcode < 256; opcode++) {
+            // (hl) becomes (ix+d), adding a displacement byte
+            boolean indexed = (opcode != 0x76) && (((opcode >= 0x40) && (opcode <= 0xBF) && ((opcode & 0x07) == 0x06)) || ((opcode >= 0x70) && (opcode <= 0x77)));
+            LENGTH_DD_FD[opcode] = (byte) (1 + LENGTH[opcode] + (indexed ? 1 : 0));
+        }
+        LENGTH_DD_FD[0x34] = 3; // inc (ix+d)
+        LENGTH_DD_FD[0x35] = 3; // dec (ix+d)
+        LENGTH_DD_FD[0x36] = 4; // ld (ix+d),n
+        LENGTH_DD_FD[0xCB] = 4; // bit operations on (ix+d)
+        LENGTH_DD_FD[0xDD] = 0;
+        LENGTH_DD_FD[0xED] = 0;
+        LENGTH_DD_FD[0xFD] = 0;
+    }
+
+    /**
+     * Create an empty decode cache
+     *
+     * @param ram The memory the core executes from
+     */
+    Z80DecodeCache(IMemory ram) {
+        this.ram = ram;
+    }
+
+    /**
+     * Get the entry for the instruction at an address, decoding it if not already held
+     *
+     * @param pc Instruction address
+     * @return Packed instruction bytes and length
+     */
+    long lookup(int pc) {
+        long entry = entries[pc];
+        if (0 == entry) {
+            entry = decode(pc);
+            entries[pc] = entry;
+        }
+        return entry;
+    }
+
+    /**
+     * Called on every memory write made by the processor. Discard any instruction which may cover the address.
+     *
+     * @param address Address written to
+     */
+    void written(int address) {
+        for (int offset = 0; offset < MAX_LENGTH; offset++) {
+            entries[(address - offset) & MAX_ADDRESS] = 0;
+        }
+    }
+
+    /**
+     * Discard all decoded instructions
+     */
+    void flush() {
+        Arrays.fill(entries, 0);
+    }
+
+    /**
+     * Get the length of an instruction from its first two bytes
+     *
+     * @param first  First byte, the prefix or opcode
+     * @param second Second byte
+     * @return Instruction length, or zero for chained prefixes
+     */
+    static int getLength(int first, int second) {
+        return switch (first) {
+            case 0xDD, 0xFD -> LENGTH_DD_FD[second];
+            case 0xED -> LENGTH_ED[second];
+            default -> LENGTH[first];
+        };
+    }
+
+    /*
+     * Find the length of the instruction at pc from its prefix and opcode, and pack its bytes into an entry
+     */
+    private long decode(int pc) {
+        int first = ram.readByte(pc);
+        int length = getLength(first, ram.readByte((pc + 1) & MAX_ADDRESS));
+        if ((0 == length) || (pc + length > MAX_ADDRESS + 1)) {
+            return NOT_CACHED;
+        }
+        long entry = first;
+        for (int i = 1; i < length; i++) {
+            entry = entry | ((long) ram.readByte(pc + i) << (i * 8));
+        }
+        return entry | ((long) length << 32);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.IEvent;
+
+import java.util.Arrays;
+
+/**
+ * Events waiting for the processor T state count to reach their deadline, held in a binary min-heap. Events with the
+ * same deadline fire in the order they were scheduled.
+ */
+final class Z80EventScheduler {
+
+    private long[] deadlines = new long[16];
+    private long[] sequence = new long[16];
+    private IEvent[] events = new IEvent[16];
+    private int size;
+    private long nextSequence;
+
+    /**
+     * Add an event
+     *
+     * @param deadline T state count at which to fire the event
+     * @param event    The event
+     */
+    void schedule(long deadline, IEvent event) {
+        if (size == events.length) {
+            deadlines = Arrays.copyOf(deadlines, size * 2);
+            sequence = Arrays.copyOf(sequence, size * 2);
+            events = Arrays.copyOf(events, size * 2);
+        }
+        deadlines[size] = deadline;
+        sequence[size] = nextSequence++;
+        events[size] = event;
+        siftUp(size++);
+    }
+
+    /**
+     * Remove every scheduled occurrence of an event
+     *
+     * @param event The event
+     * @return True if anything was removed
+     */
+    boolean cancel(IEvent event) {
+        int kept = 0;
+        for (int index = 0; index < size; index++) {
+            if (events[index] != event) {
+                move(index, kept++);
+            }
+        }
+        if (kept == size) {
+            return false;
+        }
+        Arrays.fill(events, kept, size, null);
+        size = kept;
+        // the survivors keep their sequence numbers, so rebuilding the heap keeps ties in order
+        for (int index = (size >>> 1) - 1; index >= 0; index--) {
+            siftDown(index);
+        }
+        return true;
+    }
+
+    /**
+     * Get the deadline of the earliest event
+     *
+     * @return The deadline, or Long.MAX_VALUE if nothing is scheduled
+     */
+    long nextDeadline() {
+        return (0 == size) ? Long.MAX_VALUE : deadlines[0];
+    }
+
+    /**
+     * Fire, in deadline order, every event due at or before the given time. Events may schedule further events, which
+     * also fire if they are already due.
+     *
+     * @param tStates The present T state count
+     */
+    void fire(long tStates) {
+        while ((size > 0) && (deadlines[0] <= tStates)) {
+            long deadline = deadlines[0];
+            IEvent event = events[0];
+            removeAt(0);
+            event.fire(deadline);
+        }
+    }
+
+    /**
+     * Move every deadline back when the T state count is reset, keeping each event the same distance away
+     *
+     * @param tStates The T state count being reset to zero
+     */
+    void rebase(long tStates) {
+        for (int i = 0; i < size; i++) {
+            deadlines[i] = deadlines[i] - tStates;
+        }
+    }
+
+    /*
+     * Take an entry out of the heap, filling the gap with the last entry
+     */
+    private void removeAt(int index) {
+        size--;
+        if (index != size) {
+            move(size, index);
+            siftDown(index);
+            siftUp(index);
+        }
+        events[size] = null;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(index, parent)) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                return;
+            }
+            if ((child + 1 < size) && before(child + 1, child)) {
+                child++;
+            }
+            if (!before(child, index)) {
+                return;
+            }
+            swap(index, child);
+            index = child;
+        }
+    }
+
+    private boolean before(int a, int b) {
+        return (deadlines[a] < deadlines[b]) || ((deadlines[a] == deadlines[b]) && (sequence[a] < sequence[b]));
+    }
+
+    private void move(int from, int to) {
+        deadlines[to] = deadlines[from];
+        sequence[to] = sequence[from];
+        events[to] = events[from];
+    }
+
+    private void swap(int a, int b) {
+        long deadline = deadlines[a];
+        long order = sequence[a];
+        IEvent event = events[a];
+        move(b, a);
+        deadlines[b] = deadline;
+        sequence[b] = order;
+        events[b] = event;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Count of the instructions executed and the T states taken at each address, rolled up on request into routines. A
+ * routine runs from a symbol to the address before the next one. Without symbols, memory is split into 256 byte
+ * ranges. Counts are kept in arrays of longs, so profiling creates no objects.
+ * <p>
+ * The hottest addresses are the best candidates for compiling, for example with {@link Z80Core#enableBlockCompiler}.
+ * <p>
+ * Enable counting with {@link Z80Core#enableHotspotProfiler(Z80HotspotProfiler)}.
+ */
+public final class Z80HotspotProfiler {
+    private final static int SIZE = 0x10000;
+    private final static int RANGE = 0x100;
+
+    private final long[] counts = new long[SIZE];
+    private final long[] tStates = new long[SIZE];
+    private final Z80Symbols symbols = new Z80Symbols();
+
+    /**
+     * Executions and T states of a routine or address
+     *
+     * @param name    Symbol, or symbol and offset for an address, or the start address in hex if there is no symbol
+     * @param start   First address
+     * @param end     Last address
+     * @param count   Instructions executed
+     * @param tStates T states taken
+     */
+    public record Hotspot(String name, int start, int end, long count, long tStates) {
+    }
+
+    /*
+     * Count an instruction
+     */
+    void record(int address, long taken) {
+        counts[address]++;
+        tStates[address] = tStates[address] + taken;
+    }
+
+    /**
+     * Name an address, starting a routine there. Replaces any symbol already at the address.
+     *
+     * @param name    Symbol
+     * @param address Address
+     */
+    public void addSymbol(String name, int address) {
+        symbols.add(name, address);
+    }
+
+    /**
+     * Read symbols from a map or symbol file. Each line holds a name and an address in hex, in either order, optionally
+     * separated by ':', '=' or EQU. Addresses may be written as 1234, 1234H, $1234 or 0x1234. If both could be
+     * addresses, a marked one is taken as the address, otherwise the second. Blank lines, lines starting with ';' or
+     * '#', and lines without both a name and an address are ignored.
+     *
+     * @param path File to read
+     * @throws IOException Thrown if the file cannot be read
+     */
+    public void loadSymbols(Path path) throws IOException {
+        symbols.load(path);
+    }
+
+    /**
+     * Get the number of instructions executed at an address
+     *
+     * @param address Address
+     * @return Count
+     */
+    public long getCount(int address) {
+        return counts[address & 0xFFFF];
+    }
+
+    /**
+     * Get the T states taken by instructions at an address
+     *
+     * @param address Address
+     * @return Total T states
+     */
+    public long getTStates(int address) {
+        return tStates[address & 0xFFFF];
+    }
+
+    /**
+     * @return T states taken by all instructions counted
+     */
+    public long getTotalTStates() {
+        long total = 0;
+        for (long taken : tStates) {
+            total = total + taken;
+        }
+        return total;
+    }
+
+    /**
+     * Reset all counts to zero, keeping the symbols
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(tStates, 0);
+    }
+
+    /**
+     * Get the routines taking the most T states
+     *
+     * @param n Maximum number to return
+     * @return Routines in which instructions were executed, most T states first
+     */
+    public List<Hotspot> getHotRoutines(int n) {
+        var routines = new ArrayList<Hotspot>();
+        int start = 0;
+        long count = 0, taken = 0;
+        for (int address = 0; address <= SIZE; address++) {
+            if ((SIZE == address) || ((address > start) && isRoutineStart(address))) {
+                if (0 != count) {
+                    routines.add(new Hotspot(getRoutineName(start), start, address - 1, count, taken));
+                }
+                if (SIZE == address) {
+                    break;
+                }
+                start = address;
+                count = 0;
+                taken = 0;
+            }
+            count = count + counts[address];
+            taken = taken + tStates[address];
+        }
+        return top(routines, n);
+    }
+
+    /**
+     * Get the addresses taking the most T states
+     *
+     * @param n Maximum number to return
+     * @return Addresses at which instructions were executed, most T states first
+     */
+    public List<Hotspot> getHotAddresses(int n) {
+        var addresses = new ArrayList<Hotspot>();
+        for (int address = 0; address < SIZE; address++) {
+            if (0 != counts[address]) {
+                addresses.add(new Hotspot(null, address, address, counts[address], tStates[address]));
+            }
+        }
+        // only those kept are named
+        var named = new ArrayList<Hotspot>();
+        for (Hotspot hotspot : top(addresses, n)) {
+            named.add(new Hotspot(getAddressName(hotspot.start()), hotspot.start(), hotspot.end(), hotspot.count(), hotspot.tStates()));
+        }
+        return List.copyOf(named);
+    }
+
+    /**
+     * Write the routines taking the most T states, one line each with their share of all T states
+     *
+     * @param out Destination
+     * @param n   Maximum number of routines
+     * @throws IOException Thrown if the destination cannot be written to
+     */
+    public void writeReport(Appendable out, int n) throws IOException {
+        long total = Math.max(1, getTotalTStates());
+        for (Hotspot routine : getHotRoutines(n)) {
+            out.append(String.format("%6.2f%% %14d %12d  %s-%s  %s", 100.0 * routine.tStates() / total, routine.tStates(), routine.count(), Utilities.getWord(routine.start()), Utilities.getWord(routine.end()), routine.name()));
+            out.append(System.lineSeparator());
+        }
+    }
+
+    /*
+     * True if a routine starts at an address, with or without symbols
+     */
+    private boolean isRoutineStart(int address) {
+        return symbols.isEmpty() ? (0 == (address % RANGE)) : (null != symbols.get(address));
+    }
+
+    /*
+     * Symbol at the start of a routine, or the address if there is none
+     */
+    private String getRoutineName(int start) {
+        return symbols.getName(start);
+    }
+
+    /*
+     * Nearest symbol at or below an address with the offset from it, or the address if there is none
+     */
+    private String getAddressName(int address) {
+        int symbol = symbols.floor(address);
+        if (symbol < 0) {
+            return Utilities.getWord(address);
+        }
+        return (symbol == address) ? symbols.get(symbol) : symbols.get(symbol) + "+" + (address - symbol);
+    }
+
+    /*
+     * First n by T states, most first
+     */
+    private static List<Hotspot> top(List<Hotspot> hotspots, int n) {
+        hotspots.sort(Comparator.comparingLong(Hotspot::tStates).reversed());
+        return List.copyOf(hotspots.subList(0, Math.min(Math.max(0, n), hotspots.size())));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.z80.CPUConstants.OpcodeTable;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Count of the instructions executed and the T states taken for each opcode of each decode table. A repeating block
+ * instruction counts once each time it is executed, with all the T states of the repeats it completes. Counts are kept
+ * in arrays of longs, so profiling creates no objects.
+ * <p>
+ * Enable counting with {@link Z80Core#enableOpcodeProfiler(Z80OpcodeProfiler)}.
+ */
+public final class Z80OpcodeProfiler {
+    private final static OpcodeTable[] TABLES = OpcodeTable.values();
+
+    private final long[] counts = new long[TABLES.length * 256];
+    private final long[] tStates = new long[TABLES.length * 256];
+
+    /*
+     * Count an instruction from its first four bytes, first byte lowest
+     */
+    void record(int bytes, long taken) {
+        int index = getIndex(bytes);
+        counts[index]++;
+        tStates[index] = tStates[index] + taken;
+    }
+
+    /*
+     * Position of an instruction in the counts, table then opcode
+     */
+    private static int getIndex(int bytes) {
+        int first = bytes & 0xFF;
+        int second = (bytes >>> 8) & 0xFF;
+        return switch (first) {
+            case 0xCB -> (OpcodeTable.CB.ordinal() << 8) | second;
+            case 0xED -> (OpcodeTable.ED.ordinal() << 8) | second;
+            case 0xDD, 0xFD -> (0xCB == second) ? (OpcodeTable.DDCB.ordinal() << 8) | (bytes >>> 24) : (OpcodeTable.DD_FD.ordinal() << 8) | second;
+            default -> first;
+        };
+    }
+
+    /**
+     * Get the number of times an opcode was executed
+     *
+     * @param table  Decode table
+     * @param opcode Opcode in the table
+     * @return Count
+     */
+    public long getCount(OpcodeTable table, int opcode) {
+        return counts[(table.ordinal() << 8) | (opcode & 0xFF)];
+    }
+
+    /**
+     * Get the T states taken by an opcode
+     *
+     * @param table  Decode table
+     * @param opcode Opcode in the table
+     * @return Total T states
+     */
+    public long getTStates(OpcodeTable table, int opcode) {
+        return tStates[(table.ordinal() << 8) | (opcode & 0xFF)];
+    }
+
+    /**
+     * @return Number of instructions counted
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (long count : counts) {
+            total = total + count;
+        }
+        return total;
+    }
+
+    /**
+     * @return T states taken by all instructions counted
+     */
+    public long getTotalTStates() {
+        long total = 0;
+        for (long taken : tStates) {
+            total = total + taken;
+        }
+        return total;
+    }
+
+    /**
+     * Reset all counts to zero
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(tStates, 0);
+    }
+
+    /**
+     * Write the opcodes executed as CSV, a header line then one line per opcode of table, opcode in hex, count and
+     * T states
+     *
+     * @param out Destination
+     * @throws IOException Thrown if the destination cannot be written to
+     */
+    public void writeCsv(Appendable out) throws IOException {
+        out.append("table,opcode,count,tStates").append(System.lineSeparator());
+        for (int index = 0; index < counts.length; index++) {
+            if (0 != counts[index]) {
+                out.append(TABLES[index >>> 8].name()).append(',').append(Utilities.getByte(index & 0xFF)).append(',');
+                out.append(Long.toString(counts[index])).append(',').append(Long.toString(tStates[index])).append(System.lineSeparator());
+            }
+        }
+    }
+
+    /**
+     * Write the opcodes executed as JSON, an object holding the totals and, for each table, an array of the opcodes
+     * executed with their counts and T states
+     *
+     * @param out Destination
+     * @throws IOException Thrown if the destination cannot be written to
+     */
+    public void writeJson(Appendable out) throws IOException {
+        out.append("{\"count\":").append(Long.toString(getTotalCount())).append(",\"tStates\":").append(Long.toString(getTotalTStates()));
+        out.append(",\"tables\":{");
+        for (OpcodeTable table : TABLES) {
+            out.append((0 == table.ordinal()) ? "\"" : ",\"").append(table.name()).append("\":[");
+            String separator = "";
+            for (int opcode = 0; opcode < 256; opcode++) {
+                int index = (table.ordinal() << 8) | opcode;
+                if (0 != counts[index]) {
+                    out.append(separator).append("{\"opcode\":\"").append(Utilities.getByte(opcode)).append("\",\"count\":");
+                    out.append(Long.toString(counts[index])).append(",\"tStates\":").append(Long.toString(tStates[index])).append('}');
+                    separator = ",";
+                }
+            }
+            out.append(']');
+        }
+        out.append("}}");
+    }
+}
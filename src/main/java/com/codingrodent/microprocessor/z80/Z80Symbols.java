@@ -0,0 +1,125 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+/**
+ * Names for addresses, as used by the profilers
+ */
+final class Z80Symbols {
+    private final TreeMap<Integer, String> names = new TreeMap<>();
+
+    /*
+     * Name an address, replacing any name already there
+     */
+    void add(String name, int address) {
+        names.put(address & 0xFFFF, name);
+    }
+
+    /*
+     * Name of an address, or null if it has none
+     */
+    String get(int address) {
+        return names.get(address & 0xFFFF);
+    }
+
+    /*
+     * Name of an address, or the address in hex if it has none
+     */
+    String getName(int address) {
+        String name = get(address);
+        return (null == name) ? Utilities.getWord(address & 0xFFFF) : name;
+    }
+
+    /*
+     * Nearest named address at or below an address, or -1 if there is none
+     */
+    int floor(int address) {
+        Integer named = names.floorKey(address & 0xFFFF);
+        return (null == named) ? -1 : named;
+    }
+
+    /*
+     * True if no address is named
+     */
+    boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    /*
+     * Read names from a map or symbol file, see Z80HotspotProfiler.loadSymbols()
+     */
+    void load(Path path) throws IOException {
+        for (String line : Files.readAllLines(path)) {
+            String text = line.strip();
+            if (text.isEmpty() || text.startsWith(";") || text.startsWith("#")) {
+                continue;
+            }
+            var tokens = new ArrayList<String>();
+            for (String token : text.split("[\\s:=]+")) {
+                if (!token.isEmpty() && !"EQU".equalsIgnoreCase(token)) {
+                    tokens.add(token);
+                }
+            }
+            if (tokens.size() < 2) {
+                continue;
+            }
+            String first = tokens.get(0);
+            String second = tokens.get(1);
+            if ((parseAddress(first) >= 0) && (isMarked(first) || (parseAddress(second) < 0))) {
+                add(second, parseAddress(first));
+            } else if (parseAddress(second) >= 0) {
+                add(first, parseAddress(second));
+            }
+        }
+    }
+
+    /*
+     * True if a token is marked as hex
+     */
+    private static boolean isMarked(String token) {
+        return token.startsWith("$") || token.startsWith("0x") || token.startsWith("0X") || token.endsWith("H") || token.endsWith("h");
+    }
+
+    /*
+     * Value of a hex address, or -1 if the token is not one
+     */
+    private static int parseAddress(String token) {
+        String digits = token;
+        if (digits.startsWith("$")) {
+            digits = digits.substring(1);
+        } else if (digits.startsWith("0x") || digits.startsWith("0X")) {
+            digits = digits.substring(2);
+        } else if (digits.endsWith("H") || digits.endsWith("h")) {
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        if (digits.isEmpty() || (digits.length() > 4)) {
+            return -1;
+        }
+        int value = 0;
+        for (char c : digits.toCharArray()) {
+            if (Character.digit(c, 16) < 0) {
+                return -1;
+            }
+            value = (value << 4) | Utilities.getHexDigit(c);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+
+import java.io.IOException;
+
+/**
+ * Record of the most recently executed instructions. For each instruction the program counter, the instruction bytes,
+ * AF, BC, DE, HL, IX, IY, SP and the T state count, all as they were before it executed, are packed into a ring of
+ * longs allocated up front, so recording creates no objects. Once full the oldest entries are overwritten. Nothing is
+ * turned into text until {@link #dump(Appendable)} is called, for example after a crash.
+ * <p>
+ * Enable recording with {@link Z80Core#enableTrace(Z80Trace)}.
+ */
+public final class Z80Trace extends Z80TraceSink {
+    // longs per instruction
+    private final static int ENTRY = 4;
+
+    private final long[] buffer;
+    private final int mask;
+    private long count;
+
+    /**
+     * Create a trace
+     *
+     * @param capacity Number of instructions to hold, rounded up to a power of two
+     */
+    public Z80Trace(int capacity) {
+        if ((capacity <= 0) || (capacity > (1 << 28))) {
+            throw new IllegalArgumentException("Trace capacity must be between 1 and 2^28, found " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size = size << 1;
+        }
+        buffer = new long[size * ENTRY];
+        mask = buffer.length - 1;
+    }
+
+    /*
+     * Add an instruction, overwriting the oldest once full
+     */
+    @Override
+    void record(long instruction, long registers, long index, long tStates) {
+        int offset = (int) (count * ENTRY) & mask;
+        buffer[offset] = instruction;
+        buffer[offset + 1] = registers;
+        buffer[offset + 2] = index;
+        buffer[offset + 3] = tStates;
+        count++;
+    }
+
+    /**
+     * @return Number of instructions the trace can hold
+     */
+    public int getCapacity() {
+        return buffer.length / ENTRY;
+    }
+
+    /**
+     * @return Number of instructions recorded since the trace was created or cleared, including any overwritten
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Number of instructions held, oldest first from entry zero
+     */
+    public int size() {
+        return (int) Math.min(count, getCapacity());
+    }
+
+    /**
+     * Discard all entries
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Get the address of a recorded instruction
+     *
+     * @param entry Entry number, 0 for the oldest held
+     * @return Program counter
+     */
+    public int getPC(int entry) {
+        return (int) (buffer[offset(entry)] & 0xFFFF);
+    }
+
+    /**
+     * Get the T state count before a recorded instruction
+     *
+     * @param entry Entry number, 0 for the oldest held
+     * @return T states
+     */
+    public long getTStates(int entry) {
+        return buffer[offset(entry) + 3];
+    }
+
+    /**
+     * Get the value of a register before a recorded instruction
+     *
+     * @param entry Entry number, 0 for the oldest held
+     * @param name  Register, one of PC, SP, A, F, BC, DE, HL, IX or IY
+     * @return Register value
+     */
+    public int getRegisterValue(int entry, RegisterNames name) {
+        int offset = offset(entry);
+        long registers = buffer[offset + 1];
+        long index = buffer[offset + 2];
+        return switch (name) {
+            case PC -> (int) (buffer[offset] & 0xFFFF);
+            case A -> (int) (registers >>> 56);
+            case F -> (int) (registers >>> 48) & 0xFF;
+            case BC -> (int) (registers >>> 32) & 0xFFFF;
+            case DE -> (int) (registers >>> 16) & 0xFFFF;
+            case HL -> (int) registers & 0xFFFF;
+            case IX -> (int) (index >>> 32) & 0xFFFF;
+            case IY -> (int) (index >>> 16) & 0xFFFF;
+            case SP -> (int) index & 0xFFFF;
+            default -> throw new IllegalArgumentException("Register not traced: " + name);
+        };
+    }
+
+    /**
+     * Write the held instructions as text, oldest first, one line each
+     *
+     * @param out Destination
+     * @throws IOException Thrown if the destination cannot be written to
+     */
+    public void dump(Appendable out) throws IOException {
+        long first = count - size();
+        for (int entry = 0; entry < size(); entry++) {
+            int offset = offset(entry);
+            long instruction = buffer[offset];
+            long registers = buffer[offset + 1];
+            long index = buffer[offset + 2];
+            int bytes = (int) (instruction >>> 16);
+            int length = Z80DecodeCache.getLength(bytes & 0xFF, (bytes >>> 8) & 0xFF);
+            if (0 == length) {
+                length = 4;
+            }
+            var line = new StringBuilder(100);
+            line.append(first + entry).append(" >> Execute @").append(Utilities.getWord((int) instruction & 0xFFFF)).append(" :");
+            for (int i = 0; i < 4; i++) {
+                line.append(i < length ? " " + Utilities.getByte((bytes >>> (i * 8)) & 0xFF) : "   ");
+            }
+            line.append(" SP:").append(Utilities.getWord((int) index & 0xFFFF));
+            line.append("  AF:").append(Utilities.getWord((int) (registers >>> 48)));
+            line.append("  BC:").append(Utilities.getWord((int) (registers >>> 32) & 0xFFFF));
+            line.append("  DE:").append(Utilities.getWord((int) (registers >>> 16) & 0xFFFF));
+            line.append("  HL:").append(Utilities.getWord((int) registers & 0xFFFF));
+            line.append("  IX:").append(Utilities.getWord((int) (index >>> 32) & 0xFFFF));
+            line.append("  IY:").append(Utilities.getWord((int) (index >>> 16) & 0xFFFF));
+            line.append("  T:").append(buffer[offset + 3]);
+            out.append(line).append(System.lineSeparator());
+        }
+    }
+
+    /*
+     * Position in the buffer of an entry counted from the oldest held
+     */
+    private int offset(int entry) {
+        if ((entry < 0) || (entry >= size())) {
+            throw new IndexOutOfBoundsException("Trace entry " + entry + " of " + size());
+        }
+        return (int) ((count - size() + entry) * ENTRY) & mask;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read back a trace file written by {@link Z80TraceWriter}, one instruction at a time. {@link #next()} moves on to the
+ * next instruction, after which its state before execution is available from the getters.
+ */
+public final class Z80TraceReader implements AutoCloseable {
+    private final static int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private boolean endOfFile;
+    // the current instruction
+    private final int[] registers = new int[Z80TraceWriter.REGISTERS];
+    private final int[] bytes = new int[4];
+    private int pc, length;
+    private long tStates, count;
+
+    private Z80TraceReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        buffer.flip();
+        fill();
+        if ((buffer.remaining() < 5) || (Z80TraceWriter.MAGIC != buffer.getInt()) || (Z80TraceWriter.VERSION != buffer.get())) {
+            throw new IOException("Not a Z80 trace file");
+        }
+    }
+
+    /**
+     * Open a trace file
+     *
+     * @param path File to read
+     * @return The reader, before the first instruction
+     * @throws IOException Thrown if the file cannot be read or is not a trace
+     */
+    public static Z80TraceReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new Z80TraceReader(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Move on to the next instruction
+     *
+     * @return True if there is one, false at the end of the trace
+     * @throws IOException Thrown if the file cannot be read or ends part way through an instruction
+     */
+    public boolean next() throws IOException {
+        if (buffer.remaining() < Z80TraceWriter.MAX_RECORD) {
+            fill();
+            if (!buffer.hasRemaining()) {
+                return false;
+            }
+        }
+        try {
+            int changes = buffer.get();
+            pc = (pc + (int) getVarLong()) & 0xFFFF;
+            int read = 1;
+            bytes[0] = buffer.get() & 0xFF;
+            length = Z80DecodeCache.getLength(bytes[0], 0);
+            if ((0xDD == bytes[0]) || (0xED == bytes[0]) || (0xFD == bytes[0])) {
+                bytes[read++] = buffer.get() & 0xFF;
+                length = Z80DecodeCache.getLength(bytes[0], bytes[1]);
+                if (0 == length) {
+                    length = 4;
+                }
+            }
+            for (int i = read; i < 4; i++) {
+                bytes[i] = (i < length) ? buffer.get() & 0xFF : 0;
+            }
+            for (int i = 0; i < Z80TraceWriter.REGISTERS; i++) {
+                if (0 != (changes & (1 << i))) {
+                    registers[i] = (buffer.get() & 0xFF) | ((buffer.get() & 0xFF) << 8);
+                }
+            }
+            tStates = tStates + getVarLong();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Trace file ends part way through an instruction", e);
+        }
+        count++;
+        return true;
+    }
+
+    /**
+     * @return Number of instructions read so far
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Address of the current instruction
+     */
+    public int getPC() {
+        return pc;
+    }
+
+    /**
+     * @return Number of bytes in the current instruction, four for a chain of prefixes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Get a byte of the current instruction
+     *
+     * @param offset Offset from the start of the instruction, less than {@link #getLength()}
+     * @return The byte
+     */
+    public int getByte(int offset) {
+        if ((offset < 0) || (offset >= length)) {
+            throw new IndexOutOfBoundsException("Instruction byte " + offset + " of " + length);
+        }
+        return bytes[offset];
+    }
+
+    /**
+     * @return T state count before the current instruction
+     */
+    public long getTStates() {
+        return tStates;
+    }
+
+    /**
+     * Get the value of a register before the current instruction
+     *
+     * @param name Register, one of PC, SP, A, F, BC, DE, HL, IX or IY
+     * @return Register value
+     */
+    public int getRegisterValue(RegisterNames name) {
+        return switch (name) {
+            case PC -> pc;
+            case A -> registers[0] >>> 8;
+            case F -> registers[0] & 0xFF;
+            case BC -> registers[1];
+            case DE -> registers[2];
+            case HL -> registers[3];
+            case IX -> registers[4];
+            case IY -> registers[5];
+            case SP -> registers[6];
+            default -> throw new IllegalArgumentException("Register not traced: " + name);
+        };
+    }
+
+    /**
+     * Close the file
+     *
+     * @throws IOException Thrown if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /*
+     * Zigzag varint, seven bits a byte, lowest first
+     */
+    private long getVarLong() throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; ; shift = shift + 7) {
+            if (shift > 63) {
+                throw new IOException("Corrupt trace file");
+            }
+            int b = buffer.get();
+            zigzag = zigzag | ((long) (b & 0x7F) << shift);
+            if (b >= 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+    }
+
+    /*
+     * Top up the buffer from the file
+     */
+    private void fill() throws IOException {
+        buffer.compact();
+        while (!endOfFile && buffer.hasRemaining()) {
+            endOfFile = channel.read(buffer) < 0;
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+/**
+ * Destination for the instructions recorded by a core with tracing enabled. Each instruction arrives as four longs
+ * <ul>
+ * <li>instruction - PC in bits 0-15, the next four bytes from memory above it, first byte lowest</li>
+ * <li>registers - AF, BC, DE and HL, highest first</li>
+ * <li>index - IX, IY and SP in the low 48 bits, highest first</li>
+ * <li>tStates - T state count</li>
+ * </ul>
+ * all as they were before the instruction executed.
+ */
+abstract class Z80TraceSink {
+
+    /*
+     * Add an instruction
+     */
+    abstract void record(long instruction, long registers, long index, long tStates);
+}
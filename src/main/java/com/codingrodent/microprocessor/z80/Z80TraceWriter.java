@@ -0,0 +1,227 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stream a complete record of every instruction executed to a file, compactly enough for runs of billions of
+ * instructions. Read it back with {@link Z80TraceReader}.
+ * <p>
+ * The emulating thread only copies each instruction into a queue, which a background thread drains, encodes and writes
+ * through a reusable direct buffer. The emulating thread takes no locks and does no I/O. It only waits if the queue is
+ * full, when the disk cannot keep up. The file starts with a header, followed by one record per instruction
+ * <ul>
+ * <li>a byte with a bit set for each of AF, BC, DE, HL, IX, IY and SP (bits 0 to 6) changed since the last record</li>
+ * <li>the change in PC, as a zigzag varint</li>
+ * <li>the instruction bytes</li>
+ * <li>the value of each changed register, two bytes low first</li>
+ * <li>the change in T states, as a zigzag varint</li>
+ * </ul>
+ * The first record is written against a previous one with PC, every register and the T state count at zero, so it
+ * holds each register which differs from zero.
+ * <p>
+ * Enable writing with {@link Z80Core#enableTrace(Z80TraceWriter)}.
+ */
+public final class Z80TraceWriter extends Z80TraceSink implements AutoCloseable {
+    final static int MAGIC = 0x5A383054; // Z80T
+    final static int VERSION = 1;
+    final static int REGISTERS = 7;
+    // largest record, mask + PC + instruction + registers + T states
+    final static int MAX_RECORD = 1 + 3 + 4 + 2 * REGISTERS + 10;
+    //
+    private final static int QUEUE_SIZE = 1 << 16;
+    private final static int BATCH = 1024;
+    private final static int BUFFER_SIZE = 1 << 16;
+    private final static long IDLE_NANOS = 100_000;
+
+    // queue of four longs per instruction, written by the emulating thread and read by the writer thread
+    private final long[] queue = new long[QUEUE_SIZE * 4];
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private long head, consumedCache;
+    //
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Thread writer;
+    private volatile boolean closed;
+    private IOException failure;
+    // state after the last record written
+    private int lastPC;
+    private long lastRegisters, lastIndex, lastTStates;
+
+    private Z80TraceWriter(FileChannel channel) {
+        this.channel = channel;
+        buffer.putInt(MAGIC).put((byte) VERSION);
+        writer = Thread.ofPlatform().name("Z80 trace writer").daemon().start(this::drain);
+    }
+
+    /**
+     * Create a trace file, replacing any existing file
+     *
+     * @param path File to write
+     * @return The writer
+     * @throws IOException Thrown if the file cannot be created
+     */
+    public static Z80TraceWriter open(Path path) throws IOException {
+        return new Z80TraceWriter(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /*
+     * Queue an instruction for writing, waiting only while the queue is full
+     */
+    @Override
+    void record(long instruction, long registers, long index, long tStates) {
+        if (head - consumedCache >= QUEUE_SIZE) {
+            while (head - (consumedCache = consumed.getAcquire()) >= QUEUE_SIZE) {
+                if (!writer.isAlive()) {
+                    return; // failed, see close()
+                }
+                Thread.onSpinWait();
+            }
+        }
+        int offset = (int) (head * 4) & (queue.length - 1);
+        queue[offset] = instruction;
+        queue[offset + 1] = registers;
+        queue[offset + 2] = index;
+        queue[offset + 3] = tStates;
+        published.setRelease(++head);
+    }
+
+    /**
+     * Write out all queued instructions and close the file. Must be called from the thread which ran the core, once
+     * the trace has been disabled.
+     *
+     * @throws IOException Thrown if the trace could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (null != failure) {
+            throw failure;
+        }
+    }
+
+    /*
+     * Writer thread, encoding queued instructions until closed and the queue is empty
+     */
+    private void drain() {
+        try (channel) {
+            long tail = 0;
+            while (true) {
+                boolean finished = closed;
+                long available = published.getAcquire();
+                if (tail == available) {
+                    if (finished) {
+                        break;
+                    }
+                    LockSupport.parkNanos(IDLE_NANOS);
+                    continue;
+                }
+                long end = Math.min(available, tail + BATCH);
+                for (; tail < end; tail++) {
+                    int offset = (int) (tail * 4) & (queue.length - 1);
+                    encode(queue[offset], queue[offset + 1], queue[offset + 2], queue[offset + 3]);
+                }
+                consumed.setRelease(tail);
+            }
+            flush();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /*
+     * Append one record to the buffer, writing the buffer out first if it could overflow
+     */
+    private void encode(long instruction, long registers, long index, long tStates) throws IOException {
+        if (buffer.remaining() < MAX_RECORD) {
+            flush();
+        }
+        int changes = 0;
+        for (int i = 0; i < REGISTERS; i++) {
+            if (getRegister(registers, index, i) != getRegister(lastRegisters, lastIndex, i)) {
+                changes = changes | (1 << i);
+            }
+        }
+        buffer.put((byte) changes);
+        int pc = (int) instruction & 0xFFFF;
+        putVarLong(pc - lastPC);
+        int bytes = (int) (instruction >>> 16);
+        int length = Z80DecodeCache.getLength(bytes & 0xFF, (bytes >>> 8) & 0xFF);
+        for (int i = 0; i < ((0 == length) ? 4 : length); i++) {
+            buffer.put((byte) (bytes >>> (i * 8)));
+        }
+        for (int i = 0; i < REGISTERS; i++) {
+            if (0 != (changes & (1 << i))) {
+                int value = getRegister(registers, index, i);
+                buffer.put((byte) value).put((byte) (value >>> 8));
+            }
+        }
+        putVarLong(tStates - lastTStates);
+        lastPC = pc;
+        lastRegisters = registers;
+        lastIndex = index;
+        lastTStates = tStates;
+    }
+
+    /*
+     * Register number n, in the order AF, BC, DE, HL, IX, IY, SP, from the packed registers
+     */
+    static int getRegister(long registers, long index, int n) {
+        return (int) ((n < 4) ? registers >>> (48 - 16 * n) : index >>> (32 - 16 * (n - 4))) & 0xFFFF;
+    }
+
+    /*
+     * Signed value as a zigzag varint, seven bits a byte, lowest first
+     */
+    private void putVarLong(long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while (0 != (zigzag & ~0x7FL)) {
+            buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag = zigzag >>> 7;
+        }
+        buffer.put((byte) zigzag);
+    }
+
+    /*
+     * Write out the buffer
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
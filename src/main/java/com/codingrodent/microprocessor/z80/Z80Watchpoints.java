@@ -0,0 +1,129 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import java.util.Arrays;
+
+/**
+ * Memory watchpoints for the Z80 core. Each address holds read and write flags, and a bitmap marks the 256 byte pages
+ * holding any watchpoint, so an access to an unwatched page is dismissed with a single bit test.
+ */
+final class Z80Watchpoints {
+    final static int READ = 1;
+    final static int WRITE = 2;
+    //
+    private final static int MAX_ADDRESS = 0xFFFF;
+    private final static int PAGE_SHIFT = 8;
+    private final static int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+    private final long[] pages = new long[(MAX_ADDRESS + 1) >>> (PAGE_SHIFT + 6)];
+    private final byte[] types = new byte[MAX_ADDRESS + 1];
+    private int count;
+
+    /**
+     * Watch an address
+     *
+     * @param address The address
+     * @param type    Accesses to watch, {@link #READ} and / or {@link #WRITE}, at least one
+     */
+    void add(int address, int type) {
+        if (0 == type) {
+            return;
+        }
+        address = address & MAX_ADDRESS;
+        if (0 == types[address]) {
+            count++;
+        }
+        types[address] = (byte) (types[address] | type);
+        int page = address >>> PAGE_SHIFT;
+        pages[page >>> 6] = pages[page >>> 6] | (1L << page);
+    }
+
+    /**
+     * Stop watching an address
+     *
+     * @param address The address
+     */
+    void remove(int address) {
+        address = address & MAX_ADDRESS;
+        if (0 == types[address]) {
+            return;
+        }
+        types[address] = 0;
+        count--;
+        int first = address & ~PAGE_MASK;
+        for (int i = first; i < first + (1 << PAGE_SHIFT); i++) {
+            if (0 != types[i]) {
+                return;
+            }
+        }
+        int page = address >>> PAGE_SHIFT;
+        pages[page >>> 6] = pages[page >>> 6] & ~(1L << page);
+    }
+
+    /**
+     * Remove all watchpoints
+     */
+    void clear() {
+        Arrays.fill(pages, 0);
+        Arrays.fill(types, (byte) 0);
+        count = 0;
+    }
+
+    /**
+     * @return True if no address is watched
+     */
+    boolean isEmpty() {
+        return 0 == count;
+    }
+
+    /**
+     * Test an access against the watchpoints
+     *
+     * @param address The address accessed, 0x0000 to 0xFFFF
+     * @param type    {@link #READ} or {@link #WRITE}
+     * @return True if the access is watched
+     */
+    boolean isWatched(int address, int type) {
+        int page = address >>> PAGE_SHIFT;
+        return (0 != (pages[page >>> 6] & (1L << page))) && (0 != (types[address] & type));
+    }
+
+    /**
+     * Count how many of a run of accesses to consecutive addresses can be made before one is watched. Pages holding no
+     * watchpoint are passed over whole.
+     *
+     * @param address   The first address accessed, 0x0000 to 0xFFFF
+     * @param count     The number of accesses, wrapping around memory
+     * @param increment True if the addresses count up, false if down
+     * @param type      {@link #READ} or {@link #WRITE}
+     * @return The number of accesses before the first watched one, count if none are
+     */
+    int getUnwatched(int address, int count, boolean increment, int type) {
+        int steps = 0;
+        while (steps < count) {
+            int current = (increment ? address + steps : address - steps) & MAX_ADDRESS;
+            int page = current >>> PAGE_SHIFT;
+            if (0 == (pages[page >>> 6] & (1L << page))) {
+                steps = steps + (increment ? PAGE_MASK + 1 - (current & PAGE_MASK) : (current & PAGE_MASK) + 1);
+            } else if (0 != (types[current] & type)) {
+                return steps;
+            } else {
+                steps++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.memory;
+
+import com.codingrodent.microprocessor.IBaseDevice;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import com.codingrodent.microprocessor.z80.Z80Core;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BankedMemoryTest {
+
+    /**
+     * Unswitched memory is a flat 64K
+     */
+    @Test
+    public final void testFlat() {
+        var memory = new BankedMemory(0x1000);
+        assertEquals(16, memory.getPageCount());
+        for (int address = 0; address < 0x10000; address++) {
+            memory.writeByte(address, address ^ (address >>> 8));
+        }
+        for (int address = 0; address < 0x10000; address++) {
+            assertEquals((address ^ (address >>> 8)) & 0xFF, memory.readByte(address));
+        }
+        memory.writeWord(0x0FFF, 0x1234);
+        assertEquals(0x34, memory.getBank(0)[0x0FFF]);
+        assertEquals(0x12, memory.getBank(1)[0x0000]);
+        memory.writeWord(0xFFFF, 0x5678);
+        assertEquals(0x5678, memory.readWord(0xFFFF));
+        //
+        assertThrows(IllegalArgumentException.class, () -> new BankedMemory(0x3000));
+        assertThrows(IllegalArgumentException.class, () -> memory.addBank(new byte[0x2000], false));
+    }
+
+    /**
+     * Switched banks keep their contents and ROM ignores writes
+     */
+    @Test
+    public final void testSwitching() {
+        var memory = new BankedMemory(0x4000);
+        byte[] image = new byte[0x4000];
+        image[0x0000] = 0x55;
+        int rom = memory.addBank(image, true);
+        int ram = memory.addBank(new byte[0x4000], false);
+        //
+        memory.select(0, rom);
+        assertEquals(rom, memory.getSelected(0));
+        assertEquals(0x55, memory.readByte(0x0000));
+        memory.writeByte(0x0000, 0xAA);
+        assertEquals(0x55, memory.readByte(0x0000));
+        assertEquals(0x55, image[0x0000]);
+        //
+        memory.select(3, ram);
+        memory.writeByte(0xC000, 0x11);
+        memory.select(3, 3);
+        assertEquals(0x00, memory.readByte(0xC000));
+        memory.select(2, ram);
+        assertEquals(0x11, memory.readByte(0x8000));
+    }
+
+    /**
+     * Program switching banks through an output port
+     */
+    @Test
+    public final void testPortSwitching() {
+        var memory = new BankedMemory(0x4000);
+        int first = memory.addBank(new byte[0x4000], false);
+        int second = memory.addBank(new byte[0x4000], false);
+        var z80 = new Z80Core(memory, new IBaseDevice() {
+            @Override
+            public void IOWrite(int address, int data) {
+                memory.select(3, data);
+            }
+        });
+        int address = 0x0000;
+        for (int b : new int[]{0x3E, first, // ld a,first
+                0xD3, 0xFE, // out (FE),a
+                0x3E, 0x11, // ld a,11
+                0x32, 0x00, 0xC0, // ld (C000),a
+                0x3E, second, // ld a,second
+                0xD3, 0xFE, // out (FE),a
+                0x3E, 0x22, // ld a,22
+                0x32, 0x00, 0xC0, // ld (C000),a
+                0x3E, first, // ld a,first
+                0xD3, 0xFE, // out (FE),a
+                0x3A, 0x00, 0xC0, // ld a,(C000)
+                0x76}) { // halt
+            memory.writeByte(address++, b);
+        }
+        z80.reset();
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(0x11, z80.getRegisterValue(RegisterNames.A));
+        assertEquals(0x11, memory.getBank(first)[0]);
+        assertEquals(0x22, memory.getBank(second)[0]);
+        assertEquals(first, memory.getSelected(3));
+    }
+
+    /**
+     * Code switched into a page is run in place of the code decoded or compiled from the bank it replaced
+     */
+    @Test
+    public final void testCodeSwitching() {
+        for (int engine = 0; engine < 3; engine++) {
+            var memory = new BankedMemory(0x4000);
+            int first = memory.addBank(bank(new byte[]{0x3E, 0x11, (byte) 0xC9}, 0x4000), false); // ld a,11 ; ret
+            int second = memory.addBank(bank(new byte[]{0x3E, 0x22, (byte) 0xC9}, 0x4000), false); // ld a,22 ; ret
+            var z80 = new Z80Core(memory, new IBaseDevice() {
+                @Override
+                public void IOWrite(int address, int data) {
+                    memory.select(3, data);
+                }
+            });
+            int address = 0x0000;
+            for (int b : new int[]{0x31, 0x00, 0x80, // ld sp,8000
+                    0x3E, first, // ld a,first
+                    0xD3, 0xFE, // out (FE),a
+                    0x06, 0x04, // ld b,4
+                    0xCD, 0x00, 0xC0, // loop: call C000
+                    0x10, 0xFB, // djnz loop
+                    0x4F, // ld c,a
+                    0x3E, second, // ld a,second
+                    0xD3, 0xFE, // out (FE),a
+                    0xCD, 0x00, 0xC0, // call C000
+                    0x76}) { // halt
+                memory.writeByte(address++, b);
+            }
+            z80.reset();
+            if (1 == engine) z80.enableDecodeCache();
+            if (2 == engine) z80.enableBlockCompiler(1);
+            assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+            assertEquals(0x0011, z80.getRegisterValue(RegisterNames.BC));
+            assertEquals(0x22, z80.getRegisterValue(RegisterNames.A));
+        }
+    }
+
+    /*
+     * A bank holding the given bytes at its start
+     */
+    private static byte[] bank(byte[] code, int size) {
+        return Arrays.copyOf(code, size);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedMemoryTest {
+
+    /**
+     * Writes in read / write mode persist in the file
+     */
+    @Test
+    public final void testReadWrite() throws IOException {
+        Path file = Files.createTempFile("z80", ".bin");
+        try {
+            try (MappedMemory memory = MappedMemory.open(file, MapMode.READ_WRITE)) {
+                assertEquals(SegmentMemory.SIZE, Files.size(file));
+                memory.writeByte(0x0000, 0x12);
+                memory.writeWord(0xFFFF, 0x3456);
+                memory.fill(0x8000, 0x10, 0xAA);
+                memory.force();
+            }
+            byte[] image = Files.readAllBytes(file);
+            assertEquals(0x34, image[0x0000] & 0xFF);
+            assertEquals(0x56, image[0xFFFF] & 0xFF);
+            assertEquals(0xAA, image[0x800F] & 0xFF);
+            assertEquals(0x00, image[0x8010] & 0xFF);
+            try (MappedMemory memory = MappedMemory.open(file, MapMode.READ_WRITE)) {
+                assertEquals(0x3456, memory.readWord(0xFFFF));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Private mappings see the file but keep their own changes, read only mappings ignore writes
+     */
+    @Test
+    public final void testPrivateAndReadOnly() throws IOException {
+        Path file = Files.createTempFile("z80", ".bin");
+        try {
+            byte[] image = new byte[SegmentMemory.SIZE];
+            image[0x1000] = 0x76;
+            Files.write(file, image);
+            try (MappedMemory first = MappedMemory.open(file, MapMode.PRIVATE); MappedMemory second = MappedMemory.open(file, MapMode.PRIVATE); MappedMemory rom =
+                    MappedMemory.open(file, MapMode.READ_ONLY)) {
+                assertEquals(0x76, first.readByte(0x1000));
+                first.writeByte(0x1000, 0xC9);
+                assertEquals(0xC9, first.readByte(0x1000));
+                assertEquals(0x76, second.readByte(0x1000));
+                rom.writeByte(0x1000, 0x00);
+                rom.writeWord(0x1000, 0x0000);
+                rom.fill(0x1000, 1, 0x00);
+                assertEquals(0x76, rom.readByte(0x1000));
+            }
+            assertArrayEquals(image, Files.readAllBytes(file));
+            //
+            Files.write(file, new byte[0x100]);
+            assertThrows(IllegalArgumentException.class, () -> MappedMemory.open(file, MapMode.READ_ONLY));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
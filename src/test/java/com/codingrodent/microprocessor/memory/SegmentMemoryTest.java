@@ -0,0 +1,161 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.memory;
+
+import com.codingrodent.microprocessor.IMemory;
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import com.codingrodent.microprocessor.z80.Z80Core;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentMemoryTest {
+
+    /**
+     * Byte and word access, including wrapping at the top of memory
+     */
+    @Test
+    public final void testReadWrite() {
+        try (Arena arena = Arena.ofConfined()) {
+            var memory = new SegmentMemory(arena);
+            memory.writeByte(0x1234, 0x1FE);
+            assertEquals(0xFE, memory.readByte(0x1234));
+            assertEquals(0xFE, memory.readByte(0x11234));
+            memory.writeWord(0x2000, 0xABCD);
+            assertEquals(0xCD, memory.readByte(0x2000));
+            assertEquals(0xAB, memory.readByte(0x2001));
+            assertEquals(0xABCD, memory.readWord(0x2000));
+            memory.writeWord(0xFFFF, 0x1234);
+            assertEquals(0x34, memory.readByte(0xFFFF));
+            assertEquals(0x12, memory.readByte(0x0000));
+            assertEquals(0x1234, memory.readWord(0xFFFF));
+            //
+            assertThrows(IllegalArgumentException.class, () -> new SegmentMemory(arena.allocate(0x8000)));
+        }
+    }
+
+    /**
+     * Block operations must give the same results as the byte at a time defaults, overlapping or not
+     */
+    @Test
+    public final void testBlockOperations() {
+        try (Arena arena = Arena.ofConfined()) {
+            var memory = new SegmentMemory(arena);
+            var reference = new ByteMemory();
+            for (int source : new int[]{0x1000, 0x1001, 0x1010, 0x0FFF, 0x0FF0}) {
+                for (boolean increment : new boolean[]{true, false}) {
+                    for (int address = 0; address < 0x2000; address++) {
+                        memory.writeByte(address, address * 7);
+                        reference.writeByte(address, address * 7);
+                    }
+                    memory.copyBlock(source, 0x1000, 0x20, increment);
+                    reference.copyBlock(source, 0x1000, 0x20, increment);
+                    for (int address = 0; address < 0x2000; address++) {
+                        assertEquals(reference.readByte(address), memory.readByte(address));
+                    }
+                }
+            }
+            memory.fill(0x3000, 0x100, 0x55);
+            assertEquals(0x00, memory.readByte(0x2FFF));
+            assertEquals(0x55, memory.readByte(0x3000));
+            assertEquals(0x55, memory.readByte(0x30FF));
+            assertEquals(0x00, memory.readByte(0x3100));
+            //
+            memory.writeByte(0x3080, 0xAA);
+            assertEquals(0x80, memory.indexOf(0x3000, 0x100, 0xAA, true));
+            assertEquals(0x7F, memory.indexOf(0x30FF, 0x100, 0xAA, false));
+            assertEquals(-1, memory.indexOf(0x3000, 0x80, 0xAA, true));
+        }
+    }
+
+    /**
+     * Memories allocated together must not share storage
+     */
+    @Test
+    public final void testAllocate() {
+        try (Arena arena = Arena.ofConfined()) {
+            SegmentMemory[] memories = SegmentMemory.allocate(arena, 4);
+            assertEquals(4, memories.length);
+            for (int i = 0; i < memories.length; i++) {
+                memories[i].writeByte(0x0000, i + 1);
+                memories[i].writeByte(0xFFFF, i + 0x10);
+            }
+            for (int i = 0; i < memories.length; i++) {
+                assertEquals(i + 1, memories[i].readByte(0x0000));
+                assertEquals(i + 0x10, memories[i].readByte(0xFFFF));
+            }
+        }
+    }
+
+    /**
+     * A processor running from off heap memory must behave exactly as it does from the test memory
+     */
+    @Test
+    public final void testProcessor() {
+        var source = new Z80Memory("NAS_Test.nas");
+        try (Arena arena = Arena.ofConfined()) {
+            var memory = new SegmentMemory(arena);
+            for (int address = 0; address < SegmentMemory.SIZE; address++) {
+                memory.writeByte(address, source.readByte(address));
+            }
+            var reference = new Z80Core(source, new Z80IOEcho());
+            var z80 = new Z80Core(memory, new Z80IOEcho());
+            reference.reset();
+            reference.setProgramCounter(0x1000);
+            z80.reset();
+            z80.setProgramCounter(0x1000);
+            assertEquals(reference.run(5_000_000), z80.run(5_000_000));
+            for (RegisterNames name : RegisterNames.values()) {
+                assertEquals(reference.getRegisterValue(name), z80.getRegisterValue(name));
+            }
+            assertEquals(reference.getTStates(), z80.getTStates());
+            for (int address = 0; address < SegmentMemory.SIZE; address++) {
+                assertEquals(source.readByte(address), memory.readByte(address));
+            }
+        }
+    }
+
+    /*
+     * Plain memory using only the default block operations
+     */
+    private static class ByteMemory implements IMemory {
+        private final int[] memory = new int[SegmentMemory.SIZE];
+
+        @Override
+        public int readByte(int address) {
+            return memory[address & 0xFFFF];
+        }
+
+        @Override
+        public int readWord(int address) {
+            return readByte(address) | (readByte(address + 1) << 8);
+        }
+
+        @Override
+        public void writeByte(int address, int data) {
+            memory[address & 0xFFFF] = data & 0xFF;
+        }
+
+        @Override
+        public void writeWord(int address, int data) {
+            writeByte(address, data);
+            writeByte(address + 1, data >>> 8);
+        }
+    }
+}
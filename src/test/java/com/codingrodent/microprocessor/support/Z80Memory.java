@@ -111,6 +111,18 @@ public class Z80Memory implements IMemory {
         source.close();
     }
 
+    /**
+     * Place bytes in memory, such as a test program
+     *
+     * @param address Address of the first byte
+     * @param bytes   The bytes
+     */
+    public void load(int address, int... bytes) {
+        for (int b : bytes) {
+            writeByte(address++, b);
+        }
+    }
+
     @Override
     // Read a byte from memory
     public int readByte(int address) {
@@ -138,4 +150,31 @@ public class Z80Memory implements IMemory {
         data = (data >>> 8);
         writeByte(address, data);
     }
+
+    @Override
+    public void copyBlock(int source, int destination, int length, boolean increment) {
+        // an array copy only matches the byte by byte copy if no byte is read after it has been written
+        if (increment ? ((destination <= source) || (destination >= source + length)) : ((destination >= source) || (destination <= source - length))) {
+            int offset = increment ? 0 : length - 1;
+            System.arraycopy(memory, source - offset, memory, destination - offset, length);
+        } else {
+            IMemory.super.copyBlock(source, destination, length, increment);
+        }
+    }
+
+    @Override
+    public void fill(int address, int length, int data) {
+        Arrays.fill(memory, address, address + length, data);
+    }
+
+    @Override
+    public int indexOf(int address, int length, int data, boolean increment) {
+        int step = increment ? 1 : -1;
+        for (int i = 0; i < length; i++) {
+            if (memory[address + step * i] == data) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
@@ -0,0 +1,288 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.IBaseDevice;
+import com.codingrodent.microprocessor.IMemory;
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Repeating block instructions are carried out as bulk memory and I/O operations. Check they give the same results as
+ * one byte at a time.
+ */
+public class Z80BlockTransferTest {
+    private final static int ORIGIN = 0xC000;
+
+    /**
+     * Memory with its own block operations must end up in the same state as memory using the byte by byte defaults
+     */
+    @Test
+    public final void testBulkMatchesDefault() {
+        var bulkMemory = new Z80Memory("NAS_Test.nas");
+        var bulk = new Z80Core(bulkMemory, new Z80IOEcho());
+        var plainMemory = new Z80Memory("NAS_Test.nas");
+        var plain = new Z80Core(new IMemory() {
+            @Override
+            public int readByte(int address) {
+                return plainMemory.readByte(address);
+            }
+
+            @Override
+            public int readWord(int address) {
+                return plainMemory.readWord(address);
+            }
+
+            @Override
+            public void writeByte(int address, int data) {
+                plainMemory.writeByte(address, data);
+            }
+
+            @Override
+            public void writeWord(int address, int data) {
+                plainMemory.writeWord(address, data);
+            }
+        }, new Z80IOEcho());
+        int[] code = {0x21, 0x00, 0x10, // LD HL,0x1000
+                0x11, 0x00, 0x40, // LD DE,0x4000
+                0x01, 0x00, 0x40, // LD BC,0x4000
+                0xED, 0xB0, // LDIR, 16K overlapping
+                0x21, 0x00, 0x80, // LD HL,0x8000
+                0x11, 0x01, 0x80, // LD DE,0x8001
+                0x01, 0xFF, 0x0F, // LD BC,0x0FFF
+                0x36, 0xA5, // LD (HL),0xA5
+                0xED, 0xB0, // LDIR, fill
+                0x21, 0x00, 0x50, // LD HL,0x5000
+                0x11, 0x80, 0x50, // LD DE,0x5080
+                0x01, 0x00, 0x10, // LD BC,0x1000
+                0xED, 0xB8, // LDDR, overlapping
+                0x21, 0x00, 0x40, // LD HL,0x4000
+                0x01, 0x00, 0x40, // LD BC,0x4000
+                0x3E, 0xC9, // LD A,0xC9
+                0xED, 0xB1, // CPIR, found
+                0x3E, 0xA5, // LD A,0xA5
+                0x21, 0x00, 0x10, // LD HL,0x1000
+                0x01, 0x00, 0x10, // LD BC,0x1000
+                0xED, 0xB9, // CPDR, not found
+                0x76}; // HALT
+        for (Z80Core z80 : new Z80Core[]{bulk, plain}) {
+            (z80 == bulk ? bulkMemory : plainMemory).load(ORIGIN, code);
+            z80.reset();
+            z80.setProgramCounter(ORIGIN);
+            while (!z80.getHalt()) {
+                z80.executeOneInstruction();
+            }
+        }
+        for (RegisterNames name : RegisterNames.values()) {
+            assertEquals(plain.getRegisterValue(name), bulk.getRegisterValue(name), name::toString);
+        }
+        assertEquals(plain.getTStates(), bulk.getTStates());
+        for (int address = 0; address <= 0xFFFF; address++) {
+            assertEquals(plainMemory.readByte(address), bulkMemory.readByte(address));
+        }
+        assertEquals(0xA5, bulkMemory.readByte(0x8FFF));
+    }
+
+    /**
+     * A move only takes one instruction, with each byte moved taking 21 T states
+     */
+    @Test
+    public final void testMoveTiming() {
+        var z80Memory = new Z80Memory("NAS_Test.nas");
+        var z80 = new Z80Core(z80Memory, new Z80IOEcho());
+        z80.reset();
+        z80Memory.writeByte(ORIGIN, 0xED);
+        z80Memory.writeByte(ORIGIN + 1, 0xB0); // LDIR
+        z80.setRegisterValue(RegisterNames.HL, 0x1000);
+        z80.setRegisterValue(RegisterNames.DE, 0x6000);
+        z80.setRegisterValue(RegisterNames.BC, 0x2000);
+        z80.setProgramCounter(ORIGIN);
+        z80.executeOneInstruction();
+        assertEquals(ORIGIN + 2, z80.getProgramCounter());
+        assertEquals(8 + 21 * 0x2000, z80.getTStates());
+        assertEquals(0x3000, z80.getRegisterValue(RegisterNames.HL));
+        assertEquals(0x8000, z80.getRegisterValue(RegisterNames.DE));
+        assertEquals(0, z80.getRegisterValue(RegisterNames.BC));
+        assertEquals(0, z80.getRegisterValue(RegisterNames.F) & 0x04); // P/V reset, BC = 0
+        for (int offset = 0; offset < 0x2000; offset++) {
+            assertEquals(z80Memory.readByte(0x1000 + offset), z80Memory.readByte(0x6000 + offset));
+        }
+    }
+
+    /**
+     * INIR and OTIR complete in one instruction with every port access made, the B register counting down
+     */
+    @Test
+    public final void testBlockIO() {
+        var z80Memory = new Z80Memory("NAS_Test.nas");
+        List<Integer> ports = new ArrayList<>();
+        List<Integer> data = new ArrayList<>();
+        var z80 = new Z80Core(z80Memory, new IBaseDevice() {
+            @Override
+            public int IORead(int address) {
+                ports.add(address);
+                return address >>> 8;
+            }
+
+            @Override
+            public void IOWrite(int address, int value) {
+                ports.add(address);
+                data.add(value);
+            }
+        });
+        z80.reset();
+        z80Memory.writeByte(ORIGIN, 0xED);
+        z80Memory.writeByte(ORIGIN + 1, 0xB2); // INIR
+        z80Memory.writeByte(ORIGIN + 2, 0xED);
+        z80Memory.writeByte(ORIGIN + 3, 0xB3); // OTIR
+        z80.setRegisterValue(RegisterNames.HL, 0x8000);
+        z80.setRegisterValue(RegisterNames.BC, 0x0410);
+        z80.setProgramCounter(ORIGIN);
+        z80.executeOneInstruction();
+        assertEquals(ORIGIN + 2, z80.getProgramCounter());
+        assertEquals(4 * (8 + 21), z80.getTStates());
+        assertEquals(List.of(0x0410, 0x0310, 0x0210, 0x0110), ports);
+        assertEquals(0x8004, z80.getRegisterValue(RegisterNames.HL));
+        assertEquals(0x0010, z80.getRegisterValue(RegisterNames.BC));
+        assertTrue((z80.getRegisterValue(RegisterNames.F) & 0x40) != 0);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(4 - i, z80Memory.readByte(0x8000 + i));
+        }
+        //
+        ports.clear();
+        z80.setRegisterValue(RegisterNames.HL, 0x8000);
+        z80.setRegisterValue(RegisterNames.BC, 0x0420);
+        z80.executeOneInstruction();
+        assertEquals(ORIGIN + 4, z80.getProgramCounter());
+        assertEquals(List.of(0x0420, 0x0320, 0x0220, 0x0120), ports);
+        assertEquals(List.of(4, 3, 2, 1), data);
+    }
+
+    /**
+     * A 32K fill run against a small budget returns part way through and carries on from where it stopped
+     */
+    @Test
+    public final void testMovePreempted() {
+        var memory = new Z80Memory("NAS_Test.nas");
+        var z80 = new Z80Core(memory, new Z80IOEcho());
+        var referenceMemory = new Z80Memory("NAS_Test.nas");
+        var reference = new Z80Core(referenceMemory, new Z80IOEcho());
+        int[] code = {0x21, 0x00, 0x10, // LD HL,0x1000
+                0x11, 0x01, 0x10, // LD DE,0x1001
+                0x01, 0x00, 0x80, // LD BC,0x8000
+                0xED, 0xB0, // LDIR
+                0x76}; // HALT
+        memory.load(ORIGIN, code);
+        referenceMemory.load(ORIGIN, code);
+        z80.reset();
+        z80.setProgramCounter(ORIGIN);
+        reference.reset();
+        reference.setProgramCounter(ORIGIN);
+        while (!reference.getHalt()) {
+            reference.executeOneInstruction();
+        }
+        //
+        assertEquals(RunResult.BUDGET_EXHAUSTED, z80.run(1000));
+        assertTrue(z80.blockMoveInProgress());
+        assertEquals(ORIGIN + 9, z80.getProgramCounter());
+        assertTrue(z80.getTStates() >= 1000);
+        assertTrue(z80.getTStates() < 1000 + 21);
+        int resumed = 0;
+        while (RunResult.BUDGET_EXHAUSTED == z80.run(10_000)) {
+            resumed++;
+        }
+        assertTrue(resumed > 50);
+        assertFalse(z80.blockMoveInProgress());
+        for (RegisterNames name : RegisterNames.values()) {
+            assertEquals(reference.getRegisterValue(name), z80.getRegisterValue(name), name::toString);
+        }
+        // resuming the move does not charge its decode time again
+        assertEquals(reference.getTStates(), z80.getTStates());
+        for (int i = 0; i <= 0xFFFF; i++) {
+            assertEquals(referenceMemory.readByte(i), memory.readByte(i));
+        }
+    }
+
+    /**
+     * A waiting NMI stops a move after one byte so it can be accepted on the next instruction
+     */
+    @Test
+    public final void testMoveInterrupted() {
+        var memory = new Z80Memory("NAS_Test.nas");
+        var z80 = new Z80Core(memory, new Z80IOEcho());
+        int[] code = {0xF3, // DI
+                0xED, 0xB0}; // LDIR
+        memory.load(ORIGIN, code);
+        z80.reset();
+        z80.setRegisterValue(RegisterNames.HL, 0x1000);
+        z80.setRegisterValue(RegisterNames.DE, 0x8000);
+        z80.setRegisterValue(RegisterNames.BC, 0x0100);
+        z80.setRegisterValue(RegisterNames.SP, 0xF000);
+        z80.setProgramCounter(ORIGIN);
+        z80.executeOneInstruction();
+        z80.setNMI(); // can't be accepted straight after DI
+        z80.executeOneInstruction();
+        assertTrue(z80.blockMoveInProgress());
+        assertEquals(ORIGIN + 1, z80.getProgramCounter());
+        assertEquals(0x00FF, z80.getRegisterValue(RegisterNames.BC));
+        z80.executeOneInstruction();
+        assertEquals(ORIGIN + 1, memory.readWord(0xEFFE)); // returns to the LDIR
+        assertEquals(0x0066, z80.getProgramCounter()); // halted in the empty NMI routine
+    }
+
+    /**
+     * A move left part way by an interrupt which never returns to it starts afresh when it is next reached, costing the
+     * same as a move elsewhere
+     */
+    @Test
+    public final void testMoveLeft() {
+        long[] tStates = new long[2];
+        for (int run = 0; run < 2; run++) {
+            var memory = new Z80Memory("NAS_Test.nas");
+            var z80 = new Z80Core(memory, new Z80IOEcho());
+            int target = (0 == run) ? ORIGIN + 9 : ORIGIN + 0x100;
+            int[] code = {0x21, 0x00, 0x10, // LD HL,0x1000
+                    0x11, 0x00, 0x20, // LD DE,0x2000
+                    0x01, 0x00, 0x10, // LD BC,0x1000
+                    0xED, 0xB0, // LDIR
+                    0x76}; // HALT
+            memory.load(ORIGIN, code);
+            memory.load(ORIGIN + 0x100, 0xED, 0xB0, 0x76); // LDIR ; HALT
+            memory.load(0x0066, 0x01, 0x0A, 0x00, // LD BC,10
+                    0xC3, target & 0xFF, target >>> 8); // JP target
+            z80.reset();
+            z80.setRegisterValue(RegisterNames.SP, 0xF000);
+            z80.setProgramCounter(ORIGIN);
+            assertEquals(RunResult.BUDGET_EXHAUSTED, z80.run(60));
+            assertTrue(z80.blockMoveInProgress());
+            z80.setNMI();
+            assertEquals(RunResult.NMI, z80.run(Long.MAX_VALUE));
+            assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+            assertEquals(0x0000, z80.getRegisterValue(RegisterNames.BC));
+            tStates[run] = z80.getTStates();
+        }
+        assertEquals(tStates[1], tStates[0]);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class Z80BreakpointTest {
+    private final static int ORIGIN = 0xC000;
+    private final static int LOOP = ORIGIN + 2;
+    private final static int END = ORIGIN + 5;
+    //
+    private Z80Core z80;
+    private Z80Memory z80Memory;
+
+    @BeforeEach
+    public void setUp() {
+        z80Memory = new Z80Memory("NAS_Test.nas");
+        z80 = new Z80Core(z80Memory, new Z80IOEcho());
+        z80.reset();
+        z80Memory.load(ORIGIN, 0x06, 0x05, // ld b,5
+                0x0C, // inc c
+                0x10, 0xFD, // djnz loop
+                0x76); // halt
+        z80.setProgramCounter(ORIGIN);
+    }
+
+    /**
+     * Stop before the instruction at a breakpoint, and carry on from it
+     */
+    @Test
+    public final void testBreakpoint() {
+        z80.addBreakpoint(ORIGIN + 3);
+        assertEquals(RunResult.BREAKPOINT, z80.run(Long.MAX_VALUE));
+        assertEquals(ORIGIN + 3, z80.getProgramCounter());
+        assertEquals(0x0501, z80.getRegisterValue(RegisterNames.BC));
+        assertEquals(RunResult.BREAKPOINT, z80.run(Long.MAX_VALUE));
+        assertEquals(ORIGIN + 3, z80.getProgramCounter());
+        assertEquals(0x0402, z80.getRegisterValue(RegisterNames.BC));
+        assertEquals(RunResult.BREAKPOINT, z80.runInstructions(10));
+        assertEquals(RunResult.BUDGET_EXHAUSTED, z80.runInstructions(1));
+        assertEquals(LOOP, z80.getProgramCounter());
+        assertEquals(0x0203, z80.getRegisterValue(RegisterNames.BC));
+        //
+        z80.removeBreakpoint(ORIGIN + 3);
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(END, z80.getProgramCounter());
+        assertEquals(0x0005, z80.getRegisterValue(RegisterNames.BC));
+    }
+
+    /**
+     * A conditional breakpoint only stops when its condition is met
+     */
+    @Test
+    public final void testConditional() {
+        z80.addBreakpoint(LOOP, address -> 0x0302 == z80.getRegisterValue(RegisterNames.BC));
+        assertEquals(RunResult.BREAKPOINT, z80.run(Long.MAX_VALUE));
+        assertEquals(LOOP, z80.getProgramCounter());
+        // replaced by an unconditional breakpoint
+        z80.addBreakpoint(LOOP);
+        assertEquals(RunResult.BREAKPOINT, z80.run(Long.MAX_VALUE));
+        assertEquals(0x0203, z80.getRegisterValue(RegisterNames.BC));
+        z80.clearBreakpoints();
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+    }
+
+    /**
+     * Run to an address, leaving no breakpoint behind
+     */
+    @Test
+    public final void testRunTo() {
+        z80.addBreakpoint(ORIGIN + 3, address -> false);
+        assertEquals(RunResult.BREAKPOINT, z80.runTo(END, Long.MAX_VALUE));
+        assertEquals(END, z80.getProgramCounter());
+        assertEquals(0x0005, z80.getRegisterValue(RegisterNames.BC));
+        z80.setProgramCounter(ORIGIN);
+        assertEquals(RunResult.BUDGET_EXHAUSTED, z80.runTo(END, 20));
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(END, z80.getProgramCounter());
+    }
+
+    /**
+     * An NMI accepted onto a breakpoint is reported first, then the breakpoint before the handler is executed
+     */
+    @Test
+    public final void testInterruptHandler() {
+        z80.addBreakpoint(0x0066);
+        z80.runInstructions(3);
+        z80.setNMI();
+        assertEquals(RunResult.NMI, z80.run(Long.MAX_VALUE));
+        assertEquals(0x0066, z80.getProgramCounter());
+        assertEquals(RunResult.BREAKPOINT, z80.run(Long.MAX_VALUE));
+        assertEquals(0x0066, z80.getProgramCounter());
+        assertEquals(RunResult.HALT, z80.runInstructions(1)); // the empty NMI routine
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Z80CallProfilerTest {
+    private final static int A = 0xC020;
+    private final static int B = 0xC030;
+    //
+    private Z80Core z80;
+    private Z80CallProfiler profiler;
+
+    @BeforeEach
+    public void setUp() {
+        var z80Memory = new Z80Memory("NAS_Test.nas");
+        z80 = new Z80Core(z80Memory, new Z80IOEcho());
+        z80.reset();
+        z80Memory.load(0xC000, 0x31, 0x00, 0xD0, // ld sp,0xD000
+                0xCD, 0x20, 0xC0, // call a
+                0xCD, 0x30, 0xC0, // call b
+                0xFF, // rst 0x38
+                0x76); // halt
+        z80Memory.load(A, 0xCD, 0x30, 0xC0, // call b
+                0xC9); // ret
+        z80Memory.load(B, 0xE1, // pop hl, discarding the return address
+                0xE9); // jp (hl)
+        z80Memory.load(0x0038, 0xC9); // ret
+        z80Memory.load(0x0066, 0xED, 0x45); // retn
+        z80.setProgramCounter(0xC000);
+        profiler = new Z80CallProfiler();
+        z80.enableCallProfiler(profiler);
+    }
+
+    /**
+     * T states are split by call path, and popped return addresses end their frames
+     */
+    @Test
+    public final void testCallGraph() {
+        long start = z80.getTStates();
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(0, profiler.getDepth());
+        assertEquals(16 + 17 + 17 + 4 + 11 + 4, profiler.getExclusiveTStates());
+        assertEquals(17 + 4 + 10, profiler.getExclusiveTStates(A));
+        assertEquals(10, profiler.getExclusiveTStates(A, B));
+        assertEquals(10, profiler.getExclusiveTStates(B));
+        assertEquals(10, profiler.getExclusiveTStates(0x0038));
+        assertEquals(17 + 4 + 10 + 10, profiler.getInclusiveTStates(A));
+        assertEquals(z80.getTStates() - start, profiler.getInclusiveTStates());
+        assertEquals(1, profiler.getCalls(A));
+        assertEquals(1, profiler.getCalls(A, B));
+        assertEquals(0, profiler.getCalls(B, A));
+        assertEquals(0, profiler.getExclusiveTStates(B, A));
+        //
+        z80.setProgramCounter(0xC000);
+        z80.run(Long.MAX_VALUE);
+        assertEquals(2, profiler.getCalls(A));
+        assertEquals(0, profiler.getDepth());
+    }
+
+    /**
+     * Interrupts start a routine at the address jumped to
+     */
+    @Test
+    public final void testInterrupt() {
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        z80.setNMI();
+        assertEquals(RunResult.NMI, z80.runInstructions(1));
+        assertEquals(1, profiler.getCalls(0x0066));
+        assertEquals(14, profiler.getExclusiveTStates(0x0066));
+        assertEquals(0, profiler.getDepth());
+        //
+        z80.disableCallProfiler();
+        profiler.clear();
+        z80.setProgramCounter(0xC000);
+        z80.run(Long.MAX_VALUE);
+        assertEquals(0, profiler.getInclusiveTStates());
+    }
+
+    /**
+     * Collapsed stacks name routines by symbol or address
+     */
+    @Test
+    public final void testCollapsed() throws IOException {
+        profiler.addSymbol("a", A);
+        profiler.addSymbol("b", B);
+        z80.run(Long.MAX_VALUE);
+        var text = new StringBuilder();
+        profiler.writeCollapsed(text);
+        String[] lines = text.toString().split(System.lineSeparator());
+        assertArrayEquals(new String[]{"root 69", "root;a 31", "root;a;b 10", "root;b 10", "root;0038 10"}, lines);
+    }
+}
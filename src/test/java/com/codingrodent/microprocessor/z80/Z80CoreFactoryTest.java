@@ -0,0 +1,88 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.DirectMemory;
+import com.codingrodent.microprocessor.support.Z80IO;
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Z80CoreFactoryTest {
+
+    /**
+     * One specialised class per pair of memory and I/O classes
+     */
+    @Test
+    public final void testSpecialisedClasses() {
+        Z80Core first = Z80CoreFactory.create(new Z80Memory("NAS_Test.nas"), new Z80IOEcho());
+        Z80Core second = Z80CoreFactory.create(new Z80Memory("NAS_Test.nas"), new Z80IOEcho());
+        Z80Core third = Z80CoreFactory.create(new Z80Memory("NAS_Test.nas"), new Z80IO());
+        assertNotEquals(Z80Core.class, first.getClass());
+        assertTrue(first.getClass().isHidden());
+        assertEquals(first.getClass(), second.getClass());
+        assertNotEquals(first.getClass(), third.getClass());
+    }
+
+    /**
+     * A specialised core must behave exactly as the plain core, with every engine
+     */
+    @Test
+    public final void testSpecialisedMatchesPlain() {
+        for (int engine = 0; engine < 3; engine++) {
+            var referenceMemory = new Z80Memory("NAS_Test.nas");
+            var z80Memory = new Z80Memory("NAS_Test.nas");
+            var reference = new Z80Core(referenceMemory, new Z80IOEcho());
+            var z80 = Z80CoreFactory.create(z80Memory, new Z80IOEcho());
+            for (Z80Core core : new Z80Core[]{reference, z80}) {
+                core.reset();
+                core.setProgramCounter(0x1000);
+                if (1 == engine) core.enableDecodeCache();
+                if (2 == engine) core.enableBlockCompiler(16);
+            }
+            for (int i = 0; i < 100_000; i++) {
+                reference.executeOneInstruction();
+                z80.executeOneInstruction();
+            }
+            assertEquals(reference.run(5_000_000), z80.run(5_000_000));
+            for (RegisterNames name : RegisterNames.values()) {
+                assertEquals(reference.getRegisterValue(name), z80.getRegisterValue(name));
+            }
+            assertEquals(reference.getTStates(), z80.getTStates());
+            assertEquals(reference.getCompiledBlockCount(), z80.getCompiledBlockCount());
+            for (int address = 0; address < 0x10000; address++) {
+                assertEquals(referenceMemory.readByte(address), z80Memory.readByte(address));
+            }
+        }
+    }
+
+    /**
+     * A failure in the core's own constructor reaches the caller rather than being hidden behind a plain core
+     */
+    @Test
+    public final void testConstructorFailure() {
+        var failure = new IllegalStateException("no memory");
+        var memory = new Z80Memory("NAS_Test.nas") {
+            @Override
+            public DirectMemory getDirectMemory() {
+                throw failure;
+            }
+        };
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> Z80CoreFactory.create(memory, new Z80IOEcho())));
+    }
+}
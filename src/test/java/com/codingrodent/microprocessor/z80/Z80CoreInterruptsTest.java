@@ -21,6 +21,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class Z80CoreInterruptsTest {
     private Z80Core z80;
@@ -192,4 +193,95 @@ public class Z80CoreInterruptsTest {
             }
         }
     }
+
+    /**
+     * IM 0, 1 and 2 each reach their handler, held off until the instruction after EI has completed
+     */
+    @Test
+    public final void testINTModes() {
+        // IM 0, RST 10 on the data bus
+        testINT(new int[]{0xED, 0x46}, 0x0010, 0xD7);
+        // IM 1
+        testINT(new int[]{0xED, 0x56}, 0x0038, 0xFF);
+        // IM 2, vector table at 0x8010
+        z80Memory.writeWord(0x8010, 0xC100);
+        testINT(new int[]{0x3E, 0x80, 0xED, 0x47, 0xED, 0x5E}, 0xC100, 0x10);
+    }
+
+    private void testINT(int[] setMode, int handler, int dataBus) {
+        int addr = 0xC000;
+        z80Memory.writeByte(addr++, 0x31); // LD SP,0xF000
+        z80Memory.writeByte(addr++, 0x00); //
+        z80Memory.writeByte(addr++, 0xF0); //
+        for (int b : setMode) {
+            z80Memory.writeByte(addr++, b);
+        }
+        z80Memory.writeByte(addr++, 0xFB); // EI
+        int nop = addr;
+        z80Memory.writeByte(addr++, 0x00); // NOP
+        z80Memory.writeByte(addr, 0x76); // HALT
+        //
+        addr = handler;
+        z80Memory.writeByte(addr++, 0x04); // INC B
+        z80Memory.writeByte(addr++, 0xFB); // EI
+        z80Memory.writeByte(addr++, 0xED); // RETI
+        z80Memory.writeByte(addr, 0x4D); //
+        //
+        z80.reset();
+        z80.setProgramCounter(0xC000);
+        z80.setINT(dataBus); // held until interrupts are enabled
+        while (z80.getProgramCounter() != nop) {
+            z80.executeOneInstruction();
+        }
+        z80.executeOneInstruction(); // NOP, held off by EI
+        assertEquals(nop + 1, z80.getProgramCounter());
+        z80.executeOneInstruction(); // interrupt, then INC B
+        assertEquals(handler + 1, z80.getProgramCounter());
+        assertEquals(nop + 1, z80Memory.readWord(0xEFFE));
+        assertEquals(0x01, z80.getRegisterValue(RegisterNames.BC) >>> 8);
+        while (!z80.getHalt()) {
+            z80.executeOneInstruction();
+        }
+        // edge triggered, so taken once only
+        assertEquals(0x01, z80.getRegisterValue(RegisterNames.BC) >>> 8);
+    }
+
+    /**
+     * A level triggered interrupt is taken again each time interrupts are enabled, until the line is released, and
+     * wakes the processor from HALT
+     */
+    @Test
+    public final void testINTLevel() {
+        int addr = 0xC000;
+        z80Memory.writeByte(addr++, 0x31); // LD SP,0xF000
+        z80Memory.writeByte(addr++, 0x00); //
+        z80Memory.writeByte(addr++, 0xF0); //
+        z80Memory.writeByte(addr++, 0xED); // IM 1
+        z80Memory.writeByte(addr++, 0x56); //
+        z80Memory.writeByte(addr++, 0xFB); // EI
+        z80Memory.writeByte(addr, 0x76); // HALT
+        //
+        addr = 0x0038;
+        z80Memory.writeByte(addr++, 0x04); // INC B
+        z80Memory.writeByte(addr++, 0xFB); // EI
+        z80Memory.writeByte(addr++, 0xED); // RETI
+        z80Memory.writeByte(addr, 0x4D); //
+        //
+        z80.setProgramCounter(0xC000);
+        while (!z80.getHalt()) {
+            z80.executeOneInstruction();
+        }
+        z80.setINTLevel(0xFF);
+        for (int i = 0; i < 30; i++) {
+            z80.executeOneInstruction();
+        }
+        assertEquals(0xC007, z80Memory.readWord(0xEFFE)); // returns after the HALT
+        assertEquals(10, z80.getRegisterValue(RegisterNames.BC) >>> 8);
+        z80.clearINT();
+        for (int i = 0; i < 30; i++) {
+            z80.executeOneInstruction();
+        }
+        assertTrue(z80.getHalt());
+        assertEquals(10, z80.getRegisterValue(RegisterNames.BC) >>> 8);
+    }
 }
@@ -0,0 +1,75 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.classfile.Attributes;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassModel;
+import java.lang.classfile.MethodModel;
+import java.lang.classfile.attribute.CodeAttribute;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Keep every method of the core small enough for HotSpot to compile and inline. Methods above HugeMethodLimit are
+ * never JIT compiled and hot methods above FreqInlineSize are not inlined into their callers.
+ */
+public class Z80CoreMethodSizeTest {
+    // HotSpot defaults, in bytes of bytecode
+    private final static int HUGE_METHOD_LIMIT = 8000;
+    private final static int FREQ_INLINE_SIZE = 325;
+    //
+    private ClassModel core;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        try (InputStream in = Z80Core.class.getResourceAsStream("Z80Core.class")) {
+            assertNotNull(in, "Z80Core.class not found");
+            core = ClassFile.of().parse(in.readAllBytes());
+        }
+    }
+
+    /**
+     * No method may be too large to be compiled at all
+     */
+    @Test
+    public final void testNoHugeMethods() {
+        for (MethodModel method : core.methods()) {
+            int size = codeLength(method);
+            assertTrue(size <= HUGE_METHOD_LIMIT, method.methodName().stringValue() + " is " + size + " bytes");
+        }
+    }
+
+    /**
+     * Every method, including each part of the instruction decoder, must be small enough to inline
+     */
+    @Test
+    public final void testAllMethodsInlineable() {
+        for (MethodModel method : core.methods()) {
+            int size = codeLength(method);
+            assertTrue(size <= FREQ_INLINE_SIZE, method.methodName().stringValue() + " is " + size + " bytes");
+        }
+    }
+
+    private static int codeLength(MethodModel method) {
+        return method.findAttribute(Attributes.code()).map(CodeAttribute::codeLength).orElse(0);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Z80CoreRunTest {
+    private Z80Core z80;
+    private Z80Memory z80Memory;
+
+    @BeforeEach
+    public void setUp() {
+        z80Memory = new Z80Memory("NAS_Test.nas");
+        z80 = new Z80Core(z80Memory, new Z80IOEcho());
+        z80.reset();
+    }
+
+    /**
+     * Batch execution must leave the processor in exactly the same state as single stepping
+     */
+    @Test
+    public final void testRunMatchesSingleStep() {
+        var reference = new Z80Core(new Z80Memory("NAS_Test.nas"), new Z80IOEcho());
+        reference.reset();
+        reference.setProgramCounter(0x1000);
+        z80.setProgramCounter(0x1000);
+        //
+        assertEquals(RunResult.BUDGET_EXHAUSTED, z80.run(2_000_000));
+        assertTrue(z80.getTStates() >= 2_000_000);
+        while (reference.getTStates() < z80.getTStates()) {
+            reference.executeOneInstruction();
+        }
+        for (RegisterNames name : RegisterNames.values()) {
+            assertEquals(reference.getRegisterValue(name), z80.getRegisterValue(name));
+        }
+        assertEquals(reference.getTStates(), z80.getTStates());
+        //
+        assertEquals(RunResult.BUDGET_EXHAUSTED, z80.runInstructions(10_000));
+        for (int i = 0; i < 10_000; i++) {
+            reference.executeOneInstruction();
+        }
+        for (RegisterNames name : RegisterNames.values()) {
+            assertEquals(reference.getRegisterValue(name), z80.getRegisterValue(name));
+        }
+        assertEquals(reference.getTStates(), z80.getTStates());
+    }
+
+    /**
+     * Stop on HALT and on an exhausted budget
+     */
+    @Test
+    public final void testRunHaltAndBudget() {
+        int addr = 0xC000;
+        z80Memory.writeByte(addr++, 0x3C); // INC A
+        z80Memory.writeByte(addr++, 0x3C); // INC A
+        z80Memory.writeByte(addr++, 0x3C); // INC A
+        z80Memory.writeByte(addr, 0x76); // HALT
+        //
+        z80.setProgramCounter(0xC000);
+        assertEquals(RunResult.BUDGET_EXHAUSTED, z80.run(0));
+        assertEquals(0, z80.getTStates());
+        assertEquals(RunResult.BUDGET_EXHAUSTED, z80.run(5));
+        assertEquals(8, z80.getTStates());
+        assertEquals(0x02, z80.getRegisterValue(RegisterNames.A));
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(0x03, z80.getRegisterValue(RegisterNames.A));
+        assertEquals(16, z80.getTStates());
+        assertTrue(z80.getHalt());
+        //
+        z80.reset();
+        z80.setProgramCounter(0xC000);
+        assertEquals(RunResult.BUDGET_EXHAUSTED, z80.runInstructions(2));
+        assertEquals(0x02, z80.getRegisterValue(RegisterNames.A));
+        assertEquals(RunResult.HALT, z80.runInstructions(100));
+        assertEquals(0xC003, z80.getProgramCounter());
+    }
+
+    /**
+     * Stop when an NMI is accepted, but not straight after an EI or DI
+     */
+    @Test
+    public final void testRunNMI() {
+        int addr = 0xC000;
+        z80Memory.writeByte(addr++, 0xFB); // EI
+        z80Memory.writeByte(addr++, 0x3C); // INC A
+        z80Memory.writeByte(addr, 0x76); // HALT
+        //
+        addr = 0x0066;
+        z80Memory.writeByte(addr++, 0x04); // INC B
+        z80Memory.writeByte(addr, 0x76); // HALT
+        //
+        z80.setProgramCounter(0xC000);
+        assertEquals(RunResult.BUDGET_EXHAUSTED, z80.runInstructions(1));
+        z80.setNMI();
+        assertEquals(RunResult.BUDGET_EXHAUSTED, z80.runInstructions(1)); // INC A, NMI held off by EI
+        assertEquals(0x01, z80.getRegisterValue(RegisterNames.A));
+        assertEquals(RunResult.NMI, z80.run(Long.MAX_VALUE));
+        assertEquals(0x01, z80.getRegisterValue(RegisterNames.BC) >>> 8);
+        assertEquals(0xC002, z80Memory.readWord(0xFFFE));
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+    }
+
+    /**
+     * A halted processor moves straight to the end of its budget, just as if it had executed HALT until then
+     */
+    @Test
+    public final void testHaltFastForward() {
+        int addr = 0xC000;
+        z80Memory.writeByte(addr++, 0x3C); // INC A
+        z80Memory.writeByte(addr, 0x76); // HALT
+        var reference = new Z80Core(z80Memory, new Z80IOEcho());
+        reference.reset();
+        reference.setProgramCounter(0xC000);
+        while (reference.getTStates() < 1_000_001) {
+            reference.executeOneInstruction();
+        }
+        //
+        z80.setProgramCounter(0xC000);
+        z80.enableHaltFastForward();
+        assertEquals(RunResult.HALT, z80.run(1_000_001));
+        assertTrue(z80.getHalt());
+        assertEquals(reference.getTStates(), z80.getTStates());
+        for (RegisterNames name : RegisterNames.values()) {
+            assertEquals(reference.getRegisterValue(name), z80.getRegisterValue(name));
+        }
+        assertEquals(RunResult.HALT, z80.run(1_000));
+        assertEquals(reference.getTStates() + 1_000, z80.getTStates());
+        assertEquals(RunResult.HALT, z80.runInstructions(10));
+        assertEquals(reference.getTStates() + 1_040, z80.getTStates());
+        assertEquals(0xC001, z80.getProgramCounter());
+        //
+        z80.disableHaltFastForward();
+        assertEquals(RunResult.HALT, z80.run(1_000));
+        assertEquals(reference.getTStates() + 1_044, z80.getTStates());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class Z80DecodeCacheTest {
+
+    /**
+     * Cached decoding must leave the processor in exactly the same state as decoding from memory
+     */
+    @Test
+    public final void testCachedMatchesUncached() {
+        var reference = new Z80Core(new Z80Memory("NAS_Test.nas"), new Z80IOEcho());
+        var z80 = new Z80Core(new Z80Memory("NAS_Test.nas"), new Z80IOEcho());
+        reference.reset();
+        reference.setProgramCounter(0x1000);
+        z80.reset();
+        z80.setProgramCounter(0x1000);
+        z80.enableDecodeCache();
+        //
+        for (int i = 0; i < 200_000; i++) {
+            reference.executeOneInstruction();
+            z80.executeOneInstruction();
+        }
+        for (RegisterNames name : RegisterNames.values()) {
+            assertEquals(reference.getRegisterValue(name), z80.getRegisterValue(name));
+        }
+        assertEquals(reference.getTStates(), z80.getTStates());
+        //
+        assertEquals(reference.run(5_000_000), z80.run(5_000_000));
+        for (RegisterNames name : RegisterNames.values()) {
+            assertEquals(reference.getRegisterValue(name), z80.getRegisterValue(name));
+        }
+        assertEquals(reference.getTStates(), z80.getTStates());
+    }
+
+    /**
+     * Code which modifies itself, including through an index register, must see its own changes
+     */
+    @Test
+    public final void testSelfModifyingCode() {
+        var z80Memory = new Z80Memory("NAS_Test.nas");
+        var z80 = new Z80Core(z80Memory, new Z80IOEcho());
+        z80.reset();
+        int addr = 0xC000;
+        for (int b : new int[]{0x01, 0x14, 0x00, // LD BC,0x0014
+                0xDD, 0x21, 0x07, 0xC0, // LD IX,0xC007
+                0x3E, 0x01, // LD A,1 (immediate modified below)
+                0x80, // ADD A,B
+                0x47, // LD B,A
+                0xDD, 0x34, 0x01, // INC (IX+1)
+                0x0D, // DEC C
+                0x20, 0xF6, // JR NZ,0xC007
+                0x76}) { // HALT
+            z80Memory.writeByte(addr++, b);
+        }
+        z80.setProgramCounter(0xC000);
+        z80.enableDecodeCache();
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(210, z80.getRegisterValue(RegisterNames.BC) >>> 8); // 1 + 2 + ... + 20
+        assertEquals(0x15, z80Memory.readByte(0xC008));
+        assertEquals(0xC011, z80.getProgramCounter());
+        //
+        z80Memory.writeByte(0xC008, 0x01); // changed behind the processor's back
+        z80.flushDecodeCache();
+        z80.setProgramCounter(0xC000);
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(210, z80.getRegisterValue(RegisterNames.BC) >>> 8);
+    }
+}
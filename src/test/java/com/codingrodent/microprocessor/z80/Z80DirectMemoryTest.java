@@ -0,0 +1,123 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.DirectMemory;
+import com.codingrodent.microprocessor.IMemory;
+import com.codingrodent.microprocessor.memory.BankedMemory;
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class Z80DirectMemoryTest {
+
+    /**
+     * Direct access to memory must leave the processor and memory exactly as access through the interface does
+     */
+    @Test
+    public final void testDirectMatchesInterface() {
+        for (int engine = 0; engine < 3; engine++) {
+            var source = new Z80Memory("NAS_Test.nas");
+            var memory = new BankedMemory(0x1000);
+            for (int address = 0; address < 0x10000; address++) {
+                memory.writeByte(address, source.readByte(address));
+            }
+            var reference = new Z80Core(source, new Z80IOEcho());
+            var z80 = new Z80Core(memory, new Z80IOEcho());
+            for (Z80Core core : new Z80Core[]{reference, z80}) {
+                core.reset();
+                core.setProgramCounter(0x1000);
+                if (1 == engine) core.enableDecodeCache();
+                if (2 == engine) core.enableBlockCompiler(16);
+            }
+            assertEquals(reference.run(5_000_000), z80.run(5_000_000));
+            for (RegisterNames name : RegisterNames.values()) {
+                assertEquals(reference.getRegisterValue(name), z80.getRegisterValue(name));
+            }
+            assertEquals(reference.getTStates(), z80.getTStates());
+            for (int address = 0; address < 0x10000; address++) {
+                assertEquals(source.readByte(address), memory.readByte(address));
+            }
+        }
+    }
+
+    /**
+     * Pages without a backing array are accessed through the interface
+     */
+    @Test
+    public final void testInterfacePages() {
+        var memory = new MappedIOMemory();
+        var z80 = new Z80Core(memory, new Z80IOEcho());
+        int address = 0x0000;
+        for (int b : new int[]{0x3A, 0x00, 0xF0, // ld a,(F000)
+                0x32, 0x01, 0xF0, // ld (F001),a
+                0x32, 0x00, 0x80, // ld (8000),a
+                0x21, 0x34, 0x12, // ld hl,1234
+                0x22, 0xFF, 0xEF, // ld (EFFF),hl
+                0x76}) { // halt
+            memory.writeByte(address++, b);
+        }
+        z80.reset();
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(0x5A, z80.getRegisterValue(RegisterNames.A));
+        assertEquals(0x5A, memory.pages[0x8][0x000]);
+        assertEquals(0x34, memory.pages[0xE][0xFFF]);
+        assertEquals(3, memory.calls); // (F000), (F001) and the high byte of (EFFF)
+        assertEquals(0x12, memory.lastWrite);
+    }
+
+    /*
+     * 60K of RAM with a memory mapped device in the top 4K
+     */
+    private static class MappedIOMemory implements IMemory {
+        private final byte[][] pages = new byte[16][];
+        private int calls;
+        private int lastWrite;
+
+        MappedIOMemory() {
+            for (int i = 0; i < 15; i++) {
+                pages[i] = new byte[0x1000];
+            }
+        }
+
+        @Override
+        public DirectMemory getDirectMemory() {
+            return new DirectMemory(0x1000, pages, pages);
+        }
+
+        @Override
+        public int readByte(int address) {
+            if (address >= 0xF000) {
+                calls++;
+                return 0x5A;
+            }
+            return pages[address >>> 12][address & 0xFFF] & 0xFF;
+        }
+
+        @Override
+        public void writeByte(int address, int data) {
+            if (address >= 0xF000) {
+                calls++;
+                lastWrite = data;
+            } else {
+                pages[address >>> 12][address & 0xFFF] = (byte) data;
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.IEvent;
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Z80EventSchedulerTest {
+
+    /**
+     * Events fire in deadline order, ties in the order scheduled, and cancelled events never fire
+     */
+    @Test
+    public final void testOrdering() {
+        var scheduler = new Z80EventScheduler();
+        var random = new Random(1);
+        List<Long> fired = new ArrayList<>();
+        List<Long> expected = new ArrayList<>();
+        IEvent cancelled = t -> fail("cancelled event fired");
+        for (int i = 0; i < 1000; i++) {
+            long deadline = random.nextInt(500);
+            // record the deadline and the order scheduled
+            long id = (deadline << 16) | i;
+            scheduler.schedule(deadline, t -> fired.add(id));
+            expected.add(id);
+            if (0 == (i % 10)) {
+                scheduler.schedule(random.nextInt(500), cancelled);
+            }
+        }
+        assertTrue(scheduler.cancel(cancelled));
+        assertFalse(scheduler.cancel(cancelled));
+        expected.sort(null);
+        scheduler.fire(249);
+        assertEquals(250, scheduler.nextDeadline());
+        scheduler.fire(499);
+        assertEquals(Long.MAX_VALUE, scheduler.nextDeadline());
+        assertEquals(expected, fired);
+    }
+
+    /**
+     * A periodic timer raising an interrupt is serviced on time, and HALT fast forward gives exactly the same result
+     * as executing HALT again and again
+     */
+    @Test
+    public final void testTimerInterrupt() {
+        var fastForward = timerMachine();
+        fastForward.z80.enableHaltFastForward();
+        var reference = timerMachine();
+        for (TimerMachine machine : new TimerMachine[]{reference, fastForward}) {
+            while (machine.z80.getTStates() < 1_000_000) {
+                assertNotEquals(RunResult.NMI, machine.z80.run(1_000_000 - machine.z80.getTStates()));
+            }
+        }
+        assertEquals(reference.z80.getTStates(), fastForward.z80.getTStates());
+        for (RegisterNames name : RegisterNames.values()) {
+            assertEquals(reference.z80.getRegisterValue(name), fastForward.z80.getRegisterValue(name), name::toString);
+        }
+        // one tick every 1000 T states, the last due as the run ends, each within one HALT of its deadline
+        assertEquals(999, reference.ticks.size());
+        assertEquals(999 & 0xFF, reference.z80.getRegisterValue(RegisterNames.BC) >>> 8);
+        for (int i = 0; i < reference.ticks.size(); i++) {
+            assertTrue(reference.ticks.get(i) - 1000L * (i + 1) < 4);
+        }
+        assertEquals(reference.ticks, fastForward.ticks);
+    }
+
+    /**
+     * A block move stops at an event so that it fires on time
+     */
+    @Test
+    public final void testEventDuringBlockMove() {
+        var memory = new Z80Memory("NAS_Test.nas");
+        var z80 = new Z80Core(memory, new Z80IOEcho());
+        z80.reset();
+        memory.writeByte(0xC000, 0xED);
+        memory.writeByte(0xC001, 0xB0); // LDIR
+        z80.setRegisterValue(RegisterNames.HL, 0x1000);
+        z80.setRegisterValue(RegisterNames.DE, 0x6000);
+        z80.setRegisterValue(RegisterNames.BC, 0x1000);
+        z80.setProgramCounter(0xC000);
+        List<Long> fired = new ArrayList<>();
+        z80.scheduleEvent(5_000, t -> fired.add(z80.getTStates()));
+        z80.run(10_000);
+        assertEquals(1, fired.size());
+        assertTrue(fired.getFirst() - 5_000 < 21);
+        assertTrue(z80.blockMoveInProgress());
+        //
+        z80.resetTStates();
+        z80.scheduleEvent(100, t -> fired.add(t));
+        assertFalse(z80.cancelEvent(t -> fail("never scheduled")));
+        z80.run(200);
+        assertEquals(List.of(100L), fired.subList(1, fired.size()));
+    }
+
+    /*
+     * IM 1, EI, HALT loop with a handler counting interrupts in B, and a timer raising INT every 1000 T states
+     */
+    private static TimerMachine timerMachine() {
+        var memory = new Z80Memory("NAS_Test.nas");
+        int addr = 0xC000;
+        for (int b : new int[]{0x31, 0x00, 0xF0, // LD SP,0xF000
+                0xED, 0x56, // IM 1
+                0xFB, // EI
+                0x76, // HALT
+                0x18, 0xFC}) { // JR 0xC005
+            memory.writeByte(addr++, b);
+        }
+        addr = 0x0038;
+        for (int b : new int[]{0x04, // INC B
+                0xFB, // EI
+                0xED, 0x4D}) { // RETI
+            memory.writeByte(addr++, b);
+        }
+        var machine = new TimerMachine(new Z80Core(memory, new Z80IOEcho()));
+        machine.z80.reset();
+        machine.z80.setProgramCounter(0xC000);
+        machine.z80.scheduleEvent(1000, machine::tick);
+        return machine;
+    }
+
+    private record TimerMachine(Z80Core z80, List<Long> ticks) {
+        TimerMachine(Z80Core z80) {
+            this(z80, new ArrayList<>());
+        }
+
+        void tick(long tStates) {
+            ticks.add(z80.getTStates());
+            z80.setINT(0xFF);
+            z80.scheduleEvent(tStates + 1000, this::tick);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.support.Z80IO;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Exhaustive checks of the table driven flag calculations against the original step by step flag code
+ */
+public class Z80FlagTablesTest {
+    private final static int[] FLAG_INPUTS = {0x00, 0x01, 0xFE, 0xFF};
+    private final static int ORIGIN = 0xC000;
+    //
+    private Z80Core z80;
+    private Z80Memory z80Memory;
+
+    @BeforeEach
+    public void setUp() {
+        z80Memory = new Z80Memory("NAS_Test.nas");
+        z80 = new Z80Core(z80Memory, new Z80IO());
+        z80.reset();
+    }
+
+    /**
+     * ADD / ADC / SUB / SBC / AND / XOR / OR / CP A,B for every A, B and carry in
+     */
+    @Test
+    public final void testArithmeticAndLogic() {
+        for (int opcode : new int[]{0x80, 0x88, 0x90, 0x98, 0xA0, 0xA8, 0xB0, 0xB8}) {
+            z80Memory.load(ORIGIN, opcode);
+            for (int f : FLAG_INPUTS) {
+                for (int a = 0; a < 256; a++) {
+                    for (int b = 0; b < 256; b++) {
+                        int expected = switch (opcode) {
+                            case 0x80 -> add(a, b, 0);
+                            case 0x88 -> add(a, b, f & 0x01);
+                            case 0x90 -> sub(a, b, 0);
+                            case 0x98 -> sub(a, b, f & 0x01);
+                            case 0xA0 -> logic(a & b, 0x10);
+                            case 0xA8 -> logic(a ^ b, 0x00);
+                            case 0xB0 -> logic(a | b, 0x00);
+                            default -> (a << 8) | cp(a, b);
+                        };
+                        assertEquals(expected, execute(a, f, b), () -> String.format("opcode %02X", opcode));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * INC B / DEC B for every B, carry preserved
+     */
+    @Test
+    public final void testIncDec() {
+        for (int opcode : new int[]{0x04, 0x05}) {
+            z80Memory.load(ORIGIN, opcode);
+            for (int f : FLAG_INPUTS) {
+                for (int b = 0; b < 256; b++) {
+                    execute(0x00, f, b);
+                    int expected = (0x04 == opcode) ? inc(b, f) : dec(b, f);
+                    assertEquals(expected >>> 8, z80.getRegisterValue(RegisterNames.BC) >>> 8);
+                    assertEquals(expected & 0xFF, z80.getRegisterValue(RegisterNames.F), () -> String.format("opcode %02X", opcode));
+                }
+            }
+        }
+    }
+
+    /**
+     * DAA for every A and every combination of N, H and C
+     */
+    @Test
+    public final void testDAA() {
+        z80Memory.load(ORIGIN, 0x27);
+        for (int f = 0; f < 256; f++) {
+            for (int a = 0; a < 256; a++) {
+                assertEquals(daa(a, f), execute(a, f, 0));
+            }
+        }
+    }
+
+    /**
+     * RLC / RL / RRC / RR / SLA / SLL / SRA / SRL B for every B and carry in
+     */
+    @Test
+    public final void testShifts() {
+        for (int opcode : new int[]{0x00, 0x08, 0x10, 0x18, 0x20, 0x28, 0x30, 0x38}) {
+            z80Memory.load(ORIGIN, 0xCB, opcode);
+            for (int f : FLAG_INPUTS) {
+                for (int b = 0; b < 256; b++) {
+                    execute(0x00, f, b);
+                    int expected = shift(opcode, b, f);
+                    assertEquals(expected >>> 8, z80.getRegisterValue(RegisterNames.BC) >>> 8);
+                    assertEquals(expected & 0xFF, z80.getRegisterValue(RegisterNames.F), () -> String.format("opcode CB %02X", opcode));
+                }
+            }
+        }
+    }
+
+    /**
+     * RLCA / RRCA / RLA / RRA for every A and all incoming flags
+     */
+    @Test
+    public final void testAccumulatorRotates() {
+        for (int opcode : new int[]{0x07, 0x0F, 0x17, 0x1F}) {
+            z80Memory.load(ORIGIN, opcode);
+            for (int f = 0; f < 256; f++) {
+                for (int a = 0; a < 256; a++) {
+                    assertEquals(rotate(opcode, a, f), execute(a, f, 0), () -> String.format("opcode %02X", opcode));
+                }
+            }
+        }
+    }
+
+    /*
+     * Execute the instruction at the test origin and return the resulting AF
+     */
+    private int execute(int a, int f, int b) {
+        z80.setRegisterValue(RegisterNames.A, a);
+        z80.setRegisterValue(RegisterNames.F, f);
+        z80.setRegisterValue(RegisterNames.BC, b << 8);
+        z80.setProgramCounter(ORIGIN);
+        z80.executeOneInstruction();
+        return (z80.getRegisterValue(RegisterNames.A) << 8) | z80.getRegisterValue(RegisterNames.F);
+    }
+
+    // Reference implementations, one flag at a time
+
+    private static int szp(int value) {
+        int flags = value & 0xA8;
+        if (0 == value) flags = flags | 0x40;
+        if (0 == (Integer.bitCount(value) & 0x01)) flags = flags | 0x04;
+        return flags;
+    }
+
+    private static int add(int a, int b, int carry) {
+        int result = a + b + carry;
+        int flags = szp(result & 0xFF) & 0xFB;
+        if (((a & 0x0F) + (b & 0x0F) + carry) > 0x0F) flags = flags | 0x10;
+        int signed = (a > 127 ? a - 256 : a) + (b > 127 ? b - 256 : b) + carry;
+        if ((signed < -128) || (signed > 127)) flags = flags | 0x04;
+        if (result > 0xFF) flags = flags | 0x01;
+        return ((result & 0xFF) << 8) | flags;
+    }
+
+    private static int sub(int a, int b, int carry) {
+        int result = a - b - carry;
+        int flags = (szp(result & 0xFF) & 0xFB) | 0x02;
+        if ((a & 0x0F) < ((b & 0x0F) + carry)) flags = flags | 0x10;
+        int signed = (a > 127 ? a - 256 : a) - (b > 127 ? b - 256 : b) - carry;
+        if ((signed < -128) || (signed > 127)) flags = flags | 0x04;
+        if (result < 0) flags = flags | 0x01;
+        return ((result & 0xFF) << 8) | flags;
+    }
+
+    private static int logic(int result, int halfCarry) {
+        return (result << 8) | szp(result) | halfCarry;
+    }
+
+    private static int cp(int a, int b) {
+        return (sub(a, b, 0) & 0xD7) | (b & 0x28);
+    }
+
+    private static int inc(int value, int f) {
+        int result = (value + 1) & 0xFF;
+        int flags = (szp(result) & 0xFB) | (f & 0x01);
+        if ((value & 0x0F) == 0x0F) flags = flags | 0x10;
+        if (0x7F == value) flags = flags | 0x04;
+        return (result << 8) | flags;
+    }
+
+    private static int dec(int value, int f) {
+        int result = (value - 1) & 0xFF;
+        int flags = (szp(result) & 0xFB) | 0x02 | (f & 0x01);
+        if ((value & 0x0F) == 0x00) flags = flags | 0x10;
+        if (0x80 == value) flags = flags | 0x04;
+        return (result << 8) | flags;
+    }
+
+    private static int daa(int a, int f) {
+        int correction = 0;
+        boolean carry = (f & 0x01) != 0;
+        if (((f & 0x10) != 0) || ((a & 0x0F) > 0x09)) correction = 0x06;
+        if (carry || (a > 0x9F) || ((a > 0x8F) && ((a & 0x0F) > 0x09))) correction = correction | 0x60;
+        if (a > 0x99) carry = true;
+        int af = ((f & 0x02) != 0) ? sub(a, correction, 0) : add(a, correction, 0);
+        return (af & 0xFF10) | (f & 0x02) | szp(af >>> 8) | (carry ? 0x01 : 0x00);
+    }
+
+    private static int shift(int opcode, int value, int f) {
+        int carry = f & 0x01;
+        int result = switch (opcode) {
+            case 0x00 -> (value << 1) | (value >>> 7);
+            case 0x08 -> (value >>> 1) | ((value & 0x01) << 7) | ((value & 0x01) << 8);
+            case 0x10 -> (value << 1) | carry;
+            case 0x18 -> (value >>> 1) | (carry << 7) | ((value & 0x01) << 8);
+            case 0x20 -> value << 1;
+            case 0x28 -> (value >>> 1) | (value & 0x80) | ((value & 0x01) << 8);
+            case 0x30 -> (value << 1) | 0x01;
+            default -> (value >>> 1) | ((value & 0x01) << 8);
+        };
+        return ((result & 0xFF) << 8) | szp(result & 0xFF) | (result >>> 8);
+    }
+
+    private static int rotate(int opcode, int a, int f) {
+        int carry = f & 0x01;
+        int result = switch (opcode) {
+            case 0x07 -> (a << 1) | (a >>> 7);
+            case 0x0F -> (a >>> 1) | ((a & 0x01) << 7) | ((a & 0x01) << 8);
+            case 0x17 -> (a << 1) | carry;
+            default -> (a >>> 1) | (carry << 7) | ((a & 0x01) << 8);
+        };
+        return ((result & 0xFF) << 8) | (f & 0xC4) | (result & 0x28) | (result >>> 8);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import com.codingrodent.microprocessor.z80.Z80HotspotProfiler.Hotspot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Z80HotspotProfilerTest {
+    private final static int MAIN = 0xC000;
+    private final static int SUB = 0xC010;
+    // T states of each call to the subroutine
+    private final static long SUB_T_STATES = 7 + 32 * 4 + 31 * 12 + 7 + 10;
+    //
+    private Z80Core z80;
+    private Z80HotspotProfiler profiler;
+
+    @BeforeEach
+    public void setUp() {
+        var z80Memory = new Z80Memory("NAS_Test.nas");
+        z80 = new Z80Core(z80Memory, new Z80IOEcho());
+        z80.reset();
+        z80Memory.load(MAIN, 0x06, 0x05, // ld b,5
+                0xCD, 0x10, 0xC0, // call sub
+                0x10, 0xFB, // djnz 0xC002
+                0x76); // halt
+        z80Memory.load(SUB, 0x0E, 0x20, // ld c,0x20
+                0x0D, // dec c
+                0x20, 0xFD, // jr nz,0xC012
+                0xC9); // ret
+        z80.setProgramCounter(MAIN);
+        profiler = new Z80HotspotProfiler();
+        z80.enableHotspotProfiler(profiler);
+    }
+
+    /**
+     * Counts are kept per address and rolled up into routines between symbols
+     */
+    @Test
+    public final void testRoutines() {
+        long start = z80.getTStates();
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(5, profiler.getCount(0xC002));
+        assertEquals(5 * 32, profiler.getCount(0xC012));
+        assertEquals(5 * 17, profiler.getTStates(0xC002));
+        assertEquals(z80.getTStates() - start, profiler.getTotalTStates());
+        // no symbols, so one range holds everything
+        List<Hotspot> routines = profiler.getHotRoutines(10);
+        assertEquals(1, routines.size());
+        assertEquals(new Hotspot("C000", 0xC000, 0xC0FF, 1 + 5 * 2 + 1 + 5 * (2 + 32 * 2), z80.getTStates() - start), routines.get(0));
+        //
+        profiler.addSymbol("main", MAIN);
+        profiler.addSymbol("sub", SUB);
+        routines = profiler.getHotRoutines(10);
+        assertEquals(2, routines.size());
+        assertEquals("sub", routines.get(0).name());
+        assertEquals(5 * SUB_T_STATES, routines.get(0).tStates());
+        assertEquals(SUB, routines.get(0).start());
+        assertEquals(0xFFFF, routines.get(0).end());
+        assertEquals(new Hotspot("main", MAIN, SUB - 1, 1 + 5 * 2 + 1, 7 + 5 * 17 + 4 * 13 + 8 + 4), routines.get(1));
+        assertEquals(1, profiler.getHotRoutines(1).size());
+        //
+        Hotspot hottest = profiler.getHotAddresses(1).get(0);
+        assertEquals("sub+3", hottest.name());
+        assertEquals(0xC013, hottest.start());
+        assertEquals(5 * (31 * 12 + 7), hottest.tStates());
+        //
+        z80.disableHotspotProfiler();
+        profiler.clear();
+        z80.setProgramCounter(MAIN);
+        z80.run(Long.MAX_VALUE);
+        assertEquals(0, profiler.getTotalTStates());
+        assertTrue(profiler.getHotRoutines(10).isEmpty());
+    }
+
+    /**
+     * Symbols are read from a file, in the usual layouts, and appear in the report
+     */
+    @Test
+    public final void testSymbolFile() throws IOException {
+        Path file = Files.createTempFile("z80", ".sym");
+        try {
+            Files.write(file, List.of("; symbols", "main: EQU $C000", "C010h sub", "cafe 0x2000", "", "unused"));
+            profiler.loadSymbols(file);
+        } finally {
+            Files.delete(file);
+        }
+        z80.run(Long.MAX_VALUE);
+        List<Hotspot> routines = profiler.getHotRoutines(10);
+        assertEquals(2, routines.size());
+        assertEquals("sub", routines.get(0).name());
+        assertEquals("main", routines.get(1).name());
+        //
+        var report = new StringBuilder();
+        profiler.writeReport(report, 1);
+        String[] lines = report.toString().split(System.lineSeparator());
+        assertEquals(1, lines.length);
+        assertTrue(lines[0].endsWith("C010-FFFF  sub"), lines[0]);
+    }
+}
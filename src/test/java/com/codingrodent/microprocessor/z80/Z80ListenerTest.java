@@ -0,0 +1,148 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.IExecutionListener;
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Z80ListenerTest {
+    private Z80Core z80;
+    private Z80Memory z80Memory;
+    private final List<String> memory = new ArrayList<>();
+    private final List<String> io = new ArrayList<>();
+    private final List<Integer> instructions = new ArrayList<>();
+    private final List<String> interrupts = new ArrayList<>();
+    //
+    private final IExecutionListener listener = new IExecutionListener() {
+        @Override
+        public void instructionRetired(int address, long tStates) {
+            instructions.add(address);
+        }
+
+        @Override
+        public void memoryRead(int address, int value) {
+            memory.add(String.format("R %04X %02X", address, value));
+        }
+
+        @Override
+        public void memoryWrite(int address, int value) {
+            memory.add(String.format("W %04X %02X", address, value));
+        }
+
+        @Override
+        public void ioRead(int address, int value) {
+            io.add(String.format("IN %04X %02X", address, value));
+        }
+
+        @Override
+        public void ioWrite(int address, int value) {
+            io.add(String.format("OUT %04X %02X", address, value));
+        }
+
+        @Override
+        public void interruptAccepted(boolean nmi, int address) {
+            interrupts.add((nmi ? "NMI " : "INT ") + String.format("%04X", address));
+        }
+    };
+
+    @BeforeEach
+    public void setUp() {
+        z80Memory = new Z80Memory("NAS_Test.nas");
+        z80 = new Z80Core(z80Memory, new Z80IOEcho());
+        z80.reset();
+        z80Memory.load(0xD000, 0x01, 0x02, 0x03);
+        z80Memory.load(0xC000, 0x21, 0x00, 0xD0, // ld hl,0xD000
+                0x11, 0x00, 0xD1, // ld de,0xD100
+                0x01, 0x03, 0x00, // ld bc,3
+                0xED, 0xB0, // ldir
+                0x3E, 0x5A, // ld a,0x5A
+                0xD3, 0x20, // out (0x20),a
+                0xDB, 0x10, // in a,(0x10)
+                0x21, 0x00, 0xD0, // ld hl,0xD000
+                0x01, 0x30, 0x03, // ld bc,0x0330
+                0xED, 0xB3, // otir
+                0x76); // halt
+        z80Memory.load(0x0066, 0xED, 0x45); // retn
+        z80.setProgramCounter(0xC000);
+        z80.addListener(listener);
+    }
+
+    /**
+     * Each instruction, data access and I/O is reported, including every byte of a block instruction
+     */
+    @Test
+    public final void testEvents() {
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(List.of(0xC000, 0xC003, 0xC006, 0xC009, 0xC00B, 0xC00D, 0xC00F, 0xC011, 0xC014, 0xC017, 0xC019), instructions);
+        assertEquals(List.of("R D000 01", "W D100 01", "R D001 02", "W D101 02", "R D002 03", "W D102 03"), memory.subList(0, 6));
+        assertEquals(9, memory.size());
+        assertEquals(List.of("OUT 5A20 5A", "IN 5A10 5A", "OUT 0330 01", "OUT 0230 02", "OUT 0130 03"), io);
+        //
+        memory.clear();
+        z80.setNMI();
+        assertEquals(RunResult.NMI, z80.runInstructions(1));
+        assertEquals(List.of("NMI 0066"), interrupts);
+        assertEquals(0x0066, (int) instructions.get(instructions.size() - 1));
+        assertEquals(4, memory.size()); // return address pushed and popped
+        //
+        z80.removeListener(listener);
+        instructions.clear();
+        z80.setProgramCounter(0xC000);
+        z80.run(Long.MAX_VALUE);
+        assertTrue(instructions.isEmpty());
+    }
+
+    /**
+     * A listener does not change what the processor does
+     */
+    @Test
+    public final void testUnchanged() {
+        var reference = new Z80Core(new Z80Memory("NAS_Test.nas"), new Z80IOEcho());
+        var listened = new Z80Core(new Z80Memory("NAS_Test.nas"), new Z80IOEcho());
+        for (Z80Core core : new Z80Core[]{reference, listened}) {
+            core.reset();
+            core.setProgramCounter(0x1000);
+        }
+        long[] counts = new long[2];
+        listened.addListener(new IExecutionListener() {
+            @Override
+            public void instructionRetired(int address, long tStates) {
+                counts[0]++;
+            }
+
+            @Override
+            public void memoryWrite(int address, int value) {
+                counts[1]++;
+            }
+        });
+        assertEquals(reference.run(5_000_000), listened.run(5_000_000));
+        for (RegisterNames name : RegisterNames.values()) {
+            assertEquals(reference.getRegisterValue(name), listened.getRegisterValue(name), name.name());
+        }
+        assertEquals(reference.getTStates(), listened.getTStates());
+        assertTrue(counts[0] > 0);
+        assertTrue(counts[1] > 0);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.OpcodeTable;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Z80OpcodeProfilerTest {
+    private Z80Core z80;
+    private Z80OpcodeProfiler profiler;
+
+    @BeforeEach
+    public void setUp() {
+        var z80Memory = new Z80Memory("NAS_Test.nas");
+        z80 = new Z80Core(z80Memory, new Z80IOEcho());
+        z80.reset();
+        z80Memory.load(0xC000, 0x06, 0x05, // ld b,5
+                0xCB, 0x01, // rlc c
+                0xED, 0x44, // neg
+                0xDD, 0x23, // inc ix
+                0xFD, 0xCB, 0x00, 0x46, // bit 0,(iy+0)
+                0x10, 0xF4, // djnz 0xC002
+                0x76); // halt
+        z80.setProgramCounter(0xC000);
+        profiler = new Z80OpcodeProfiler();
+        z80.enableOpcodeProfiler(profiler);
+    }
+
+    /**
+     * Each instruction is counted against its own table
+     */
+    @Test
+    public final void testCounts() {
+        long start = z80.getTStates();
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(1, profiler.getCount(OpcodeTable.MAIN, 0x06));
+        assertEquals(5, profiler.getCount(OpcodeTable.CB, 0x01));
+        assertEquals(5, profiler.getCount(OpcodeTable.ED, 0x44));
+        assertEquals(5, profiler.getCount(OpcodeTable.DD_FD, 0x23));
+        assertEquals(5, profiler.getCount(OpcodeTable.DDCB, 0x46));
+        assertEquals(5, profiler.getCount(OpcodeTable.MAIN, 0x10));
+        assertEquals(1, profiler.getCount(OpcodeTable.MAIN, 0x76));
+        assertEquals(0, profiler.getCount(OpcodeTable.MAIN, 0xCB));
+        assertEquals(27, profiler.getTotalCount());
+        //
+        assertEquals(40, profiler.getTStates(OpcodeTable.CB, 0x01));
+        assertEquals(4 * 13 + 8, profiler.getTStates(OpcodeTable.MAIN, 0x10));
+        assertEquals(z80.getTStates() - start, profiler.getTotalTStates());
+        //
+        z80.disableOpcodeProfiler();
+        profiler.clear();
+        z80.setProgramCounter(0xC000);
+        z80.run(Long.MAX_VALUE);
+        assertEquals(0, profiler.getTotalCount());
+    }
+
+    /**
+     * Only opcodes executed are written
+     */
+    @Test
+    public final void testExport() throws IOException {
+        z80.run(Long.MAX_VALUE);
+        var csv = new StringBuilder();
+        profiler.writeCsv(csv);
+        String[] lines = csv.toString().split(System.lineSeparator());
+        assertEquals(8, lines.length);
+        assertEquals("table,opcode,count,tStates", lines[0]);
+        assertEquals("MAIN,06,1,7", lines[1]);
+        assertEquals("CB,01,5,40", lines[4]);
+        //
+        var json = new StringBuilder();
+        profiler.writeJson(json);
+        String text = json.toString();
+        assertTrue(text.startsWith("{\"count\":27,\"tStates\":"), text);
+        assertTrue(text.contains(",\"CB\":[{\"opcode\":\"01\",\"count\":5,\"tStates\":40}],"), text);
+        assertTrue(text.endsWith("]}}"), text);
+    }
+}
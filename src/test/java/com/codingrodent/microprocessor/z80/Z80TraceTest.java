@@ -0,0 +1,138 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Z80TraceTest {
+    private final static int ORIGIN = 0xC000;
+    //
+    private Z80Core z80;
+
+    @BeforeEach
+    public void setUp() {
+        var z80Memory = new Z80Memory("NAS_Test.nas");
+        z80 = new Z80Core(z80Memory, new Z80IOEcho());
+        z80.reset();
+        z80Memory.load(ORIGIN, 0x06, 0x05, // ld b,5
+                0x0C, // inc c
+                0x10, 0xFD, // djnz loop
+                0x76); // halt
+        z80.setProgramCounter(ORIGIN);
+    }
+
+    /**
+     * Each entry holds the state before its instruction executed
+     */
+    @Test
+    public final void testRecord() {
+        var trace = new Z80Trace(16);
+        z80.enableTrace(trace);
+        long start = z80.getTStates();
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(12, trace.getCount());
+        assertEquals(12, trace.size());
+        //
+        assertEquals(ORIGIN, trace.getPC(0));
+        assertEquals(start, trace.getTStates(0));
+        assertEquals(ORIGIN + 2, trace.getPC(1));
+        assertEquals(0x0500, trace.getRegisterValue(1, RegisterNames.BC));
+        assertEquals(start + 7, trace.getTStates(1));
+        assertEquals(ORIGIN + 5, trace.getPC(11));
+        assertEquals(0x0005, trace.getRegisterValue(11, RegisterNames.BC));
+        assertEquals(z80.getRegisterValue(RegisterNames.SP), trace.getRegisterValue(11, RegisterNames.SP));
+        assertEquals(z80.getRegisterValue(RegisterNames.A), trace.getRegisterValue(11, RegisterNames.A));
+        assertEquals(z80.getRegisterValue(RegisterNames.F), trace.getRegisterValue(11, RegisterNames.F));
+        assertThrows(IndexOutOfBoundsException.class, () -> trace.getPC(12));
+        assertThrows(IllegalArgumentException.class, () -> trace.getRegisterValue(0, RegisterNames.I));
+        //
+        z80.disableTrace();
+        z80.setProgramCounter(ORIGIN);
+        z80.run(Long.MAX_VALUE);
+        assertEquals(12, trace.getCount());
+    }
+
+    /**
+     * Once full the oldest entries are overwritten
+     */
+    @Test
+    public final void testWrap() {
+        var trace = new Z80Trace(3);
+        assertEquals(4, trace.getCapacity());
+        z80.enableTrace(trace);
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(12, trace.getCount());
+        assertEquals(4, trace.size());
+        assertEquals(ORIGIN + 3, trace.getPC(0)); // eighth instruction, the fourth djnz
+        assertEquals(0x0204, trace.getRegisterValue(0, RegisterNames.BC));
+        assertEquals(ORIGIN + 5, trace.getPC(3));
+        //
+        trace.clear();
+        assertEquals(0, trace.size());
+        z80.setProgramCounter(ORIGIN);
+        z80.executeOneInstruction();
+        assertEquals(1, trace.size());
+        assertEquals(ORIGIN, trace.getPC(0));
+    }
+
+    /**
+     * Text is only produced on request, one line per instruction
+     */
+    @Test
+    public final void testDump() throws IOException {
+        var trace = new Z80Trace(16);
+        z80.enableTrace(trace);
+        z80.runInstructions(3);
+        var text = new StringBuilder();
+        trace.dump(text);
+        String[] lines = text.toString().split(System.lineSeparator());
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("0 >> Execute @C000 : 06 05       SP:"), lines[0]);
+        assertTrue(lines[1].startsWith("1 >> Execute @C002 : 0C          SP:"), lines[1]);
+        assertTrue(lines[1].contains("  BC:0500  "), lines[1]);
+        assertTrue(lines[2].startsWith("2 >> Execute @C003 : 10 FD       SP:"), lines[2]);
+    }
+
+    /**
+     * Tracing does not change what the processor does
+     */
+    @Test
+    public final void testUnchanged() {
+        var reference = new Z80Core(new Z80Memory("NAS_Test.nas"), new Z80IOEcho());
+        var traced = new Z80Core(new Z80Memory("NAS_Test.nas"), new Z80IOEcho());
+        reference.reset();
+        reference.setProgramCounter(0x1000);
+        traced.reset();
+        traced.setProgramCounter(0x1000);
+        var trace = new Z80Trace(1024);
+        traced.enableTrace(trace);
+        assertEquals(reference.run(5_000_000), traced.run(5_000_000));
+        for (RegisterNames name : RegisterNames.values()) {
+            assertEquals(reference.getRegisterValue(name), traced.getRegisterValue(name), name.name());
+        }
+        assertEquals(reference.getTStates(), traced.getTStates());
+        assertEquals(1024, trace.size());
+        assertEquals(reference.getProgramCounter(), traced.getProgramCounter());
+    }
+}
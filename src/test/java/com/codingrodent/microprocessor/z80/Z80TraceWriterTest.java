@@ -0,0 +1,129 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Z80TraceWriterTest {
+    private final static int INSTRUCTIONS = 200_000;
+    private final static RegisterNames[] TRACED = {RegisterNames.PC, RegisterNames.SP, RegisterNames.A, RegisterNames.F, RegisterNames.BC, RegisterNames.DE, RegisterNames.HL, RegisterNames.IX, RegisterNames.IY};
+
+    /**
+     * A trace file read back matches an in memory trace of the same run, and is compact
+     */
+    @Test
+    public final void testWriteAndRead() throws IOException {
+        var expected = new Z80Trace(INSTRUCTIONS);
+        run(expected, null);
+        Path file = Files.createTempFile("z80", ".trace");
+        try {
+            try (Z80TraceWriter writer = Z80TraceWriter.open(file)) {
+                run(null, writer);
+            }
+            long size = Files.size(file);
+            assertTrue(size < INSTRUCTIONS * 8L, "Size " + size); // a quarter of four longs an instruction
+            try (Z80TraceReader reader = Z80TraceReader.open(file)) {
+                for (int entry = 0; entry < INSTRUCTIONS; entry++) {
+                    assertTrue(reader.next());
+                    for (RegisterNames name : TRACED) {
+                        assertEquals(expected.getRegisterValue(entry, name), reader.getRegisterValue(name), name.name());
+                    }
+                    assertEquals(expected.getTStates(entry), reader.getTStates());
+                }
+                assertFalse(reader.next());
+                assertEquals(INSTRUCTIONS, reader.getCount());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Instruction bytes are kept, however many there are
+     */
+    @Test
+    public final void testInstructionBytes() throws IOException {
+        var z80Memory = new Z80Memory("NAS_Test.nas");
+        var z80 = new Z80Core(z80Memory, new Z80IOEcho());
+        z80.reset();
+        z80Memory.load(0xC000, 0x00, // nop
+                0x3E, 0x42, // ld a,0x42
+                0xDD, 0x36, 0x05, 0x99, // ld (ix+5),0x99
+                0xED, 0x44, // neg
+                0x21, 0x34, 0x12); // ld hl,0x1234
+        z80.setProgramCounter(0xC000);
+        Path file = Files.createTempFile("z80", ".trace");
+        try {
+            try (Z80TraceWriter writer = Z80TraceWriter.open(file)) {
+                z80.enableTrace(writer);
+                z80.runInstructions(5);
+                z80.disableTrace();
+            }
+            try (Z80TraceReader reader = Z80TraceReader.open(file)) {
+                int[][] instructions = {{0x00}, {0x3E, 0x42}, {0xDD, 0x36, 0x05, 0x99}, {0xED, 0x44}, {0x21, 0x34, 0x12}};
+                for (int[] instruction : instructions) {
+                    assertTrue(reader.next());
+                    assertEquals(instruction.length, reader.getLength());
+                    for (int i = 0; i < instruction.length; i++) {
+                        assertEquals(instruction[i], reader.getByte(i));
+                    }
+                }
+                assertEquals(0xBE, reader.getRegisterValue(RegisterNames.A));
+                assertFalse(reader.next());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Anything else is rejected
+     */
+    @Test
+    public final void testNotATrace() throws IOException {
+        Path file = Files.createTempFile("z80", ".trace");
+        try {
+            Files.write(file, new byte[]{'Z', '8', '0'});
+            assertThrows(IOException.class, () -> Z80TraceReader.open(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /*
+     * Run the NAS instruction exerciser with tracing enabled
+     */
+    private void run(Z80Trace trace, Z80TraceWriter writer) {
+        var z80 = new Z80Core(new Z80Memory("NAS_Test.nas"), new Z80IOEcho());
+        z80.reset();
+        z80.setProgramCounter(0x1000);
+        if (null == trace) {
+            z80.enableTrace(writer);
+        } else {
+            z80.enableTrace(trace);
+        }
+        z80.runInstructions(INSTRUCTIONS);
+        z80.disableTrace();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codingrodent.microprocessor.z80;
+
+import com.codingrodent.microprocessor.support.Z80IOEcho;
+import com.codingrodent.microprocessor.support.Z80Memory;
+import com.codingrodent.microprocessor.z80.CPUConstants.RegisterNames;
+import com.codingrodent.microprocessor.z80.CPUConstants.RunResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Z80WatchpointTest {
+    private final static int ORIGIN = 0xC000;
+    //
+    private Z80Core z80;
+    private Z80Memory z80Memory;
+
+    @BeforeEach
+    public void setUp() {
+        z80Memory = new Z80Memory("NAS_Test.nas");
+        z80 = new Z80Core(z80Memory, new Z80IOEcho());
+        z80.reset();
+    }
+
+    /**
+     * Reads and writes stop after the instruction which made them
+     */
+    @Test
+    public final void testReadWrite() {
+        z80Memory.load(ORIGIN, 0x3E, 0x42, // ld a,42
+                0x32, 0x00, 0x80, // ld (8000),a
+                0x21, 0x01, 0x80, // ld hl,8001
+                0x36, 0x55, // ld (hl),55
+                0x7E, // ld a,(hl)
+                0x3C, // inc a
+                0x76); // halt
+        for (boolean compiled : new boolean[]{false, true}) {
+            z80.reset();
+            z80.setProgramCounter(ORIGIN);
+            if (compiled) z80.enableBlockCompiler(1);
+            z80.addWatchpoint(0x8000, false, true);
+            z80.addWatchpoint(0x8001, true, false);
+            //
+            assertEquals(RunResult.WATCHPOINT, z80.run(Long.MAX_VALUE));
+            assertEquals(0x8000, z80.getWatchpointAddress());
+            assertEquals(0x42, z80.getWatchpointValue());
+            assertEquals(ORIGIN + 2, z80.getWatchpointPC());
+            assertTrue(z80.isWatchpointWrite());
+            assertEquals(ORIGIN + 5, z80.getProgramCounter());
+            // the write to 8001 is not watched, the read is
+            assertEquals(RunResult.WATCHPOINT, z80.run(Long.MAX_VALUE));
+            assertEquals(0x8001, z80.getWatchpointAddress());
+            assertEquals(0x55, z80.getWatchpointValue());
+            assertEquals(ORIGIN + 10, z80.getWatchpointPC());
+            assertFalse(z80.isWatchpointWrite());
+            assertEquals(ORIGIN + 11, z80.getProgramCounter());
+            //
+            assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+            assertEquals(0x56, z80.getRegisterValue(RegisterNames.A));
+            z80.clearWatchpoints();
+        }
+    }
+
+    /**
+     * Word accesses, instruction counted runs, and removing watchpoints
+     */
+    @Test
+    public final void testWordsAndRemoval() {
+        z80Memory.load(ORIGIN, 0x31, 0x00, 0x90, // ld sp,9000
+                0x01, 0x34, 0x12, // ld bc,1234
+                0xC5, // push bc
+                0xC1, // pop bc
+                0x76); // halt
+        z80.setProgramCounter(ORIGIN);
+        z80.addWatchpoint(0x8FFF, true, true);
+        z80.addWatchpoint(0x8F00, true, true); // same page, never touched
+        assertEquals(RunResult.WATCHPOINT, z80.runInstructions(10));
+        assertEquals(0x8FFF, z80.getWatchpointAddress());
+        assertEquals(0x12, z80.getWatchpointValue());
+        assertEquals(ORIGIN + 6, z80.getWatchpointPC());
+        assertTrue(z80.isWatchpointWrite());
+        //
+        z80.removeWatchpoint(0x8FFF);
+        assertEquals(RunResult.HALT, z80.runInstructions(10));
+        assertEquals(0x1234, z80.getRegisterValue(RegisterNames.BC));
+    }
+
+    /**
+     * A watchpoint must watch something
+     */
+    @Test
+    public final void testNothingWatched() {
+        assertThrows(IllegalArgumentException.class, () -> z80.addWatchpoint(0x4000, false, false));
+        z80Memory.load(ORIGIN, 0x3A, 0x00, 0x40, // ld a,(4000)
+                0x76); // halt
+        z80.setProgramCounter(ORIGIN);
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+    }
+
+    /**
+     * A repeating block instruction stops on the step which hits the watchpoint and carries on afterwards
+     */
+    @Test
+    public final void testBlockMove() {
+        z80Memory.load(ORIGIN, 0x21, 0x00, 0x10, // ld hl,1000
+                0x11, 0x00, 0x60, // ld de,6000
+                0x01, 0x00, 0x01, // ld bc,0100
+                0xED, 0xB0, // ldir
+                0x76); // halt
+        z80.setProgramCounter(ORIGIN);
+        z80.addWatchpoint(0x6010, false, true);
+        assertEquals(RunResult.WATCHPOINT, z80.run(Long.MAX_VALUE));
+        assertEquals(0x6010, z80.getWatchpointAddress());
+        assertEquals(z80Memory.readByte(0x1010), z80.getWatchpointValue());
+        assertEquals(ORIGIN + 9, z80.getWatchpointPC());
+        assertEquals(0x00EF, z80.getRegisterValue(RegisterNames.BC));
+        assertEquals(ORIGIN + 9, z80.getProgramCounter());
+        //
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(0x0000, z80.getRegisterValue(RegisterNames.BC));
+        for (int i = 0; i < 0x100; i++) {
+            assertEquals(z80Memory.readByte(0x1000 + i), z80Memory.readByte(0x6000 + i));
+        }
+    }
+
+    /**
+     * Watchpoints away from a block instruction leave it moving in one go, and one it hits costs no extra time
+     */
+    @Test
+    public final void testBlockTiming() {
+        int[] longest = new int[1];
+        z80Memory = new Z80Memory("NAS_Test.nas") {
+            @Override
+            public void copyBlock(int source, int destination, int length, boolean increment) {
+                longest[0] = Math.max(longest[0], length);
+                super.copyBlock(source, destination, length, increment);
+            }
+        };
+        z80 = new Z80Core(z80Memory, new Z80IOEcho());
+        z80.reset();
+        z80Memory.load(ORIGIN, 0x21, 0x00, 0x10, // ld hl,1000
+                0x11, 0x00, 0x60, // ld de,6000
+                0x01, 0x00, 0x10, // ld bc,1000
+                0xED, 0xB0, // ldir
+                0x21, 0x00, 0x10, // ld hl,1000
+                0x01, 0x00, 0x10, // ld bc,1000
+                0x3E, 0xC9, // ld a,c9
+                0xED, 0xB1, // cpir
+                0x76); // halt
+        z80.setProgramCounter(ORIGIN);
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        long expected = z80.getTStates();
+        //
+        z80.reset();
+        z80.setProgramCounter(ORIGIN);
+        z80.addWatchpoint(0x8000, true, true);
+        longest[0] = 0;
+        assertEquals(RunResult.HALT, z80.run(Long.MAX_VALUE));
+        assertEquals(expected, z80.getTStates());
+        assertEquals(0x0FFF, longest[0]);
+        //
+        z80.reset();
+        z80.setProgramCounter(ORIGIN);
+        z80.addWatchpoint(0x6800, false, true);
+        z80.addWatchpoint(0x1400, true, false);
+        int hits = 0;
+        while (RunResult.WATCHPOINT == z80.run(Long.MAX_VALUE)) {
+            hits++;
+        }
+        assertTrue(hits >= 2, "watchpoints hit " + hits);
+        assertEquals(expected, z80.getTStates());
+    }
+}